@@ -33,6 +33,12 @@ public abstract class Command implements CommandInterface {
      */
     protected long startTime;
 
+    /**
+     * The time when the current execution was started, as returned by
+     * System.nanoTime().
+     */
+    private long startNanos;
+
     /**
      * The trace module.
      */
@@ -121,7 +127,8 @@ public abstract class Command implements CommandInterface {
      * Start the stopwatch.
      */
     void start() {
-        if (trace.isInfoEnabled()) {
+        Database db = session.getDatabase();
+        if (trace.isInfoEnabled() || db.getQueryStatistics() || db.getSlowQueryLimit() > 0) {
             startTime = System.currentTimeMillis();
         }
     }
@@ -157,6 +164,7 @@ public abstract class Command implements CommandInterface {
                 }
             }
         }
+        session.getDatabase().getMetrics().statement(System.nanoTime() - startNanos);
         if (trace.isInfoEnabled() && startTime > 0) {
             long time = System.currentTimeMillis() - startTime;
             if (time > Constants.SLOW_QUERY_LIMIT_MS) {
@@ -176,6 +184,7 @@ public abstract class Command implements CommandInterface {
     @Override
     public ResultInterface executeQuery(int maxrows, boolean scrollable) {
         startTime = 0;
+        startNanos = System.nanoTime();
         long start = 0;
         Database database = session.getDatabase();
         Object sync = database.isMultiThreaded() ? (Object) session : (Object) database;
@@ -220,6 +229,10 @@ public abstract class Command implements CommandInterface {
                 database.checkPowerOff();
                 throw e;
             } finally {
+                if (start != 0) {
+                    // the statement was retried because a row was locked
+                    database.getLockManager().stopWaitForRow(session);
+                }
                 if (callStop) {
                     stop();
                 }
@@ -232,6 +245,7 @@ public abstract class Command implements CommandInterface {
 
     @Override
     public int executeUpdate() {
+        startNanos = System.nanoTime();
         long start = 0;
         Database database = session.getDatabase();
         Object sync = database.isMultiThreaded() ? (Object) session : (Object) database;
@@ -253,6 +267,8 @@ public abstract class Command implements CommandInterface {
                         return update();
                     } catch (DbException e) {
                         start = filterConcurrentUpdate(e, start);
+                        // undo the changes of the failed attempt
+                        session.rollbackTo(rollback, false);
                     } catch (OutOfMemoryError e) {
                         callStop = false;
                         database.shutdownImmediately();
@@ -278,6 +294,10 @@ public abstract class Command implements CommandInterface {
                 }
                 throw e;
             } finally {
+                if (start != 0) {
+                    // the statement was retried because a row was locked
+                    database.getLockManager().stopWaitForRow(session);
+                }
                 try {
                     if (callStop) {
                         stop();
@@ -8,6 +8,9 @@ package org.h2.command;
 
 import java.util.ArrayList;
 import org.h2.api.DatabaseEventListener;
+import org.h2.command.dml.Query;
+import org.h2.engine.Database;
+import org.h2.engine.SlowQueryLog;
 import org.h2.expression.Parameter;
 import org.h2.expression.ParameterInterface;
 import org.h2.result.ResultInterface;
@@ -23,6 +26,9 @@ class CommandContainer extends Command {
     private Prepared prepared;
     private boolean readOnlyKnown;
     private boolean readOnly;
+    private long startLockWaitTime;
+    private int startSpilledResults;
+    private long startFileReads, startCacheHits;
 
     CommandContainer(Parser parser, String sql, Prepared prepared) {
         super(parser, sql);
@@ -45,6 +51,48 @@ class CommandContainer extends Command {
         return prepared.isQuery();
     }
 
+    @Override
+    void start() {
+        super.start();
+        Database db = session.getDatabase();
+        if (db.getSlowQueryLimit() > 0) {
+            startLockWaitTime = session.getLockWaitTime();
+            startSpilledResults = session.getSpilledResults();
+            startFileReads = session.getFileReads();
+            startCacheHits = session.getCacheHits();
+        }
+    }
+
+    /**
+     * Add the statement to the slow query log if it took longer than the
+     * limit.
+     *
+     * @param rowCount the query or update row count
+     */
+    private void checkSlowQuery(int rowCount) {
+        Database db = session.getDatabase();
+        SlowQueryLog log = db.getSlowQueryLog();
+        if (log == null || startTime <= 0) {
+            return;
+        }
+        long time = System.currentTimeMillis() - startTime;
+        if (time < db.getSlowQueryLimit()) {
+            return;
+        }
+        SlowQueryLog.SlowQuery q = new SlowQueryLog.SlowQuery();
+        q.startTime = startTime;
+        q.sessionId = session.getId();
+        q.sqlStatement = toString();
+        q.plan = prepared.getPlanSQL();
+        q.executionTime = time;
+        q.rowCount = rowCount;
+        q.fileReads = session.getFileReads() - startFileReads;
+        q.cacheHits = session.getCacheHits() - startCacheHits;
+        q.lockWaitTime = (session.getLockWaitTime() - startLockWaitTime) / 1000000;
+        q.spilledResults = session.getSpilledResults() - startSpilledResults;
+        log.add(q);
+    }
+
     private void recompileIfRequired() {
         if (prepared.needRecompile()) {
             // TODO test with 'always recompile'
@@ -78,6 +126,7 @@ class CommandContainer extends Command {
         prepared.checkParameters();
         int updateCount = prepared.update();
         prepared.trace(startTime, updateCount);
+        checkSlowQuery(updateCount);
         setProgress(DatabaseEventListener.STATE_STATEMENT_END);
         return updateCount;
     }
@@ -88,8 +137,10 @@ class CommandContainer extends Command {
         setProgress(DatabaseEventListener.STATE_STATEMENT_START);
         start();
         prepared.checkParameters();
-        ResultInterface result = prepared.query(maxrows);
+        ResultInterface result = prepared instanceof Query ?
+                ((Query) prepared).queryCached(maxrows) : prepared.query(maxrows);
         prepared.trace(startTime, result.getRowCount());
+        checkSlowQuery(result.getRowCount());
         setProgress(DatabaseEventListener.STATE_STATEMENT_END);
         return result;
     }
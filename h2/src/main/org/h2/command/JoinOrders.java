@@ -0,0 +1,61 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.command;
+
+import java.util.HashMap;
+import org.h2.util.New;
+
+/**
+ * The join orders the optimizer chose for the queries of a statement that is
+ * being prepared. If the statement was prepared before (by any session), the
+ * cached join orders are used instead of searching for the best order again.
+ * The join orders are identified by the tables and the condition of the
+ * query, so that the queries of a statement can be prepared in any order.
+ */
+public class JoinOrders {
+
+    private final HashMap<String, int[]> cached;
+    private final HashMap<String, int[]> orders = New.hashMap();
+
+    JoinOrders(HashMap<String, int[]> cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * Get the cached join order of a query.
+     *
+     * @param key the tables and the condition of the query
+     * @return the positions of the top-level tables in the order they are
+     *         joined, or null if there is no cached join order
+     */
+    public int[] get(String key) {
+        return cached == null ? null : cached.get(key);
+    }
+
+    /**
+     * Remember the join order the optimizer chose for a query.
+     *
+     * @param key the tables and the condition of the query
+     * @param order the positions of the top-level tables in the order they
+     *            are joined
+     */
+    public void put(String key, int[] order) {
+        if (!orders.containsKey(key)) {
+            orders.put(key, order);
+        }
+    }
+
+    /**
+     * Get the join orders chosen while preparing the statement.
+     *
+     * @return the join orders
+     */
+    HashMap<String, int[]> getOrders() {
+        return orders;
+    }
+
+}
@@ -116,6 +116,7 @@ import org.h2.expression.TableFunction;
 import org.h2.expression.ValueExpression;
 import org.h2.expression.Variable;
 import org.h2.expression.Wildcard;
+import org.h2.expression.WindowFunction;
 import org.h2.index.Index;
 import org.h2.message.DbException;
 import org.h2.result.SortOrder;
@@ -186,6 +187,11 @@ public class Parser {
     private CreateView createView;
     private Prepared currentPrepared;
     private Select currentSelect;
+    /**
+     * The select whose select list or ORDER BY clause is currently parsed.
+     * Window functions are only allowed there.
+     */
+    private Select windowSelect;
     private ArrayList<Parameter> parameters;
     private String schemaName;
     private ArrayList<String> expectedList;
@@ -508,6 +514,10 @@ public class Parser {
         BackupCommand command = new BackupCommand(session);
         read("TO");
         command.setFileName(readExpression());
+        if (readIf("INCREMENTAL")) {
+            read("FROM");
+            command.setBaseFileName(readExpression());
+        }
         return command;
     }
 
@@ -760,10 +770,23 @@ public class Parser {
     }
 
     private IndexColumn[] parseIndexColumnList() {
+        return parseIndexColumnList(false);
+    }
+
+    private IndexColumn[] parseIndexColumnList(boolean allowExpressions) {
         ArrayList<IndexColumn> columns = New.arrayList();
         do {
             IndexColumn column = new IndexColumn();
-            column.columnName = readColumnIdentifier();
+            if (allowExpressions) {
+                Expression expr = readExpression();
+                if (expr instanceof ExpressionColumn && ((ExpressionColumn) expr).getOriginalTableAliasName() == null) {
+                    column.columnName = ((ExpressionColumn) expr).getOriginalColumnName();
+                } else {
+                    column.expression = expr;
+                }
+            } else {
+                column.columnName = readColumnIdentifier();
+            }
             columns.add(column);
             if (readIf("ASC")) {
                 // ignore
@@ -1598,8 +1621,12 @@ public class Parser {
         if (readIf("ORDER")) {
             read("BY");
             Select oldSelect = currentSelect;
+            Select oldWindowSelect = windowSelect;
             if (command instanceof Select) {
                 currentSelect = (Select) command;
+                windowSelect = currentSelect;
+            } else {
+                windowSelect = null;
             }
             ArrayList<SelectOrderBy> orderList = New.arrayList();
             do {
@@ -1634,6 +1661,7 @@ public class Parser {
             } while (readIf(","));
             command.setOrder(orderList);
             currentSelect = oldSelect;
+            windowSelect = oldWindowSelect;
         }
         if (database.getMode().supportOffsetFetch) {
             // make sure aggregate functions will not work here
@@ -1719,6 +1747,22 @@ public class Parser {
         return select;
     }
 
+    /**
+     * Check whether the comment before the current token is the hint
+     * <code>/*+ CACHE *&#47;</code>.
+     *
+     * @return true if it is
+     */
+    private boolean readCacheHint() {
+        int i = lastParseIndex;
+        while (i < parseIndex && characterTypes[i] == 0) {
+            i++;
+        }
+        String comment = originalSQL.substring(lastParseIndex, i);
+        comment = StringUtils.toUpperEnglish(comment.replaceAll("\\s", ""));
+        return comment.contains("/*+CACHE*/");
+    }
+
     private void parseSelectSimpleFromPart(Select command) {
         do {
             TableFilter filter = readTableFilter(false);
@@ -1785,6 +1829,8 @@ public class Parser {
             readIf("ALL");
         }
         ArrayList<Expression> expressions = New.arrayList();
+        Select oldWindowSelect = windowSelect;
+        windowSelect = command;
         do {
             if (readIf("*")) {
                 expressions.add(new Wildcard(null, null));
@@ -1799,19 +1845,22 @@ public class Parser {
                 expressions.add(expr);
             }
         } while (readIf(","));
+        windowSelect = oldWindowSelect;
         command.setExpressions(expressions);
     }
 
     private Select parseSelectSimple() {
-        boolean fromFirst;
+        boolean fromFirst, cacheHint = false;
         if (readIf("SELECT")) {
             fromFirst = false;
+            cacheHint = readCacheHint();
         } else if (readIf("FROM")) {
             fromFirst = true;
         } else {
             throw getSyntaxError();
         }
         Select command = new Select(session);
+        command.setResultCacheHint(cacheHint);
         int start = lastParseIndex;
         Select oldSelect = currentSelect;
         currentSelect = command;
@@ -2104,8 +2153,7 @@ public class Parser {
         if (currentSelect == null) {
             throw getSyntaxError();
         }
-        currentSelect.setGroupQuery();
-        Expression r;
+        Aggregate r;
         if (aggregateType == Aggregate.COUNT) {
             if (readIf("*")) {
                 r = new Aggregate(Aggregate.COUNT_ALL, null, currentSelect, false);
@@ -2124,7 +2172,7 @@ public class Parser {
             Aggregate agg = new Aggregate(Aggregate.GROUP_CONCAT, readExpression(), currentSelect, distinct);
             if (readIf("ORDER")) {
                 read("BY");
-                agg.setGroupConcatOrder(parseSimpleOrderList());
+                agg.setGroupConcatOrder(parseSimpleOrderList(false));
             }
             if (readIf("SEPARATOR")) {
                 agg.setGroupConcatSeparator(readExpression());
@@ -2135,10 +2183,81 @@ public class Parser {
             r = new Aggregate(aggregateType, readExpression(), currentSelect, distinct);
         }
         read(")");
+        if (readIf("OVER")) {
+            read("(");
+            return readWindow(WindowFunction.AGGREGATE, r);
+        }
+        currentSelect.setGroupQuery();
         return r;
     }
 
-    private ArrayList<SelectOrderBy> parseSimpleOrderList() {
+    private WindowFunction readWindow(int windowType, Aggregate aggregate) {
+        if (currentSelect == null || currentSelect != windowSelect) {
+            // not allowed in conditions, GROUP BY, and nested window functions
+            throw getSyntaxError();
+        }
+        WindowFunction w = new WindowFunction(windowType, aggregate, currentSelect);
+        windowSelect = null;
+        if (readIf("PARTITION")) {
+            read("BY");
+            ArrayList<Expression> partitionBy = New.arrayList();
+            do {
+                partitionBy.add(readExpression());
+            } while (readIf(","));
+            w.setPartitionBy(partitionBy);
+        }
+        if (readIf("ORDER")) {
+            read("BY");
+            w.setOrderBy(parseSimpleOrderList(true));
+        }
+        boolean rows = readIf("ROWS");
+        if (rows || readIf("RANGE")) {
+            if (readIf("BETWEEN")) {
+                Expression[] startOffset = { null };
+                int start = readWindowFrameBound(startOffset);
+                read("AND");
+                Expression[] endOffset = { null };
+                int end = readWindowFrameBound(endOffset);
+                if (start == WindowFunction.UNBOUNDED_FOLLOWING || end == WindowFunction.UNBOUNDED_PRECEDING) {
+                    throw getSyntaxError();
+                }
+                w.setFrame(rows, start, startOffset[0], end, endOffset[0]);
+            } else {
+                Expression[] startOffset = { null };
+                int start = readWindowFrameBound(startOffset);
+                if (start == WindowFunction.UNBOUNDED_FOLLOWING || start == WindowFunction.FOLLOWING) {
+                    throw getSyntaxError();
+                }
+                w.setFrame(rows, start, startOffset[0], WindowFunction.CURRENT_ROW, null);
+            }
+        }
+        read(")");
+        windowSelect = currentSelect;
+        currentSelect.addWindowFunction(w);
+        return w;
+    }
+
+    private int readWindowFrameBound(Expression[] offset) {
+        if (readIf("UNBOUNDED")) {
+            if (readIf("PRECEDING")) {
+                return WindowFunction.UNBOUNDED_PRECEDING;
+            }
+            read("FOLLOWING");
+            return WindowFunction.UNBOUNDED_FOLLOWING;
+        }
+        if (readIf("CURRENT")) {
+            read("ROW");
+            return WindowFunction.CURRENT_ROW;
+        }
+        offset[0] = readTerm();
+        if (readIf("PRECEDING")) {
+            return WindowFunction.PRECEDING;
+        }
+        read("FOLLOWING");
+        return WindowFunction.FOLLOWING;
+    }
+
+    private ArrayList<SelectOrderBy> parseSimpleOrderList(boolean allowNulls) {
         ArrayList<SelectOrderBy> orderList = New.arrayList();
         do {
             SelectOrderBy order = new SelectOrderBy();
@@ -2149,6 +2268,14 @@ public class Parser {
             } else {
                 readIf("ASC");
             }
+            if (allowNulls && readIf("NULLS")) {
+                if (readIf("FIRST")) {
+                    order.nullsFirst = true;
+                } else {
+                    read("LAST");
+                    order.nullsLast = true;
+                }
+            }
             orderList.add(order);
         } while (readIf(","));
         return orderList;
@@ -2214,6 +2341,13 @@ public class Parser {
             if (aggregate != null) {
                 return readJavaAggregate(aggregate);
             }
+            if (currentSelect != null && (equalsToken("RANK", name) || equalsToken("DENSE_RANK", name)) &&
+                    findFunctionAlias(session.getCurrentSchemaName(), name) == null && readIf(")")) {
+                read("OVER");
+                read("(");
+                return readWindow(equalsToken("RANK", name) ?
+                        WindowFunction.RANK : WindowFunction.DENSE_RANK, null);
+            }
             return readJavaFunction(null, name);
         }
         switch (function.getFunctionType()) {
@@ -2355,8 +2489,11 @@ public class Parser {
             read(")");
             read("OVER");
             read("(");
-            read(")");
-            return new Rownum(currentSelect == null ? currentPrepared : currentSelect);
+            if (readIf(")")) {
+                // without a window, the row number is the same as ROWNUM
+                return new Rownum(currentSelect == null ? currentPrepared : currentSelect);
+            }
+            return readWindow(WindowFunction.ROW_NUMBER, null);
         default:
             if (!readIf(")")) {
                 int i = 0;
@@ -3889,7 +4026,7 @@ public class Parser {
             }
             return parseCreateTable(false, false, cached);
         } else {
-            boolean hash = false, primaryKey = false, unique = false, spatial = false;
+            boolean hash = false, primaryKey = false, unique = false, spatial = false, blockRange = false;
             String indexName = null;
             Schema oldSchema = null;
             boolean ifNotExists = false;
@@ -3914,6 +4051,9 @@ public class Parser {
                 if (readIf("SPATIAL")) {
                     spatial = true;
                 }
+                if (readIf("BLOCK")) {
+                    blockRange = true;
+                }
                 if (readIf("INDEX")) {
                     if (!isToken("ON")) {
                         ifNotExists = readIfNoExists();
@@ -3931,13 +4071,27 @@ public class Parser {
             command.setIfNotExists(ifNotExists);
             command.setHash(hash);
             command.setSpatial(spatial);
+            command.setBlockRange(blockRange);
             command.setPrimaryKey(primaryKey);
             command.setTableName(tableName);
             command.setUnique(unique);
             command.setIndexName(indexName);
             command.setComment(readCommentIf());
             read("(");
-            command.setIndexColumns(parseIndexColumnList());
+            command.setIndexColumns(parseIndexColumnList(true));
+            if (readIf("INCLUDE")) {
+                read("(");
+                String[] names = parseColumnList();
+                IndexColumn[] include = new IndexColumn[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    include[i] = new IndexColumn();
+                    include[i].columnName = names[i];
+                }
+                command.setIncludeColumns(include);
+            }
+            if (readIf("WHERE")) {
+                command.setCondition(readExpression());
+            }
             return command;
         }
     }
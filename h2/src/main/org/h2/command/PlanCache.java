@@ -0,0 +1,124 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.command;
+
+import java.util.HashMap;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.util.SmallLRUCache;
+import org.h2.util.StatementBuilder;
+
+/**
+ * A database wide cache of the join orders chosen by the optimizer. Searching
+ * the best join order is the expensive part of preparing a join. When a
+ * session prepares a statement that it does not have in its own query cache,
+ * it gets its own copy of the statement: the statement is parsed again, but
+ * the join orders that were chosen when the same statement was prepared
+ * before, by any session, are used instead of searching again.
+ * <p>
+ * As each session parses the statement itself, settings that change the
+ * meaning of a statement (for example the compatibility mode or the schema
+ * search path) and the access rights are applied as usual. The key contains
+ * the SQL statement, the current schema, the schema search path, and the
+ * compatibility mode, so that a statement on different tables does not get
+ * the join order of another statement. The cache is cleared when the database
+ * meta data changes (for example when an index is created or the table
+ * statistics are updated), but not when a setting is changed.
+ */
+public class PlanCache {
+
+    private final SmallLRUCache<String, HashMap<String, int[]>> cache;
+    private long modificationMetaId = -1;
+    private long settingChanges;
+    private long hits;
+
+    public PlanCache(int size) {
+        cache = SmallLRUCache.newInstance(size);
+    }
+
+    /**
+     * Parse and prepare a statement for the given session, using the cached
+     * join orders of the statement if there are any.
+     *
+     * @param session the session
+     * @param sql the SQL statement
+     * @return the prepared command
+     */
+    public Command prepare(Session session, String sql) {
+        if (!session.getLocalTempTables().isEmpty()) {
+            // local temporary tables could hide other tables
+            return new Parser(session).prepareCommand(sql);
+        }
+        String key = getKey(session, sql);
+        HashMap<String, int[]> cached;
+        synchronized (this) {
+            checkModificationMetaId(session.getDatabase());
+            cached = cache.get(key);
+            if (cached != null) {
+                hits++;
+            }
+        }
+        JoinOrders joinOrders = new JoinOrders(cached);
+        JoinOrders old = session.getJoinOrders();
+        Command command;
+        session.setJoinOrders(joinOrders);
+        try {
+            command = new Parser(session).prepareCommand(sql);
+        } finally {
+            session.setJoinOrders(old);
+        }
+        if (cached == null && !joinOrders.getOrders().isEmpty()) {
+            synchronized (this) {
+                checkModificationMetaId(session.getDatabase());
+                cache.put(key, joinOrders.getOrders());
+            }
+        }
+        return command;
+    }
+
+    /**
+     * A setting was changed. This changes the modification id of the meta
+     * data, but does not affect the cached join orders.
+     */
+    public synchronized void settingChanged() {
+        settingChanges++;
+    }
+
+    /**
+     * Get the number of statements that were prepared using cached join
+     * orders.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    private void checkModificationMetaId(Database database) {
+        long id = database.getModificationMetaId() - settingChanges;
+        if (id != modificationMetaId) {
+            cache.clear();
+            modificationMetaId = id;
+        }
+    }
+
+    private static String getKey(Session session, String sql) {
+        StatementBuilder buff = new StatementBuilder();
+        buff.append(session.getCurrentSchemaName()).append('\n');
+        String[] searchPath = session.getSchemaSearchPath();
+        if (searchPath != null) {
+            for (String s : searchPath) {
+                buff.appendExceptFirst(",");
+                buff.append(s);
+            }
+        }
+        buff.append('\n').append(session.getDatabase().getMode().getName());
+        buff.append('\n').append(sql);
+        return buff.toString();
+    }
+
+}
@@ -300,7 +300,8 @@ public class AlterTableAddConstraint extends SchemaCommand {
     }
 
     private static boolean canUseUniqueIndex(Index idx, Table table, IndexColumn[] cols) {
-        if (idx.getTable() != table || !idx.getIndexType().isUnique()) {
+        if (idx.getTable() != table || !idx.getIndexType().isUnique() ||
+                !idx.getIndexType().canUse(null)) {
             return false;
         }
         Column[] indexCols = idx.getColumns();
@@ -326,6 +327,14 @@ public class AlterTableAddConstraint extends SchemaCommand {
             // can't use the scan index or index of another table
             return false;
         }
+        if (!existingIndex.getIndexType().canUse(null)) {
+            // a partial index doesn't contain all rows
+            return false;
+        }
+        if (existingIndex.getIndexType().isBlockRange()) {
+            // a block range index can't find single rows quickly
+            return false;
+        }
         Column[] indexCols = existingIndex.getColumns();
         if (indexCols.length < cols.length) {
             return false;
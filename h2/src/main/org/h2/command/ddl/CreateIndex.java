@@ -12,7 +12,9 @@ import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
+import org.h2.expression.Expression;
 import org.h2.index.IndexType;
+import org.h2.index.PartialIndexCondition;
 import org.h2.message.DbException;
 import org.h2.schema.Schema;
 import org.h2.table.IndexColumn;
@@ -27,7 +29,9 @@ public class CreateIndex extends SchemaCommand {
     private String tableName;
     private String indexName;
     private IndexColumn[] indexColumns;
-    private boolean primaryKey, unique, hash, spatial;
+    private IndexColumn[] includeColumns;
+    private Expression condition;
+    private boolean primaryKey, unique, hash, spatial, blockRange;
     private boolean ifNotExists;
     private String comment;
 
@@ -51,6 +55,24 @@ public class CreateIndex extends SchemaCommand {
         this.indexColumns = columns;
     }
 
+    /**
+     * Set the included (non-key) columns.
+     *
+     * @param columns the columns
+     */
+    public void setIncludeColumns(IndexColumn[] columns) {
+        this.includeColumns = columns;
+    }
+
+    /**
+     * Set the condition of a partial index.
+     *
+     * @param condition the condition
+     */
+    public void setCondition(Expression condition) {
+        this.condition = condition;
+    }
+
     @Override
     public int update() {
         if (!transactional) {
@@ -84,13 +106,52 @@ public class CreateIndex extends SchemaCommand {
                 throw DbException.get(ErrorCode.SECOND_PRIMARY_KEY);
             }
             indexType = IndexType.createPrimaryKey(persistent, hash);
+        } else if (blockRange) {
+            if (unique || hash || spatial) {
+                throw DbException.getUnsupportedException("BLOCK INDEX with UNIQUE, HASH or SPATIAL");
+            }
+            indexType = IndexType.createBlockRange(persistent);
         } else if (unique) {
             indexType = IndexType.createUnique(persistent, hash);
         } else {
             indexType = IndexType.createNonUnique(persistent, hash, spatial);
         }
+        for (IndexColumn c : indexColumns) {
+            if (c.expression != null) {
+                if (primaryKey || hash || spatial || blockRange) {
+                    throw DbException.getUnsupportedException(indexType.getSQL() + " on expressions");
+                }
+                c.column = table.getIndexExpressionColumn(session, c.expression);
+                c.columnName = c.column.getName();
+            }
+        }
         IndexColumn.mapColumns(indexColumns, table);
-        table.addIndex(session, indexName, id, indexColumns, indexType, create, comment);
+        IndexColumn[] columns = indexColumns;
+        if (includeColumns != null) {
+            if (primaryKey || unique || hash || spatial || blockRange) {
+                throw DbException.getUnsupportedException(indexType.getSQL() + " INCLUDE");
+            }
+            IndexColumn.mapColumns(includeColumns, table);
+            columns = new IndexColumn[indexColumns.length + includeColumns.length];
+            System.arraycopy(indexColumns, 0, columns, 0, indexColumns.length);
+            for (int i = 0; i < includeColumns.length; i++) {
+                IndexColumn c = includeColumns[i];
+                for (int j = 0; j < indexColumns.length + i; j++) {
+                    if (columns[j].column == c.column) {
+                        throw DbException.get(ErrorCode.DUPLICATE_COLUMN_NAME_1, c.columnName);
+                    }
+                }
+                c.include = true;
+                columns[indexColumns.length + i] = c;
+            }
+        }
+        if (condition != null) {
+            if (primaryKey || blockRange) {
+                throw DbException.getUnsupportedException(indexType.getSQL() + " WHERE");
+            }
+            indexType.setCondition(new PartialIndexCondition(session, table, condition));
+        }
+        table.addIndex(session, indexName, id, columns, indexType, create, comment);
         return 0;
     }
 
@@ -110,6 +171,10 @@ public class CreateIndex extends SchemaCommand {
         this.spatial = b;
     }
 
+    public void setBlockRange(boolean b) {
+        this.blockRange = b;
+    }
+
     public void setComment(String comment) {
         this.comment = comment;
     }
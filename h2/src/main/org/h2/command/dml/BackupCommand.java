@@ -6,10 +6,15 @@
  */
 package org.h2.command.dml;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.h2.api.DatabaseEventListener;
@@ -21,12 +26,16 @@ import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
 import org.h2.message.DbException;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.FileStore;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.db.MVTableEngine.Store;
 import org.h2.result.ResultInterface;
 import org.h2.store.FileLister;
+import org.h2.store.IncrementalBackup;
 import org.h2.store.PageStore;
 import org.h2.store.fs.FileUtils;
+import org.h2.util.BitField;
 import org.h2.util.IOUtils;
 
 /**
@@ -36,6 +45,7 @@ import org.h2.util.IOUtils;
 public class BackupCommand extends Prepared {
 
     private Expression fileNameExpr;
+    private Expression baseFileNameExpr;
 
     public BackupCommand(Session session) {
         super(session);
@@ -45,15 +55,27 @@ public class BackupCommand extends Prepared {
         this.fileNameExpr = fileName;
     }
 
+    /**
+     * Create an incremental backup, that only contains the pages of the
+     * database file that changed since the given backup.
+     *
+     * @param baseFileName the file name of the previous backup
+     */
+    public void setBaseFileName(Expression baseFileName) {
+        this.baseFileNameExpr = baseFileName;
+    }
+
     @Override
     public int update() {
         String name = fileNameExpr.getValue(session).getString();
+        String baseName = baseFileNameExpr == null ? null :
+            baseFileNameExpr.getValue(session).getString();
         session.getUser().checkAdmin();
-        backupTo(name);
+        backupTo(name, baseName);
         return 0;
     }
 
-    private void backupTo(String fileName) {
+    private void backupTo(String fileName, String baseFileName) {
         Database db = session.getDatabase();
         if (!db.isPersistent()) {
             throw DbException.get(ErrorCode.DATABASE_IS_NOT_PERSISTENT);
@@ -69,7 +91,22 @@ public class BackupCommand extends Prepared {
             ZipOutputStream out = new ZipOutputStream(zip);
             db.flush();
             String fn = db.getName() + Constants.SUFFIX_PAGE_FILE;
-            backupPageStore(out, fn, db.getPageStore());
+            PageStore pageStore = db.getPageStore();
+            // the pages and blocks written since the base backup
+            BitField changedPages = pageStore.startChangeTracking(baseFileName);
+            BitSet changedBlocks = null;
+            if (store != null) {
+                changedBlocks = store.getStore().getFileStore().startChangeTracking();
+                if (changedPages == null) {
+                    changedBlocks = null;
+                }
+            }
+            int pageCount;
+            if (baseFileName == null) {
+                pageCount = backupPageStore(out, fn, pageStore);
+            } else {
+                pageCount = backupPageStoreIncremental(out, fn, pageStore, baseFileName, changedPages);
+            }
             // synchronize on the database, to avoid concurrent temp file
             // creation / deletion / backup
             String base = FileUtils.getParent(fn);
@@ -87,8 +124,13 @@ public class BackupCommand extends Prepared {
                         boolean before = s.getReuseSpace();
                         s.setReuseSpace(false);
                         try {
-                            InputStream in = store.getInputStream();
-                            backupFile(out, base, n, in);
+                            if (baseFileName == null) {
+                                InputStream in = store.getInputStream();
+                                backupFile(out, base, n, in);
+                            } else {
+                                backupMvStoreIncremental(out, getEntryName(base, n), store,
+                                        baseFileName, changedBlocks);
+                            }
                         } finally {
                             s.setReuseSpace(before);
                         }
@@ -97,16 +139,17 @@ public class BackupCommand extends Prepared {
             }
             out.close();
             zip.close();
+            pageStore.setLastBackup(fileName, pageCount);
         } catch (IOException e) {
             throw DbException.convertIOException(e, fileName);
         }
     }
 
-    private void backupPageStore(ZipOutputStream out, String fileName, PageStore store) throws IOException {
+    private int backupPageStore(ZipOutputStream out, String fileName, PageStore store) throws IOException {
         Database db = session.getDatabase();
         fileName = FileUtils.getName(fileName);
         out.putNextEntry(new ZipEntry(fileName));
-        int pos = 0;
+        int pos = 0, count = 0;
         try {
             store.setBackup(true);
             while (true) {
@@ -114,6 +157,7 @@ public class BackupCommand extends Prepared {
                 if (pos < 0) {
                     break;
                 }
+                count = pos;
                 int max = store.getPageCount();
                 db.setProgress(DatabaseEventListener.STATE_BACKUP_FILE, fileName, pos, max);
             }
@@ -121,6 +165,97 @@ public class BackupCommand extends Prepared {
             store.setBackup(false);
         }
         out.closeEntry();
+        return count;
+    }
+
+    private int backupPageStoreIncremental(ZipOutputStream out, String fileName, PageStore store,
+            String baseFileName, BitField changed) throws IOException {
+        fileName = FileUtils.getName(fileName);
+        int pageSize = store.getPageSize();
+        IncrementalBackup.BaseReader base = null;
+        if (changed == null) {
+            // the pages written since the base backup are not known
+            base = new IncrementalBackup.BaseReader(baseFileName, fileName, pageSize);
+        }
+        out.putNextEntry(new ZipEntry(fileName + IncrementalBackup.SUFFIX));
+        DataOutputStream dataOut = new DataOutputStream(out);
+        IncrementalBackup.writeHeader(dataOut, pageSize);
+        int count;
+        try {
+            store.setBackup(true);
+            if (base == null) {
+                count = copyChangedPages(dataOut, fileName, store, changed);
+            } else {
+                count = copyPagesComparingHash(dataOut, fileName, store, base);
+            }
+        } finally {
+            store.setBackup(false);
+            if (base != null) {
+                base.close();
+            }
+        }
+        IncrementalBackup.writeEnd(dataOut);
+        out.closeEntry();
+        return count;
+    }
+
+    /**
+     * Copy the pages that were written since the base backup. The other pages
+     * are not read. A page that is written while the backup is running is
+     * copied as well, as it would be by a full backup.
+     */
+    private int copyChangedPages(DataOutputStream dataOut, String fileName, PageStore store,
+            BitField changed) throws IOException {
+        Database db = session.getDatabase();
+        ByteArrayOutputStream buff = new ByteArrayOutputStream(store.getPageSize());
+        int pos = 0, skipped = 0;
+        for (; pos < store.getPageCount(); pos++) {
+            if (!changed.get(pos) && !store.isChangedSinceBackup(pos)) {
+                skipped++;
+                continue;
+            }
+            buff.reset();
+            if (store.copyDirect(pos, buff) < 0) {
+                break;
+            }
+            if (skipped > 0) {
+                IncrementalBackup.writeSkipped(dataOut, skipped);
+                skipped = 0;
+            }
+            byte[] page = buff.toByteArray();
+            IncrementalBackup.writePage(dataOut, IncrementalBackup.getPageHash(page), page);
+            db.setProgress(DatabaseEventListener.STATE_BACKUP_FILE, fileName, pos, store.getPageCount());
+        }
+        if (skipped > 0) {
+            IncrementalBackup.writeSkipped(dataOut, skipped);
+        }
+        return pos;
+    }
+
+    /**
+     * Read all pages, and copy the pages whose hash code is different from
+     * the page in the base backup.
+     */
+    private int copyPagesComparingHash(DataOutputStream dataOut, String fileName, PageStore store,
+            IncrementalBackup.BaseReader base) throws IOException {
+        Database db = session.getDatabase();
+        ByteArrayOutputStream buff = new ByteArrayOutputStream(store.getPageSize());
+        int pos = 0, count = 0;
+        while (true) {
+            buff.reset();
+            pos = store.copyDirect(pos, buff);
+            if (pos < 0) {
+                break;
+            }
+            count = pos;
+            byte[] page = buff.toByteArray();
+            long hash = IncrementalBackup.getPageHash(page);
+            boolean changed = base.next() != hash;
+            IncrementalBackup.writePage(dataOut, hash, changed ? page : null);
+            int max = store.getPageCount();
+            db.setProgress(DatabaseEventListener.STATE_BACKUP_FILE, fileName, pos, max);
+        }
+        return count;
     }
 
     private static void backupFile(ZipOutputStream out, String base, String fn) throws IOException {
@@ -129,15 +264,73 @@ public class BackupCommand extends Prepared {
     }
 
     private static void backupFile(ZipOutputStream out, String base, String fn, InputStream in) throws IOException {
+        out.putNextEntry(new ZipEntry(getEntryName(base, fn)));
+        IOUtils.copyAndCloseInput(in, out);
+        out.closeEntry();
+    }
+
+    private static String getEntryName(String base, String fn) {
         String f = FileUtils.toRealPath(fn);
         base = FileUtils.toRealPath(base);
         if (!f.startsWith(base)) {
             DbException.throwInternalError(f + " does not start with " + base);
         }
         f = f.substring(base.length());
-        f = correctFileName(f);
-        out.putNextEntry(new ZipEntry(f));
-        IOUtils.copyAndCloseInput(in, out);
+        return correctFileName(f);
+    }
+
+    /**
+     * Copy the blocks of the MVStore file that changed since the base backup.
+     * If the written blocks are not known, all blocks are read and compared
+     * with the base backup. The blocks are stored in the same format as the
+     * pages of an incremental page store backup.
+     */
+    private void backupMvStoreIncremental(ZipOutputStream out, String entryName, Store store,
+            String baseFileName, BitSet changed) throws IOException {
+        Database db = session.getDatabase();
+        FileStore fileStore = store.getStore().getFileStore();
+        FileChannel file = fileStore.getEncryptedFile();
+        if (file == null) {
+            file = fileStore.getFile();
+        }
+        int blockSize = fileStore.getBlockSize();
+        IncrementalBackup.BaseReader base = null;
+        if (changed == null) {
+            base = new IncrementalBackup.BaseReader(baseFileName, entryName, blockSize);
+        }
+        out.putNextEntry(new ZipEntry(entryName + IncrementalBackup.SUFFIX));
+        DataOutputStream dataOut = new DataOutputStream(out);
+        IncrementalBackup.writeHeader(dataOut, blockSize);
+        byte[] block = new byte[blockSize];
+        int skipped = 0;
+        try {
+            // the file may grow while the backup is running
+            for (int i = 0; (long) i * blockSize < file.size(); i++) {
+                if (base == null && !changed.get(i) && !fileStore.isChanged(i)) {
+                    skipped++;
+                    continue;
+                }
+                ByteBuffer buff = ByteBuffer.wrap(block);
+                DataUtils.readFully(file, (long) i * blockSize, buff);
+                if (skipped > 0) {
+                    IncrementalBackup.writeSkipped(dataOut, skipped);
+                    skipped = 0;
+                }
+                long hash = IncrementalBackup.getPageHash(block);
+                boolean write = base == null || base.next() != hash;
+                IncrementalBackup.writePage(dataOut, hash, write ? block : null);
+                db.setProgress(DatabaseEventListener.STATE_BACKUP_FILE, entryName, i,
+                        (int) (file.size() / blockSize));
+            }
+        } finally {
+            if (base != null) {
+                base.close();
+            }
+        }
+        if (skipped > 0) {
+            IncrementalBackup.writeSkipped(dataOut, skipped);
+        }
+        IncrementalBackup.writeEnd(dataOut);
         out.closeEntry();
     }
 
@@ -68,10 +68,15 @@ public class Explain extends Prepared {
                 if (store != null) {
                     store.statisticsStart();
                 }
-                if (command.isQuery()) {
-                    command.query(maxrows);
-                } else {
-                    command.update();
+                session.startQueryProfile();
+                try {
+                    if (command.isQuery()) {
+                        command.query(maxrows);
+                    } else {
+                        command.update();
+                    }
+                } finally {
+                    session.stopQueryProfile();
                 }
                 plan = command.getPlanSQL();
                 Map<String, Integer> statistics = store == null ? null : store.statisticsEnd();
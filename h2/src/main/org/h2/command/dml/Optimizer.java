@@ -6,47 +6,76 @@
  */
 package org.h2.command.dml;
 
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.h2.command.JoinOrders;
 import org.h2.engine.Session;
+import org.h2.expression.ConditionAndOr;
 import org.h2.expression.Expression;
+import org.h2.expression.ExpressionVisitor;
 import org.h2.table.Plan;
 import org.h2.table.PlanItem;
 import org.h2.table.TableFilter;
-import org.h2.util.BitField;
-import org.h2.util.Permutations;
+import org.h2.table.TableFilter.TableFilterVisitor;
+import org.h2.util.New;
+import org.h2.util.StatementBuilder;
 
 /**
  * The optimizer is responsible to find the best execution plan
  * for a given query.
+ * <p>
+ * The cost of a table only depends on which tables are joined before it, and
+ * not on their order. Therefore the best plan is calculated bottom-up using
+ * dynamic programming: the cheapest plan for each set of tables is calculated
+ * from the cheapest plans of the sets with one table less. For small joins,
+ * all sets are used, so that the plan is the cheapest left-deep plan, which
+ * may contain cross products. For larger joins, only sets of tables that are
+ * connected by a condition are used; a table that is not connected is only
+ * added once no connected table is left. If there are too many sets, the plan
+ * is calculated using a greedy algorithm. Both algorithms are deterministic,
+ * so that the same query always gets the same plan.
  */
 class Optimizer {
 
-    private static final int MAX_BRUTE_FORCE_FILTERS = 7;
-    private static final int MAX_BRUTE_FORCE = 2000;
-    private static final int MAX_GENETIC = 500;
-    private long start;
-    private BitField switched;
-
-    //  possible plans for filters, if using brute force:
-    //  1 filter 1 plan
-    //  2 filters 2 plans
-    //  3 filters 6 plans
-    //  4 filters 24 plans
-    //  5 filters 120 plans
-    //  6 filters 720 plans
-    //  7 filters 5040 plans
-    //  8 filters 40320 plan
-    //  9 filters 362880 plans
-    // 10 filters 3628800 filters
+    /**
+     * The maximum number of tables for which dynamic programming is used.
+     */
+    private static final int MAX_DYNAMIC_FILTERS = 30;
+
+    /**
+     * The maximum number of tables for which all sets of tables are used,
+     * including the sets that are not connected by a condition.
+     */
+    private static final int MAX_CROSS_JOIN_FILTERS = 7;
+
+    /**
+     * The maximum number of partial plans to calculate. If dynamic programming
+     * would need more, the greedy algorithm is used instead, which also stops
+     * trying other start tables once this number is reached.
+     */
+    private static final int MAX_PARTIAL_PLANS = 50000;
 
     private final TableFilter[] filters;
     private final Expression condition;
     private final Session session;
 
+    /**
+     * The tables of each top-level table filter, including the joined and
+     * nested tables.
+     */
+    private TableFilter[][] groups;
+
+    /**
+     * The bit mask of the top-level table filters each table filter shares a
+     * condition with (only used for up to 64 top-level table filters).
+     */
+    private long[] connected;
+    private Expression[] allConditions;
+    private int partialPlans;
+
     private Plan bestPlan;
     private TableFilter topFilter;
     private double cost;
-    private Random random;
 
     Optimizer(TableFilter[] filters, Expression condition, Session session) {
         this.filters = filters;
@@ -54,124 +83,214 @@ class Optimizer {
         this.session = session;
     }
 
-    /**
-     * How many filter to calculate using brute force. The remaining filters are
-     * selected using a greedy algorithm which has a runtime of (1 + 2 + ... +
-     * n) = (n * (n-1) / 2) for n filters. The brute force algorithm has a
-     * runtime of n * (n-1) * ... * (n-m) when calculating m brute force of n
-     * total. The combined runtime is (brute force) * (greedy).
-     *
-     * @param filterCount the number of filters total
-     * @return the number of filters to calculate using brute force
-     */
-    private static int getMaxBruteForceFilters(int filterCount) {
-        int i = 0, j = filterCount, total = filterCount;
-        while (j > 0 && total * (j * (j - 1) / 2) < MAX_BRUTE_FORCE) {
-            j--;
-            total *= j;
-            i++;
-        }
-        return i;
-    }
-
     private void calculateBestPlan() {
-        start = System.currentTimeMillis();
         cost = -1;
         if (filters.length == 1) {
             testPlan(filters);
-        } else if (filters.length <= MAX_BRUTE_FORCE_FILTERS) {
-            calculateBruteForceAll();
-        } else {
-            calculateBruteForceSome();
-            random = new Random(0);
-            calculateGenetic();
+            return;
+        }
+        init();
+        if (filters.length > MAX_DYNAMIC_FILTERS || !calculateDynamic()) {
+            calculateGreedy();
         }
     }
 
-    private boolean canStop(int x) {
-        if ((x & 127) == 0) {
-            long t = System.currentTimeMillis() - start;
-            // don't calculate for simple queries (no rows or so)
-            if (cost >= 0 && 10 * t > cost) {
-                return true;
+    private void init() {
+        int len = filters.length;
+        groups = new TableFilter[len][];
+        final ArrayList<Expression> conditions = New.arrayList();
+        if (condition != null) {
+            conditions.add(condition);
+        }
+        for (int i = 0; i < len; i++) {
+            final ArrayList<TableFilter> group = New.arrayList();
+            filters[i].visit(new TableFilterVisitor() {
+                @Override
+                public void accept(TableFilter f) {
+                    group.add(f);
+                    if (f.getJoinCondition() != null) {
+                        conditions.add(f.getJoinCondition());
+                    }
+                }
+            });
+            groups[i] = group.toArray(new TableFilter[group.size()]);
+        }
+        allConditions = conditions.toArray(new Expression[conditions.size()]);
+        connected = new long[len];
+        if (len <= 64) {
+            for (Expression e : allConditions) {
+                addConnections(e);
             }
         }
-        return false;
     }
 
-    private void calculateBruteForceAll() {
-        TableFilter[] list = new TableFilter[filters.length];
-        Permutations<TableFilter> p = Permutations.create(filters, list);
-        for (int x = 0; !canStop(x) && p.next(); x++) {
-            testPlan(list);
+    private void addConnections(Expression e) {
+        if (e instanceof ConditionAndOr) {
+            ConditionAndOr c = (ConditionAndOr) e;
+            if (c.getAndOrType() == ConditionAndOr.AND) {
+                addConnections(c.getExpression(true));
+                addConnections(c.getExpression(false));
+                return;
+            }
         }
-    }
-
-    private void calculateBruteForceSome() {
-        int bruteForce = getMaxBruteForceFilters(filters.length);
-        TableFilter[] list = new TableFilter[filters.length];
-        Permutations<TableFilter> p = Permutations.create(filters, list, bruteForce);
-        for (int x = 0; !canStop(x) && p.next(); x++) {
-            // find out what filters are not used yet
-            for (TableFilter f : filters) {
-                f.setUsed(false);
+        long mask = 0;
+        for (int i = 0; i < groups.length; i++) {
+            for (TableFilter f : groups[i]) {
+                if (!e.isEverything(ExpressionVisitor.getNotFromResolverVisitor(f))) {
+                    mask |= 1L << i;
+                    break;
+                }
             }
-            for (int i = 0; i < bruteForce; i++) {
-                list[i].setUsed(true);
+        }
+        for (int i = 0; i < groups.length; i++) {
+            if ((mask & (1L << i)) != 0) {
+                connected[i] |= mask & ~(1L << i);
             }
-            // fill the remaining elements with the unused elements (greedy)
-            for (int i = bruteForce; i < filters.length; i++) {
-                double costPart = -1.0;
-                int bestPart = -1;
-                for (int j = 0; j < filters.length; j++) {
-                    if (!filters[j].isUsed()) {
-                        if (i == filters.length - 1) {
-                            bestPart = j;
-                            break;
-                        }
-                        list[i] = filters[j];
-                        Plan part = new Plan(list, i+1, condition);
-                        double costNow = part.calculateCost(session);
-                        if (costPart < 0 || costNow < costPart) {
-                            costPart = costNow;
-                            bestPart = j;
-                        }
+        }
+    }
+
+    /**
+     * Calculate the best plan using dynamic programming.
+     *
+     * @return false if there are too many partial plans
+     */
+    private boolean calculateDynamic() {
+        int len = filters.length;
+        long all = (1L << len) - 1;
+        boolean crossJoins = len <= MAX_CROSS_JOIN_FILTERS;
+        HashMap<Long, PartialPlan> plans = New.hashMap();
+        ArrayList<PartialPlan> list = New.arrayList();
+        list.add(new PartialPlan());
+        for (int size = 0; size < len; size++) {
+            ArrayList<PartialPlan> next = New.arrayList();
+            for (PartialPlan p : list) {
+                setEvaluatable(p, true);
+                long candidates = crossJoins ? all & ~p.tables : getCandidates(p, all);
+                for (int i = 0; i < len; i++) {
+                    if ((candidates & (1L << i)) == 0) {
+                        continue;
+                    }
+                    if (++partialPlans > MAX_PARTIAL_PLANS) {
+                        setEvaluatable(p, false);
+                        return false;
+                    }
+                    double c = p.cost * getCost(i, p.filterCount + 1);
+                    Long key = p.tables | (1L << i);
+                    PartialPlan old = plans.get(key);
+                    if (old == null) {
+                        PartialPlan q = new PartialPlan(p, i, c);
+                        plans.put(key, q);
+                        next.add(q);
+                    } else if (c < old.cost) {
+                        old.set(p, i, c);
                     }
                 }
-                filters[bestPart].setUsed(true);
-                list[i] = filters[bestPart];
+                setEvaluatable(p, false);
             }
-            testPlan(list);
+            list = next;
         }
+        testPlan(plans.get(all).getFilters());
+        return true;
     }
 
-    private void calculateGenetic() {
-        TableFilter[] best = new TableFilter[filters.length];
-        TableFilter[] list = new TableFilter[filters.length];
-        for (int x = 0; x < MAX_GENETIC; x++) {
-            if (canStop(x)) {
+    /**
+     * Calculate a plan using a greedy algorithm: starting with each table,
+     * the table that is cheapest to join next is added.
+     */
+    private void calculateGreedy() {
+        int len = filters.length;
+        partialPlans = 0;
+        for (int start = 0; start < len; start++) {
+            if (cost >= 0 && partialPlans > MAX_PARTIAL_PLANS) {
                 break;
             }
-            boolean generateRandom = (x & 127) == 0;
-            if (!generateRandom) {
-                System.arraycopy(best, 0, list, 0, filters.length);
-                if (!shuffleTwo(list)) {
-                    generateRandom = true;
+            PartialPlan p = new PartialPlan(new PartialPlan(), start, getCost(start, 1));
+            while (p.size < len) {
+                setEvaluatable(p, true);
+                long candidates = getCandidates(p, -1L);
+                int next = -1;
+                double best = 0;
+                for (int i = 0; i < len; i++) {
+                    if (!p.contains(i) && (len > 64 || (candidates & (1L << i)) != 0)) {
+                        partialPlans++;
+                        double c = p.cost * getCost(i, p.filterCount + 1);
+                        if (next < 0 || c < best) {
+                            best = c;
+                            next = i;
+                        }
+                    }
                 }
+                setEvaluatable(p, false);
+                p = new PartialPlan(p, next, best);
             }
-            if (generateRandom) {
-                switched = new BitField();
-                System.arraycopy(filters, 0, best, 0, filters.length);
-                shuffleAll(best);
-                System.arraycopy(best, 0, list, 0, filters.length);
+            testPlan(p.getFilters());
+        }
+    }
+
+    /**
+     * Get the tables that may be joined next: the tables that are connected
+     * to the plan by a condition, or all remaining tables if there are none.
+     *
+     * @param p the partial plan
+     * @param all the bit mask of all tables
+     * @return the bit mask of the tables
+     */
+    private long getCandidates(PartialPlan p, long all) {
+        if (p.size == 0) {
+            return all;
+        }
+        long c = 0;
+        for (PartialPlan x = p; x.size > 0; x = x.previous) {
+            c |= connected[x.last];
+        }
+        c &= ~p.tables;
+        return c == 0 ? all & ~p.tables : c;
+    }
+
+    /**
+     * Calculate the cost factor of joining the given table, if the tables of
+     * the partial plan are evaluatable.
+     *
+     * @param index the index of the top-level table filter
+     * @param level the number of tables before this table, plus one
+     * @return the cost factor
+     */
+    private double getCost(int index, int level) {
+        TableFilter[] group = groups[index];
+        double c = 1;
+        int i = 0;
+        while (i < group.length) {
+            TableFilter f = group[i++];
+            PlanItem item = f.getBestPlanItem(session, level++);
+            c += c * item.getCost();
+            setEvaluatable(f, true);
+            Expression on = f.getJoinCondition();
+            if (on != null && !on.isEverything(ExpressionVisitor.EVALUATABLE_VISITOR)) {
+                c = Double.POSITIVE_INFINITY;
+                break;
             }
-            if (testPlan(list)) {
-                switched = new BitField();
-                System.arraycopy(list, 0, best, 0, filters.length);
+        }
+        while (i > 0) {
+            setEvaluatable(group[--i], false);
+        }
+        return c;
+    }
+
+    private void setEvaluatable(PartialPlan p, boolean b) {
+        for (PartialPlan x = p; x.size > 0; x = x.previous) {
+            for (TableFilter f : groups[x.last]) {
+                setEvaluatable(f, b);
             }
         }
     }
 
+    private void setEvaluatable(TableFilter filter, boolean b) {
+        filter.setEvaluatable(filter, b);
+        for (Expression e : allConditions) {
+            e.setEvaluatable(filter, b);
+        }
+    }
+
     private boolean testPlan(TableFilter[] list) {
         Plan p = new Plan(list, list.length, condition);
         double costNow = p.calculateCost(session);
@@ -183,51 +302,84 @@ class Optimizer {
         return false;
     }
 
-    private void shuffleAll(TableFilter[] f) {
-        for (int i = 0; i < f.length - 1; i++) {
-            int j = i + random.nextInt(f.length - i);
-            if (j != i) {
-                TableFilter temp = f[i];
-                f[i] = f[j];
-                f[j] = temp;
+    /**
+     * Use the given join order if it is valid for this query.
+     *
+     * @param order the positions of the top-level tables, or null
+     * @return true if the join order is used
+     */
+    private boolean useJoinOrder(int[] order) {
+        int len = filters.length;
+        if (order == null || order.length != len) {
+            return false;
+        }
+        boolean[] used = new boolean[len];
+        TableFilter[] list = new TableFilter[len];
+        for (int i = 0; i < len; i++) {
+            int x = order[i];
+            if (x < 0 || x >= len || used[x]) {
+                return false;
             }
+            used[x] = true;
+            list[i] = filters[x];
         }
+        cost = -1;
+        testPlan(list);
+        return cost < Double.POSITIVE_INFINITY;
     }
 
-    private boolean shuffleTwo(TableFilter[] f) {
-        int a = 0, b = 0, i = 0;
-        for (; i < 20; i++) {
-            a = random.nextInt(f.length);
-            b = random.nextInt(f.length);
-            if (a == b) {
-                continue;
-            }
-            if (a < b) {
-                int temp = a;
-                a = b;
-                b = temp;
-            }
-            int s = a * f.length + b;
-            if (switched.get(s)) {
-                continue;
+    /**
+     * Get the join order of the best plan.
+     *
+     * @return the positions of the top-level tables
+     */
+    private int[] getJoinOrder() {
+        TableFilter[] list = bestPlan.getFilters();
+        int[] order = new int[list.length];
+        for (int i = 0; i < list.length; i++) {
+            for (int j = 0; j < filters.length; j++) {
+                if (filters[j] == list[i]) {
+                    order[i] = j;
+                    break;
+                }
             }
-            switched.set(s);
-            break;
         }
-        if (i == 20) {
-            return false;
+        return order;
+    }
+
+    /**
+     * Get the key of the cached join order of this query: the tables and the
+     * condition.
+     *
+     * @return the key
+     */
+    private String getJoinOrderKey() {
+        StatementBuilder buff = new StatementBuilder();
+        for (TableFilter f : filters) {
+            buff.appendExceptFirst(", ");
+            buff.append(f.getTable().getSQL()).append(' ').append(f.getTableAlias());
         }
-        TableFilter temp = f[a];
-        f[a] = f[b];
-        f[b] = temp;
-        return true;
+        if (condition != null) {
+            buff.append(" WHERE ").append(condition.getSQL());
+        }
+        return buff.toString();
     }
 
     /**
-     * Calculate the best query plan to use.
+     * Calculate the best query plan to use. If the join order of the same
+     * query is cached, only the plan with this join order is calculated.
      */
     void optimize() {
-        calculateBestPlan();
+        JoinOrders joinOrders = filters.length > 1 ? session.getJoinOrders() : null;
+        if (joinOrders == null) {
+            calculateBestPlan();
+        } else {
+            String key = getJoinOrderKey();
+            if (!useJoinOrder(joinOrders.get(key))) {
+                calculateBestPlan();
+            }
+            joinOrders.put(key, getJoinOrder());
+        }
         bestPlan.removeUnusableIndexConditions();
         TableFilter[] f2 = bestPlan.getFilters();
         topFilter = f2[0];
@@ -248,4 +400,94 @@ class Optimizer {
         return cost;
     }
 
+    /**
+     * A plan for the first tables of a query.
+     */
+    private class PartialPlan {
+
+        /**
+         * The partial plan without the last table, or null.
+         */
+        PartialPlan previous;
+
+        /**
+         * The index of the last top-level table filter.
+         */
+        int last;
+
+        /**
+         * The bit mask of the top-level table filters of this plan (only used
+         * for up to 64 top-level table filters).
+         */
+        long tables;
+
+        /**
+         * The number of top-level table filters.
+         */
+        int size;
+
+        /**
+         * The number of table filters, including joined and nested tables.
+         */
+        int filterCount;
+
+        /**
+         * The cost of this plan.
+         */
+        double cost = 1;
+
+        PartialPlan() {
+            // the empty plan
+        }
+
+        PartialPlan(PartialPlan previous, int last, double cost) {
+            set(previous, last, cost);
+        }
+
+        /**
+         * Replace the plan with a cheaper plan for the same tables.
+         *
+         * @param p the partial plan without the last table
+         * @param i the index of the last table
+         * @param c the cost
+         */
+        void set(PartialPlan p, int i, double c) {
+            previous = p;
+            last = i;
+            cost = c;
+            tables = p.tables | (1L << i);
+            size = p.size + 1;
+            filterCount = p.filterCount + groups[i].length;
+        }
+
+        /**
+         * Check whether the plan contains the given table.
+         *
+         * @param i the index of the top-level table filter
+         * @return true if it does
+         */
+        boolean contains(int i) {
+            for (PartialPlan x = this; x.size > 0; x = x.previous) {
+                if (x.last == i) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Get the tables in the order they are joined.
+         *
+         * @return the table filters
+         */
+        TableFilter[] getFilters() {
+            TableFilter[] list = new TableFilter[size];
+            for (PartialPlan x = this; x.size > 0; x = x.previous) {
+                list[x.size - 1] = filters[x.last];
+            }
+            return list;
+        }
+
+    }
+
 }
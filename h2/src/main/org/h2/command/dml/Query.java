@@ -20,6 +20,7 @@ import org.h2.expression.Parameter;
 import org.h2.expression.ValueExpression;
 import org.h2.message.DbException;
 import org.h2.result.LocalResult;
+import org.h2.result.ResultCache;
 import org.h2.result.ResultTarget;
 import org.h2.result.SortOrder;
 import org.h2.table.ColumnResolver;
@@ -66,6 +67,8 @@ public abstract class Query extends Prepared {
     private LocalResult lastResult;
     private Value[] lastParameters;
     private boolean cacheableChecked;
+    private String resultCacheKey;
+    private boolean resultCacheHint;
 
     Query(Session session) {
         super(session);
@@ -233,6 +236,25 @@ public abstract class Query extends Prepared {
         return true;
     }
 
+    /**
+     * Set whether the query has the CACHE hint, so that the result is cached
+     * database wide even if the setting RESULT_CACHE_SIZE is 0.
+     *
+     * @param resultCacheHint the new value
+     */
+    public void setResultCacheHint(boolean resultCacheHint) {
+        this.resultCacheHint = resultCacheHint;
+    }
+
+    /**
+     * Check whether the query has the CACHE hint.
+     *
+     * @return true if it has
+     */
+    public boolean isResultCacheHint() {
+        return resultCacheHint;
+    }
+
     /**
      * Disable caching of result sets.
      */
@@ -318,6 +340,45 @@ public abstract class Query extends Prepared {
         return r;
     }
 
+    /**
+     * Execute a top level query. If the database wide result cache is enabled
+     * (or the query has the CACHE hint) and the result only depends on the data of the tables and the
+     * parameters, the result is taken from or added to the cache.
+     *
+     * @param limit the maximum number of rows to return
+     * @return the result
+     */
+    public LocalResult queryCached(int limit) {
+        ResultCache cache = session.getDatabase().getResultCache(isResultCacheHint());
+        if (cache == null || !isResultCacheable()) {
+            return query(limit);
+        }
+        if (resultCacheKey == null) {
+            resultCacheKey = session.getUser().getName() + "\n" + getPlanSQL();
+        }
+        String key = resultCacheKey + "\n" + limit;
+        Value[] params = getParameterValues();
+        LocalResult r = cache.get(session, key, params, getMaxDataModificationId());
+        if (r != null) {
+            return r;
+        }
+        long now = session.getDatabase().getModificationDataId();
+        r = query(limit);
+        cache.put(session, key, params, r, now);
+        return r;
+    }
+
+    private boolean isResultCacheable() {
+        if (noCache || session.hasPendingChanges() || !session.getLocalTempTables().isEmpty()) {
+            // uncommitted changes and local temporary tables
+            // are only visible to this session
+            return false;
+        }
+        return getMaxDataModificationId() != Long.MAX_VALUE &&
+                isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR) &&
+                isEverything(ExpressionVisitor.INDEPENDENT_VISITOR);
+    }
+
     private void closeLastResult() {
         if (lastResult != null) {
             lastResult.close();
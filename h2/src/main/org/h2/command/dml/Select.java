@@ -16,13 +16,16 @@ import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
+import org.h2.engine.QueryProfile;
 import org.h2.engine.Session;
+import org.h2.expression.Aggregate;
 import org.h2.expression.Comparison;
 import org.h2.expression.ConditionAndOr;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.Parameter;
+import org.h2.expression.WindowFunction;
 import org.h2.expression.Wildcard;
 import org.h2.index.Cursor;
 import org.h2.index.Index;
@@ -39,10 +42,12 @@ import org.h2.table.ColumnResolver;
 import org.h2.table.IndexColumn;
 import org.h2.table.Table;
 import org.h2.table.TableFilter;
+import org.h2.util.IntArray;
 import org.h2.util.New;
 import org.h2.util.StatementBuilder;
 import org.h2.util.StringUtils;
 import org.h2.util.ValueHashMap;
+import org.h2.value.CompareMode;
 import org.h2.value.Value;
 import org.h2.value.ValueArray;
 import org.h2.value.ValueNull;
@@ -68,6 +73,7 @@ public class Select extends Query {
     private Expression[] expressionArray;
     private Expression having;
     private Expression condition;
+    private Expression semiJoinCondition;
     private int visibleColumnCount, distinctColumnCount;
     private ArrayList<SelectOrderBy> orderList;
     private ArrayList<Expression> group;
@@ -75,7 +81,7 @@ public class Select extends Query {
     private boolean[] groupByExpression;
     private HashMap<Expression, Object> currentGroup;
     private int havingIndex;
-    private boolean isGroupQuery, isGroupSortedQuery;
+    private boolean isGroupQuery, isGroupSortedQuery, isGroupSkipQuery;
     private boolean isForUpdate, isForUpdateMvcc;
     private double cost;
     private boolean isQuickAggregateQuery, isDistinctQuery;
@@ -83,6 +89,8 @@ public class Select extends Query {
     private boolean sortUsingIndex;
     private SortOrder sort;
     private int currentGroupRowId;
+    private ArrayList<WindowFunction> windowFunctions;
+    private WindowRows windowRows;
 
     public Select(Session session) {
         super(session);
@@ -139,11 +147,48 @@ public class Select extends Query {
         return currentGroupRowId;
     }
 
+    public void setCurrentGroup(HashMap<Expression, Object> currentGroup) {
+        this.currentGroup = currentGroup;
+    }
+
+    /**
+     * Called if this query contains window functions.
+     *
+     * @param windowFunction the window function
+     */
+    public void addWindowFunction(WindowFunction windowFunction) {
+        if (windowFunctions == null) {
+            windowFunctions = New.arrayList();
+        }
+        windowFunctions.add(windowFunction);
+    }
+
+    /**
+     * Make a buffered row of a query with window functions the current row,
+     * so that the window functions can evaluate their arguments.
+     *
+     * @param row the row number (starting with 0)
+     * @return the group of the row, or null if this is not a group query
+     */
+    public HashMap<Expression, Object> restoreWindowRow(int row) {
+        windowRows.restore(row);
+        return currentGroup;
+    }
+
     @Override
     public void setOrder(ArrayList<SelectOrderBy> order) {
         orderList = order;
     }
 
+    /**
+     * Get the WHERE condition of this query.
+     *
+     * @return the condition, or null if there is none
+     */
+    public Expression getCondition() {
+        return condition;
+    }
+
     /**
      * Add a condition to the list of conditions.
      *
@@ -157,8 +202,9 @@ public class Select extends Query {
         }
     }
 
-    private void queryGroupSorted(int columnCount, ResultTarget result) {
+    private int queryGroupSorted(int columnCount, ResultTarget result) {
         int rowNumber = 0;
+        int groups = 0;
         setCurrentRowNumber(0);
         currentGroup = null;
         Value[] previousKeyValues = null;
@@ -178,6 +224,7 @@ public class Select extends Query {
                     previousKeyValues = keyValues;
                     currentGroup = New.hashMap();
                 } else if (!Arrays.equals(previousKeyValues, keyValues)) {
+                    groups++;
                     addGroupSortedRow(previousKeyValues, columnCount, result);
                     previousKeyValues = keyValues;
                     currentGroup = New.hashMap();
@@ -193,8 +240,66 @@ public class Select extends Query {
             }
         }
         if (previousKeyValues != null) {
+            groups++;
             addGroupSortedRow(previousKeyValues, columnCount, result);
         }
+        return groups;
+    }
+
+    private int queryGroupSkip(int columnCount, ResultTarget result) {
+        int rowNumber = 0;
+        int groups = 0;
+        setCurrentRowNumber(0);
+        Index index = topTableFilter.getIndex();
+        IndexColumn[] indexColumns = index.getIndexColumns();
+        Column[] columns = getColumns(groupIndex.length, groupIndex);
+        // the column of the MIN or MAX aggregates, if there are any
+        int valueColumnId = -1;
+        if (groupIndex.length < expressions.size()) {
+            valueColumnId = indexColumns[columns.length].column.getColumnId();
+        }
+        SearchRow first = null;
+        while (true) {
+            setCurrentRowNumber(rowNumber + 1);
+            // skip to the next group
+            Cursor cursor = index.findNext(session, first, null);
+            if (!cursor.next()) {
+                break;
+            }
+            SearchRow found = cursor.getSearchRow();
+            if (first == null) {
+                first = topTableFilter.getTable().getTemplateSimpleRow(false);
+            }
+            Value[] keyValues = new Value[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                int columnId = columns[i].getColumnId();
+                keyValues[i] = found.getValue(columnId);
+                first.setValue(columnId, keyValues[i]);
+            }
+            if (valueColumnId >= 0) {
+                // the aggregates only need the first non-NULL value of the group
+                SearchRow r = found;
+                while (r.getValue(valueColumnId) == ValueNull.INSTANCE && cursor.next()) {
+                    r = cursor.getSearchRow();
+                    if (index.compareRows(r, first) != 0) {
+                        break;
+                    }
+                    found = r;
+                }
+            }
+            rowNumber++;
+            currentGroup = New.hashMap();
+            currentGroupRowId++;
+            topTableFilter.setCurrentSearchRow(found);
+            for (int i = 0; i < columnCount; i++) {
+                if (!groupByExpression[i]) {
+                    expressions.get(i).updateAggregate(session);
+                }
+            }
+            groups++;
+            addGroupSortedRow(keyValues, columnCount, result);
+        }
+        return groups;
     }
 
     private void addGroupSortedRow(Value[] keyValues, int columnCount, ResultTarget result) {
@@ -239,6 +344,120 @@ public class Select extends Query {
         return false;
     }
 
+    /**
+     * Get the columns of the given expressions, if all of them are columns
+     * of the top table filter.
+     *
+     * @param count the number of expressions
+     * @param indexes the indexes of the expressions, or null for the first
+     * @return the columns, or null if an expression is not a column
+     */
+    private Column[] getColumns(int count, int[] indexes) {
+        Column[] columns = new Column[count];
+        for (int i = 0; i < count; i++) {
+            Expression expr = expressions.get(indexes == null ? i : indexes[i]).getNonAliasExpression();
+            if (!(expr instanceof ExpressionColumn) ||
+                    ((ExpressionColumn) expr).getTableFilter() != topTableFilter) {
+                return null;
+            }
+            columns[i] = ((ExpressionColumn) expr).getColumn();
+        }
+        return columns;
+    }
+
+    /**
+     * Get an index that can skip to the next distinct values of the given
+     * columns, because the columns are the first columns of the index. Such
+     * an index is only used if there are few distinct values.
+     *
+     * @param columns the columns
+     * @param group whether the aggregates of a group query need to be
+     *            calculated using the next column of the index
+     * @return the index, or null if there is none
+     */
+    private Index getSkipScanIndex(Column[] columns, boolean group) {
+        int selectivity = 0;
+        for (Column column : columns) {
+            int s = column.getSelectivity();
+            if (s == Constants.SELECTIVITY_DEFAULT) {
+                return null;
+            }
+            selectivity = 100 - ((100 - selectivity) * (100 - s) / 100);
+        }
+        if (selectivity >= 20) {
+            return null;
+        }
+        Index current = topTableFilter.getIndex();
+        for (Index index : topTableFilter.getTable().getIndexes()) {
+            IndexType type = index.getIndexType();
+            // if another index is faster
+            if (current != null && !current.getIndexType().isScan() && current != index) {
+                continue;
+            }
+            // hash indexes don't work, and unique indexes on the columns don't work
+            if (type.isScan() || type.isHash() || !index.canFindNext() || !type.canUse(topTableFilter)) {
+                continue;
+            }
+            IndexColumn[] indexColumns = index.getIndexColumns();
+            if (indexColumns.length < columns.length ||
+                    type.isUnique() && indexColumns.length == columns.length) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < columns.length && match; i++) {
+                // the first columns must be ascending
+                IndexColumn c = indexColumns[i];
+                match = c.sortType == SortOrder.ASCENDING && Arrays.asList(columns).contains(c.column);
+            }
+            if (match && (!group || isGroupSkipIndex(index, columns.length))) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get an index that can skip to the next group, if the groups are the
+     * first columns of the index.
+     *
+     * @return the index, or null if there is none
+     */
+    private Index getGroupSkipIndex() {
+        if (condition != null || filters.size() != 1 ||
+                !session.getDatabase().getSettings().optimizeDistinct) {
+            return null;
+        }
+        Column[] columns = getColumns(groupIndex.length, groupIndex);
+        return columns == null ? null : getSkipScanIndex(columns, true);
+    }
+
+    /**
+     * Check if all aggregates are the MIN or MAX of the next column of the
+     * index, so that only the first row of each group is needed.
+     *
+     * @param index the index
+     * @param groupColumns the number of group columns
+     * @return true if the aggregates can be calculated
+     */
+    private boolean isGroupSkipIndex(Index index, int groupColumns) {
+        IndexColumn[] indexColumns = index.getIndexColumns();
+        for (int i = 0, size = expressions.size(); i < size; i++) {
+            if (groupByExpression[i]) {
+                continue;
+            }
+            Expression expr = expressions.get(i).getNonAliasExpression();
+            if (!(expr instanceof Aggregate) || indexColumns.length <= groupColumns) {
+                return false;
+            }
+            IndexColumn next = indexColumns[groupColumns];
+            boolean descending = (next.sortType & SortOrder.DESCENDING) != 0;
+            if (!((Aggregate) expr).isFirstValue(topTableFilter, next.column, descending)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private Index getGroupSortedIndex() {
         if (groupIndex == null || groupByExpression == null) {
             return null;
@@ -247,7 +466,8 @@ public class Select extends Query {
         if (indexes != null) {
             for (int i = 0, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
-                if (index.getIndexType().isScan()) {
+                IndexType type = index.getIndexType();
+                if (type.isScan() || type.isBlockRange() || !type.canUse(topTableFilter)) {
                     continue;
                 }
                 if (isGroupSortedIndex(topTableFilter, index)) {
@@ -309,7 +529,7 @@ public class Select extends Query {
         return count;
     }
 
-    private void queryGroup(int columnCount, LocalResult result) {
+    private int queryGroup(int columnCount, ResultTarget result) {
         ValueHashMap<HashMap<Expression, Object>> groups = ValueHashMap.newInstance();
         int rowNumber = 0;
         setCurrentRowNumber(0);
@@ -377,6 +597,19 @@ public class Select extends Query {
             row = keepOnlyDistinct(row, columnCount);
             result.addRow(row);
         }
+        return groups.size();
+    }
+
+    private String getGroupProfileName() {
+        if (groupIndex == null) {
+            return "GROUP BY ()";
+        }
+        StatementBuilder buff = new StatementBuilder("GROUP BY ");
+        for (int idx : groupIndex) {
+            buff.appendExceptFirst(", ");
+            buff.append(StringUtils.unEnclose(expressions.get(idx).getSQL()));
+        }
+        return buff.toString();
     }
 
     /**
@@ -402,7 +635,12 @@ public class Select extends Query {
                 continue;
             }
             if (!(expr instanceof ExpressionColumn)) {
-                return null;
+                ExpressionColumn indexExpr = topTableFilter.getIndexExpressionColumn(expr);
+                if (indexExpr == null) {
+                    return null;
+                }
+                sortColumns.add(indexExpr.getColumn());
+                continue;
             }
             ExpressionColumn exprCol = (ExpressionColumn) expr;
             if (exprCol.getTableFilter() != topTableFilter) {
@@ -424,7 +662,8 @@ public class Select extends Query {
                     // can't use the scan index
                     continue;
                 }
-                if (index.getIndexType().isHash()) {
+                IndexType type = index.getIndexType();
+                if (type.isHash() || type.isBlockRange() || !type.canUse(topTableFilter)) {
                     continue;
                 }
                 IndexColumn[] indexCols = index.getIndexColumns();
@@ -477,21 +716,25 @@ public class Select extends Query {
         setCurrentRowNumber(0);
         Index index = topTableFilter.getIndex();
         SearchRow first = null;
-        int columnIndex = index.getColumns()[0].getColumnId();
+        Column[] columns = getColumns(expressions.size(), null);
         int sampleSize = getSampleSizeValue(session);
         while (true) {
             setCurrentRowNumber(rowNumber + 1);
+            // skip to the next distinct values
             Cursor cursor = index.findNext(session, first, null);
             if (!cursor.next()) {
                 break;
             }
             SearchRow found = cursor.getSearchRow();
-            Value value = found.getValue(columnIndex);
             if (first == null) {
-                first = topTableFilter.getTable().getTemplateSimpleRow(true);
+                first = topTableFilter.getTable().getTemplateSimpleRow(columns.length == 1);
+            }
+            Value[] row = new Value[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                int columnId = columns[i].getColumnId();
+                row[i] = found.getValue(columnId);
+                first.setValue(columnId, row[i]);
             }
-            first.setValue(columnIndex, value);
-            Value[] row = { value };
             result.addRow(row);
             rowNumber++;
             if ((sort == null || sortUsingIndex) && limitRows > 0 && rowNumber >= limitRows) {
@@ -597,6 +840,16 @@ public class Select extends Query {
         if (limitRows >= 0 || offsetExpr != null) {
             result = createLocalResult(result);
         }
+        if (result != null) {
+            // set before adding rows, so that a sorted result
+            // only needs to keep the first rows
+            if (offsetExpr != null) {
+                result.setOffset(offsetExpr.getValue(session).getInt());
+            }
+            if (limitRows >= 0) {
+                result.setLimit(limitRows);
+            }
+        }
         topTableFilter.startQuery(session);
         topTableFilter.reset();
         boolean exclusive = isForUpdate && !isForUpdateMvcc;
@@ -614,25 +867,42 @@ public class Select extends Query {
         topTableFilter.lock(session, exclusive, exclusive);
         ResultTarget to = result != null ? result : target;
         if (limitRows != 0) {
+            ResultTarget queryTarget = to;
+            long queryLimit = limitRows;
+            if (windowFunctions != null) {
+                // the window functions need all rows, the limit is applied
+                // when the rows are added to the result
+                windowRows = new WindowRows();
+                queryTarget = windowRows;
+                queryLimit = -1;
+            }
             if (isQuickAggregateQuery) {
-                queryQuick(columnCount, to);
+                queryQuick(columnCount, queryTarget);
             } else if (isGroupQuery) {
-                if (isGroupSortedQuery) {
-                    queryGroupSorted(columnCount, to);
+                QueryProfile profile = session.getQueryProfile();
+                long start = profile == null ? 0 : System.nanoTime();
+                int groups;
+                if (isGroupSkipQuery) {
+                    groups = queryGroupSkip(columnCount, queryTarget);
+                } else if (isGroupSortedQuery) {
+                    groups = queryGroupSorted(columnCount, queryTarget);
                 } else {
-                    queryGroup(columnCount, result);
+                    groups = queryGroup(columnCount, queryTarget);
+                }
+                if (profile != null) {
+                    QueryProfile.Node node = profile.getNode(this, QueryProfile.GROUP, getGroupProfileName());
+                    node.time += System.nanoTime() - start;
+                    node.loops++;
+                    node.rows += groups;
                 }
             } else if (isDistinctQuery) {
-                queryDistinct(to, limitRows);
+                queryDistinct(queryTarget, queryLimit);
             } else {
-                queryFlat(columnCount, to, limitRows);
+                queryFlat(columnCount, queryTarget, queryLimit);
+            }
+            if (windowFunctions != null) {
+                queryWindow(to);
             }
-        }
-        if (offsetExpr != null) {
-            result.setOffset(offsetExpr.getValue(session).getInt());
-        }
-        if (limitRows >= 0) {
-            result.setLimit(limitRows);
         }
         if (result != null) {
             result.done();
@@ -648,6 +918,37 @@ public class Select extends Query {
         return null;
     }
 
+    private void queryWindow(ResultTarget result) {
+        try {
+            for (WindowFunction w : windowFunctions) {
+                w.computeValues(session);
+            }
+            // only the expressions with window functions are evaluated again,
+            // the other values are taken from the collected rows
+            boolean[] windowColumns = new boolean[expressions.size()];
+            for (int j = 0; j < windowColumns.length; j++) {
+                windowColumns[j] = !expressions.get(j).isEverything(ExpressionVisitor.NO_WINDOW_FUNCTION_VISITOR);
+            }
+            for (int i = 0, size = windowRows.getRowCount(); i < size; i++) {
+                windowRows.restore(i);
+                for (WindowFunction w : windowFunctions) {
+                    w.setCurrentRow(i);
+                }
+                Value[] old = windowRows.rows.get(i);
+                Value[] row = new Value[old.length];
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = windowColumns[j] ? expressions.get(j).getValue(session) : old[j];
+                }
+                result.addRow(row);
+            }
+        } finally {
+            windowRows = null;
+            for (WindowFunction w : windowFunctions) {
+                w.reset();
+            }
+        }
+    }
+
     private LocalResult createLocalResult(LocalResult old) {
         return old != null ? old : new LocalResult(session, expressionArray, visibleColumnCount);
     }
@@ -827,31 +1128,15 @@ public class Select extends Query {
                 isQuickAggregateQuery = isEverything(optimizable);
             }
         }
+        setUsedColumns();
         cost = preparePlan();
         if (distinct && session.getDatabase().getSettings().optimizeDistinct &&
-                !isGroupQuery && filters.size() == 1 &&
-                expressions.size() == 1 && condition == null) {
-            Expression expr = expressions.get(0);
-            expr = expr.getNonAliasExpression();
-            if (expr instanceof ExpressionColumn) {
-                Column column = ((ExpressionColumn) expr).getColumn();
-                int selectivity = column.getSelectivity();
-                Index columnIndex = topTableFilter.getTable().getIndexForColumn(column);
-                if (columnIndex != null && selectivity != Constants.SELECTIVITY_DEFAULT && selectivity < 20) {
-                    // the first column must be ascending
-                    boolean ascending = columnIndex.getIndexColumns()[0].sortType == SortOrder.ASCENDING;
-                    Index current = topTableFilter.getIndex();
-                    // if another index is faster
-                    if (columnIndex.canFindNext() && ascending &&
-                            (current == null || current.getIndexType().isScan() || columnIndex == current)) {
-                        IndexType type = columnIndex.getIndexType();
-                        // hash indexes don't work, and unique single column indexes don't work
-                        if (!type.isHash() && (!type.isUnique() || columnIndex.getColumns().length > 1)) {
-                            topTableFilter.setIndex(columnIndex);
-                            isDistinctQuery = true;
-                        }
-                    }
-                }
+                !isGroupQuery && filters.size() == 1 && condition == null) {
+            Column[] columns = getColumns(expressions.size(), null);
+            Index index = columns == null ? null : getSkipScanIndex(columns, false);
+            if (index != null) {
+                topTableFilter.setIndex(index);
+                isDistinctQuery = true;
             }
         }
         if (sort != null && !isQuickAggregateQuery && !isGroupQuery) {
@@ -885,11 +1170,18 @@ public class Select extends Query {
             }
         }
         if (!isQuickAggregateQuery && isGroupQuery && getGroupByExpressionCount() > 0) {
-            Index index = getGroupSortedIndex();
-            Index current = topTableFilter.getIndex();
-            if (index != null && (current.getIndexType().isScan() || current == index)) {
+            Index index = getGroupSkipIndex();
+            if (index != null) {
                 topTableFilter.setIndex(index);
                 isGroupSortedQuery = true;
+                isGroupSkipQuery = true;
+            } else {
+                index = getGroupSortedIndex();
+                Index current = topTableFilter.getIndex();
+                if (index != null && (current.getIndexType().isScan() || current == index)) {
+                    topTableFilter.setIndex(index);
+                    isGroupSortedQuery = true;
+                }
             }
         }
         expressionArray = new Expression[expressions.size()];
@@ -919,6 +1211,25 @@ public class Select extends Query {
         }
     }
 
+    /**
+     * Collect the columns used by this query, so that the optimizer can
+     * prefer covering indexes.
+     */
+    private void setUsedColumns() {
+        HashSet<Column> columns = New.hashSet();
+        ExpressionVisitor visitor = ExpressionVisitor.getColumnsVisitor(columns);
+        boolean known = isEverything(visitor);
+        for (TableFilter f : filters) {
+            Expression on = f.getJoinCondition();
+            if (on != null && !on.isEverything(visitor)) {
+                known = false;
+            }
+        }
+        for (TableFilter f : filters) {
+            f.setUsedColumns(known ? columns : null);
+        }
+    }
+
     private double preparePlan() {
         TableFilter[] topArray = topFilters.toArray(new TableFilter[topFilters.size()]);
         for (TableFilter t : topArray) {
@@ -1021,8 +1332,15 @@ public class Select extends Query {
                 } while (f != null);
             }
         }
-        if (condition != null) {
-            buff.append("\nWHERE ").append(StringUtils.unEnclose(condition.getSQL()));
+        Expression where = condition;
+        if (semiJoinCondition != null) {
+            // the plan must contain the original correlated condition,
+            // so the statement can be parsed again
+            where = where == null ? semiJoinCondition :
+                new ConditionAndOr(ConditionAndOr.AND, where, semiJoinCondition);
+        }
+        if (where != null) {
+            buff.append("\nWHERE ").append(StringUtils.unEnclose(where.getSQL()));
         }
         if (groupIndex != null) {
             buff.append("\nGROUP BY ");
@@ -1084,8 +1402,13 @@ public class Select extends Query {
         if (sortUsingIndex) {
             buff.append("\n/* index sorted */");
         }
+        if (semiJoinCondition != null) {
+            buff.append("\n/* semi join */");
+        }
         if (isGroupQuery) {
-            if (isGroupSortedQuery) {
+            if (isGroupSkipQuery) {
+                buff.append("\n/* group sorted, skip scan */");
+            } else if (isGroupSortedQuery) {
                 buff.append("\n/* group sorted */");
             }
         }
@@ -1115,11 +1438,28 @@ public class Select extends Query {
         return expressions;
     }
 
+    /**
+     * Check whether this query is a SELECT ... FOR UPDATE.
+     *
+     * @return true if the selected rows are locked
+     */
+    public boolean isForUpdate() {
+        return isForUpdate;
+    }
+
     @Override
     public void setForUpdate(boolean b) {
         this.isForUpdate = b;
-        if (session.getDatabase().getSettings().selectForUpdateMvcc && session.getDatabase().isMultiVersion()) {
-            isForUpdateMvcc = b;
+        Database db = session.getDatabase();
+        if (db.getSettings().selectForUpdateMvcc) {
+            if (db.isMultiVersion()) {
+                isForUpdateMvcc = b;
+            } else if (!db.isMultiThreaded() && filters.size() == 1 &&
+                    filters.get(0).getTable().isMVStore() &&
+                    !isGroupQuery && !distinct && windowFunctions == null) {
+                // MVStore tables support row level locks
+                isForUpdateMvcc = b;
+            }
         }
     }
 
@@ -1197,6 +1537,160 @@ public class Select extends Query {
         }
     }
 
+    /**
+     * Convert this correlated subquery to an uncorrelated query that can be
+     * used for a semi join, if possible and if this is expected to be faster.
+     * This is only possible if the outer queries are referenced in conditions
+     * of the form innerExpression = outerExpression. Those conditions are
+     * removed, and the query then returns the distinct inner expressions.
+     *
+     * @param outerResolvers the column resolvers of the outer queries
+     * @return the outer expressions (one for each column of the converted
+     *         query), or null if the query was not converted
+     */
+    public ArrayList<Expression> convertToSemiJoin(ArrayList<ColumnResolver> outerResolvers) {
+        if (isPrepared || condition == null || isGroupQuery || groupIndex != null ||
+                havingIndex >= 0 || limitExpr != null || offsetExpr != null ||
+                sampleSizeExpr != null || isForUpdate || filters.size() != 1) {
+            return null;
+        }
+        TableFilter filter = filters.get(0);
+        if (filter.getJoin() != null || filter.getNestedJoin() != null) {
+            return null;
+        }
+        // the result of the converted query must be re-used
+        Table table = filter.getTable();
+        if (!session.getDatabase().getOptimizeReuseResults() || !table.isDeterministic() ||
+                table.getMaxDataModificationId() == Long.MAX_VALUE) {
+            return null;
+        }
+        ArrayList<Expression> conditions = New.arrayList();
+        addAndConditions(condition, conditions);
+        ArrayList<Expression> innerKeys = New.arrayList();
+        ArrayList<Expression> outerKeys = New.arrayList();
+        Expression remaining = null, correlated = null;
+        for (Expression c : conditions) {
+            if (!c.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)) {
+                return null;
+            }
+            if (!isReferenced(c, outerResolvers)) {
+                remaining = remaining == null ? c : new ConditionAndOr(ConditionAndOr.AND, remaining, c);
+                continue;
+            }
+            if (!(c instanceof Comparison) || ((Comparison) c).getCompareType() != Comparison.EQUAL) {
+                return null;
+            }
+            Expression left = ((Comparison) c).getExpression(true);
+            Expression right = ((Comparison) c).getExpression(false);
+            ExpressionVisitor notFromFilter = ExpressionVisitor.getNotFromResolverVisitor(filter);
+            if (!left.isEverything(notFromFilter) && right.isEverything(notFromFilter)) {
+                innerKeys.add(left);
+                outerKeys.add(right);
+            } else if (!right.isEverything(notFromFilter) && left.isEverything(notFromFilter)) {
+                innerKeys.add(right);
+                outerKeys.add(left);
+            } else {
+                return null;
+            }
+            Expression inner = innerKeys.get(innerKeys.size() - 1);
+            Expression outer = outerKeys.get(outerKeys.size() - 1);
+            if (isReferenced(inner, outerResolvers) ||
+                    inner.getType() != outer.getType() || !isHashable(inner.getType())) {
+                return null;
+            }
+            correlated = correlated == null ? c : new ConditionAndOr(ConditionAndOr.AND, correlated, c);
+        }
+        if (correlated == null || !isSemiJoinFaster(table, innerKeys, outerKeys)) {
+            return null;
+        }
+        condition = remaining;
+        semiJoinCondition = correlated;
+        expressions = innerKeys;
+        visibleColumnCount = distinctColumnCount = innerKeys.size();
+        orderList = null;
+        sort = null;
+        distinct = true;
+        return outerKeys;
+    }
+
+    private static void addAndConditions(Expression e, ArrayList<Expression> list) {
+        if (e instanceof ConditionAndOr && ((ConditionAndOr) e).getAndOrType() == ConditionAndOr.AND) {
+            addAndConditions(((ConditionAndOr) e).getExpression(true), list);
+            addAndConditions(((ConditionAndOr) e).getExpression(false), list);
+        } else {
+            list.add(e);
+        }
+    }
+
+    private static boolean isReferenced(Expression e, ArrayList<ColumnResolver> resolvers) {
+        for (ColumnResolver r : resolvers) {
+            if (!e.isEverything(ExpressionVisitor.getNotFromResolverVisitor(r))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isHashable(int type) {
+        // the values are compared using Value.equals,
+        // which must be consistent with the comparison
+        switch (type) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.UUID:
+        case Value.STRING_IGNORECASE:
+            return true;
+        case Value.STRING:
+            return CompareMode.OFF.equals(session.getDatabase().getCompareMode().getName());
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Estimate if running the query once and probing the result is faster
+     * than running the correlated query for each row of the outer query. If
+     * the correlated query can not use an index, it needs to scan the table
+     * for each outer row, so the semi join is always faster. Otherwise, the
+     * semi join is only used if the table is a lot smaller than the outer
+     * table, because the outer query may only need to check a few rows.
+     */
+    private static boolean isSemiJoinFaster(Table table, ArrayList<Expression> innerKeys,
+            ArrayList<Expression> outerKeys) {
+        boolean indexed = false;
+        for (Expression e : innerKeys) {
+            if (e instanceof ExpressionColumn) {
+                Column column = ((ExpressionColumn) e).getColumn();
+                ArrayList<Index> indexes = table.getIndexes();
+                for (int i = 0; indexes != null && i < indexes.size(); i++) {
+                    Index index = indexes.get(i);
+                    if (!index.getIndexType().isScan() && index.getColumnIndex(column) == 0) {
+                        indexed = true;
+                    }
+                }
+            }
+        }
+        if (!indexed) {
+            return true;
+        }
+        HashSet<Column> outerColumns = New.hashSet();
+        ExpressionVisitor visitor = ExpressionVisitor.getColumnsVisitor(outerColumns);
+        for (Expression e : outerKeys) {
+            e.isEverything(visitor);
+        }
+        long outerRows = 0;
+        for (Column c : outerColumns) {
+            outerRows = Math.max(outerRows, c.getTable().getRowCountApproximation());
+        }
+        return table.getRowCountApproximation() * 4 < outerRows;
+    }
+
     @Override
     public void updateAggregate(Session s) {
         for (Expression e : expressions) {
@@ -1296,4 +1790,61 @@ public class Select extends Query {
         return sort;
     }
 
+    /**
+     * The rows of a query with window functions. For each row, the current
+     * rows of the table filters (or the group, for group queries) are kept
+     * so that the row can be evaluated again once the window functions are
+     * computed.
+     */
+    private final class WindowRows implements ResultTarget {
+
+        final ArrayList<Value[]> rows = New.arrayList();
+        private final ArrayList<Object> contexts = New.arrayList();
+        private final IntArray rowNumbers = new IntArray();
+
+        @Override
+        public void addRow(Value[] values) {
+            rows.add(values);
+            if (isGroupQuery) {
+                contexts.add(currentGroup);
+            } else {
+                Row[] current = new Row[filters.size()];
+                for (int i = 0; i < current.length; i++) {
+                    current[i] = filters.get(i).get();
+                }
+                contexts.add(current);
+            }
+            rowNumbers.add(getCurrentRowNumber());
+            for (WindowFunction w : windowFunctions) {
+                w.addRow(session);
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        /**
+         * Make the given row the current row.
+         *
+         * @param row the row number
+         */
+        @SuppressWarnings("unchecked")
+        void restore(int row) {
+            Object context = contexts.get(row);
+            if (isGroupQuery) {
+                currentGroup = (HashMap<Expression, Object>) context;
+            } else {
+                Row[] current = (Row[]) context;
+                for (int i = 0; i < current.length; i++) {
+                    filters.get(i).set(current[i]);
+                }
+            }
+            currentGroupRowId++;
+            setCurrentRowNumber(rowNumbers.get(row));
+        }
+
+    }
+
 }
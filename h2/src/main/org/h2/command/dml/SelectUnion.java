@@ -180,6 +180,15 @@ public class SelectUnion extends Query {
         default:
             DbException.throwInternalError("type=" + unionType);
         }
+        if (offsetExpr != null) {
+            result.setOffset(offsetExpr.getValue(session).getInt());
+        }
+        if (limitExpr != null) {
+            Value v = limitExpr.getValue(session);
+            if (v != ValueNull.INSTANCE) {
+                result.setLimit(v.getInt());
+            }
+        }
         ResultInterface l = left.query(0);
         ResultInterface r = right.query(0);
         l.reset();
@@ -222,15 +231,6 @@ public class SelectUnion extends Query {
         default:
             DbException.throwInternalError("type=" + unionType);
         }
-        if (offsetExpr != null) {
-            result.setOffset(offsetExpr.getValue(session).getInt());
-        }
-        if (limitExpr != null) {
-            Value v = limitExpr.getValue(session);
-            if (v != ValueNull.INSTANCE) {
-                result.setLimit(v.getInt());
-            }
-        }
         result.done();
         if (target != null) {
             while (result.next()) {
@@ -325,6 +325,11 @@ public class SelectUnion extends Query {
         isForUpdate = forUpdate;
     }
 
+    @Override
+    public boolean isResultCacheHint() {
+        return super.isResultCacheHint() || left.isResultCacheHint() || right.isResultCacheHint();
+    }
+
     @Override
     public int getColumnCount() {
         return left.getColumnCount();
@@ -8,6 +8,7 @@ package org.h2.command.dml;
 
 import java.text.Collator;
 import org.h2.command.CommandInterface;
+import org.h2.command.PlanCache;
 import org.h2.command.Prepared;
 import org.h2.compress.Compressor;
 import org.h2.constant.ErrorCode;
@@ -422,6 +423,24 @@ public class Set extends Prepared {
             addOrUpdateSetting(name, null, getIntValue());
             break;
         }
+        case SetTypes.RESULT_CACHE_SIZE: {
+            if (getIntValue() < 0) {
+                throw DbException.getInvalidValueException("RESULT_CACHE_SIZE", getIntValue());
+            }
+            session.getUser().checkAdmin();
+            database.setResultCacheSize(getIntValue());
+            addOrUpdateSetting(name, null, getIntValue());
+            break;
+        }
+        case SetTypes.SLOW_QUERY_LIMIT: {
+            if (getIntValue() < 0) {
+                throw DbException.getInvalidValueException("SLOW_QUERY_LIMIT", getIntValue());
+            }
+            session.getUser().checkAdmin();
+            database.setSlowQueryLimit(getIntValue());
+            addOrUpdateSetting(name, null, getIntValue());
+            break;
+        }
         case SetTypes.RETENTION_TIME: {
             if (getIntValue() < 0) {
                 throw DbException.getInvalidValueException("RETENTION_TIME", getIntValue());
@@ -439,6 +458,11 @@ public class Set extends Prepared {
         // query caches might be affected as well, for example
         // when changing the compatibility mode
         database.getNextModificationMetaId();
+        PlanCache planCache = database.getPlanCache();
+        if (planCache != null) {
+            // the key of the plan cache contains the relevant settings
+            planCache.settingChanged();
+        }
         return 0;
     }
 
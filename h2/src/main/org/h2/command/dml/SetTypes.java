@@ -219,6 +219,16 @@ public class SetTypes {
      */
     public static final int QUERY_STATISTICS = 41;
 
+    /**
+     * The type of a SET RESULT_CACHE_SIZE statement.
+     */
+    public static final int RESULT_CACHE_SIZE = 42;
+
+    /**
+     * The type of a SET SLOW_QUERY_LIMIT statement.
+     */
+    public static final int SLOW_QUERY_LIMIT = 43;
+
     private static final ArrayList<String> TYPES = New.arrayList();
 
     private SetTypes() {
@@ -269,6 +279,8 @@ public class SetTypes {
         list.add(JAVA_OBJECT_SERIALIZER, "JAVA_OBJECT_SERIALIZER");
         list.add(RETENTION_TIME, "RETENTION_TIME");
         list.add(QUERY_STATISTICS, "QUERY_STATISTICS");
+        list.add(RESULT_CACHE_SIZE, "RESULT_CACHE_SIZE");
+        list.add(SLOW_QUERY_LIMIT, "SLOW_QUERY_LIMIT");
     }
 
     /**
@@ -132,6 +132,25 @@ public class DbSettings extends SettingsBase {
      */
     public final int largeResultBufferSize = get("LARGE_RESULT_BUFFER_SIZE", 4 * 1024);
 
+    /**
+     * Database setting <code>LARGE_RESULT_COMPRESS</code> (default:
+     * false).<br />
+     * Whether the rows of large results that are buffered on disk are
+     * compressed using LZF. This reduces the disk I/O when sorting large
+     * results, at the cost of some CPU time.
+     */
+    public final boolean largeResultCompress = get("LARGE_RESULT_COMPRESS", false);
+
+    /**
+     * Database setting <code>LARGE_RESULT_SORT_THREADS</code> (default: the
+     * number of processors).<br />
+     * The maximum number of threads that sort a run of a large result before
+     * it is written to disk. Set this value to 1 to sort in the session
+     * thread only.
+     */
+    public final int largeResultSortThreads = get("LARGE_RESULT_SORT_THREADS",
+            Runtime.getRuntime().availableProcessors());
+
     /**
      * Database setting <code>LARGE_TRANSACTIONS</code> (default: true).<br />
      * Support very large transactions
@@ -176,14 +195,17 @@ public class DbSettings extends SettingsBase {
 
     /**
      * Database setting <code>OPTIMIZE_DISTINCT</code> (default: true).<br />
-     * Improve the performance of simple DISTINCT queries if an index is
-     * available for the given column. The optimization is used if:
+     * Improve the performance of simple DISTINCT and GROUP BY queries if an
+     * index is available for the given columns. The index is used to skip to
+     * the next distinct value. The optimization is used if:
      * <ul>
-     * <li>The select is a single column query without condition </li>
-     * <li>The query contains only one table, and no group by </li>
+     * <li>The query has no condition </li>
      * <li>There is only one table involved </li>
-     * <li>There is an ascending index on the column </li>
-     * <li>The selectivity of the column is below 20 </li>
+     * <li>The first columns of an ascending index are the selected columns
+     * (DISTINCT), or the group by columns (GROUP BY) </li>
+     * <li>Only MIN or MAX of the next column of the index are used as
+     * aggregates (GROUP BY) </li>
+     * <li>The combined selectivity of the columns is below 20 </li>
      * </ul>
      */
     public final boolean optimizeDistinct = get("OPTIMIZE_DISTINCT", true);
@@ -223,12 +245,29 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean optimizeIsNull = get("OPTIMIZE_IS_NULL", true);
 
+    /**
+     * Database setting <code>OPTIMIZE_MULTI_INDEX</code> (default: true).<br />
+     * Use multiple indexes of the same table: the row keys of the index lookups
+     * are intersected for conditions combined with AND, and merged for
+     * conditions combined with OR.
+     */
+    public final boolean optimizeMultiIndex = get("OPTIMIZE_MULTI_INDEX", true);
+
     /**
      * Database setting <code>OPTIMIZE_OR</code> (default: true).<br />
      * Convert (C=? OR C=?) to (C IN(?, ?)).
      */
     public final boolean optimizeOr = get("OPTIMIZE_OR", true);
 
+    /**
+     * Database setting <code>OPTIMIZE_SEMI_JOIN</code> (default: true).<br />
+     * Convert correlated EXISTS(SELECT ...) subqueries, where the outer query
+     * is only referenced in conditions of the form innerColumn=outerColumn,
+     * to a semi join. The subquery is then run only once, and the result is
+     * probed using a hash lookup for each row of the outer query.
+     */
+    public final boolean optimizeSemiJoin = get("OPTIMIZE_SEMI_JOIN", true);
+
     /**
      * Database setting <code>OPTIMIZE_TWO_EQUALS</code> (default: true).<br />
      * Optimize expressions of the form A=B AND B=1. In this case, AND A=1 is
@@ -263,6 +302,16 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean pageStoreTrim = get("PAGE_STORE_TRIM", true);
 
+    /**
+     * Database setting <code>PLAN_CACHE_SIZE</code> (default: 64).<br />
+     * The size of the database wide plan cache, in number of cached
+     * statements. The cache contains the join orders the optimizer chose for
+     * the queries of a statement. When a session prepares a statement that was
+     * prepared before by any session, it parses the statement, but does not
+     * need to search for the best join order again. Set to 0 to disable.
+     */
+    public final int planCacheSize = get("PLAN_CACHE_SIZE", 64);
+
     /**
      * Database setting <code>QUERY_CACHE_SIZE</code> (default: 8).<br />
      * The size of the query cache, in number of cached statements. Each session
@@ -82,6 +82,11 @@ public class Constants {
      */
     public static final int TCP_PROTOCOL_VERSION_13 = 13;
 
+    /**
+     * The TCP protocol version number 14.
+     */
+    public static final int TCP_PROTOCOL_VERSION_14 = 14;
+
     /**
      * The major version of this database.
      */
@@ -183,12 +188,6 @@ public class Constants {
      */
     public static final int COST_ROW_OFFSET = 1000;
 
-    /**
-     * The number of milliseconds after which to check for a deadlock if locking
-     * is not successful.
-     */
-    public static final int DEADLOCK_CHECK = 100;
-
     /**
      * The default port number of the HTTP server (for the H2 Console).
      * This value is also in the documentation and in the Server javadoc.
@@ -223,6 +222,12 @@ public class Constants {
      */
     public static final int DEFAULT_MAX_MEMORY_ROWS = 10000;
 
+    /**
+     * The number of query results that are cached for queries with the
+     * CACHE hint if the setting RESULT_CACHE_SIZE is 0.
+     */
+    public static final int DEFAULT_RESULT_CACHE_HINT_SIZE = 16;
+
     /**
      * The default value for the MAX_MEMORY_UNDO setting.
      */
@@ -17,6 +17,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import org.h2.api.DatabaseEventListener;
 import org.h2.api.JavaObjectSerializer;
+import org.h2.command.PlanCache;
 import org.h2.command.ddl.CreateTableData;
 import org.h2.command.dml.SetTypes;
 import org.h2.constant.DbSettings;
@@ -31,6 +32,7 @@ import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.message.TraceSystem;
 import org.h2.mvstore.db.MVTableEngine;
+import org.h2.result.ResultCache;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
 import org.h2.schema.Schema;
@@ -43,6 +45,8 @@ import org.h2.store.FileStore;
 import org.h2.store.InDoubtTransaction;
 import org.h2.store.LobStorageBackend;
 import org.h2.store.LobStorageFrontend;
+import org.h2.store.LobStorageInterface;
+import org.h2.store.LobStorageMap;
 import org.h2.store.PageStore;
 import org.h2.store.WriterThread;
 import org.h2.store.fs.FileUtils;
@@ -171,10 +175,13 @@ public class Database implements DataHandler {
     private SourceCompiler compiler;
     private volatile boolean metaTablesInitialized;
     private boolean flushOnEachCommit;
-    private LobStorageBackend lobStorage;
+    private LobStorageInterface lobStorage;
     private final int pageSize;
     private int defaultTableType = Table.TYPE_CACHED;
     private final DbSettings dbSettings;
+    private final PlanCache planCache;
+    private ResultCache resultCache;
+    private int resultCacheSize;
     private final int reconnectCheckDelay;
     private int logMode;
     private MVTableEngine.Store mvStore;
@@ -185,11 +192,17 @@ public class Database implements DataHandler {
     private volatile boolean javaObjectSerializerInitialized;
     private boolean queryStatistics;
     private QueryStatisticsData queryStatisticsData;
+    private int slowQueryLimit;
+    private SlowQueryLog slowQueryLog;
+    private final DatabaseMetrics metrics = new DatabaseMetrics(this);
+    private final LockManager lockManager = new LockManager(this);
 
     public Database(ConnectionInfo ci, String cipher) {
         String name = ci.getName();
         this.dbSettings = ci.getDbSettings();
         this.reconnectCheckDelay = dbSettings.reconnectCheckDelay;
+        this.planCache = dbSettings.planCacheSize > 0 ?
+                new PlanCache(dbSettings.planCacheSize) : null;
         this.compareMode = CompareMode.getInstance(null, 0, false);
         this.persistent = ci.isPersistent();
         this.filePasswordHash = ci.getFilePasswordHash();
@@ -1145,7 +1158,8 @@ public class Database implements DataHandler {
         }
         // remove all session variables
         if (persistent) {
-            boolean lobStorageIsUsed = infoSchema.findTableOrView(systemSession, LobStorageBackend.LOB_DATA_TABLE) != null;
+            boolean lobStorageIsUsed = infoSchema.findTableOrView(systemSession, LobStorageBackend.LOB_DATA_TABLE) != null ||
+                    lobStorage instanceof LobStorageMap;
             if (lobStorageIsUsed) {
                 try {
                     getLobStorage();
@@ -2122,6 +2136,74 @@ public class Database implements DataHandler {
         return queryStatisticsData;
     }
 
+    /**
+     * Set the slow query limit. Statements that take longer are added to the
+     * slow query log.
+     *
+     * @param limit the limit in milliseconds, or 0 to disable the log
+     */
+    public synchronized void setSlowQueryLimit(int limit) {
+        slowQueryLimit = limit;
+        if (limit <= 0) {
+            slowQueryLog = null;
+        } else if (slowQueryLog == null) {
+            slowQueryLog = new SlowQueryLog();
+        }
+    }
+
+    public int getSlowQueryLimit() {
+        return slowQueryLimit;
+    }
+
+    /**
+     * Get the slow query log.
+     *
+     * @return the log, or null if disabled
+     */
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Get the runtime metrics of this database.
+     *
+     * @return the metrics
+     */
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    /**
+     * Get the number of pages read from the database file since the database
+     * was opened.
+     *
+     * @return the read count
+     */
+    public long getFileReadCount() {
+        if (mvStore != null) {
+            org.h2.mvstore.FileStore fs = mvStore.getStore().getFileStore();
+            return fs == null ? 0 : fs.getReadCount();
+        }
+        return pageStore == null ? 0 : pageStore.getReadCount();
+    }
+
+    /**
+     * Get the number of pages that were found in the cache since the database
+     * was opened.
+     *
+     * @return the cache hit count
+     */
+    public long getCacheHitCount() {
+        if (mvStore != null) {
+            return mvStore.getStore().getCacheHitCount();
+        }
+        return pageStore == null ? 0 : pageStore.getCacheHitCount();
+    }
+
     /**
      * Check if the database is currently opening. This is true until all stored
      * SQL statements have been executed.
@@ -2481,9 +2563,16 @@ public class Database implements DataHandler {
     }
 
     @Override
-    public LobStorageBackend getLobStorage() {
+    public LobStorageInterface getLobStorage() {
         if (lobStorage == null) {
-            lobStorage = new LobStorageBackend(this);
+            if (mvStore != null && infoSchema != null &&
+                    infoSchema.findTableOrView(systemSession, LobStorageBackend.LOB_DATA_TABLE) == null) {
+                // store the data directly in the MVStore, unless
+                // the database already contains LOB tables
+                lobStorage = new LobStorageMap(this);
+            } else {
+                lobStorage = new LobStorageBackend(this);
+            }
         }
         return lobStorage;
     }
@@ -2541,6 +2630,52 @@ public class Database implements DataHandler {
         return dbSettings;
     }
 
+    /**
+     * Get the database wide plan cache.
+     *
+     * @return the plan cache, or null if disabled
+     */
+    public PlanCache getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * Get the database wide result cache. If the setting RESULT_CACHE_SIZE is
+     * 0, only queries with the CACHE hint use the cache.
+     *
+     * @param hint whether the query has the CACHE hint
+     * @return the result cache, or null if the query is not cached
+     */
+    public ResultCache getResultCache(boolean hint) {
+        if (resultCacheSize > 0) {
+            return resultCache;
+        } else if (!hint) {
+            return null;
+        }
+        synchronized (this) {
+            if (resultCache == null) {
+                resultCache = new ResultCache(Constants.DEFAULT_RESULT_CACHE_HINT_SIZE);
+            }
+            return resultCache;
+        }
+    }
+
+    /**
+     * Set the number of query results that are cached database wide.
+     *
+     * @param size the number of results, or 0 to disable the result cache
+     */
+    public synchronized void setResultCacheSize(int size) {
+        resultCacheSize = size;
+        if (size <= 0) {
+            resultCache = null;
+        } else if (resultCache == null) {
+            resultCache = new ResultCache(size);
+        } else {
+            resultCache.setMaxSize(size);
+        }
+    }
+
     /**
      * Create a new hash map. Depending on the configuration, the key is case
      * sensitive or case insensitive.
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.h2.command.PlanCache;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.db.MVTableEngine;
+import org.h2.store.PageStore;
+
+/**
+ * Runtime metrics of a database: transactions, locks, statement latency, and
+ * storage. The counters start at zero when the database is opened. The
+ * metrics are listed in INFORMATION_SCHEMA.METRICS and are available as JMX
+ * attributes.
+ */
+public class DatabaseMetrics {
+
+    /**
+     * The interval after which the statement latency histogram is rotated.
+     * The histogram is rotated when it is read, and the percentiles are
+     * calculated over the statements since the previous rotation.
+     */
+    private static final long LATENCY_INTERVAL_MS = 60 * 1000;
+
+    private final Database database;
+
+    private long commits;
+    private long rollbacks;
+    private long commitSecond;
+    private long commitsThisSecond;
+    private long commitsLastSecond;
+
+    private long lockWaits;
+    private long lockWaitTime;
+    private long lockTimeouts;
+    private long deadlocks;
+    private long spilledResults;
+
+    /**
+     * The statement counter and the latency histogram are updated without
+     * synchronization, as they are updated for each statement. The histogram
+     * counts are cumulative; the snapshots taken when rotating are subtracted
+     * when reading.
+     */
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLongArray latency = new AtomicLongArray(64);
+    private long latencyIntervalStart = System.currentTimeMillis();
+    private long[] latencyAtIntervalStart = new long[64];
+    private long[] latencyAtPreviousIntervalStart = new long[64];
+
+    DatabaseMetrics(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * A transaction with changes was committed.
+     */
+    public synchronized void commit() {
+        commits++;
+        long second = System.currentTimeMillis() / 1000;
+        if (second != commitSecond) {
+            commitsLastSecond = second == commitSecond + 1 ? commitsThisSecond : 0;
+            commitSecond = second;
+            commitsThisSecond = 0;
+        }
+        commitsThisSecond++;
+    }
+
+    /**
+     * A transaction with changes was rolled back.
+     */
+    public synchronized void rollback() {
+        rollbacks++;
+    }
+
+    /**
+     * A session started to wait for a table lock.
+     */
+    public synchronized void lockWait() {
+        lockWaits++;
+    }
+
+    /**
+     * A session waited for a table lock.
+     *
+     * @param nanos the wait time in nanoseconds
+     */
+    public synchronized void addLockWaitTime(long nanos) {
+        lockWaitTime += nanos;
+    }
+
+    /**
+     * A lock could not be acquired within the lock timeout.
+     */
+    public synchronized void lockTimeout() {
+        lockTimeouts++;
+    }
+
+    /**
+     * A deadlock was detected.
+     */
+    public synchronized void deadlock() {
+        deadlocks++;
+    }
+
+    /**
+     * A temporary result did not fit in memory and was written to disk.
+     */
+    public synchronized void spilledResult() {
+        spilledResults++;
+    }
+
+    /**
+     * A statement was executed.
+     *
+     * @param nanos the execution time in nanoseconds
+     */
+    public void statement(long nanos) {
+        statements.incrementAndGet();
+        long micros = Math.max(0, nanos / 1000);
+        latency.incrementAndGet(64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Get the number of commits in the last full second.
+     *
+     * @return the number of commits
+     */
+    public synchronized long getCommitsPerSecond() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second == commitSecond) {
+            return commitsLastSecond;
+        } else if (second == commitSecond + 1) {
+            return commitsThisSecond;
+        }
+        return 0;
+    }
+
+    /**
+     * Get the approximate statement latency percentile of the statements
+     * executed within the last one to two minutes. If the metrics were not
+     * read for a longer time, the older statements are included as well.
+     *
+     * @param percentile the percentile (between 0 and 100)
+     * @return the latency in microseconds
+     */
+    public synchronized long getStatementLatency(double percentile) {
+        int len = latency.length();
+        long[] counts = new long[len];
+        for (int i = 0; i < len; i++) {
+            counts[i] = latency.get(i);
+        }
+        long now = System.currentTimeMillis();
+        if (now - latencyIntervalStart > LATENCY_INTERVAL_MS) {
+            latencyAtPreviousIntervalStart = latencyAtIntervalStart;
+            latencyAtIntervalStart = counts.clone();
+            latencyIntervalStart = now;
+        }
+        long total = 0;
+        for (int i = 0; i < len; i++) {
+            counts[i] -= latencyAtPreviousIntervalStart[i];
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double target = total * percentile / 100;
+        long count = 0;
+        for (int i = 0; i < len; i++) {
+            long c = counts[i];
+            if (c > 0 && count + c >= target) {
+                // bucket i contains the values from 2^(i-1) to 2^i - 1,
+                // interpolate within the bucket
+                long low = i == 0 ? 0 : 1L << (i - 1);
+                long high = i == 0 ? 0 : (1L << i) - 1;
+                return low + (long) ((high - low) * (target - count) / c);
+            }
+            count += c;
+        }
+        return 0;
+    }
+
+    /**
+     * Get all metrics, by name.
+     *
+     * @return the map of metrics
+     */
+    public LinkedHashMap<String, Object> getMetrics() {
+        LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+        synchronized (this) {
+            map.put("COMMITS", commits);
+            map.put("ROLLBACKS", rollbacks);
+            map.put("COMMITS_PER_SECOND", getCommitsPerSecond());
+            map.put("STATEMENTS", statements.get());
+            map.put("STATEMENT_LATENCY_P50_US", getStatementLatency(50));
+            map.put("STATEMENT_LATENCY_P95_US", getStatementLatency(95));
+            map.put("STATEMENT_LATENCY_P99_US", getStatementLatency(99));
+            map.put("LOCK_WAITS", lockWaits);
+            map.put("LOCK_WAIT_TIME_MS", lockWaitTime / 1000000);
+            map.put("LOCK_TIMEOUTS", lockTimeouts);
+            map.put("DEADLOCKS", deadlocks);
+            map.put("SPILLED_RESULTS", spilledResults);
+        }
+        long hits = 0, misses = 0, chunkWrites = 0, compactions = 0, logBytes = 0;
+        MVTableEngine.Store mvStore = database.getMvStore();
+        PageStore pageStore = database.isPersistent() && mvStore == null ? database.getPageStore() : null;
+        if (mvStore != null) {
+            MVStore store = mvStore.getStore();
+            hits = store.getCacheHitCount();
+            misses = store.getCacheMissCount();
+            chunkWrites = store.getChunkWriteCount();
+            compactions = store.getCompactCount();
+        } else if (pageStore != null) {
+            hits = pageStore.getCacheHitCount();
+            misses = pageStore.getReadCount();
+            logBytes = pageStore.getLogBytesWritten();
+        }
+        map.put("CACHE_HITS", hits);
+        map.put("CACHE_MISSES", misses);
+        map.put("CACHE_HIT_RATIO", hits + misses == 0 ? 0 : (int) (100 * hits / (hits + misses)));
+        map.put("CHUNK_WRITES", chunkWrites);
+        map.put("COMPACTIONS", compactions);
+        map.put("LOG_BYTES_WRITTEN", logBytes);
+        map.put("TEMP_FILES", database.getTempFileDeleter().getFileCount());
+        PlanCache planCache = database.getPlanCache();
+        map.put("PLAN_CACHE_HITS", planCache == null ? 0 : planCache.getHitCount());
+        return map;
+    }
+
+}
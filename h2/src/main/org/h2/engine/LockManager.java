@@ -0,0 +1,511 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import org.h2.constant.ErrorCode;
+import org.h2.message.DbException;
+import org.h2.message.Trace;
+import org.h2.table.Table;
+import org.h2.util.New;
+
+/**
+ * The table lock manager of a database. A session that can not lock a table
+ * is added to the wait queue of the table. Waiting sessions are served in
+ * FIFO order, except that a session that upgrades its shared lock is added at
+ * the front. When a lock is released, the lock is handed over to the first
+ * waiting sessions directly, and only those sessions are woken up.
+ * <p>
+ * Deadlocks are detected when a session starts waiting, by following the
+ * wait-for graph from the sessions that block it. A new circle can only be
+ * formed when a session starts waiting, so there is no need to check again
+ * while waiting.
+ * <p>
+ * Rows of MVStore tables are locked by the transaction map, and a statement
+ * that can not update a row is retried by the command until the lock timeout.
+ * While retrying, the session waits for the session that locked the row; this
+ * wait is part of the same wait-for graph.
+ * <p>
+ * The lock state is protected by the database object. If the waiting thread
+ * holds the database monitor (which is the case unless the database is multi
+ * threaded), it waits on the database object, otherwise on its own wait
+ * queue entry.
+ */
+public class LockManager {
+
+    private final Database database;
+    private Trace trace;
+
+    /**
+     * The wait queue entries of the waiting sessions.
+     */
+    private final HashMap<Session, Waiter> waiting = New.hashMap();
+
+    /**
+     * The row locks the retrying sessions are waiting for.
+     */
+    private final HashMap<Session, RowWaiter> rowWaiting = New.hashMap();
+
+    LockManager(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Lock the table for the given session. This method waits until the lock
+     * is granted, the lock timeout expired, or a deadlock was detected.
+     *
+     * @param session the session
+     * @param lock the lock of the table
+     * @param exclusive true for an exclusive (write) lock
+     * @throws DbException if the lock timeout expired or a deadlock was
+     *             detected
+     */
+    public void lock(Session session, TableLock lock, boolean exclusive) {
+        boolean monitorWait = !database.isMultiThreaded() || Thread.holdsLock(database);
+        Waiter w;
+        long max;
+        synchronized (database) {
+            traceLock(session, lock, exclusive, "requesting for");
+            if (tryLock(session, lock, exclusive, false)) {
+                return;
+            }
+            w = new Waiter(session, lock, exclusive, monitorWait);
+            if (exclusive && lock.shared.contains(session)) {
+                lock.queue.addFirst(w);
+            } else {
+                lock.queue.addLast(w);
+            }
+            waiting.put(session, w);
+            session.setWaitForLock(lock.table);
+            ArrayList<Session> sessions = findDeadlock(session, session, new HashSet<Session>());
+            if (sessions != null) {
+                String details = getDeadlockDetails(sessions);
+                remove(w);
+                session.setWaitForLock(null);
+                database.getMetrics().deadlock();
+                throw DbException.get(ErrorCode.DEADLOCK_1, details);
+            }
+            database.getMetrics().lockWait();
+            traceLock(session, lock, exclusive, "waiting for");
+            if (database.getLockMode() == Constants.LOCK_MODE_TABLE_GC) {
+                for (int i = 0; i < 20; i++) {
+                    long free = Runtime.getRuntime().freeMemory();
+                    System.gc();
+                    long free2 = Runtime.getRuntime().freeMemory();
+                    if (free == free2) {
+                        break;
+                    }
+                }
+            }
+            max = System.currentTimeMillis() + session.getLockTimeout();
+            if (monitorWait) {
+                try {
+                    while (!w.granted) {
+                        long now = System.currentTimeMillis();
+                        if (now >= max) {
+                            timeout(w);
+                            return;
+                        }
+                        long start = System.nanoTime();
+                        try {
+                            database.wait(max - now);
+                        } catch (InterruptedException e) {
+                            // ignore
+                        }
+                        session.addLockWaitTime(System.nanoTime() - start);
+                    }
+                } finally {
+                    session.setWaitForLock(null);
+                }
+                return;
+            }
+        }
+        try {
+            synchronized (w) {
+                while (!w.granted) {
+                    long now = System.currentTimeMillis();
+                    if (now >= max) {
+                        break;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        w.wait(max - now);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                    session.addLockWaitTime(System.nanoTime() - start);
+                }
+            }
+            if (!w.granted) {
+                synchronized (database) {
+                    timeout(w);
+                }
+            }
+        } finally {
+            session.setWaitForLock(null);
+        }
+    }
+
+    /**
+     * Register that the session waits for a row that is locked by the open
+     * transaction of another session, and check for deadlocks. The wait is
+     * registered until the session waits for another row, or until
+     * {@link #stopWaitForRow(Session)} is called.
+     *
+     * @param session the waiting session
+     * @param table the table of the row
+     * @param transactionId the id of the transaction that locked the row
+     * @throws DbException if a deadlock was detected
+     */
+    public void waitForRow(Session session, Table table, long transactionId) {
+        synchronized (database) {
+            rowWaiting.remove(session);
+            Session blocker = null;
+            for (Session s : database.getSessions(false)) {
+                if (s != session && s.isCurrentTransaction(transactionId)) {
+                    blocker = s;
+                    break;
+                }
+            }
+            if (blocker == null) {
+                // committed or rolled back in the meantime
+                return;
+            }
+            rowWaiting.put(session, new RowWaiter(blocker, table, transactionId));
+            ArrayList<Session> sessions = findDeadlock(session, session, new HashSet<Session>());
+            if (sessions != null) {
+                String details = getDeadlockDetails(sessions);
+                rowWaiting.remove(session);
+                database.getMetrics().deadlock();
+                throw DbException.get(ErrorCode.DEADLOCK_1, details);
+            }
+        }
+    }
+
+    /**
+     * Remove the row lock wait of the given session, if any.
+     *
+     * @param session the session
+     */
+    public void stopWaitForRow(Session session) {
+        synchronized (database) {
+            rowWaiting.remove(session);
+        }
+    }
+
+    /**
+     * Release the lock of the given session, and hand it over to the waiting
+     * sessions.
+     *
+     * @param session the session
+     * @param lock the lock of the table
+     */
+    public void unlock(Session session, TableLock lock) {
+        synchronized (database) {
+            traceLock(session, lock, lock.exclusive == session, "unlock");
+            if (lock.exclusive == session) {
+                lock.exclusive = null;
+            }
+            if (lock.shared.size() > 0) {
+                lock.shared.remove(session);
+            }
+            if (!lock.queue.isEmpty()) {
+                grant(lock);
+            }
+        }
+    }
+
+    /**
+     * Try to lock the table. Sessions that are not in the wait queue yet
+     * may only get a shared lock if nobody is waiting.
+     */
+    private boolean tryLock(Session session, TableLock lock, boolean exclusive, boolean queued) {
+        if (lock.exclusive == session) {
+            return true;
+        }
+        if (exclusive) {
+            if (lock.exclusive == null) {
+                if (lock.shared.isEmpty()) {
+                    traceLock(session, lock, exclusive, "added for");
+                    session.addLock(lock.table);
+                    lock.exclusive = session;
+                    return true;
+                } else if (lock.shared.size() == 1 && lock.shared.contains(session)) {
+                    traceLock(session, lock, exclusive, "add (upgraded) for ");
+                    lock.exclusive = session;
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (lock.exclusive != null) {
+            return false;
+        }
+        if (database.getLockMode() == Constants.LOCK_MODE_READ_COMMITTED) {
+            if (!database.isMultiThreaded() && !database.isMultiVersion() &&
+                    !lock.table.isMVStore()) {
+                // READ_COMMITTED: a read lock is acquired,
+                // but released immediately after the operation
+                // is complete.
+                // When allowing only one thread, no lock is
+                // required.
+                // Row level locks (MVStore tables) keep the shared lock
+                // until the transaction is committed, to block DDL.
+                return true;
+            }
+        }
+        if (lock.shared.contains(session)) {
+            return true;
+        }
+        if (!queued && !lock.queue.isEmpty()) {
+            // don't overtake the waiting sessions
+            return false;
+        }
+        traceLock(session, lock, exclusive, "ok");
+        session.addLock(lock.table);
+        lock.shared.add(session);
+        return true;
+    }
+
+    /**
+     * Hand over the lock to the waiting sessions at the front of the queue,
+     * until a session is found that can not get the lock.
+     */
+    private void grant(TableLock lock) {
+        boolean notifyDatabase = false;
+        for (Iterator<Waiter> it = lock.queue.iterator(); it.hasNext();) {
+            Waiter w = it.next();
+            if (!tryLock(w.session, lock, w.exclusive, true)) {
+                break;
+            }
+            it.remove();
+            waiting.remove(w.session);
+            synchronized (w) {
+                w.granted = true;
+                w.notify();
+            }
+            notifyDatabase |= w.monitorWait;
+        }
+        if (notifyDatabase) {
+            database.notifyAll();
+        }
+    }
+
+    private void remove(Waiter w) {
+        w.lock.queue.remove(w);
+        waiting.remove(w.session);
+        // the sessions behind may now get the lock
+        grant(w.lock);
+    }
+
+    private void timeout(Waiter w) {
+        if (w.granted) {
+            // granted just in time
+            return;
+        }
+        remove(w);
+        traceLock(w.session, w.lock, w.exclusive, "timeout after " + w.session.getLockTimeout());
+        database.getMetrics().lockTimeout();
+        throw DbException.get(ErrorCode.LOCK_TIMEOUT_1, w.lock.table.getName());
+    }
+
+    /**
+     * Follow the wait-for graph from the given session.
+     *
+     * @param session the session to check
+     * @param start the session that started to wait
+     * @param visited the sessions that were already checked
+     * @return the sessions in the circle, or null if there is no deadlock
+     */
+    private ArrayList<Session> findDeadlock(Session session, Session start, HashSet<Session> visited) {
+        ArrayList<Session> blocking = getBlockingSessions(session);
+        if (blocking == null || !visited.add(session)) {
+            return null;
+        }
+        for (Session s : blocking) {
+            ArrayList<Session> sessions;
+            if (s == start) {
+                sessions = New.arrayList();
+            } else {
+                sessions = findDeadlock(s, start, visited);
+            }
+            if (sessions != null) {
+                sessions.add(session);
+                return sessions;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the sessions the given session is waiting for, either for a table
+     * lock or for a row lock.
+     *
+     * @param session the session
+     * @return the blocking sessions, or null if the session is not waiting
+     */
+    private ArrayList<Session> getBlockingSessions(Session session) {
+        Waiter w = waiting.get(session);
+        if (w != null) {
+            return getBlockingSessions(w);
+        }
+        RowWaiter r = rowWaiting.get(session);
+        if (r == null || !r.blocker.isCurrentTransaction(r.transactionId)) {
+            return null;
+        }
+        ArrayList<Session> list = New.arrayList();
+        list.add(r.blocker);
+        return list;
+    }
+
+    private static ArrayList<Session> getBlockingSessions(Waiter w) {
+        ArrayList<Session> list = New.arrayList();
+        TableLock lock = w.lock;
+        if (lock.exclusive != null && lock.exclusive != w.session) {
+            list.add(lock.exclusive);
+        }
+        if (w.exclusive) {
+            for (Session s : lock.shared) {
+                if (s != w.session) {
+                    list.add(s);
+                }
+            }
+        }
+        for (Waiter v : lock.queue) {
+            if (v == w) {
+                break;
+            }
+            if (v.exclusive || w.exclusive) {
+                list.add(v.session);
+            }
+        }
+        return list;
+    }
+
+    private String getDeadlockDetails(ArrayList<Session> sessions) {
+        StringBuilder buff = new StringBuilder();
+        for (Session s : sessions) {
+            Waiter w = waiting.get(s);
+            buff.append("\nSession ").
+                append(s.toString());
+            if (w != null) {
+                buff.append(" is waiting to lock ").
+                    append(w.lock.table.toString());
+            } else {
+                buff.append(" is waiting to lock a row of ").
+                    append(rowWaiting.get(s).table.toString());
+            }
+            buff.append(" while locking ");
+            int i = 0;
+            for (Table t : s.getLocks()) {
+                if (i++ > 0) {
+                    buff.append(", ");
+                }
+                buff.append(t.toString());
+                if (t.isLockedExclusivelyBy(s)) {
+                    buff.append(" (exclusive)");
+                } else {
+                    buff.append(" (shared)");
+                }
+            }
+            buff.append('.');
+        }
+        return buff.toString();
+    }
+
+    private void traceLock(Session session, TableLock lock, boolean exclusive, String s) {
+        if (trace == null) {
+            trace = database.getTrace(Trace.LOCK);
+        }
+        if (trace.isDebugEnabled()) {
+            trace.debug("{0} {1} {2} {3}", session.getId(),
+                    exclusive ? "exclusive write lock" : "shared read lock", s, lock.table.getName());
+        }
+    }
+
+    /**
+     * The lock state of a table.
+     */
+    public static final class TableLock {
+
+        /**
+         * The table.
+         */
+        final Table table;
+
+        /**
+         * The session that has the exclusive lock, or null.
+         */
+        volatile Session exclusive;
+
+        /**
+         * The sessions that have a shared lock.
+         */
+        final HashSet<Session> shared = New.hashSet();
+
+        /**
+         * The waiting sessions.
+         */
+        final LinkedList<Waiter> queue = new LinkedList<Waiter>();
+
+        public TableLock(Table table) {
+            this.table = table;
+        }
+
+        /**
+         * Get the session that has the exclusive lock.
+         *
+         * @return the session, or null
+         */
+        public Session getExclusive() {
+            return exclusive;
+        }
+
+    }
+
+    /**
+     * A session waiting for a table lock.
+     */
+    private static final class Waiter {
+
+        final Session session;
+        final TableLock lock;
+        final boolean exclusive;
+        final boolean monitorWait;
+        volatile boolean granted;
+
+        Waiter(Session session, TableLock lock, boolean exclusive, boolean monitorWait) {
+            this.session = session;
+            this.lock = lock;
+            this.exclusive = exclusive;
+            this.monitorWait = monitorWait;
+        }
+
+    }
+
+    /**
+     * A session waiting for a row that is locked by another session.
+     */
+    private static final class RowWaiter {
+
+        final Session blocker;
+        final Table table;
+        final long transactionId;
+
+        RowWaiter(Session blocker, Table table, long transactionId) {
+            this.blocker = blocker;
+            this.table = table;
+            this.transactionId = transactionId;
+        }
+
+    }
+
+}
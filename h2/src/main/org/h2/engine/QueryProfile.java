@@ -0,0 +1,131 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import org.h2.util.New;
+
+/**
+ * The runtime statistics of the plan nodes (table filters, grouping, and
+ * sorting) of a statement run using EXPLAIN ANALYZE. A plan node that is
+ * executed multiple times, for example the inner table of a join or a
+ * correlated subquery, has one entry; the counters and timings are
+ * accumulated over all executions.
+ */
+public class QueryProfile {
+
+    /**
+     * The node type of a table or index access.
+     */
+    public static final String TABLE = "TABLE";
+
+    /**
+     * The node type of a grouping operation.
+     */
+    public static final String GROUP = "GROUP";
+
+    /**
+     * The node type of a sort operation.
+     */
+    public static final String SORT = "SORT";
+
+    private final IdentityHashMap<Object, Node> map = new IdentityHashMap<Object, Node>();
+    private final ArrayList<Node> nodes = New.arrayList();
+
+    /**
+     * Get the node for the given plan element, or create it if it does not
+     * exist yet.
+     *
+     * @param key the plan element (table filter, query, or sort order)
+     * @param type the node type
+     * @param name the node name
+     * @return the node
+     */
+    public Node getNode(Object key, String type, String name) {
+        Node node = map.get(key);
+        if (node == null) {
+            node = new Node(nodes.size() + 1, type, name);
+            map.put(key, node);
+            nodes.add(node);
+        }
+        return node;
+    }
+
+    /**
+     * Get the nodes, in the order they were first executed.
+     *
+     * @return the nodes
+     */
+    public ArrayList<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * The statistics of one plan node.
+     */
+    public static final class Node {
+
+        /**
+         * The node id, starting with 1.
+         */
+        public final int id;
+
+        /**
+         * The node type (TABLE, GROUP, or SORT).
+         */
+        public final String type;
+
+        /**
+         * The name of the table (including the alias), or of the grouping or
+         * sort columns.
+         */
+        public final String name;
+
+        /**
+         * The index that is used, or null.
+         */
+        public String index;
+
+        /**
+         * The cost the optimizer estimated for one execution of this node.
+         * For tables, this is roughly the number of rows the optimizer expects
+         * to read per loop.
+         */
+        public double estimatedCost;
+
+        /**
+         * The number of times the node was executed.
+         */
+        public long loops;
+
+        /**
+         * The number of rows read from the index (for tables) or sorted.
+         */
+        public long rowsScanned;
+
+        /**
+         * The number of rows produced by the node, over all loops.
+         */
+        public long rows;
+
+        /**
+         * The elapsed time in nanoseconds, over all loops. This includes the
+         * time spent in nested nodes, for example in the tables joined with
+         * this table.
+         */
+        public long time;
+
+        Node(int id, String type, String name) {
+            this.id = id;
+            this.type = type;
+            this.name = name;
+        }
+
+    }
+
+}
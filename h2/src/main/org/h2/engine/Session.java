@@ -15,7 +15,9 @@ import java.util.Random;
 
 import org.h2.command.Command;
 import org.h2.command.CommandInterface;
+import org.h2.command.JoinOrders;
 import org.h2.command.Parser;
+import org.h2.command.PlanCache;
 import org.h2.command.Prepared;
 import org.h2.command.dml.SetTypes;
 import org.h2.constant.ErrorCode;
@@ -34,8 +36,8 @@ import org.h2.result.Row;
 import org.h2.schema.Schema;
 import org.h2.store.DataHandler;
 import org.h2.store.InDoubtTransaction;
-import org.h2.store.LobStorageBackend;
 import org.h2.store.LobStorageFrontend;
+import org.h2.store.LobStorageInterface;
 import org.h2.table.Table;
 import org.h2.util.New;
 import org.h2.util.SmallLRUCache;
@@ -52,6 +54,13 @@ import org.h2.value.ValueString;
  */
 public class Session extends SessionWithState {
 
+    /**
+     * The session that is executing a statement in the current thread, if the
+     * slow query log is enabled. Used to count the file reads and cache hits
+     * of the statement.
+     */
+    private static final ThreadLocal<Session> STATEMENT_SESSION = new ThreadLocal<Session>();
+
     /**
      * This special log position means that the log entry has been written.
      */
@@ -85,6 +94,7 @@ public class Session extends SessionWithState {
     private int throttle;
     private long lastThrottle;
     private Command currentCommand;
+    private int commandExecutionId;
     private boolean allowLiterals;
     private String currentSchemaName;
     private String[] schemaSearchPath;
@@ -111,7 +121,13 @@ public class Session extends SessionWithState {
     private final int queryCacheSize;
     private SmallLRUCache<String, Command> queryCache;
     private long modificationMetaID = -1;
+    private JoinOrders joinOrders;
     private ArrayList<Value> temporaryLobs;
+    private long lockWaitTime;
+    private int spilledResults;
+    private long fileReads, cacheHits;
+    private QueryProfile queryProfile;
+    private boolean queryProfileActive;
 
     private Transaction transaction;
     private long startStatement = -1;
@@ -432,8 +448,13 @@ public class Session extends SessionWithState {
                 }
             }
         }
-        Parser parser = new Parser(this);
-        command = parser.prepareCommand(sql);
+        PlanCache planCache = database.getPlanCache();
+        if (planCache != null) {
+            command = planCache.prepare(this, sql);
+        } else {
+            Parser parser = new Parser(this);
+            command = parser.prepareCommand(sql);
+        }
         if (queryCache != null) {
             if (command.isCacheable()) {
                 queryCache.put(sql, command);
@@ -442,6 +463,24 @@ public class Session extends SessionWithState {
         return command;
     }
 
+    /**
+     * Set the join orders to use and to record while a statement is prepared.
+     *
+     * @param joinOrders the join orders, or null
+     */
+    public void setJoinOrders(JoinOrders joinOrders) {
+        this.joinOrders = joinOrders;
+    }
+
+    /**
+     * Get the join orders to use and to record while a statement is prepared.
+     *
+     * @return the join orders, or null if they are not cached
+     */
+    public JoinOrders getJoinOrders() {
+        return joinOrders;
+    }
+
     public Database getDatabase() {
         return database;
     }
@@ -467,6 +506,9 @@ public class Session extends SessionWithState {
         checkCommitRollback();
         currentTransactionName = null;
         transactionStart = 0;
+        if (hasPendingChanges() || containsUncommitted()) {
+            database.getMetrics().commit();
+        }
         if (transaction != null) {
             // increment the data mod count, so that other sessions
             // see the changes
@@ -561,6 +603,9 @@ public class Session extends SessionWithState {
             transaction.commit();
             transaction = null;
         }
+        if (needCommit) {
+            database.getMetrics().rollback();
+        }
         if (locks.size() > 0 || needCommit) {
             database.commit(this);
         }
@@ -736,6 +781,10 @@ public class Session extends SessionWithState {
         // locks is modified in the loop
         for (int i = 0; i < locks.size(); i++) {
             Table t = locks.get(i);
+            if (t.isMVStore() && !database.isMultiThreaded()) {
+                // row level locks: keep shared locks (insert / update / delete)
+                continue;
+            }
             if (!t.isLockedExclusively()) {
                 synchronized (database) {
                     t.unlock(this);
@@ -861,6 +910,139 @@ public class Session extends SessionWithState {
         firstUncommittedPos = Session.LOG_WRITTEN;
     }
 
+    /**
+     * Add the time this session waited for a table lock.
+     *
+     * @param nanos the wait time in nanoseconds
+     */
+    public void addLockWaitTime(long nanos) {
+        lockWaitTime += nanos;
+        database.getMetrics().addLockWaitTime(nanos);
+    }
+
+    /**
+     * Get the total time this session waited for table locks.
+     *
+     * @return the wait time in nanoseconds
+     */
+    public long getLockWaitTime() {
+        return lockWaitTime;
+    }
+
+    /**
+     * Count a temporary result that did not fit in memory.
+     */
+    public void addSpilledResult() {
+        spilledResults++;
+        database.getMetrics().spilledResult();
+    }
+
+    /**
+     * Get the number of temporary results of this session that did not fit in
+     * memory and were written to disk.
+     *
+     * @return the number of results
+     */
+    public int getSpilledResults() {
+        return spilledResults;
+    }
+
+    /**
+     * Count a page that was read from the database file by the statement that
+     * is running in the current thread.
+     */
+    public static void countFileRead() {
+        Session s = STATEMENT_SESSION.get();
+        if (s != null) {
+            s.fileReads++;
+        }
+    }
+
+    /**
+     * Count a page that was found in the cache by the statement that is
+     * running in the current thread.
+     */
+    public static void countCacheHit() {
+        Session s = STATEMENT_SESSION.get();
+        if (s != null) {
+            s.cacheHits++;
+        }
+    }
+
+    /**
+     * Get the number of pages the statements of this session read from the
+     * database file. Only counted while the slow query log is enabled.
+     *
+     * @return the read count
+     */
+    public long getFileReads() {
+        return fileReads;
+    }
+
+    /**
+     * Get the number of pages the statements of this session found in the
+     * cache. Only counted while the slow query log is enabled, and only for
+     * the page store.
+     *
+     * @return the cache hit count
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Start collecting the runtime statistics of the plan nodes. This is used
+     * by EXPLAIN ANALYZE.
+     *
+     * @return the new profile
+     */
+    public QueryProfile startQueryProfile() {
+        queryProfile = new QueryProfile();
+        queryProfileActive = true;
+        return queryProfile;
+    }
+
+    /**
+     * Stop collecting runtime statistics. The profile is kept until the next
+     * one is started.
+     */
+    public void stopQueryProfile() {
+        queryProfileActive = false;
+    }
+
+    /**
+     * Get the profile of the statement that is currently run using EXPLAIN
+     * ANALYZE.
+     *
+     * @return the profile, or null if no statistics are collected
+     */
+    public QueryProfile getQueryProfile() {
+        return queryProfileActive ? queryProfile : null;
+    }
+
+    /**
+     * Get the profile of the last statement run using EXPLAIN ANALYZE in this
+     * session.
+     *
+     * @return the profile, or null
+     */
+    public QueryProfile getLastQueryProfile() {
+        return queryProfile;
+    }
+
+    /**
+     * Check whether this session has changed data that is not committed yet.
+     * Such changes are only visible to this session.
+     *
+     * @return true if there are uncommitted changes
+     */
+    public boolean hasPendingChanges() {
+        if (database.getMvStore() != null) {
+            return transaction != null && transaction.hasChanges();
+        }
+        return undoLog.size() > 0;
+    }
+
     /**
      * Whether the session contains any uncommitted changes.
      *
@@ -995,6 +1177,14 @@ public class Session extends SessionWithState {
      */
     public void setCurrentCommand(Command command) {
         this.currentCommand = command;
+        if (command != null) {
+            commandExecutionId++;
+            if (database.getSlowQueryLimit() > 0) {
+                STATEMENT_SESSION.set(this);
+            }
+        } else if (STATEMENT_SESSION.get() == this) {
+            STATEMENT_SESSION.remove();
+        }
         if (queryTimeout > 0 && command != null) {
             long now = System.currentTimeMillis();
             currentCommandStart = now;
@@ -1037,6 +1227,17 @@ public class Session extends SessionWithState {
         return currentCommandStart;
     }
 
+    /**
+     * Get the id of the current command execution. The id is changed each
+     * time a command is started, so that values that don't change while a
+     * statement is running (for example parameter values) can be cached.
+     *
+     * @return the execution id
+     */
+    public int getCommandExecutionId() {
+        return commandExecutionId;
+    }
+
     public boolean getAllowLiterals() {
         return allowLiterals;
     }
@@ -1076,7 +1277,7 @@ public class Session extends SessionWithState {
         return database;
     }
 
-    public LobStorageBackend getLobStorageBackend() {
+    public LobStorageInterface getLobStorageBackend() {
         return database.getLobStorage();
     }
 
@@ -1390,6 +1591,18 @@ public class Session extends SessionWithState {
         return transaction;
     }
 
+    /**
+     * Check whether the given MVStore transaction is the open transaction of
+     * this session.
+     *
+     * @param transactionId the transaction id
+     * @return true if yes
+     */
+    public boolean isCurrentTransaction(long transactionId) {
+        Transaction t = transaction;
+        return t != null && t.getId() == transactionId;
+    }
+
     public long getStatementSavepoint() {
         if (startStatement == -1) {
             startStatement = getTransaction().setSavepoint();
@@ -103,7 +103,7 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         trans.setSSL(ci.isSSL());
         trans.init();
         trans.writeInt(Constants.TCP_PROTOCOL_VERSION_6);
-        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_13);
+        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_14);
         trans.writeString(db);
         trans.writeString(ci.getOriginalURL());
         trans.writeString(ci.getUserName());
@@ -740,6 +740,19 @@ public class SessionRemote extends SessionWithState implements DataHandler {
                 transfer.writeLong(offset);
                 transfer.writeInt(length);
                 done(transfer);
+                if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_14) {
+                    // the data is sent in blocks, terminated by an empty block
+                    int total = 0;
+                    while (true) {
+                        int len = transfer.readInt();
+                        if (len <= 0) {
+                            break;
+                        }
+                        transfer.readBytes(buff, off + total, len);
+                        total += len;
+                    }
+                    return total;
+                }
                 length = transfer.readInt();
                 if (length <= 0) {
                     return length;
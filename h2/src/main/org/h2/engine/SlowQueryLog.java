@@ -0,0 +1,105 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Keeps the most recent statements that took longer than the slow query
+ * limit, together with the execution plan and runtime statistics.
+ */
+public class SlowQueryLog {
+
+    private static final int MAX_ENTRIES = 100;
+
+    private final LinkedList<SlowQuery> list = new LinkedList<SlowQuery>();
+
+    /**
+     * Add a statement to the log. If the log is full, the oldest entry is
+     * removed.
+     *
+     * @param query the entry
+     */
+    public synchronized void add(SlowQuery query) {
+        list.add(query);
+        if (list.size() > MAX_ENTRIES) {
+            list.removeFirst();
+        }
+    }
+
+    /**
+     * Get the logged statements, the oldest first.
+     *
+     * @return a copy of the list of entries
+     */
+    public synchronized List<SlowQuery> getQueries() {
+        return new ArrayList<SlowQuery>(list);
+    }
+
+    /**
+     * A statement that took longer than the slow query limit.
+     */
+    public static final class SlowQuery {
+
+        /**
+         * The time when the statement was started, in milliseconds since
+         * 1970.
+         */
+        public long startTime;
+
+        /**
+         * The id of the session that executed the statement.
+         */
+        public int sessionId;
+
+        /**
+         * The SQL statement, including the parameter values.
+         */
+        public String sqlStatement;
+
+        /**
+         * The execution plan, including the number of rows scanned per table.
+         */
+        public String plan;
+
+        /**
+         * The execution time, in milliseconds.
+         */
+        public long executionTime;
+
+        /**
+         * The query or update row count.
+         */
+        public int rowCount;
+
+        /**
+         * The number of pages the statement read from the file.
+         */
+        public long fileReads;
+
+        /**
+         * The number of pages the statement found in the cache (only counted
+         * for the page store).
+         */
+        public long cacheHits;
+
+        /**
+         * The time the statement waited for table locks, in milliseconds.
+         */
+        public long lockWaitTime;
+
+        /**
+         * The number of temporary results that did not fit in memory and
+         * were written to disk.
+         */
+        public int spilledResults;
+
+    }
+
+}
@@ -548,6 +548,43 @@ public class Aggregate extends Expression {
         return text + StringUtils.enclose(on.getSQL());
     }
 
+    /**
+     * Get the argument of this aggregate.
+     *
+     * @return the argument, or null for COUNT(*)
+     */
+    Expression getOn() {
+        return on;
+    }
+
+    /**
+     * Whether only distinct values are aggregated.
+     *
+     * @return true if DISTINCT is used
+     */
+    boolean isDistinct() {
+        return distinct;
+    }
+
+    /**
+     * Check if this aggregate only needs the first row with a non-NULL value
+     * of the given column, if the rows are read in the order of the column.
+     * This is the case for MIN on an ascending column, and for MAX on a
+     * descending column.
+     *
+     * @param filter the table filter
+     * @param column the column
+     * @param descending whether the rows are read in descending order
+     * @return true if yes
+     */
+    public boolean isFirstValue(TableFilter filter, Column column, boolean descending) {
+        if (type != (descending ? MAX : MIN) || !(on instanceof ExpressionColumn)) {
+            return false;
+        }
+        ExpressionColumn col = (ExpressionColumn) on;
+        return col.getTableFilter() == filter && col.getColumn() == column;
+    }
+
     private Index getColumnIndex() {
         if (on instanceof ExpressionColumn) {
             ExpressionColumn col = (ExpressionColumn) on;
@@ -147,7 +147,7 @@ public class Comparison extends Condition {
      * @param compareType the compare type
      * @return the string
      */
-    static String getCompareOperator(int compareType) {
+    public static String getCompareOperator(int compareType) {
         switch (compareType) {
         case EQUAL:
             return "=";
@@ -365,6 +365,8 @@ public class Comparison extends Condition {
             if (filter != l.getTableFilter()) {
                 l = null;
             }
+        } else {
+            l = filter.getIndexExpressionColumn(left);
         }
         if (right == null) {
             if (l != null) {
@@ -383,6 +385,8 @@ public class Comparison extends Condition {
             if (filter != r.getTableFilter()) {
                 r = null;
             }
+        } else {
+            r = filter.getIndexExpressionColumn(right);
         }
         // one side must be from the current filter
         if (l == null && r == null) {
@@ -546,6 +550,16 @@ public class Comparison extends Condition {
         return null;
     }
 
+    /**
+     * Get the comparison type, for example {@link #EQUAL} or
+     * {@link #IS_NULL}.
+     *
+     * @return the comparison type
+     */
+    public int getCompareType() {
+        return compareType;
+    }
+
     /**
      * Get the left or the right sub-expression of this condition.
      *
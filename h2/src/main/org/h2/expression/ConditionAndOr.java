@@ -6,11 +6,14 @@
  */
 package org.h2.expression;
 
+import java.util.ArrayList;
 import org.h2.constant.SysProperties;
 import org.h2.engine.Session;
+import org.h2.index.IndexCondition;
 import org.h2.message.DbException;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
+import org.h2.util.New;
 import org.h2.value.Value;
 import org.h2.value.ValueBoolean;
 import org.h2.value.ValueNull;
@@ -63,7 +66,28 @@ public class ConditionAndOr extends Condition {
         if (andOrType == AND) {
             left.createIndexConditions(session, filter);
             right.createIndexConditions(session, filter);
+        } else if (session.getDatabase().getSettings().optimizeMultiIndex) {
+            // the rows may be found using the union of multiple index lookups
+            ArrayList<ArrayList<IndexCondition>> alternatives = New.arrayList();
+            if (addAlternatives(session, filter, this, alternatives)) {
+                filter.addIndexConditionAlternatives(alternatives);
+            }
+        }
+    }
+
+    private static boolean addAlternatives(Session session, TableFilter filter, Expression expr,
+            ArrayList<ArrayList<IndexCondition>> alternatives) {
+        if (expr instanceof ConditionAndOr && ((ConditionAndOr) expr).andOrType == OR) {
+            ConditionAndOr or = (ConditionAndOr) expr;
+            return addAlternatives(session, filter, or.left, alternatives) &&
+                    addAlternatives(session, filter, or.right, alternatives);
         }
+        ArrayList<IndexCondition> list = filter.createIndexConditions(session, expr);
+        if (list.size() == 0) {
+            return false;
+        }
+        alternatives.add(list);
+        return true;
     }
 
     @Override
@@ -186,6 +210,16 @@ public class ConditionAndOr extends Condition {
                 if (added != null) {
                     return added.optimize(session);
                 }
+            } else if (left instanceof ConditionInParameterSet && right instanceof Comparison) {
+                Expression added = ((ConditionInParameterSet) left).getAdditional((Comparison) right);
+                if (added != null) {
+                    return added.optimize(session);
+                }
+            } else if (right instanceof ConditionInParameterSet && left instanceof Comparison) {
+                Expression added = ((ConditionInParameterSet) right).getAdditional((Comparison) left);
+                if (added != null) {
+                    return added.optimize(session);
+                }
             }
         }
         // TODO optimization: convert .. OR .. to UNION if the cost is lower
@@ -272,6 +306,15 @@ public class ConditionAndOr extends Condition {
         return left.getCost() + right.getCost();
     }
 
+    /**
+     * Get the condition type, either {@link #AND} or {@link #OR}.
+     *
+     * @return the condition type
+     */
+    public int getAndOrType() {
+        return andOrType;
+    }
+
     /**
      * Get the left or the right sub-expression of this condition.
      *
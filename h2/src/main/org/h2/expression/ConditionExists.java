@@ -6,21 +6,33 @@
  */
 package org.h2.expression;
 
+import java.util.ArrayList;
 import org.h2.command.dml.Query;
+import org.h2.command.dml.Select;
 import org.h2.engine.Session;
+import org.h2.result.LocalResult;
 import org.h2.result.ResultInterface;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
+import org.h2.util.New;
 import org.h2.util.StringUtils;
 import org.h2.value.Value;
 import org.h2.value.ValueBoolean;
+import org.h2.value.ValueNull;
 
 /**
  * An 'exists' condition as in WHERE EXISTS(SELECT ...)
+ * <p>
+ * If possible, a correlated subquery is converted to a semi join: the
+ * conditions that reference the outer query are removed from the subquery,
+ * the subquery is run only once, and for each row of the outer query the
+ * result is probed using a hash lookup.
  */
 public class ConditionExists extends Condition {
 
     private final Query query;
+    private ArrayList<ColumnResolver> outerResolvers;
+    private Expression[] semiJoinKeys;
 
     public ConditionExists(Query query) {
         this.query = query;
@@ -28,6 +40,9 @@ public class ConditionExists extends Condition {
 
     @Override
     public Value getValue(Session session) {
+        if (semiJoinKeys != null) {
+            return getValueSemiJoin(session);
+        }
         query.setSession(session);
         ResultInterface result = query.query(1);
         session.addTemporaryResult(result);
@@ -35,9 +50,46 @@ public class ConditionExists extends Condition {
         return ValueBoolean.get(r);
     }
 
+    private Value getValueSemiJoin(Session session) {
+        int len = semiJoinKeys.length;
+        Value[] key = new Value[len];
+        for (int i = 0; i < len; i++) {
+            Value v = semiJoinKeys[i].getValue(session);
+            if (v == ValueNull.INSTANCE) {
+                // NULL never matches
+                return ValueBoolean.get(false);
+            }
+            key[i] = v;
+        }
+        query.setSession(session);
+        LocalResult rows = query.query(0);
+        session.addTemporaryResult(rows);
+        if (rows.getRowCount() == 0) {
+            return ValueBoolean.get(false);
+        }
+        for (int i = 0; i < len; i++) {
+            key[i] = key[i].convertTo(rows.getColumnType(i));
+        }
+        return ValueBoolean.get(rows.containsDistinct(key));
+    }
+
     @Override
     public Expression optimize(Session session) {
+        if (semiJoinKeys == null && outerResolvers != null && query instanceof Select &&
+                session.getDatabase().getSettings().optimizeSemiJoin) {
+            ArrayList<Expression> keys = ((Select) query).convertToSemiJoin(outerResolvers);
+            if (keys != null) {
+                semiJoinKeys = new Expression[keys.size()];
+                keys.toArray(semiJoinKeys);
+                query.setRandomAccessResult(true);
+            }
+        }
         query.prepare();
+        if (semiJoinKeys != null) {
+            for (int i = 0; i < semiJoinKeys.length; i++) {
+                semiJoinKeys[i] = semiJoinKeys[i].optimize(session);
+            }
+        }
         return this;
     }
 
@@ -56,21 +108,55 @@ public class ConditionExists extends Condition {
 
     @Override
     public void mapColumns(ColumnResolver resolver, int level) {
+        if (outerResolvers == null) {
+            outerResolvers = New.arrayList();
+        }
+        outerResolvers.add(resolver);
         query.mapColumns(resolver, level + 1);
+        if (semiJoinKeys != null) {
+            for (Expression e : semiJoinKeys) {
+                e.mapColumns(resolver, level + 1);
+            }
+        }
     }
 
     @Override
     public void setEvaluatable(TableFilter tableFilter, boolean b) {
         query.setEvaluatable(tableFilter, b);
+        if (semiJoinKeys != null) {
+            for (Expression e : semiJoinKeys) {
+                e.setEvaluatable(tableFilter, b);
+            }
+        }
     }
 
     @Override
     public boolean isEverything(ExpressionVisitor visitor) {
-        return query.isEverything(visitor);
+        if (!query.isEverything(visitor)) {
+            return false;
+        }
+        if (semiJoinKeys != null) {
+            // the keys were part of the subquery
+            ExpressionVisitor v2 = visitor.incrementQueryLevel(1);
+            for (Expression e : semiJoinKeys) {
+                if (!e.isEverything(v2)) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     @Override
     public int getCost() {
+        if (semiJoinKeys != null) {
+            // the subquery is only run once
+            int cost = 10;
+            for (Expression e : semiJoinKeys) {
+                cost += e.getCost();
+            }
+            return cost;
+        }
         return query.getCostAsExpression();
     }
 
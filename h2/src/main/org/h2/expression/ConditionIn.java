@@ -83,6 +83,7 @@ public class ConditionIn extends Condition {
             return left;
         }
         boolean allValuesConstant = true;
+        boolean allValuesFixed = true;
         boolean allValuesNull = true;
         int size = valueList.size();
         for (int i = 0; i < size; i++) {
@@ -94,6 +95,9 @@ public class ConditionIn extends Condition {
             if (allValuesConstant && !e.isConstant()) {
                 allValuesConstant = false;
             }
+            if (allValuesFixed && !ConditionInParameterSet.isFixedPerExecution(e)) {
+                allValuesFixed = false;
+            }
             valueList.set(i, e);
         }
         if (constant && allValuesConstant) {
@@ -114,17 +118,31 @@ public class ConditionIn extends Condition {
             expr = expr.optimize(session);
             return expr;
         }
+        if (allValuesFixed && !allValuesConstant) {
+            int leftType = left.getType();
+            if (leftType == Value.UNKNOWN) {
+                return this;
+            }
+            Expression expr = new ConditionInParameterSet(left, valueList);
+            expr = expr.optimize(session);
+            return expr;
+        }
         return this;
     }
 
     @Override
     public void createIndexConditions(Session session, TableFilter filter) {
-        if (!(left instanceof ExpressionColumn)) {
-            return;
-        }
-        ExpressionColumn l = (ExpressionColumn) left;
-        if (filter != l.getTableFilter()) {
-            return;
+        ExpressionColumn l;
+        if (left instanceof ExpressionColumn) {
+            l = (ExpressionColumn) left;
+            if (filter != l.getTableFilter()) {
+                return;
+            }
+        } else {
+            l = filter.getIndexExpressionColumn(left);
+            if (l == null) {
+                return;
+            }
         }
         if (session.getDatabase().getSettings().optimizeInList) {
             ExpressionVisitor visitor = ExpressionVisitor.getNotFromResolverVisitor(filter);
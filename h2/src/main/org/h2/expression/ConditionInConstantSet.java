@@ -79,12 +79,17 @@ public class ConditionInConstantSet extends Condition {
 
     @Override
     public void createIndexConditions(Session session, TableFilter filter) {
-        if (!(left instanceof ExpressionColumn)) {
-            return;
-        }
-        ExpressionColumn l = (ExpressionColumn) left;
-        if (filter != l.getTableFilter()) {
-            return;
+        ExpressionColumn l;
+        if (left instanceof ExpressionColumn) {
+            l = (ExpressionColumn) left;
+            if (filter != l.getTableFilter()) {
+                return;
+            }
+        } else {
+            l = filter.getIndexExpressionColumn(left);
+            if (l == null) {
+                return;
+            }
         }
         if (session.getDatabase().getSettings().optimizeInList) {
             filter.addIndexCondition(IndexCondition.getInList(l, valueList));
@@ -129,6 +134,7 @@ public class ConditionInConstantSet extends Condition {
         case ExpressionVisitor.GET_DEPENDENCIES:
         case ExpressionVisitor.QUERY_COMPARABLE:
         case ExpressionVisitor.GET_COLUMNS:
+        case ExpressionVisitor.NO_WINDOW_FUNCTION:
             return true;
         default:
             throw DbException.throwInternalError("type=" + visitor.getType());
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.expression;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import org.h2.engine.Session;
+import org.h2.index.IndexCondition;
+import org.h2.table.ColumnResolver;
+import org.h2.table.TableFilter;
+import org.h2.util.StatementBuilder;
+import org.h2.value.Value;
+import org.h2.value.ValueBoolean;
+import org.h2.value.ValueNull;
+
+/**
+ * Used for optimised IN(...) queries where the contents of the IN list are
+ * parameters, or a mix of parameters and constants, as in WHERE ID IN(?, ?, 1).
+ * <p>
+ * The values can only change between two executions of the statement.
+ * Therefore a HashSet is built once per execution, so that checking a row
+ * has time complexity O(1) instead of O(n).
+ */
+public class ConditionInParameterSet extends Condition {
+
+    private Expression left;
+    private int queryLevel;
+    private final ArrayList<Expression> valueList;
+    private HashSet<Value> valueSet;
+    private boolean hasNull;
+    private Session lastSession;
+    private int lastExecutionId;
+
+    /**
+     * Create a new IN(..) condition.
+     *
+     * @param left the expression before IN
+     * @param valueList the value list (at least two elements)
+     */
+    public ConditionInParameterSet(Expression left, ArrayList<Expression> valueList) {
+        this.left = left;
+        this.valueList = valueList;
+    }
+
+    /**
+     * Check if the value of the expression can only change between two
+     * executions of a statement, but not while the statement is running. This
+     * is the case for constants and parameters.
+     *
+     * @param e the expression
+     * @return true if the value is fixed while a statement is running
+     */
+    public static boolean isFixedPerExecution(Expression e) {
+        return e.isConstant() || e instanceof Parameter;
+    }
+
+    @Override
+    public Value getValue(Session session) {
+        Value x = left.getValue(session);
+        if (x == ValueNull.INSTANCE) {
+            return x;
+        }
+        HashSet<Value> set = getValueSet(session);
+        boolean result = set.contains(x);
+        if (!result && hasNull) {
+            return ValueNull.INSTANCE;
+        }
+        return ValueBoolean.get(result);
+    }
+
+    private HashSet<Value> getValueSet(Session session) {
+        int executionId = session.getCommandExecutionId();
+        if (valueSet != null && lastSession == session && lastExecutionId == executionId) {
+            return valueSet;
+        }
+        int type = left.getType();
+        HashSet<Value> set = new HashSet<Value>(valueList.size());
+        boolean setHasNull = false;
+        for (Expression e : valueList) {
+            Value v = e.getValue(session);
+            if (v == ValueNull.INSTANCE) {
+                setHasNull = true;
+            } else {
+                set.add(v.convertTo(type));
+            }
+        }
+        valueSet = set;
+        hasNull = setHasNull;
+        lastSession = session;
+        lastExecutionId = executionId;
+        return set;
+    }
+
+    @Override
+    public void mapColumns(ColumnResolver resolver, int level) {
+        left.mapColumns(resolver, level);
+        for (Expression e : valueList) {
+            e.mapColumns(resolver, level);
+        }
+        this.queryLevel = Math.max(level, this.queryLevel);
+    }
+
+    @Override
+    public Expression optimize(Session session) {
+        left = left.optimize(session);
+        return this;
+    }
+
+    @Override
+    public void createIndexConditions(Session session, TableFilter filter) {
+        ExpressionColumn l;
+        if (left instanceof ExpressionColumn) {
+            l = (ExpressionColumn) left;
+            if (filter != l.getTableFilter()) {
+                return;
+            }
+        } else {
+            l = filter.getIndexExpressionColumn(left);
+            if (l == null) {
+                return;
+            }
+        }
+        if (session.getDatabase().getSettings().optimizeInList) {
+            filter.addIndexCondition(IndexCondition.getInList(l, valueList));
+        }
+    }
+
+    @Override
+    public void setEvaluatable(TableFilter tableFilter, boolean b) {
+        left.setEvaluatable(tableFilter, b);
+        for (Expression e : valueList) {
+            e.setEvaluatable(tableFilter, b);
+        }
+    }
+
+    @Override
+    public String getSQL() {
+        StatementBuilder buff = new StatementBuilder("(");
+        buff.append(left.getSQL()).append(" IN(");
+        for (Expression e : valueList) {
+            buff.appendExceptFirst(", ");
+            buff.append(e.getSQL());
+        }
+        return buff.append("))").toString();
+    }
+
+    @Override
+    public void updateAggregate(Session session) {
+        left.updateAggregate(session);
+    }
+
+    @Override
+    public boolean isEverything(ExpressionVisitor visitor) {
+        if (!left.isEverything(visitor)) {
+            return false;
+        }
+        for (Expression e : valueList) {
+            if (!e.isEverything(visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getCost() {
+        int cost = left.getCost();
+        for (Expression e : valueList) {
+            cost += e.getCost();
+        }
+        return cost;
+    }
+
+    /**
+     * Add an additional element if possible. Example: given two conditions
+     * A IN(?, ?) OR A=?, the parameter is added: A IN(?, ?, ?).
+     *
+     * @param other the second condition
+     * @return null if the condition was not added, or the new condition
+     */
+    Expression getAdditional(Comparison other) {
+        Expression add = other.getIfEquals(left);
+        if (add != null) {
+            if (isFixedPerExecution(add)) {
+                valueList.add(add);
+                valueSet = null;
+                return this;
+            }
+        }
+        return null;
+    }
+}
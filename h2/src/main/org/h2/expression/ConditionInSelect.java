@@ -160,12 +160,17 @@ public class ConditionInSelect extends Condition {
         if (!session.getDatabase().getSettings().optimizeInList) {
             return;
         }
-        if (!(left instanceof ExpressionColumn)) {
-            return;
-        }
-        ExpressionColumn l = (ExpressionColumn) left;
-        if (filter != l.getTableFilter()) {
-            return;
+        ExpressionColumn l;
+        if (left instanceof ExpressionColumn) {
+            l = (ExpressionColumn) left;
+            if (filter != l.getTableFilter()) {
+                return;
+            }
+        } else {
+            l = filter.getIndexExpressionColumn(left);
+            if (l == null) {
+                return;
+            }
         }
         ExpressionVisitor visitor = ExpressionVisitor.getNotFromResolverVisitor(filter);
         if (!query.isEverything(visitor)) {
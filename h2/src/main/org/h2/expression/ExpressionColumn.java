@@ -267,6 +267,7 @@ public class ExpressionColumn extends Expression {
         case ExpressionVisitor.READONLY:
         case ExpressionVisitor.DETERMINISTIC:
         case ExpressionVisitor.QUERY_COMPARABLE:
+        case ExpressionVisitor.NO_WINDOW_FUNCTION:
             return true;
         case ExpressionVisitor.INDEPENDENT:
             return this.queryLevel < visitor.getQueryLevel();
@@ -96,11 +96,21 @@ public class ExpressionVisitor {
      */
     public static final int GET_COLUMNS = 9;
 
+    /**
+     * Does the expression not contain a window function of this query level.
+     */
+    public static final int NO_WINDOW_FUNCTION = 10;
+
     /**
      * The visitor singleton for the type QUERY_COMPARABLE.
      */
     public static final ExpressionVisitor QUERY_COMPARABLE_VISITOR = new ExpressionVisitor(QUERY_COMPARABLE);
 
+    /**
+     * The visitor singleton for the type NO_WINDOW_FUNCTION.
+     */
+    public static final ExpressionVisitor NO_WINDOW_FUNCTION_VISITOR = new ExpressionVisitor(NO_WINDOW_FUNCTION);
+
     private final int type;
     private final int queryLevel;
     private final HashSet<DbObject> dependencies;
@@ -161,7 +171,7 @@ public class ExpressionVisitor {
      * @param resolver the resolver
      * @return the new visitor
      */
-    static ExpressionVisitor getNotFromResolverVisitor(ColumnResolver resolver) {
+    public static ExpressionVisitor getNotFromResolverVisitor(ColumnResolver resolver) {
         return new ExpressionVisitor(NOT_FROM_RESOLVER, 0, null, null, null, resolver, null);
     }
 
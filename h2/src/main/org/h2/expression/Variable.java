@@ -76,6 +76,7 @@ public class Variable extends Expression {
         case ExpressionVisitor.QUERY_COMPARABLE:
         case ExpressionVisitor.GET_DEPENDENCIES:
         case ExpressionVisitor.GET_COLUMNS:
+        case ExpressionVisitor.NO_WINDOW_FUNCTION:
             return true;
         case ExpressionVisitor.DETERMINISTIC:
             return false;
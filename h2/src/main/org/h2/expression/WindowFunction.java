@@ -0,0 +1,644 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.expression;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.h2.command.dml.Select;
+import org.h2.command.dml.SelectOrderBy;
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.result.SortOrder;
+import org.h2.table.ColumnResolver;
+import org.h2.table.TableFilter;
+import org.h2.util.New;
+import org.h2.util.StatementBuilder;
+import org.h2.value.Value;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueNull;
+
+/**
+ * A window function (a ranking function or an aggregate with an OVER clause).
+ * The value is calculated after all rows of the query are known: the query
+ * buffers the rows, calls addRow for each of them, then computeValues, and
+ * then sets the current row before evaluating the select list again.
+ */
+public class WindowFunction extends Expression {
+
+    /**
+     * The type of the ROW_NUMBER function.
+     */
+    public static final int ROW_NUMBER = 0;
+
+    /**
+     * The type of the RANK function.
+     */
+    public static final int RANK = 1;
+
+    /**
+     * The type of the DENSE_RANK function.
+     */
+    public static final int DENSE_RANK = 2;
+
+    /**
+     * The type of an aggregate function used as a window function.
+     */
+    public static final int AGGREGATE = 3;
+
+    /**
+     * The frame bound UNBOUNDED PRECEDING.
+     */
+    public static final int UNBOUNDED_PRECEDING = 0;
+
+    /**
+     * The frame bound "n PRECEDING".
+     */
+    public static final int PRECEDING = 1;
+
+    /**
+     * The frame bound CURRENT ROW.
+     */
+    public static final int CURRENT_ROW = 2;
+
+    /**
+     * The frame bound "n FOLLOWING".
+     */
+    public static final int FOLLOWING = 3;
+
+    /**
+     * The frame bound UNBOUNDED FOLLOWING.
+     */
+    public static final int UNBOUNDED_FOLLOWING = 4;
+
+    private final int type;
+    private final Aggregate aggregate;
+    private final Select select;
+    private ArrayList<Expression> partitionBy;
+    private ArrayList<SelectOrderBy> orderBy;
+    private boolean frame, frameRows;
+    private int frameStart, frameEnd;
+    private Expression frameStartOffset, frameEndOffset;
+
+    private final ArrayList<Value[]> keys = New.arrayList();
+    private Value[] values;
+    private int currentRow;
+
+    public WindowFunction(int type, Aggregate aggregate, Select select) {
+        this.type = type;
+        this.aggregate = aggregate;
+        this.select = select;
+    }
+
+    public void setPartitionBy(ArrayList<Expression> partitionBy) {
+        this.partitionBy = partitionBy;
+    }
+
+    public void setOrderBy(ArrayList<SelectOrderBy> orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * Set the window frame. For RANGE frames, only UNBOUNDED and CURRENT ROW
+     * bounds are supported.
+     *
+     * @param rows true for ROWS, false for RANGE
+     * @param start the start bound type
+     * @param startOffset the start offset, or null
+     * @param end the end bound type
+     * @param endOffset the end offset, or null
+     */
+    public void setFrame(boolean rows, int start, Expression startOffset, int end, Expression endOffset) {
+        if (!rows && (startOffset != null || endOffset != null)) {
+            throw DbException.getUnsupportedException("RANGE with offset");
+        }
+        this.frame = true;
+        this.frameRows = rows;
+        this.frameStart = start;
+        this.frameStartOffset = startOffset;
+        this.frameEnd = end;
+        this.frameEndOffset = endOffset;
+    }
+
+    /**
+     * Start a new query: remove the rows and values of the previous run.
+     */
+    public void reset() {
+        keys.clear();
+        values = null;
+        currentRow = 0;
+    }
+
+    /**
+     * Add the current row of the query. The rows are numbered in the order
+     * they are added, starting with 0.
+     *
+     * @param session the session
+     */
+    public void addRow(Session session) {
+        int p = getPartitionCount(), o = getOrderCount();
+        Value[] k = new Value[p + o + 1];
+        for (int i = 0; i < p; i++) {
+            k[i] = partitionBy.get(i).getValue(session);
+        }
+        for (int i = 0; i < o; i++) {
+            k[p + i] = orderBy.get(i).expression.getValue(session);
+        }
+        k[p + o] = ValueInt.get(keys.size());
+        keys.add(k);
+    }
+
+    /**
+     * Set the row that is returned by getValue.
+     *
+     * @param row the row number
+     */
+    public void setCurrentRow(int row) {
+        this.currentRow = row;
+    }
+
+    /**
+     * Calculate the values for all rows that were added. To evaluate the
+     * aggregate, the query row of each row of the frame is restored using
+     * the select.
+     *
+     * @param session the session
+     */
+    public void computeValues(Session session) {
+        int n = keys.size();
+        values = new Value[n];
+        if (n == 0) {
+            return;
+        }
+        int p = getPartitionCount(), o = getOrderCount();
+        int[] index = new int[p + o + 1];
+        int[] sortTypes = new int[p + o + 1];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+        for (int i = 0; i < o; i++) {
+            SelectOrderBy ob = orderBy.get(i);
+            int t = ob.descending ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+            if (ob.nullsFirst) {
+                t += SortOrder.NULLS_FIRST;
+            } else if (ob.nullsLast) {
+                t += SortOrder.NULLS_LAST;
+            }
+            sortTypes[p + i] = t;
+        }
+        SortOrder sort = new SortOrder(session.getDatabase(), index, sortTypes, null);
+        int[] partitionIndex = new int[p];
+        System.arraycopy(index, 0, partitionIndex, 0, p);
+        SortOrder partitionSort = new SortOrder(session.getDatabase(), partitionIndex, new int[p], null);
+        int[] peerIndex = new int[o];
+        int[] peerTypes = new int[o];
+        System.arraycopy(index, p, peerIndex, 0, o);
+        System.arraycopy(sortTypes, p, peerTypes, 0, o);
+        SortOrder peerSort = new SortOrder(session.getDatabase(), peerIndex, peerTypes, null);
+        ArrayList<Value[]> sorted = New.arrayList(keys);
+        sort.sort(sorted);
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = sorted.get(i)[p + o].getInt();
+        }
+        for (int start = 0; start < n;) {
+            int end = start + 1;
+            while (end < n && partitionSort.compare(sorted.get(start), sorted.get(end)) == 0) {
+                end++;
+            }
+            if (type == AGGREGATE) {
+                computeAggregate(session, sorted, rows, start, end, peerSort);
+            } else {
+                computeRank(sorted, rows, start, end, peerSort);
+            }
+            start = end;
+        }
+    }
+
+    private void computeRank(ArrayList<Value[]> sorted, int[] rows, int start, int end, SortOrder peerSort) {
+        long rank = 1, denseRank = 1;
+        for (int i = start; i < end; i++) {
+            if (i > start && peerSort.compare(sorted.get(i - 1), sorted.get(i)) != 0) {
+                rank = i - start + 1;
+                denseRank++;
+            }
+            long v;
+            switch (type) {
+            case ROW_NUMBER:
+                v = i - start + 1;
+                break;
+            case RANK:
+                v = rank;
+                break;
+            default:
+                v = denseRank;
+            }
+            values[rows[i]] = ValueLong.get(v);
+        }
+    }
+
+    private void computeAggregate(Session session, ArrayList<Value[]> sorted, int[] rows, int start, int end,
+            SortOrder peerSort) {
+        boolean rowFrame;
+        int startType, endType;
+        long startOffset = 0, endOffset = 0;
+        if (frame) {
+            rowFrame = frameRows;
+            startType = frameStart;
+            endType = frameEnd;
+            startOffset = getOffset(session, frameStartOffset);
+            endOffset = getOffset(session, frameEndOffset);
+        } else if (orderBy != null) {
+            rowFrame = false;
+            startType = UNBOUNDED_PRECEDING;
+            endType = CURRENT_ROW;
+        } else {
+            rowFrame = true;
+            startType = UNBOUNDED_PRECEDING;
+            endType = UNBOUNDED_FOLLOWING;
+        }
+        // the first and last row of the peer group of each row
+        int[] peerStart = null, peerEnd = null;
+        if (!rowFrame) {
+            int len = end - start;
+            peerStart = new int[len];
+            peerEnd = new int[len];
+            for (int i = start; i < end; i++) {
+                boolean newPeer = i == start || peerSort.compare(sorted.get(i - 1), sorted.get(i)) != 0;
+                peerStart[i - start] = newPeer ? i : peerStart[i - start - 1];
+            }
+            for (int i = end - 1; i >= start; i--) {
+                boolean newPeer = i == end - 1 || peerSort.compare(sorted.get(i), sorted.get(i + 1)) != 0;
+                peerEnd[i - start] = newPeer ? i : peerEnd[i - start + 1];
+            }
+        }
+        // distinct aggregates can not be read more than once
+        boolean incremental = !aggregate.isDistinct();
+        if (incremental && startType == UNBOUNDED_PRECEDING) {
+            // the frame only grows: add the rows while moving forward
+            HashMap<Expression, Object> data = New.hashMap();
+            int last = start - 1;
+            for (int i = start; i < end; i++) {
+                int fe = getBound(endType, endOffset, i, start, end, peerStart, peerEnd, false);
+                while (last < fe) {
+                    addFrameRow(session, data, rows[++last]);
+                }
+                values[rows[i]] = getFrameValue(session, data, rows[i]);
+            }
+        } else if (incremental && endType == UNBOUNDED_FOLLOWING) {
+            // the frame only shrinks: add the rows while moving backward
+            HashMap<Expression, Object> data = New.hashMap();
+            int first = end;
+            for (int i = end - 1; i >= start; i--) {
+                int fs = getBound(startType, startOffset, i, start, end, peerStart, peerEnd, true);
+                while (first > fs) {
+                    addFrameRow(session, data, rows[--first]);
+                }
+                values[rows[i]] = getFrameValue(session, data, rows[i]);
+            }
+        } else {
+            int lastStart = -1, lastEnd = -1;
+            Value last = null;
+            for (int i = start; i < end; i++) {
+                int fs = getBound(startType, startOffset, i, start, end, peerStart, peerEnd, true);
+                int fe = getBound(endType, endOffset, i, start, end, peerStart, peerEnd, false);
+                if (last == null || fs != lastStart || fe != lastEnd || !incremental) {
+                    HashMap<Expression, Object> data = New.hashMap();
+                    for (int j = fs; j <= fe; j++) {
+                        addFrameRow(session, data, rows[j]);
+                    }
+                    last = getFrameValue(session, data, rows[i]);
+                    lastStart = fs;
+                    lastEnd = fe;
+                }
+                values[rows[i]] = last;
+            }
+        }
+    }
+
+    private static long getOffset(Session session, Expression offset) {
+        if (offset == null) {
+            return 0;
+        }
+        Value v = offset.getValue(session);
+        long x = v == ValueNull.INSTANCE ? -1 : v.getLong();
+        if (x < 0) {
+            throw DbException.getInvalidValueException("frame offset", v.getString());
+        }
+        return x;
+    }
+
+    /**
+     * Get the position of the first or last row of the frame of the given
+     * row, within the sorted rows. The result may be outside of the
+     * partition if the frame is empty.
+     */
+    private static int getBound(int boundType, long offset, int i, int start, int end, int[] peerStart,
+            int[] peerEnd, boolean isStart) {
+        long x;
+        switch (boundType) {
+        case UNBOUNDED_PRECEDING:
+            x = start;
+            break;
+        case PRECEDING:
+            x = i - offset;
+            break;
+        case CURRENT_ROW:
+            if (peerStart == null) {
+                x = i;
+            } else {
+                x = isStart ? peerStart[i - start] : peerEnd[i - start];
+            }
+            break;
+        case FOLLOWING:
+            x = i + offset;
+            break;
+        case UNBOUNDED_FOLLOWING:
+            x = end - 1;
+            break;
+        default:
+            throw DbException.throwInternalError("type=" + boundType);
+        }
+        if (isStart) {
+            return (int) Math.max(start, Math.min(x, end));
+        }
+        return (int) Math.min(end - 1, Math.max(x, start - 1));
+    }
+
+    private void addFrameRow(Session session, HashMap<Expression, Object> data, int row) {
+        HashMap<Expression, Object> group = select.restoreWindowRow(row);
+        HashMap<Expression, Object> frameGroup = group == null ? data : new HashMap<Expression, Object>(group);
+        frameGroup.put(aggregate, data.get(aggregate));
+        select.setCurrentGroup(frameGroup);
+        aggregate.updateAggregate(session);
+        data.put(aggregate, frameGroup.get(aggregate));
+        select.setCurrentGroup(group);
+    }
+
+    private Value getFrameValue(Session session, HashMap<Expression, Object> data, int row) {
+        HashMap<Expression, Object> group = select.restoreWindowRow(row);
+        HashMap<Expression, Object> frameGroup = group == null ? data : new HashMap<Expression, Object>(group);
+        frameGroup.put(aggregate, data.get(aggregate));
+        select.setCurrentGroup(frameGroup);
+        try {
+            return aggregate.getValue(session).convertTo(aggregate.getType());
+        } finally {
+            select.setCurrentGroup(group);
+        }
+    }
+
+    private int getPartitionCount() {
+        return partitionBy == null ? 0 : partitionBy.size();
+    }
+
+    private int getOrderCount() {
+        return orderBy == null ? 0 : orderBy.size();
+    }
+
+    @Override
+    public Value getValue(Session session) {
+        if (values == null) {
+            // the rows are still being collected
+            return ValueNull.INSTANCE;
+        }
+        return values[currentRow];
+    }
+
+    @Override
+    public int getType() {
+        return type == AGGREGATE ? aggregate.getType() : Value.LONG;
+    }
+
+    @Override
+    public void mapColumns(ColumnResolver resolver, int level) {
+        if (aggregate != null) {
+            aggregate.mapColumns(resolver, level);
+        }
+        if (partitionBy != null) {
+            for (Expression e : partitionBy) {
+                e.mapColumns(resolver, level);
+            }
+        }
+        if (orderBy != null) {
+            for (SelectOrderBy o : orderBy) {
+                o.expression.mapColumns(resolver, level);
+            }
+        }
+        if (frameStartOffset != null) {
+            frameStartOffset.mapColumns(resolver, level);
+        }
+        if (frameEndOffset != null) {
+            frameEndOffset.mapColumns(resolver, level);
+        }
+    }
+
+    @Override
+    public Expression optimize(Session session) {
+        if (aggregate != null) {
+            aggregate.optimize(session);
+        }
+        if (partitionBy != null) {
+            for (int i = 0; i < partitionBy.size(); i++) {
+                partitionBy.set(i, partitionBy.get(i).optimize(session));
+            }
+        }
+        if (orderBy != null) {
+            for (SelectOrderBy o : orderBy) {
+                o.expression = o.expression.optimize(session);
+            }
+        }
+        if (frameStartOffset != null) {
+            frameStartOffset = frameStartOffset.optimize(session);
+        }
+        if (frameEndOffset != null) {
+            frameEndOffset = frameEndOffset.optimize(session);
+        }
+        return this;
+    }
+
+    @Override
+    public void setEvaluatable(TableFilter tableFilter, boolean b) {
+        if (aggregate != null) {
+            aggregate.setEvaluatable(tableFilter, b);
+        }
+        if (partitionBy != null) {
+            for (Expression e : partitionBy) {
+                e.setEvaluatable(tableFilter, b);
+            }
+        }
+        if (orderBy != null) {
+            for (SelectOrderBy o : orderBy) {
+                o.expression.setEvaluatable(tableFilter, b);
+            }
+        }
+    }
+
+    @Override
+    public int getScale() {
+        return type == AGGREGATE ? aggregate.getScale() : 0;
+    }
+
+    @Override
+    public long getPrecision() {
+        return type == AGGREGATE ? aggregate.getPrecision() : ValueLong.PRECISION;
+    }
+
+    @Override
+    public int getDisplaySize() {
+        return type == AGGREGATE ? aggregate.getDisplaySize() : ValueLong.DISPLAY_SIZE;
+    }
+
+    @Override
+    public String getSQL() {
+        StringBuilder buff = new StringBuilder();
+        switch (type) {
+        case ROW_NUMBER:
+            buff.append("ROW_NUMBER()");
+            break;
+        case RANK:
+            buff.append("RANK()");
+            break;
+        case DENSE_RANK:
+            buff.append("DENSE_RANK()");
+            break;
+        default:
+            buff.append(aggregate.getSQL());
+        }
+        buff.append(" OVER (");
+        boolean space = false;
+        if (partitionBy != null) {
+            StatementBuilder b = new StatementBuilder("PARTITION BY ");
+            for (Expression e : partitionBy) {
+                b.appendExceptFirst(", ");
+                b.append(e.getSQL());
+            }
+            buff.append(b.toString());
+            space = true;
+        }
+        if (orderBy != null) {
+            if (space) {
+                buff.append(' ');
+            }
+            StatementBuilder b = new StatementBuilder("ORDER BY ");
+            for (SelectOrderBy o : orderBy) {
+                b.appendExceptFirst(", ");
+                b.append(o.expression.getSQL());
+                if (o.descending) {
+                    b.append(" DESC");
+                }
+                if (o.nullsFirst) {
+                    b.append(" NULLS FIRST");
+                } else if (o.nullsLast) {
+                    b.append(" NULLS LAST");
+                }
+            }
+            buff.append(b.toString());
+            space = true;
+        }
+        if (frame) {
+            if (space) {
+                buff.append(' ');
+            }
+            buff.append(frameRows ? "ROWS BETWEEN " : "RANGE BETWEEN ").
+                append(getBoundSQL(frameStart, frameStartOffset)).
+                append(" AND ").
+                append(getBoundSQL(frameEnd, frameEndOffset));
+        }
+        return buff.append(')').toString();
+    }
+
+    private static String getBoundSQL(int boundType, Expression offset) {
+        switch (boundType) {
+        case UNBOUNDED_PRECEDING:
+            return "UNBOUNDED PRECEDING";
+        case PRECEDING:
+            return offset.getSQL() + " PRECEDING";
+        case CURRENT_ROW:
+            return "CURRENT ROW";
+        case FOLLOWING:
+            return offset.getSQL() + " FOLLOWING";
+        default:
+            return "UNBOUNDED FOLLOWING";
+        }
+    }
+
+    @Override
+    public void updateAggregate(Session session) {
+        // the aggregate itself is calculated when the window is computed,
+        // but the referenced columns must be known within the group
+        if (aggregate != null && aggregate.getOn() != null) {
+            aggregate.getOn().updateAggregate(session);
+        }
+        if (partitionBy != null) {
+            for (Expression e : partitionBy) {
+                e.updateAggregate(session);
+            }
+        }
+        if (orderBy != null) {
+            for (SelectOrderBy o : orderBy) {
+                o.expression.updateAggregate(session);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEverything(ExpressionVisitor visitor) {
+        switch (visitor.getType()) {
+        case ExpressionVisitor.OPTIMIZABLE_MIN_MAX_COUNT_ALL:
+        case ExpressionVisitor.QUERY_COMPARABLE:
+            return false;
+        case ExpressionVisitor.NO_WINDOW_FUNCTION:
+            // window functions of subqueries are evaluated by the subquery
+            return visitor.getQueryLevel() > 0;
+        default:
+        }
+        if (aggregate != null && !aggregate.isEverything(visitor)) {
+            return false;
+        }
+        if (partitionBy != null) {
+            for (Expression e : partitionBy) {
+                if (!e.isEverything(visitor)) {
+                    return false;
+                }
+            }
+        }
+        if (orderBy != null) {
+            for (SelectOrderBy o : orderBy) {
+                if (!o.expression.isEverything(visitor)) {
+                    return false;
+                }
+            }
+        }
+        if (frameStartOffset != null && !frameStartOffset.isEverything(visitor)) {
+            return false;
+        }
+        if (frameEndOffset != null && !frameEndOffset.isEverything(visitor)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int getCost() {
+        int cost = 1;
+        if (aggregate != null) {
+            cost += aggregate.getCost();
+        }
+        if (partitionBy != null) {
+            for (Expression e : partitionBy) {
+                cost += e.getCost();
+            }
+        }
+        if (orderBy != null) {
+            for (SelectOrderBy o : orderBy) {
+                cost += o.expression.getCost();
+            }
+        }
+        return cost;
+    }
+
+}
@@ -6,6 +6,7 @@
  */
 package org.h2.index;
 
+import java.util.HashSet;
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Constants;
 import org.h2.engine.DbObject;
@@ -335,12 +336,54 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
     private String getColumnListSQL() {
         StatementBuilder buff = new StatementBuilder();
         for (IndexColumn c : indexColumns) {
-            buff.appendExceptFirst(", ");
-            buff.append(c.getSQL());
+            if (!c.include) {
+                buff.appendExceptFirst(", ");
+                buff.append(c.getSQL());
+            }
         }
         return buff.toString();
     }
 
+    /**
+     * Get the list of included columns as a string.
+     *
+     * @return the list of included columns, or null if there are none
+     */
+    private String getIncludeColumnListSQL() {
+        StatementBuilder buff = null;
+        for (IndexColumn c : indexColumns) {
+            if (c.include) {
+                if (buff == null) {
+                    buff = new StatementBuilder();
+                }
+                buff.appendExceptFirst(", ");
+                buff.append(c.column.getSQL());
+            }
+        }
+        return buff == null ? null : buff.toString();
+    }
+
+    /**
+     * Check if all columns of this table that are used by the query are
+     * stored in the index entries. If yes, the rows don't need to be read
+     * when using this index.
+     *
+     * @param filter the table filter
+     * @return true if the index covers all used columns
+     */
+    protected boolean isCovering(TableFilter filter) {
+        HashSet<Column> usedColumns = filter == null ? null : filter.getUsedColumns();
+        if (usedColumns == null) {
+            return false;
+        }
+        for (Column c : usedColumns) {
+            if (c.getTable() == table && c.getColumnId() >= 0 && getColumnIndex(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public String getCreateSQLForCopy(Table targetTable, String quotedName) {
         StringBuilder buff = new StringBuilder("CREATE ");
@@ -355,6 +398,14 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
             buff.append(" COMMENT ").append(StringUtils.quoteStringSQL(comment));
         }
         buff.append('(').append(getColumnListSQL()).append(')');
+        String include = getIncludeColumnListSQL();
+        if (include != null) {
+            buff.append(" INCLUDE(").append(include).append(')');
+        }
+        PartialIndexCondition condition = indexType.getCondition();
+        if (condition != null && condition.getSQL() != null) {
+            buff.append(" WHERE ").append(condition.getSQL());
+        }
         return buff.toString();
     }
 
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.value.Value;
+
+/**
+ * The cursor implementation for the block range index. It reads the rows of
+ * all blocks that may contain matching rows, in the order of the row key.
+ */
+class BlockRangeCursor implements Cursor {
+
+    private final Session session;
+    private final BlockRangeIndex index;
+    private final Iterator<Map.Entry<Long, Value>> blocks;
+    private final Value min, max;
+    private Cursor cursor;
+
+    BlockRangeCursor(Session session, BlockRangeIndex index,
+            Iterator<Map.Entry<Long, Value>> blocks, Value min, Value max) {
+        this.session = session;
+        this.index = index;
+        this.blocks = blocks;
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public Row get() {
+        return cursor == null ? null : cursor.get();
+    }
+
+    @Override
+    public SearchRow getSearchRow() {
+        return cursor == null ? null : cursor.getSearchRow();
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            if (cursor != null && cursor.next()) {
+                return true;
+            }
+            cursor = null;
+            if (!blocks.hasNext()) {
+                return false;
+            }
+            Map.Entry<Long, Value> e = blocks.next();
+            if (index.isMatch(e.getValue(), min, max)) {
+                cursor = index.findBlock(session, e.getKey());
+            }
+        }
+    }
+
+    @Override
+    public boolean previous() {
+        throw DbException.throwInternalError();
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+
+import org.h2.engine.Constants;
+import org.h2.engine.Session;
+import org.h2.expression.Comparison;
+import org.h2.message.DbException;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.db.MVPrimaryIndex;
+import org.h2.mvstore.db.ValueDataType;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+import org.h2.value.ValueArray;
+import org.h2.value.ValueBoolean;
+import org.h2.value.ValueNull;
+
+/**
+ * A block range index. The rows of the table are split into blocks of
+ * consecutive row keys, and for each block only the smallest and the largest
+ * value of the indexed column is stored, plus whether the block contains NULL.
+ * A lookup reads all rows of the blocks whose range may contain matching rows,
+ * using a key range scan of the table. Rows are removed from the index lazily:
+ * the range of a block is never narrowed, so the index may return rows that
+ * don't match the condition.
+ * <p>
+ * The index is very small and cheap to maintain, and works well if the values
+ * of the column grow with the row key, for example for time stamps of an
+ * append-only log table.
+ * <p>
+ * For MVStore tables, the ranges are stored in a map of the store. For page
+ * store tables, they are kept in memory, and built when the index is used for
+ * the first time, so that opening the database doesn't read the table.
+ */
+public class BlockRangeIndex extends BaseIndex {
+
+    /**
+     * The number of bits of the row key that are used for the position within
+     * a block (the block size is 1024 rows).
+     */
+    static final int BLOCK_SHIFT = 10;
+
+    private static final String MAP_PREFIX = "blockRange.";
+
+    private final int columnId;
+    private final MVStore store;
+    private final MVMap<Long, Value> map;
+    private final boolean persistent;
+    private boolean needRebuild;
+    private boolean built;
+
+    /**
+     * Create a new block range index.
+     *
+     * @param table the table
+     * @param id the index id
+     * @param indexName the index name
+     * @param columns the indexed columns (only one column allowed)
+     * @param indexType the index type
+     * @param store the store of the table, or null to keep the index in memory
+     * @param create whether to create a new index
+     */
+    public BlockRangeIndex(Table table, int id, String indexName,
+            IndexColumn[] columns, IndexType indexType, MVStore store,
+            boolean create) {
+        if (columns.length != 1) {
+            throw DbException.getUnsupportedException("block range indexes may index only one column");
+        }
+        if ((columns[0].sortType & SortOrder.DESCENDING) != 0) {
+            throw DbException.getUnsupportedException("cannot do descending");
+        }
+        initBaseIndex(table, id, indexName, columns, indexType);
+        if (!database.isStarting()) {
+            checkIndexColumnTypes(columns);
+        }
+        columnId = columns[0].column.getColumnId();
+        MVMap.Builder<Long, Value> builder = new MVMap.Builder<Long, Value>().
+                valueType(new ValueDataType(null, null, null));
+        if (store == null) {
+            // the ranges are built when the index is used
+            this.store = MVStore.open(null);
+            map = this.store.openMap("blockRange", builder);
+            persistent = false;
+        } else {
+            this.store = store;
+            map = store.openMap(MAP_PREFIX + getId(), builder);
+            persistent = true;
+            if (create) {
+                map.clear();
+            }
+            needRebuild = map.isEmpty();
+            built = true;
+        }
+    }
+
+    @Override
+    public void close(Session session) {
+        if (!persistent) {
+            store.close();
+        }
+    }
+
+    @Override
+    public synchronized void add(Session session, Row row) {
+        if (!built) {
+            // the row is read when the ranges are built
+            return;
+        }
+        Long block = row.getKey() >> BLOCK_SHIFT;
+        Value v = row.getValue(columnId);
+        ValueArray old = (ValueArray) map.get(block);
+        Value min, max;
+        boolean hasNull;
+        if (old == null) {
+            min = max = v;
+            hasNull = v == ValueNull.INSTANCE;
+        } else {
+            Value[] range = old.getList();
+            min = range[0];
+            max = range[1];
+            hasNull = range[2].getBoolean().booleanValue();
+            if (v == ValueNull.INSTANCE) {
+                if (hasNull) {
+                    return;
+                }
+                hasNull = true;
+            } else if (min == ValueNull.INSTANCE) {
+                min = max = v;
+            } else if (table.compareTypeSave(v, min) < 0) {
+                min = v;
+            } else if (table.compareTypeSave(v, max) > 0) {
+                max = v;
+            } else {
+                return;
+            }
+        }
+        map.put(block, ValueArray.get(new Value[] { min, max, ValueBoolean.get(hasNull) }));
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        // the range of the block is not narrowed
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        Index scan = getKeyRangeIndex(session);
+        if (scan == null) {
+            return table.getScanIndex(session).find(session, null, null);
+        }
+        if (!built) {
+            build(session, scan);
+        }
+        Value min = first == null ? null : first.getValue(columnId);
+        Value max = last == null ? null : last.getValue(columnId);
+        return new BlockRangeCursor(session, this, map.entrySet().iterator(), min, max);
+    }
+
+    /**
+     * Build the ranges of the blocks from all rows of the table.
+     *
+     * @param session the session
+     * @param scan the scan index of the table
+     */
+    private synchronized void build(Session session, Index scan) {
+        if (built) {
+            return;
+        }
+        built = true;
+        try {
+            Cursor cursor = scan.find(session, null, null);
+            while (cursor.next()) {
+                add(session, cursor.get());
+            }
+        } catch (DbException e) {
+            map.clear();
+            built = false;
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether a block may contain rows in the given range.
+     *
+     * @param range the range of the block
+     * @param min the lower bound, or null
+     * @param max the upper bound, or null
+     * @return true if the rows of the block need to be read
+     */
+    boolean isMatch(Value range, Value min, Value max) {
+        if (min == null && max == null) {
+            return true;
+        }
+        Value[] list = ((ValueArray) range).getList();
+        if (min == ValueNull.INSTANCE && max == ValueNull.INSTANCE) {
+            // IS NULL
+            return list[2].getBoolean().booleanValue();
+        }
+        if (list[0] == ValueNull.INSTANCE) {
+            // the block only contains NULL
+            return false;
+        }
+        if (min != null && min != ValueNull.INSTANCE && table.compareTypeSave(list[1], min) < 0) {
+            return false;
+        }
+        if (max != null && max != ValueNull.INSTANCE && table.compareTypeSave(list[0], max) > 0) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read all rows of a block.
+     *
+     * @param session the session
+     * @param block the block
+     * @return the cursor
+     */
+    Cursor findBlock(Session session, long block) {
+        long first = block << BLOCK_SHIFT;
+        long last = first + (1 << BLOCK_SHIFT) - 1;
+        Index scan = getKeyRangeIndex(session);
+        if (scan instanceof PageDataIndex) {
+            return ((PageDataIndex) scan).find(session, first, last, false);
+        }
+        return ((MVPrimaryIndex) scan).find(session, first, last);
+    }
+
+    /**
+     * Get the scan index of the table if it supports reading a range of row
+     * keys. The scan index of in-memory tables, and the scan index of
+     * persistent tables if MVCC is used with the page store, read all rows
+     * instead, so the index can not be used to skip blocks.
+     *
+     * @param session the session
+     * @return the scan index, or null
+     */
+    private Index getKeyRangeIndex(Session session) {
+        Index scan = table.getScanIndex(session);
+        if (scan instanceof PageDataIndex && !database.isMultiVersion()) {
+            return scan;
+        } else if (scan instanceof MVPrimaryIndex) {
+            return scan;
+        }
+        return null;
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
+        if (masks == null || getKeyRangeIndex(session) == null) {
+            return Long.MAX_VALUE;
+        }
+        Column column = columns[0];
+        int mask = masks[columnId];
+        long rowCount = table.getRowCountApproximation();
+        long rows;
+        if ((mask & IndexCondition.EQUALITY) == IndexCondition.EQUALITY) {
+            if (filter != null && isInListOnly(filter.getIndexConditions(), column)) {
+                // each value of an IN(..) list could match the same block
+                return Long.MAX_VALUE;
+            }
+            // the rows with the same value are expected
+            // to be in the same or in neighbouring blocks
+            long distinctRows = rowCount * column.getSelectivity() / 100;
+            rows = rowCount / Math.max(distinctRows, 1) + (2 << BLOCK_SHIFT);
+        } else if ((mask & IndexCondition.RANGE) == IndexCondition.RANGE) {
+            rows = rowCount / 4 + (2 << BLOCK_SHIFT);
+        } else if ((mask & (IndexCondition.START | IndexCondition.END)) != 0) {
+            rows = rowCount / 3 + (1 << BLOCK_SHIFT);
+        } else {
+            return Long.MAX_VALUE;
+        }
+        long blocks = built ? map.size() : (rowCount >> BLOCK_SHIFT) + 1;
+        return Math.min(rows, rowCount) + blocks + Constants.COST_ROW_OFFSET;
+    }
+
+    private static boolean isInListOnly(ArrayList<IndexCondition> conditions, Column column) {
+        for (IndexCondition c : conditions) {
+            if (c.getColumn() == column) {
+                int type = c.getCompareType();
+                if (type != Comparison.IN_LIST && type != Comparison.IN_QUERY) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void remove(Session session) {
+        if (persistent) {
+            if (!map.isClosed()) {
+                map.removeMap();
+            }
+        } else {
+            store.close();
+        }
+    }
+
+    @Override
+    public synchronized void truncate(Session session) {
+        map.clear();
+        built = true;
+    }
+
+    @Override
+    public void checkRename() {
+        // nothing to do
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return needRebuild;
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("BLOCK");
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return table.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return table.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+}
@@ -23,7 +23,7 @@ public class FunctionCursorResultSet implements Cursor {
 
     private final Session session;
     private final ResultSet result;
-    private final ResultSetMetaData meta;
+    private final int[] types;
     private Value[] values;
     private Row row;
 
@@ -31,7 +31,13 @@ public class FunctionCursorResultSet implements Cursor {
         this.session = session;
         this.result = result;
         try {
-            this.meta = result.getMetaData();
+            // the column types are only read once, not once per row
+            ResultSetMetaData meta = result.getMetaData();
+            int columnCount = meta.getColumnCount();
+            types = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                types[i] = DataType.convertSQLTypeToValueType(meta.getColumnType(i + 1));
+            }
         } catch (SQLException e) {
             throw DbException.convert(e);
         }
@@ -58,11 +64,10 @@ public class FunctionCursorResultSet implements Cursor {
         row = null;
         try {
             if (result != null && result.next()) {
-                int columnCount = meta.getColumnCount();
+                int columnCount = types.length;
                 values = new Value[columnCount];
                 for (int i = 0; i < columnCount; i++) {
-                    int type = DataType.convertSQLTypeToValueType(meta.getColumnType(i + 1));
-                    values[i] = DataType.readValue(session, result, i+1, type);
+                    values[i] = DataType.readValue(session, result, i + 1, types[i]);
                 }
             } else {
                 values = null;
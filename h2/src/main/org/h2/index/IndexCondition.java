@@ -14,6 +14,7 @@ import java.util.List;
 import org.h2.command.dml.Query;
 import org.h2.engine.Session;
 import org.h2.expression.Comparison;
+import org.h2.expression.ConditionInParameterSet;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
 import org.h2.expression.ExpressionVisitor;
@@ -75,6 +76,10 @@ public class IndexCondition {
     private final Expression expression;
     private List<Expression> expressionList;
     private Query expressionQuery;
+    private int expressionListFixed;
+    private Value[] lastValueList;
+    private Session lastSession;
+    private int lastExecutionId;
 
     /**
      * @param compareType the comparison type, see constants in {@link Comparison}
@@ -143,6 +148,34 @@ public class IndexCondition {
      * @return the value list
      */
     public Value[] getCurrentValueList(Session session) {
+        if (isExpressionListFixed()) {
+            // the values can not change while the statement is running,
+            // so the sorted list is only built once per execution
+            int executionId = session.getCommandExecutionId();
+            if (lastValueList == null || lastSession != session || lastExecutionId != executionId) {
+                lastValueList = getValueList(session);
+                lastSession = session;
+                lastExecutionId = executionId;
+            }
+            return lastValueList;
+        }
+        return getValueList(session);
+    }
+
+    private boolean isExpressionListFixed() {
+        if (expressionListFixed == 0) {
+            expressionListFixed = 1;
+            for (Expression e : expressionList) {
+                if (!ConditionInParameterSet.isFixedPerExecution(e)) {
+                    expressionListFixed = -1;
+                    break;
+                }
+            }
+        }
+        return expressionListFixed > 0;
+    }
+
+    private Value[] getValueList(Session session) {
         HashSet<Value> valueSet = new HashSet<Value>();
         for (Expression e : expressionList) {
             Value v = e.getValue(session);
@@ -340,6 +373,15 @@ public class IndexCondition {
         return column;
     }
 
+    /**
+     * Get the expression the column is compared with.
+     *
+     * @return the expression, or null for IN lists and IN queries
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
     /**
      * Check if the expression can be evaluated.
      *
@@ -56,7 +56,7 @@ public class IndexCursor implements Cursor {
         this.index = index;
         this.table = index.getTable();
         Column[] columns = table.getColumns();
-        indexColumns = new IndexColumn[columns.length];
+        indexColumns = new IndexColumn[table.getSearchColumnCount()];
         IndexColumn[] idxCols = index.getIndexColumns();
         if (idxCols != null) {
             for (int i = 0, len = columns.length; i < len; i++) {
@@ -65,6 +65,11 @@ public class IndexCursor implements Cursor {
                     indexColumns[i] = idxCols[idx];
                 }
             }
+            for (IndexColumn c : idxCols) {
+                if (c != null && c.column != null && c.column.isIndexExpression()) {
+                    indexColumns[c.column.getColumnId()] = c;
+                }
+            }
         }
     }
 
@@ -83,6 +88,11 @@ public class IndexCursor implements Cursor {
         inResult = null;
         inResultTested = null;
         intersects = null;
+        if (index instanceof MultiIndex) {
+            // the index uses the conditions for each of its index lookups
+            cursor = ((MultiIndex) index).find(tableFilter, indexConditions);
+            return;
+        }
         // don't use enhanced for loop to avoid creating objects
         for (int i = 0, size = indexConditions.size(); i < size; i++) {
             IndexCondition condition = indexConditions.get(i);
@@ -166,6 +176,10 @@ public class IndexCursor implements Cursor {
             // only one IN(..) condition can be used at the same time
             return false;
         }
+        if (index instanceof BlockRangeIndex) {
+            // multiple values could match the same block
+            return false;
+        }
         // The first column of the index must match this column,
         // or it must be a VIEW index (where the column is null).
         // Multiple IN conditions with views are not supported, see
@@ -180,7 +194,7 @@ public class IndexCursor implements Cursor {
 
     private SearchRow getSpatialSearchRow(SearchRow row, int columnId, Value v) {
         if (row == null) {
-            row = table.getTemplateRow();
+            row = table.getTemplateSimpleRow(false);
         } else if (row.getValue(columnId) != null) {
             // if an object needs to overlap with both a and b,
             // then it needs to overlap with the the union of a and b
@@ -198,7 +212,7 @@ public class IndexCursor implements Cursor {
 
     private SearchRow getSearchRow(SearchRow row, int columnId, Value v, boolean max) {
         if (row == null) {
-            row = table.getTemplateRow();
+            row = table.getTemplateSimpleRow(false);
         } else {
             v = getMax(row.getValue(columnId), v, max);
         }
@@ -308,7 +322,7 @@ public class IndexCursor implements Cursor {
         v = inColumn.convert(v);
         int id = inColumn.getColumnId();
         if (start == null) {
-            start = table.getTemplateRow();
+            start = table.getTemplateSimpleRow(false);
         }
         start.setValue(id, v);
         cursor = index.find(tableFilter, start, start);
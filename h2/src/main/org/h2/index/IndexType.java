@@ -6,13 +6,16 @@
  */
 package org.h2.index;
 
+import org.h2.table.TableFilter;
+
 /**
  * Represents information about the properties of an index
  */
 public class IndexType {
 
-    private boolean primaryKey, persistent, unique, hash, scan, spatial;
+    private boolean primaryKey, persistent, unique, hash, scan, spatial, blockRange;
     private boolean belongsToConstraint;
+    private PartialIndexCondition condition;
 
     /**
      * Create a primary key index.
@@ -71,6 +74,19 @@ public class IndexType {
         return type;
     }
 
+    /**
+     * Create a block range index.
+     *
+     * @param persistent if the index is persistent
+     * @return the index type
+     */
+    public static IndexType createBlockRange(boolean persistent) {
+        IndexType type = new IndexType();
+        type.persistent = persistent;
+        type.blockRange = true;
+        return type;
+    }
+
     /**
      * Create a scan pseudo-index.
      *
@@ -103,6 +119,37 @@ public class IndexType {
         return belongsToConstraint;
     }
 
+    /**
+     * Set the condition of a partial index.
+     *
+     * @param condition the condition
+     */
+    public void setCondition(PartialIndexCondition condition) {
+        this.condition = condition;
+    }
+
+    /**
+     * Get the condition of a partial index. Only rows that match the
+     * condition are stored in the index.
+     *
+     * @return the condition, or null if all rows are stored
+     */
+    public PartialIndexCondition getCondition() {
+        return condition;
+    }
+
+    /**
+     * Check if an index of this type can be used for the given table filter.
+     * A partial index can only be used if all rows the table filter may
+     * return are stored in the index.
+     *
+     * @param filter the table filter, or null if the rows are not filtered
+     * @return true if the index can be used
+     */
+    public boolean canUse(TableFilter filter) {
+        return condition == null || condition.isImpliedBy(filter);
+    }
+
     /**
      * Is this a hash index?
      *
@@ -121,6 +168,16 @@ public class IndexType {
         return spatial;
     }
 
+    /**
+     * Is this a block range index? Such an index only stores the range of
+     * values of each block of rows, and is not sorted.
+     *
+     * @return true if it is a block range index
+     */
+    public boolean isBlockRange() {
+        return blockRange;
+    }
+
     /**
      * Is this index persistent?
      *
@@ -170,6 +227,9 @@ public class IndexType {
             if (spatial) {
                 buff.append("SPATIAL ");
             }
+            if (blockRange) {
+                buff.append("BLOCK ");
+            }
             buff.append("INDEX");
         }
         return buff.toString();
@@ -18,6 +18,7 @@ import org.h2.table.Column;
 import org.h2.table.TableLink;
 import org.h2.value.DataType;
 import org.h2.value.Value;
+import org.h2.value.ValueNull;
 
 /**
  * The cursor implementation for the linked index.
@@ -29,10 +30,24 @@ public class LinkedCursor implements Cursor {
     private final String sql;
     private final Session session;
     private final ResultSet rs;
+    private final int[] columnIds;
     private Row current;
 
-    LinkedCursor(TableLink tableLink, ResultSet rs, Session session, String sql, PreparedStatement prep) {
+    /**
+     * Create a new cursor.
+     *
+     * @param tableLink the linked table
+     * @param rs the result set of the remote query
+     * @param session the session
+     * @param sql the SQL statement
+     * @param prep the prepared statement
+     * @param columnIds the ids of the selected columns, or null if all
+     *            columns are selected
+     */
+    LinkedCursor(TableLink tableLink, ResultSet rs, Session session, String sql, PreparedStatement prep,
+            int[] columnIds) {
         this.session = session;
+        this.columnIds = columnIds;
         this.tableLink = tableLink;
         this.rs = rs;
         this.sql = sql;
@@ -63,10 +78,22 @@ public class LinkedCursor implements Cursor {
             throw DbException.convert(e);
         }
         current = tableLink.getTemplateRow();
-        for (int i = 0; i < current.getColumnCount(); i++) {
-            Column col = tableLink.getColumn(i);
-            Value v = DataType.readValue(session, rs, i + 1, col.getType());
-            current.setValue(i, v);
+        if (columnIds == null) {
+            for (int i = 0; i < current.getColumnCount(); i++) {
+                Column col = tableLink.getColumn(i);
+                Value v = DataType.readValue(session, rs, i + 1, col.getType());
+                current.setValue(i, v);
+            }
+        } else {
+            for (int i = 0; i < current.getColumnCount(); i++) {
+                current.setValue(i, ValueNull.INSTANCE);
+            }
+            for (int i = 0; i < columnIds.length; i++) {
+                int id = columnIds[i];
+                Column col = tableLink.getColumn(id);
+                Value v = DataType.readValue(session, rs, i + 1, col.getType());
+                current.setValue(id, v);
+            }
         }
         return true;
     }
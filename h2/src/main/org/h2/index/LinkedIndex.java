@@ -9,8 +9,17 @@ package org.h2.index;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.HashSet;
+import org.h2.command.dml.Select;
 import org.h2.engine.Constants;
+import org.h2.engine.Database;
 import org.h2.engine.Session;
+import org.h2.expression.Comparison;
+import org.h2.expression.ConditionAndOr;
+import org.h2.expression.ConditionInParameterSet;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionVisitor;
 import org.h2.message.DbException;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
@@ -18,9 +27,12 @@ import org.h2.result.SortOrder;
 import org.h2.table.Column;
 import org.h2.table.IndexColumn;
 import org.h2.table.TableFilter;
+import org.h2.table.TableFilter.TableFilterVisitor;
 import org.h2.table.TableLink;
 import org.h2.util.New;
 import org.h2.util.StatementBuilder;
+import org.h2.value.CompareMode;
+import org.h2.value.DataType;
 import org.h2.value.Value;
 import org.h2.value.ValueNull;
 
@@ -83,9 +95,28 @@ public class LinkedIndex extends BaseIndex {
 
     @Override
     public Cursor find(Session session, SearchRow first, SearchRow last) {
+        return find(session, null, first, last);
+    }
+
+    @Override
+    public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
+        return find(filter.getSession(), filter, first, last);
+    }
+
+    private Cursor find(Session session, TableFilter filter, SearchRow first, SearchRow last) {
         ArrayList<Value> params = New.arrayList();
-        StatementBuilder buff = new StatementBuilder("SELECT * FROM ");
-        buff.append(targetTableName).append(" T");
+        int[] columnIds = filter == null ? null : getUsedColumnIds(filter);
+        StatementBuilder buff = new StatementBuilder("SELECT ");
+        if (columnIds == null) {
+            buff.append('*');
+        } else {
+            for (int id : columnIds) {
+                buff.appendExceptFirst(", ");
+                buff.append(table.getColumn(id).getSQL());
+            }
+        }
+        buff.append(" FROM ").append(targetTableName).append(" T");
+        buff.resetCount();
         for (int i = 0; first != null && i < first.getColumnCount(); i++) {
             Value v = first.getValue(i);
             if (v != null) {
@@ -118,16 +149,183 @@ public class LinkedIndex extends BaseIndex {
                 }
             }
         }
+        if (filter != null && filter.getSelect() != null &&
+                !filter.isJoinOuter() && !filter.isJoinOuterIndirect()) {
+            addConditions(session, filter, filter.getSelect().getCondition(), buff, params);
+        }
         String sql = buff.toString();
         try {
             PreparedStatement prep = link.execute(sql, params, false);
             ResultSet rs = prep.getResultSet();
-            return new LinkedCursor(link, rs, session, sql, prep);
+            return new LinkedCursor(link, rs, session, sql, prep, columnIds);
         } catch (Exception e) {
             throw TableLink.wrapException(sql, e);
         }
     }
 
+    /**
+     * Get the ids of the columns of this table that are used by the query, so
+     * that only those columns need to be read from the remote table.
+     *
+     * @param filter the table filter
+     * @return the column ids, or null if all columns are needed
+     */
+    private int[] getUsedColumnIds(TableFilter filter) {
+        Select select = filter.getSelect();
+        if (select == null || select.isForUpdate()) {
+            // update and delete statements need the complete row
+            return null;
+        }
+        final HashSet<Column> columns = New.hashSet();
+        final ExpressionVisitor visitor = ExpressionVisitor.getColumnsVisitor(columns);
+        select.isEverything(visitor);
+        for (TableFilter f : select.getTopFilters()) {
+            f.visit(new TableFilterVisitor() {
+                @Override
+                public void accept(TableFilter f) {
+                    Expression on = f.getJoinCondition();
+                    if (on != null) {
+                        on.isEverything(visitor);
+                    }
+                }
+            });
+        }
+        Column[] tableColumns = table.getColumns();
+        ArrayList<Integer> list = New.arrayList();
+        for (int i = 0; i < tableColumns.length; i++) {
+            if (columns.contains(tableColumns[i])) {
+                list.add(i);
+            }
+        }
+        if (list.size() == tableColumns.length) {
+            return null;
+        }
+        if (list.size() == 0) {
+            // for example SELECT COUNT(*): read the first column
+            list.add(0);
+        }
+        int[] ids = new int[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = list.get(i);
+        }
+        return ids;
+    }
+
+    /**
+     * Add the simple conditions of the WHERE clause to the remote query, so
+     * that fewer rows are transferred. The conditions are still evaluated locally.
+     * Only comparisons between a column of this table and a constant or a
+     * parameter are added.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param condition the condition (may be null)
+     * @param buff the SQL statement
+     * @param params the parameter list
+     */
+    private void addConditions(Session session, TableFilter filter, Expression condition,
+            StatementBuilder buff, ArrayList<Value> params) {
+        if (condition instanceof ConditionAndOr) {
+            ConditionAndOr c = (ConditionAndOr) condition;
+            if (c.getAndOrType() == ConditionAndOr.AND) {
+                addConditions(session, filter, c.getExpression(true), buff, params);
+                addConditions(session, filter, c.getExpression(false), buff, params);
+            }
+            return;
+        }
+        if (!(condition instanceof Comparison)) {
+            return;
+        }
+        Comparison comp = (Comparison) condition;
+        int compareType = comp.getCompareType();
+        Expression left = comp.getExpression(true);
+        Expression right = comp.getExpression(false);
+        if (!(left instanceof ExpressionColumn) && right != null) {
+            Expression t = left;
+            left = right;
+            right = t;
+            compareType = getReversedCompareType(compareType);
+        }
+        if (!(left instanceof ExpressionColumn)) {
+            return;
+        }
+        ExpressionColumn l = (ExpressionColumn) left;
+        if (l.getTableFilter() != filter) {
+            return;
+        }
+        Column col = l.getColumn();
+        if (col.getType() == Value.STRING_IGNORECASE) {
+            // the remote database may compare case sensitively
+            return;
+        }
+        switch (compareType) {
+        case Comparison.IS_NULL:
+        case Comparison.IS_NOT_NULL:
+            buff.appendOnlyFirst(" WHERE ");
+            buff.appendExceptFirst(" AND ");
+            buff.append(col.getSQL()).append(compareType == Comparison.IS_NULL ? " IS NULL" : " IS NOT NULL");
+            return;
+        case Comparison.EQUAL:
+        case Comparison.BIGGER_EQUAL:
+        case Comparison.BIGGER:
+        case Comparison.SMALLER_EQUAL:
+        case Comparison.SMALLER:
+        case Comparison.NOT_EQUAL:
+            break;
+        default:
+            return;
+        }
+        if (!ConditionInParameterSet.isFixedPerExecution(right)) {
+            return;
+        }
+        Value v = right.getValue(session);
+        if (v == ValueNull.INSTANCE) {
+            return;
+        }
+        Database db = session.getDatabase();
+        if (DataType.isStringType(col.getType())) {
+            // the remote database may use a different collation, so only
+            // equality is added, and only if the local comparison is binary
+            if (compareType != Comparison.EQUAL || !DataType.isStringType(v.getType()) ||
+                    !CompareMode.OFF.equals(db.getCompareMode().getName())) {
+                return;
+            }
+        }
+        Value v2;
+        try {
+            v2 = v.convertTo(col.getType());
+        } catch (DbException e) {
+            // the condition is evaluated locally
+            return;
+        }
+        if (!db.areEqual(v, v2)) {
+            // the conversion is lossy (for example 1.5 to an INT column),
+            // so the remote condition would have a different meaning
+            return;
+        }
+        v = v2;
+        buff.appendOnlyFirst(" WHERE ");
+        buff.appendExceptFirst(" AND ");
+        buff.append(col.getSQL()).append(Comparison.getCompareOperator(compareType));
+        addParameter(buff, col);
+        params.add(v);
+    }
+
+    private static int getReversedCompareType(int compareType) {
+        switch (compareType) {
+        case Comparison.BIGGER_EQUAL:
+            return Comparison.SMALLER_EQUAL;
+        case Comparison.BIGGER:
+            return Comparison.SMALLER;
+        case Comparison.SMALLER_EQUAL:
+            return Comparison.BIGGER_EQUAL;
+        case Comparison.SMALLER:
+            return Comparison.BIGGER;
+        default:
+            return compareType;
+        }
+    }
+
     private void addParameter(StatementBuilder buff, Column col) {
         if (col.getType() == Value.STRING_FIXED && link.isOracle()) {
             // workaround for Oracle
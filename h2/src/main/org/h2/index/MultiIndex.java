@@ -0,0 +1,458 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVTable;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.RegularTable;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.util.New;
+import org.h2.util.StatementBuilder;
+
+/**
+ * An index that combines the lookups of multiple indexes of a table. The row
+ * keys of each lookup are collected and sorted, then intersected (for
+ * conditions combined with AND) or merged (for conditions combined with OR),
+ * and the rows are read in key order.
+ */
+public class MultiIndex extends BaseIndex {
+
+    /**
+     * If a table or a lookup is expected to return less rows, using another
+     * index does not pay off.
+     */
+    private static final int MIN_ROWS = 10;
+
+    private final ArrayList<Index> indexes;
+    private final ArrayList<ArrayList<IndexCondition>> alternatives;
+    private final double cost;
+
+    private MultiIndex(Table table, ArrayList<Index> indexes,
+            ArrayList<ArrayList<IndexCondition>> alternatives, double cost) {
+        ArrayList<IndexColumn> columns = New.arrayList();
+        // the union only uses the index conditions of the alternatives
+        if (alternatives == null) {
+            for (Index index : indexes) {
+                for (IndexColumn c : index.getIndexColumns()) {
+                    boolean found = false;
+                    for (IndexColumn c2 : columns) {
+                        found |= c2.column == c.column;
+                    }
+                    if (!found) {
+                        columns.add(c);
+                    }
+                }
+            }
+        }
+        initBaseIndex(table, 0, null, columns.toArray(new IndexColumn[columns.size()]),
+                IndexType.createNonUnique(false));
+        this.indexes = indexes;
+        this.alternatives = alternatives;
+        this.cost = cost;
+    }
+
+    /**
+     * Check if multiple indexes may be used for the given table filter.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @return true if yes
+     */
+    private static boolean isSupported(Session session, TableFilter filter) {
+        Database db = session.getDatabase();
+        if (!db.getSettings().optimizeMultiIndex) {
+            return false;
+        }
+        // the rows are read using the row key
+        Table table = filter.getTable();
+        if (!(table instanceof RegularTable) && !(table instanceof MVTable)) {
+            return false;
+        }
+        if (table.getRowCountApproximation() < MIN_ROWS) {
+            return false;
+        }
+        // the multi-version index of the page store decides about the
+        // visibility of the rows, not the row keys
+        return !db.isMultiVersion() || db.getMvStore() != null;
+    }
+
+    /**
+     * Get the intersection of the lookups of multiple indexes, if it is
+     * cheaper than the best plan that uses one index. Each index must use a
+     * different first column, and must use a condition that is not already
+     * used by the other indexes. The rows that match all lookups are estimated
+     * from the cost of each lookup, relative to the cost of a table scan.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param masks the comparison masks of the index conditions
+     * @param bestCost the cost of the best plan using one index
+     * @return the index, or null if it is not cheaper
+     */
+    public static MultiIndex getIntersection(Session session, TableFilter filter, int[] masks, double bestCost) {
+        if (!isSupported(session, filter)) {
+            return null;
+        }
+        Table table = filter.getTable();
+        Index scan = table.getScanIndex(session);
+        double scanCost = scan.getCost(session, null, null, null);
+        ArrayList<Index> candidates = New.arrayList();
+        ArrayList<Double> costs = New.arrayList();
+        for (Index index : table.getIndexes()) {
+            IndexType type = index.getIndexType();
+            if (index == scan || type.isScan() || type.isSpatial() || !type.canUse(filter)) {
+                continue;
+            }
+            Column[] cols = index.getColumns();
+            if (cols.length == 0 || masks[cols[0].getColumnId()] == 0) {
+                continue;
+            }
+            double c = index.getCost(session, masks, filter, null);
+            if (c < scanCost) {
+                // keep the candidates sorted by cost
+                int pos = 0;
+                while (pos < costs.size() && costs.get(pos) <= c) {
+                    pos++;
+                }
+                candidates.add(pos, index);
+                costs.add(pos, c);
+            }
+        }
+        long rowCount = table.getRowCountApproximation();
+        ArrayList<Index> used = New.arrayList();
+        HashSet<Column> usedColumns = New.hashSet();
+        // reading the keys doesn't require reading the rows,
+        // which is most of the cost of an index lookup
+        double keyCost = 0, fraction = 1, total = Double.MAX_VALUE;
+        for (int i = 0, size = candidates.size(); i < size; i++) {
+            if (used.size() > 0 && fraction * rowCount < MIN_ROWS) {
+                break;
+            }
+            Index index = candidates.get(i);
+            Column first = index.getColumns()[0];
+            boolean found = false;
+            for (Index u : used) {
+                found |= u.getColumns()[0] == first;
+            }
+            if (found) {
+                continue;
+            }
+            // for example an index on (b) after an index on (a, b)
+            // for the condition a=3 and b=5
+            ArrayList<Column> lookup = getLookupColumns(index, masks);
+            if (usedColumns.containsAll(lookup)) {
+                continue;
+            }
+            double c = costs.get(i);
+            double k = keyCost + c / 4;
+            double f = fraction * c / scanCost;
+            double t = k + scanCost * f;
+            if (used.size() > 0 && t >= total) {
+                break;
+            }
+            used.add(index);
+            usedColumns.addAll(lookup);
+            keyCost = k;
+            fraction = f;
+            if (used.size() > 1) {
+                total = t;
+            }
+        }
+        if (used.size() < 2 || total >= bestCost) {
+            return null;
+        }
+        return new MultiIndex(table, used, null, total);
+    }
+
+    /**
+     * Get the columns that are used by a lookup in the given index: the
+     * leading columns with an equality condition, and the next column if it
+     * has a range condition.
+     *
+     * @param index the index
+     * @param masks the comparison masks of the index conditions
+     * @return the columns
+     */
+    private static ArrayList<Column> getLookupColumns(Index index, int[] masks) {
+        ArrayList<Column> list = New.arrayList();
+        for (Column col : index.getColumns()) {
+            int mask = masks[col.getColumnId()];
+            if (mask == 0) {
+                break;
+            }
+            list.add(col);
+            if ((mask & IndexCondition.EQUALITY) != IndexCondition.EQUALITY) {
+                break;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the union of the lookups of the alternatives of an OR condition, if
+     * it is cheaper than the given cost. Each alternative must be able to use
+     * an index.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param alternatives the index conditions of each alternative
+     * @param bestCost the cost of the best plan without the union
+     * @return the index, or null if it is not cheaper
+     */
+    public static MultiIndex getUnion(Session session, TableFilter filter,
+            ArrayList<ArrayList<IndexCondition>> alternatives, double bestCost) {
+        if (!isSupported(session, filter)) {
+            return null;
+        }
+        Table table = filter.getTable();
+        ArrayList<Index> used = New.arrayList();
+        ArrayList<ArrayList<IndexCondition>> usedConditions = New.arrayList();
+        double total = 0;
+        for (ArrayList<IndexCondition> conditions : alternatives) {
+            int[] masks = filter.getMasks(conditions);
+            if (masks == null) {
+                // this alternative is always false
+                continue;
+            }
+            Index index = null;
+            double c = Double.MAX_VALUE;
+            for (Index idx : table.getIndexes()) {
+                IndexType type = idx.getIndexType();
+                if (type.isScan() || type.isSpatial() || !type.canUse(filter)) {
+                    continue;
+                }
+                Column[] cols = idx.getColumns();
+                if (cols.length == 0 || masks[cols[0].getColumnId()] == 0) {
+                    continue;
+                }
+                double x = idx.getCost(session, masks, filter, null);
+                if (x < c) {
+                    c = x;
+                    index = idx;
+                }
+            }
+            if (index == null) {
+                return null;
+            }
+            total += c;
+            if (total >= bestCost) {
+                return null;
+            }
+            ArrayList<IndexCondition> list = New.arrayList();
+            for (IndexCondition cond : conditions) {
+                if (cond.isEvaluatable() &&
+                        (cond.isAlwaysFalse() || index.getColumnIndex(cond.getColumn()) >= 0)) {
+                    list.add(cond);
+                }
+            }
+            used.add(index);
+            usedConditions.add(list);
+        }
+        return new MultiIndex(table, used, usedConditions, total);
+    }
+
+    /**
+     * Find the rows using the lookups of all indexes.
+     *
+     * @param filter the table filter
+     * @param conditions the index conditions of the table filter
+     * @return the cursor
+     */
+    public Cursor find(TableFilter filter, ArrayList<IndexCondition> conditions) {
+        Session session = filter.getSession();
+        long[] keys = null;
+        for (int i = 0, size = indexes.size(); i < size; i++) {
+            Index index = indexes.get(i);
+            ArrayList<IndexCondition> list;
+            if (alternatives == null) {
+                list = New.arrayList();
+                for (IndexCondition cond : conditions) {
+                    if (cond.isAlwaysFalse() || index.getColumnIndex(cond.getColumn()) >= 0) {
+                        list.add(cond);
+                    }
+                }
+            } else {
+                list = alternatives.get(i);
+            }
+            IndexCursor cursor = new IndexCursor(filter);
+            cursor.setIndex(index);
+            cursor.find(session, list);
+            long[] k = getKeys(cursor);
+            if (keys == null) {
+                keys = k;
+            } else if (alternatives == null) {
+                keys = intersect(keys, k);
+            } else {
+                keys = union(keys, k);
+            }
+            if (alternatives == null && keys.length == 0) {
+                break;
+            }
+        }
+        return new MultiIndexCursor(session, table, keys == null ? new long[0] : keys);
+    }
+
+    private static long[] getKeys(IndexCursor cursor) {
+        long[] keys = new long[16];
+        int len = 0;
+        while (cursor.next()) {
+            if (len == keys.length) {
+                keys = Arrays.copyOf(keys, len * 2);
+            }
+            keys[len++] = cursor.getSearchRow().getKey();
+        }
+        Arrays.sort(keys, 0, len);
+        int j = 0;
+        for (int i = 0; i < len; i++) {
+            if (i == 0 || keys[i] != keys[j - 1]) {
+                keys[j++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, j);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, len = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[len++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, len);
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        long[] result = new long[a.length + b.length];
+        int i = 0, j = 0, len = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || i < a.length && a[i] < b[j]) {
+                result[len++] = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                result[len++] = b[j++];
+            } else {
+                result[len++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, len);
+    }
+
+    @Override
+    public String getPlanSQL() {
+        StatementBuilder buff = new StatementBuilder();
+        for (int i = 0, size = indexes.size(); i < size; i++) {
+            Index index = indexes.get(i);
+            if (alternatives == null) {
+                buff.appendExceptFirst(" AND ");
+                buff.append(index.getPlanSQL());
+            } else {
+                buff.appendExceptFirst(" OR ");
+                buff.append('(').append(index.getPlanSQL());
+                StatementBuilder conditions = new StatementBuilder();
+                for (IndexCondition cond : alternatives.get(i)) {
+                    conditions.appendExceptFirst(" AND ");
+                    conditions.append(cond.getSQL());
+                }
+                if (conditions.length() > 0) {
+                    buff.append(": ").append(conditions.toString());
+                }
+                buff.append(')');
+            }
+        }
+        return buff.toString();
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
+        return cost;
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        throw DbException.throwInternalError();
+    }
+
+    @Override
+    public void close(Session session) {
+        // nothing to do
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("MULTI INDEX");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("MULTI INDEX");
+    }
+
+    @Override
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("MULTI INDEX");
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("MULTI INDEX");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("MULTI INDEX");
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("MULTI INDEX");
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return table.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return table.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.table.Table;
+
+/**
+ * The cursor implementation for the multi index. The rows are read in the
+ * order of the row keys.
+ */
+public class MultiIndexCursor implements Cursor {
+
+    private final Session session;
+    private final Table table;
+    private final long[] keys;
+    private int index = -1;
+    private Row row;
+
+    MultiIndexCursor(Session session, Table table, long[] keys) {
+        this.session = session;
+        this.table = table;
+        this.keys = keys;
+    }
+
+    @Override
+    public Row get() {
+        if (row == null && index >= 0 && index < keys.length) {
+            row = table.getRow(session, keys[index]);
+        }
+        return row;
+    }
+
+    @Override
+    public SearchRow getSearchRow() {
+        return get();
+    }
+
+    @Override
+    public boolean next() {
+        row = null;
+        return ++index < keys.length;
+    }
+
+    @Override
+    public boolean previous() {
+        throw DbException.throwInternalError();
+    }
+
+}
@@ -69,7 +69,8 @@ public class PageBtreeIndex extends PageIndex {
             PageBtree root = getPage(rootPageId);
             rowCount = root.getRowCount();
         }
-        this.needRebuild = create || (rowCount == 0 && store.isRecoveryRunning());
+        this.needRebuild = create || (rowCount == 0 && store.isRecoveryRunning()) ||
+                store.isRebuildRequired(id);
         if (trace.isDebugEnabled()) {
             trace.debug("opened {0} rows: {1}", getName() , rowCount);
         }
@@ -216,7 +217,14 @@ public class PageBtreeIndex extends PageIndex {
 
     @Override
     public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
-        return 10 * getCostRangeIndex(masks, tableData.getRowCount(session), filter, sortOrder);
+        // a partial index only contains some of the rows
+        long rows = indexType.getCondition() == null ? tableData.getRowCount(session) : rowCount;
+        long cost = 10 * getCostRangeIndex(masks, rows, filter, sortOrder);
+        if (masks != null && isCovering(filter)) {
+            // the rows don't need to be read
+            cost /= 2;
+        }
+        return cost;
     }
 
     @Override
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import org.h2.command.dml.Select;
+import org.h2.engine.Database;
+import org.h2.engine.DbObject;
+import org.h2.engine.Session;
+import org.h2.expression.Comparison;
+import org.h2.expression.ConditionAndOr;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.table.Column;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.util.New;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+
+/**
+ * The condition of a partial index. Only rows where the condition is true are
+ * stored in the index.
+ */
+public class PartialIndexCondition {
+
+    /**
+     * The placeholder condition that is used while recovering a database. No
+     * rows are added to or removed from the index, and it is rebuilt once the
+     * real condition is known.
+     */
+    public static final PartialIndexCondition RECOVERING = new PartialIndexCondition();
+
+    private final Table table;
+    private final TableFilter filter;
+    private final Expression condition;
+    private final ArrayList<Expression> conditions = New.arrayList();
+
+    private PartialIndexCondition() {
+        table = null;
+        filter = null;
+        condition = null;
+    }
+
+    public PartialIndexCondition(Session session, Table table, Expression condition) {
+        this.table = table;
+        filter = new TableFilter(session, table, null, false, null);
+        condition.mapColumns(filter, 0);
+        condition = condition.optimize(session);
+        HashSet<DbObject> dependencies = New.hashSet();
+        if (!condition.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR) ||
+                !condition.isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies))) {
+            throw DbException.getUnsupportedException("Partial index condition " + condition.getSQL());
+        }
+        dependencies.remove(table);
+        if (dependencies.size() > 0) {
+            throw DbException.getUnsupportedException("Partial index condition " + condition.getSQL());
+        }
+        this.condition = condition;
+        addConditions(condition, conditions);
+    }
+
+    private static void addConditions(Expression expr, ArrayList<Expression> list) {
+        if (expr instanceof ConditionAndOr) {
+            ConditionAndOr and = (ConditionAndOr) expr;
+            if (and.getAndOrType() == ConditionAndOr.AND) {
+                addConditions(and.getExpression(true), list);
+                addConditions(and.getExpression(false), list);
+                return;
+            }
+        }
+        list.add(expr);
+    }
+
+    /**
+     * Check if the row needs to be stored in the index.
+     *
+     * @param session the session
+     * @param row the row
+     * @return true if the condition is true for this row (and not NULL)
+     */
+    public synchronized boolean isIndexed(Session session, Row row) {
+        if (condition == null) {
+            return false;
+        }
+        filter.set(row);
+        // NULL (unknown) means the row is not indexed
+        return Boolean.TRUE.equals(condition.getBooleanValue(session));
+    }
+
+    /**
+     * Get the SQL snippet of the condition.
+     *
+     * @return the SQL snippet, or null while recovering
+     */
+    public String getSQL() {
+        return condition == null ? null : condition.getSQL();
+    }
+
+    /**
+     * Check if each row the given table filter may return is stored in the
+     * index, so that the index can be used for this table filter. This is the
+     * case if each part of the condition is implied by an index condition of
+     * the table filter, or appears in the WHERE clause of the query. As rows
+     * of the outer join side are still returned if they don't match, an index
+     * is never used in that case.
+     *
+     * @param f the table filter
+     * @return true if the index can be used
+     */
+    public boolean isImpliedBy(TableFilter f) {
+        if (condition == null || f == null || f.getTable() != table ||
+                f.isJoinOuter() || f.isJoinOuterIndirect()) {
+            return false;
+        }
+        ArrayList<Expression> where = New.arrayList();
+        Select select = f.getSelect();
+        if (select != null && select.getCondition() != null) {
+            addConditions(select.getCondition(), where);
+        }
+        for (Expression e : conditions) {
+            if (!isImpliedByIndexCondition(f, e) && !isContained(e, where)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isContained(Expression e, ArrayList<Expression> where) {
+        String sql = e.getSQL();
+        for (Expression w : where) {
+            if (sql.equals(w.getSQL())) {
+                HashSet<Column> columns = New.hashSet();
+                w.isEverything(ExpressionVisitor.getColumnsVisitor(columns));
+                boolean sameTable = true;
+                for (Column c : columns) {
+                    sameTable &= c.getTable() == table;
+                }
+                if (sameTable) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isImpliedByIndexCondition(TableFilter f, Expression e) {
+        if (!(e instanceof Comparison)) {
+            return false;
+        }
+        Comparison comp = (Comparison) e;
+        Expression left = comp.getExpression(true);
+        Expression right = comp.getExpression(false);
+        if (!(left instanceof ExpressionColumn)) {
+            return false;
+        }
+        Column column = ((ExpressionColumn) left).getColumn();
+        Session session = f.getSession();
+        int type = comp.getCompareType();
+        Value v = null;
+        if (right != null) {
+            if (!right.isConstant()) {
+                return false;
+            }
+            v = right.getValue(session);
+        }
+        for (IndexCondition cond : f.getIndexConditions()) {
+            if (cond.getColumn() != column) {
+                continue;
+            }
+            int condType = cond.getCompareType();
+            Expression expr = cond.getExpression();
+            Value c = null;
+            if (expr != null && expr.isConstant()) {
+                c = expr.getValue(session);
+            }
+            switch (type) {
+            case Comparison.IS_NOT_NULL:
+                // all other comparisons exclude NULL
+                if (condType != Comparison.EQUAL_NULL_SAFE || c != null && c != ValueNull.INSTANCE) {
+                    return true;
+                }
+                break;
+            case Comparison.IS_NULL:
+                if (condType == Comparison.EQUAL_NULL_SAFE && c == ValueNull.INSTANCE) {
+                    return true;
+                }
+                break;
+            default:
+                if (c != null && c != ValueNull.INSTANCE && v != ValueNull.INSTANCE &&
+                        implies(session.getDatabase(), condType, c, type, v)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if (x condType c) implies (x type v).
+     */
+    private static boolean implies(Database db, int condType, Value c, int type, Value v) {
+        int cmp;
+        try {
+            int dataType = Value.getHigherOrder(c.getType(), v.getType());
+            cmp = db.compare(c.convertTo(dataType), v.convertTo(dataType));
+        } catch (DbException e) {
+            return false;
+        }
+        if (condType == Comparison.EQUAL || condType == Comparison.EQUAL_NULL_SAFE) {
+            switch (type) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                return cmp == 0;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                return cmp != 0;
+            case Comparison.BIGGER_EQUAL:
+                return cmp >= 0;
+            case Comparison.BIGGER:
+                return cmp > 0;
+            case Comparison.SMALLER_EQUAL:
+                return cmp <= 0;
+            case Comparison.SMALLER:
+                return cmp < 0;
+            default:
+                return false;
+            }
+        }
+        switch (type) {
+        case Comparison.BIGGER_EQUAL:
+            return (condType == Comparison.BIGGER_EQUAL || condType == Comparison.BIGGER) && cmp >= 0;
+        case Comparison.BIGGER:
+            return condType == Comparison.BIGGER_EQUAL ? cmp > 0 : condType == Comparison.BIGGER && cmp >= 0;
+        case Comparison.SMALLER_EQUAL:
+            return (condType == Comparison.SMALLER_EQUAL || condType == Comparison.SMALLER) && cmp <= 0;
+        case Comparison.SMALLER:
+            return condType == Comparison.SMALLER_EQUAL ? cmp < 0 : condType == Comparison.SMALLER && cmp <= 0;
+        default:
+            return false;
+        }
+    }
+
+}
@@ -6,6 +6,7 @@
  */
 package org.h2.index;
 
+import org.h2.engine.Session;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
 
@@ -14,12 +15,14 @@ import org.h2.result.SearchRow;
  */
 public class TreeCursor implements Cursor {
     private final TreeIndex tree;
+    private final Session session;
     private TreeNode node;
     private boolean beforeFirst;
     private final SearchRow first, last;
 
-    TreeCursor(TreeIndex tree, TreeNode node, SearchRow first, SearchRow last) {
+    TreeCursor(TreeIndex tree, Session session, TreeNode node, SearchRow first, SearchRow last) {
         this.tree = tree;
+        this.session = session;
         this.node = node;
         this.first = first;
         this.last = last;
@@ -28,12 +31,12 @@ public class TreeCursor implements Cursor {
 
     @Override
     public Row get() {
-        return node == null ? null : node.row;
+        return node == null ? null : tree.getRow(session, node.row);
     }
 
     @Override
     public SearchRow getSearchRow() {
-        return get();
+        return node == null ? null : node.row;
     }
 
     @Override
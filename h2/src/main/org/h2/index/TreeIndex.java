@@ -14,6 +14,7 @@ import org.h2.result.SearchRow;
 import org.h2.result.SortOrder;
 import org.h2.table.IndexColumn;
 import org.h2.table.RegularTable;
+import org.h2.table.Table;
 import org.h2.table.TableFilter;
 import org.h2.value.Value;
 import org.h2.value.ValueNull;
@@ -25,12 +26,14 @@ public class TreeIndex extends BaseIndex {
 
     private TreeNode root;
     private final RegularTable tableData;
+    private final boolean expressions;
     private long rowCount;
     private boolean closed;
 
     public TreeIndex(RegularTable table, int id, String indexName, IndexColumn[] columns, IndexType indexType) {
         initBaseIndex(table, id, indexName, columns, indexType);
         tableData = table;
+        expressions = Table.containsIndexExpression(this);
         if (!database.isStarting()) {
             checkIndexColumnTypes(columns);
         }
@@ -293,15 +296,11 @@ public class TreeIndex extends BaseIndex {
 
     @Override
     public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
-        return find(first, last);
+        return find(filter.getSession(), first, last);
     }
 
     @Override
     public Cursor find(Session session, SearchRow first, SearchRow last) {
-        return find(first, last);
-    }
-
-    private Cursor find(SearchRow first, SearchRow last) {
         if (first == null) {
             TreeNode x = root, n;
             while (x != null) {
@@ -311,10 +310,45 @@ public class TreeIndex extends BaseIndex {
                 }
                 x = n;
             }
-            return new TreeCursor(this, x, null, last);
+            return new TreeCursor(this, session, x, null, last);
         }
         TreeNode x = findFirstNode(first, false);
-        return new TreeCursor(this, x, first, last);
+        return new TreeCursor(this, session, x, first, last);
+    }
+
+    @Override
+    public boolean canFindNext() {
+        return true;
+    }
+
+    @Override
+    public Cursor findNext(Session session, SearchRow higherThan, SearchRow last) {
+        if (higherThan == null) {
+            return find(session, null, last);
+        }
+        // the first node that is larger, comparing only the columns that are set
+        TreeNode x = root, result = null;
+        while (x != null) {
+            if (compareRows(x.row, higherThan) > 0) {
+                result = x;
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+        return new TreeCursor(this, session, result, null, last);
+    }
+
+    /**
+     * Get the row of the given index entry. The entries of an index that
+     * contains index expressions are copies of the rows.
+     *
+     * @param session the session
+     * @param row the index entry
+     * @return the row
+     */
+    Row getRow(Session session, Row row) {
+        return expressions ? tableData.getRow(session, row.getKey()) : row;
     }
 
     @Override
@@ -373,7 +407,7 @@ public class TreeIndex extends BaseIndex {
             }
             x = n;
         }
-        TreeCursor cursor = new TreeCursor(this, x, null, null);
+        TreeCursor cursor = new TreeCursor(this, session, x, null, null);
         if (x == null) {
             return cursor;
         }
@@ -220,4 +220,102 @@ public class DatabaseInfo implements DatabaseInfoMBean {
         return buff.toString();
     }
 
+    @Override
+    public long getCommitCount() {
+        return getMetric("COMMITS");
+    }
+
+    @Override
+    public long getRollbackCount() {
+        return getMetric("ROLLBACKS");
+    }
+
+    @Override
+    public long getCommitsPerSecond() {
+        return getMetric("COMMITS_PER_SECOND");
+    }
+
+    @Override
+    public long getStatementCount() {
+        return getMetric("STATEMENTS");
+    }
+
+    @Override
+    public long getStatementLatencyP50() {
+        return getMetric("STATEMENT_LATENCY_P50_US");
+    }
+
+    @Override
+    public long getStatementLatencyP95() {
+        return getMetric("STATEMENT_LATENCY_P95_US");
+    }
+
+    @Override
+    public long getStatementLatencyP99() {
+        return getMetric("STATEMENT_LATENCY_P99_US");
+    }
+
+    @Override
+    public long getLockWaitCount() {
+        return getMetric("LOCK_WAITS");
+    }
+
+    @Override
+    public long getLockWaitTime() {
+        return getMetric("LOCK_WAIT_TIME_MS");
+    }
+
+    @Override
+    public long getLockTimeoutCount() {
+        return getMetric("LOCK_TIMEOUTS");
+    }
+
+    @Override
+    public long getDeadlockCount() {
+        return getMetric("DEADLOCKS");
+    }
+
+    @Override
+    public long getCacheHitRatio() {
+        return getMetric("CACHE_HIT_RATIO");
+    }
+
+    @Override
+    public long getChunkWriteCount() {
+        return getMetric("CHUNK_WRITES");
+    }
+
+    @Override
+    public long getCompactCount() {
+        return getMetric("COMPACTIONS");
+    }
+
+    @Override
+    public long getLogBytesWritten() {
+        return getMetric("LOG_BYTES_WRITTEN");
+    }
+
+    @Override
+    public long getSpilledResultCount() {
+        return getMetric("SPILLED_RESULTS");
+    }
+
+    @Override
+    public long getTempFileCount() {
+        return getMetric("TEMP_FILES");
+    }
+
+    private long getMetric(String name) {
+        return ((Number) database.getMetrics().getMetrics().get(name)).longValue();
+    }
+
+    @Override
+    public String listMetrics() {
+        StringBuilder buff = new StringBuilder();
+        for (Map.Entry<String, Object> e : database.getMetrics().getMetrics().entrySet()) {
+            buff.append(e.getKey()).append(" = ").append(e.getValue()).append('\n');
+        }
+        return buff.toString();
+    }
+
 }
@@ -166,4 +166,151 @@ public interface DatabaseInfoMBean {
      */
     String listSessions();
 
+    /**
+     * The number of committed transactions with changes since the database was opened.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getCommitCount();
+
+    /**
+     * The number of rolled back transactions with changes since the database was opened.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getRollbackCount();
+
+    /**
+     * The number of commits in the last full second.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getCommitsPerSecond();
+
+    /**
+     * The number of statements executed since the database was opened.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getStatementCount();
+
+    /**
+     * The median statement execution time in microseconds (approximate,
+     * over the last one to two minutes).
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getStatementLatencyP50();
+
+    /**
+     * The 95th percentile of the statement execution time in microseconds
+     * (approximate, over the last one to two minutes).
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getStatementLatencyP95();
+
+    /**
+     * The 99th percentile of the statement execution time in microseconds
+     * (approximate, over the last one to two minutes).
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getStatementLatencyP99();
+
+    /**
+     * The number of times a session had to wait for a table lock.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getLockWaitCount();
+
+    /**
+     * The total time sessions waited for table locks, in milliseconds.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getLockWaitTime();
+
+    /**
+     * The number of lock timeouts.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getLockTimeoutCount();
+
+    /**
+     * The number of deadlocks that were detected.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getDeadlockCount();
+
+    /**
+     * The percentage of page requests that were served from the cache.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getCacheHitRatio();
+
+    /**
+     * The number of chunks written (MVStore only).
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getChunkWriteCount();
+
+    /**
+     * The number of compact operations (MVStore only).
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getCompactCount();
+
+    /**
+     * The number of bytes written to the transaction log (page store only).
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getLogBytesWritten();
+
+    /**
+     * The number of temporary results that were written to disk.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getSpilledResultCount();
+
+    /**
+     * The number of temporary files that are currently in use.
+     * @h2.resource
+     *
+     * @return the value
+     */
+    long getTempFileCount();
+
+    /**
+     * List the runtime metrics (the same as in INFORMATION_SCHEMA.METRICS).
+     * @h2.resource
+     *
+     * @return the metrics
+     */
+    String listMetrics();
+
 }
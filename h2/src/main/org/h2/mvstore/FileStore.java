@@ -11,6 +11,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.BitSet;
 
 import org.h2.mvstore.cache.FilePathCache;
 import org.h2.store.fs.FilePath;
@@ -70,6 +71,12 @@ public class FileStore {
      */
     protected FileLock fileLock;
 
+    /**
+     * The blocks of the underlying file that were written since the change
+     * tracking was started, or null if the changes are not tracked.
+     */
+    protected BitSet changedBlocks;
+
     @Override
     public String toString() {
         return fileName;
@@ -97,8 +104,58 @@ public class FileStore {
      */
     public void writeFully(long pos, ByteBuffer src) {
         writeCount++;
-        fileSize = Math.max(fileSize, pos + src.remaining());
+        int len = src.remaining();
+        fileSize = Math.max(fileSize, pos + len);
         DataUtils.writeFully(file, pos, src);
+        setChanged(pos, len);
+    }
+
+    private synchronized void setChanged(long pos, int len) {
+        if (changedBlocks != null && len > 0) {
+            // the encrypted file starts with a header block
+            int offset = encryptedFile == null ? 0 : 1;
+            int first = (int) (pos / MVStore.BLOCK_SIZE) + offset;
+            int last = (int) ((pos + len - 1) / MVStore.BLOCK_SIZE) + offset;
+            changedBlocks.set(first, last + 1);
+        }
+    }
+
+    /**
+     * Start tracking the blocks that are written (for incremental backup).
+     * The block numbers refer to the encrypted file if encryption is used,
+     * and to the file otherwise.
+     *
+     * @return the blocks written since the change tracking was last started,
+     *         or null if it was not started since the file was opened
+     */
+    public synchronized BitSet startChangeTracking() {
+        BitSet old = changedBlocks;
+        changedBlocks = new BitSet();
+        if (encryptedFile != null) {
+            // the header of the encrypted file is not written by the store
+            changedBlocks.set(0);
+        }
+        return old;
+    }
+
+    /**
+     * Get the size of a block, as used for the change tracking.
+     *
+     * @return the block size
+     */
+    public int getBlockSize() {
+        return MVStore.BLOCK_SIZE;
+    }
+
+    /**
+     * Check whether the given block was written since the change tracking
+     * was started.
+     *
+     * @param block the block number
+     * @return true if it was written, or if this is not known
+     */
+    public synchronized boolean isChanged(int block) {
+        return changedBlocks == null || changedBlocks.get(block);
     }
 
     /**
@@ -203,6 +203,8 @@ public class MVStore {
     private long lastStoredVersion;
 
     private int unsavedPageCount;
+    private long chunkWriteCount;
+    private long compactCount;
     private int unsavedPageCountMax;
 
     /**
@@ -860,6 +862,7 @@ public class MVStore {
         }
         Chunk c;
         c = new Chunk(++lastChunkId);
+        chunkWriteCount++;
         c.maxLength = Long.MAX_VALUE;
         c.maxLengthLive = Long.MAX_VALUE;
         c.start = Long.MAX_VALUE;
@@ -1076,7 +1079,10 @@ public class MVStore {
                             chunks.remove(c.id);
                             meta.remove("chunk." + c.id);
                         } else {
-                            // remove this chunk in the next save operation
+                            // remove this chunk in the next save operation,
+                            // but persist the live counters now, otherwise
+                            // the chunk would look used after re-opening
+                            meta.put("chunk." + c.id, c.asString());
                             registerFreePage(storeVersion + 1, c.id, 0, 0);
                         }
                     } else {
@@ -1265,7 +1271,7 @@ public class MVStore {
 
         reuseSpace = oldReuse;
         retentionTime = oldRetentionTime;
-
+        compactCount++;
         return true;
     }
 
@@ -1366,6 +1372,7 @@ public class MVStore {
         }
 
         store();
+        compactCount++;
         return true;
     }
 
@@ -1654,6 +1661,43 @@ public class MVStore {
         return unsavedPageCountMax;
     }
 
+    /**
+     * Get the number of chunks written since the store was opened.
+     *
+     * @return the number of chunks
+     */
+    public long getChunkWriteCount() {
+        return chunkWriteCount;
+    }
+
+    /**
+     * Get the number of compact operations since the store was opened that
+     * moved or re-wrote chunks.
+     *
+     * @return the number of compact operations
+     */
+    public long getCompactCount() {
+        return compactCount;
+    }
+
+    /**
+     * Get the number of pages that were found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getCacheHitCount() {
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    /**
+     * Get the number of pages that were not found in the cache.
+     *
+     * @return the number of cache misses
+     */
+    public long getCacheMissCount() {
+        return cache == null ? 0 : cache.getMisses();
+    }
+
     /**
      * Increment the number of unsaved pages.
      */
@@ -99,17 +99,26 @@ public class StreamStore {
     public byte[] put(InputStream in) throws IOException {
         ByteArrayOutputStream id = new ByteArrayOutputStream();
         int level = 0;
-        while (true) {
-            if (put(id, in, level)) {
-                break;
+        try {
+            while (true) {
+                if (put(id, in, level)) {
+                    break;
+                }
+                if (id.size() > maxBlockSize / 2) {
+                    id = putIndirectId(id);
+                    level++;
+                }
             }
-            if (id.size() > maxBlockSize / 2) {
+            if (id.size() > minBlockSize * 2) {
                 id = putIndirectId(id);
-                level++;
             }
-        }
-        if (id.size() > minBlockSize * 2) {
-            id = putIndirectId(id);
+        } catch (IOException e) {
+            // remove the blocks that were already stored
+            remove(id.toByteArray());
+            throw e;
+        } catch (RuntimeException e) {
+            remove(id.toByteArray());
+            throw e;
         }
         return id.toByteArray();
     }
@@ -117,16 +126,25 @@ public class StreamStore {
     private boolean put(ByteArrayOutputStream id, InputStream in, int level) throws IOException {
         if (level > 0) {
             ByteArrayOutputStream id2 = new ByteArrayOutputStream();
-            while (true) {
-                boolean eof = put(id2, in, level - 1);
-                if (id2.size() > maxBlockSize / 2) {
-                    id2 = putIndirectId(id2);
-                    id2.writeTo(id);
-                    return eof;
-                } else if (eof) {
-                    id2.writeTo(id);
-                    return true;
+            try {
+                while (true) {
+                    boolean eof = put(id2, in, level - 1);
+                    if (id2.size() > maxBlockSize / 2) {
+                        id2 = putIndirectId(id2);
+                        id2.writeTo(id);
+                        return eof;
+                    } else if (eof) {
+                        id2.writeTo(id);
+                        return true;
+                    }
                 }
+            } catch (IOException e) {
+                // the blocks of this level are not yet referenced by the id
+                remove(id2.toByteArray());
+                throw e;
+            } catch (RuntimeException e) {
+                remove(id2.toByteArray());
+                throw e;
             }
         }
         byte[] readBuffer = nextBuffer.getAndSet(null);
@@ -148,9 +166,12 @@ public class StreamStore {
             DataUtils.writeVarInt(id, len);
             id.write(buff);
         } else {
+            // the block is stored first, so that the id is complete
+            // if storing fails
+            long key = writeBlock(buff);
             id.write(1);
             DataUtils.writeVarInt(id, len);
-            DataUtils.writeVarLong(id, writeBlock(buff));
+            DataUtils.writeVarLong(id, key);
         }
         return eof;
     }
@@ -380,6 +401,10 @@ public class StreamStore {
 
         @Override
         public int read(byte[] b, int off, int len) {
+            if (len <= 0) {
+                // otherwise the current buffer would be skipped
+                return 0;
+            }
             while (true) {
                 if (buffer == null) {
                     buffer = nextBuffer();
@@ -244,6 +244,32 @@ public class CacheLongKeyLIRS<V> {
         return x;
     }
 
+    /**
+     * Get the number of times a resident entry was found.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        long x = 0;
+        for (Segment<V> s : segments) {
+            x += s.hits;
+        }
+        return x;
+    }
+
+    /**
+     * Get the number of times an entry was not found or not resident.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        long x = 0;
+        for (Segment<V> s : segments) {
+            x += s.misses;
+        }
+        return x;
+    }
+
     /**
      * Set the maximum memory this cache should use. This will not
      * immediately cause entries to get removed however; it will only change
@@ -489,6 +515,17 @@ public class CacheLongKeyLIRS<V> {
          */
         long usedMemory;
 
+        /**
+         * The number of cache hits (not synchronized, so this is approximate).
+         */
+        long hits;
+
+        /**
+         * The number of cache misses (not synchronized, so this is
+         * approximate).
+         */
+        long misses;
+
         /**
          * How many other item are to be moved to the top of the stack before
          * the current item is moved.
@@ -611,13 +648,16 @@ public class CacheLongKeyLIRS<V> {
             Entry<V> e = find(key, hash);
             if (e == null) {
                 // the entry was not found
+                misses++;
                 return null;
             }
             V value = e.value;
             if (value == null) {
                 // it was a non-resident entry
+                misses++;
                 return null;
             }
+            hits++;
             if (e.isHot()) {
                 if (e != stack.stackNext) {
                     if (stackMoveDistance == 0 || stackMoveCounter - e.topMove > stackMoveDistance) {
@@ -125,7 +125,7 @@ public class MVPrimaryIndex extends BaseIndex {
         try {
             map.put(key, ValueArray.get(row.getValueList()));
         } catch (IllegalStateException e) {
-            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+            throw mvTable.getConcurrentUpdateException(session, map, key);
         }
         lastKey = Math.max(lastKey, row.getKey());
     }
@@ -141,14 +141,31 @@ public class MVPrimaryIndex extends BaseIndex {
             }
         }
         TransactionMap<Value, Value> map = getMap(session);
+        Value key = ValueLong.get(row.getKey());
         try {
-            Value old = map.remove(ValueLong.get(row.getKey()));
+            Value old = map.remove(key);
             if (old == null) {
                 throw DbException.get(ErrorCode.ROW_NOT_FOUND_WHEN_DELETING_1,
                         getSQL() + ": " + row.getKey());
             }
         } catch (IllegalStateException e) {
-            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+            throw mvTable.getConcurrentUpdateException(session, map, key);
+        }
+    }
+
+    /**
+     * Lock a single row until the transaction of the session ends. Other
+     * transactions can still read the row, but can not update, delete, or
+     * lock it.
+     *
+     * @param session the session
+     * @param row the row
+     */
+    public void lockRow(Session session, Row row) {
+        TransactionMap<Value, Value> map = getMap(session);
+        Value key = ValueLong.get(row.getKey());
+        if (!map.tryLock(key)) {
+            throw mvTable.getConcurrentUpdateException(session, map, key);
         }
     }
 
@@ -312,7 +329,7 @@ public class MVPrimaryIndex extends BaseIndex {
      * @param last the key of the last row
      * @return the cursor
      */
-    Cursor find(Session session, long first, long last) {
+    public Cursor find(Session session, long first, long last) {
         TransactionMap<Value, Value> map = getMap(session);
         return new MVStoreCursor(session, map.keyIterator(ValueLong.get(first)), last);
     }
@@ -44,6 +44,7 @@ public class MVSecondaryIndex extends BaseIndex {
     private final int keyColumns;
     private final String mapName;
     private TransactionMap<Value, Value> dataMap;
+    private final boolean created;
 
     public MVSecondaryIndex(Database db, MVTable table, int id, String indexName,
                 IndexColumn[] columns, IndexType indexType) {
@@ -67,7 +68,9 @@ public class MVSecondaryIndex extends BaseIndex {
         MVMap.Builder<Value, Value> mapBuilder = new MVMap.Builder<Value, Value>().
                 keyType(keyType).
                 valueType(valueType);
-        dataMap = mvTable.getTransaction(null).openMap(mapName, mapBuilder);
+        Transaction t = mvTable.getTransaction(null);
+        created = !t.store.store.hasMap(mapName);
+        dataMap = t.openMap(mapName, mapBuilder);
         if (keyType != dataMap.map.getKeyType()) {
             throw DbException.throwInternalError("Incompatible key type");
         }
@@ -100,7 +103,7 @@ public class MVSecondaryIndex extends BaseIndex {
         try {
             map.put(array, ValueLong.get(0));
         } catch (IllegalStateException e) {
-            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+            throw mvTable.getConcurrentUpdateException(session, map, array);
         }
         if (indexType.isUnique()) {
             // check if there is another (uncommitted) entry
@@ -123,7 +126,7 @@ public class MVSecondaryIndex extends BaseIndex {
                     // committed
                     throw getDuplicateKeyException(k.toString());
                 }
-                throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+                throw mvTable.getConcurrentUpdateException(session, map, k);
             }
         }
     }
@@ -139,7 +142,7 @@ public class MVSecondaryIndex extends BaseIndex {
                         getSQL() + ": " + row.getKey());
             }
         } catch (IllegalStateException e) {
-            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+            throw mvTable.getConcurrentUpdateException(session, map, array);
         }
     }
 
@@ -153,6 +156,31 @@ public class MVSecondaryIndex extends BaseIndex {
         return new MVStoreCursor(session, map.keyIterator(min), last);
     }
 
+    @Override
+    public boolean canFindNext() {
+        return true;
+    }
+
+    @Override
+    public Cursor findNext(Session session, SearchRow higherThan, SearchRow last) {
+        if (higherThan == null) {
+            return find(session, null, last);
+        }
+        // a key that only contains the leading columns that are set is larger
+        // than all entries that start with the same values
+        ArrayList<Value> list = New.arrayList();
+        for (Column c : columns) {
+            Value v = higherThan.getValue(c.getColumnId());
+            if (v == null) {
+                break;
+            }
+            list.add(v);
+        }
+        ValueArray min = ValueArray.get(list.toArray(new Value[list.size()]));
+        TransactionMap<Value, Value> map = getMap(session);
+        return new MVStoreCursor(session, map.keyIterator(min), last);
+    }
+
     private ValueArray getKey(SearchRow r) {
         if (r == null) {
             return null;
@@ -174,7 +202,7 @@ public class MVSecondaryIndex extends BaseIndex {
      * @return the row
      */
     SearchRow getRow(Value[] array) {
-        SearchRow searchRow = mvTable.getTemplateRow();
+        SearchRow searchRow = mvTable.getTemplateSimpleRow(false);
         searchRow.setKey((array[array.length - 1]).getLong());
         Column[] cols = getColumns();
         for (int i = 0; i < array.length - 1; i++) {
@@ -194,7 +222,12 @@ public class MVSecondaryIndex extends BaseIndex {
     @Override
     public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
         try {
-            return 10 * getCostRangeIndex(masks, dataMap.map.sizeAsLong(), filter, sortOrder);
+            long cost = 10 * getCostRangeIndex(masks, dataMap.map.sizeAsLong(), filter, sortOrder);
+            if (masks != null && isCovering(filter)) {
+                // the rows don't need to be read
+                cost /= 2;
+            }
+            return cost;
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED);
         }
@@ -242,6 +275,10 @@ public class MVSecondaryIndex extends BaseIndex {
     @Override
     public boolean needRebuild() {
         try {
+            if (indexType.getCondition() != null) {
+                // a partial index may be empty even if the table is not
+                return created;
+            }
             return dataMap.map.sizeAsLong() == 0;
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED);
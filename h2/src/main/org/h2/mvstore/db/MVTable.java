@@ -9,8 +9,6 @@ package org.h2.mvstore.db;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Set;
 
 import org.h2.api.DatabaseEventListener;
 import org.h2.command.ddl.Analyze;
@@ -20,16 +18,18 @@ import org.h2.constant.SysProperties;
 import org.h2.constraint.Constraint;
 import org.h2.constraint.ConstraintReferential;
 import org.h2.engine.Constants;
+import org.h2.engine.LockManager;
 import org.h2.engine.DbObject;
 import org.h2.engine.Session;
+import org.h2.index.BlockRangeIndex;
 import org.h2.index.Cursor;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
 import org.h2.index.MultiVersionIndex;
 import org.h2.index.SpatialTreeIndex;
 import org.h2.message.DbException;
-import org.h2.message.Trace;
 import org.h2.mvstore.db.TransactionStore.Transaction;
+import org.h2.mvstore.db.TransactionStore.TransactionMap;
 import org.h2.result.Row;
 import org.h2.result.SortOrder;
 import org.h2.schema.SchemaObject;
@@ -52,9 +52,7 @@ public class MVTable extends TableBase {
     private ArrayList<Index> indexes = New.arrayList();
     private long lastModificationId;
     private long rowCount;
-    private volatile Session lockExclusive;
-    private HashSet<Session> lockShared = New.hashSet();
-    private final Trace traceLock;
+    private final LockManager.TableLock tableLock = new LockManager.TableLock(this);
     private int changesSinceAnalyze;
     private int nextAnalyze;
     private boolean containsLargeObject;
@@ -62,13 +60,6 @@ public class MVTable extends TableBase {
 
     private final TransactionStore store;
 
-    /**
-     * True if one thread ever was waiting to lock this table. This is to avoid
-     * calling notifyAll if no session was ever waiting to lock this table. If
-     * set, the flag stays. In theory, it could be reset, however not sure when.
-     */
-    private boolean waitForLock;
-
     public MVTable(CreateTableData data, MVTableEngine.Store store) {
         super(data);
         nextAnalyze = database.getSettings().analyzeAuto;
@@ -79,7 +70,6 @@ public class MVTable extends TableBase {
                 containsLargeObject = true;
             }
         }
-        traceLock = database.getTrace(Trace.LOCK);
     }
 
     /**
@@ -107,225 +97,44 @@ public class MVTable extends TableBase {
         if (lockMode == Constants.LOCK_MODE_OFF) {
             return;
         }
-        if (!force && database.isMultiVersion()) {
-            // MVCC: update, delete, and insert use a shared lock.
+        if (!force && (database.isMultiVersion() || !database.isMultiThreaded())) {
+            // MVCC and row level locking: update, delete, and insert use a
+            // shared lock, the rows are locked by the transaction map.
             // Select doesn't lock except when using FOR UPDATE and
             // the system property h2.selectForUpdateMvcc
-            // is not enabled
+            // is not enabled.
+            // In multi-threaded mode without MVCC, statements are not
+            // serialized, so that a table lock is still required
+            // for changes.
             if (exclusive) {
                 exclusive = false;
             } else {
-                if (lockExclusive == null) {
+                if (tableLock.getExclusive() == null) {
                     return;
                 }
             }
         }
-        if (lockExclusive == session) {
+        if (tableLock.getExclusive() == session) {
             return;
         }
-        synchronized (database) {
-            try {
-                doLock(session, lockMode, exclusive);
-            } finally {
-                session.setWaitForLock(null);
-            }
-        }
-    }
-
-    private void doLock(Session session, int lockMode, boolean exclusive) {
-        traceLock(session, exclusive, "requesting for");
-        // don't get the current time unless necessary
-        long max = 0;
-        boolean checkDeadlock = false;
-        while (true) {
-            if (lockExclusive == session) {
-                return;
-            }
-            if (exclusive) {
-                if (lockExclusive == null) {
-                    if (lockShared.isEmpty()) {
-                        traceLock(session, exclusive, "added for");
-                        session.addLock(this);
-                        lockExclusive = session;
-                        return;
-                    } else if (lockShared.size() == 1 && lockShared.contains(session)) {
-                        traceLock(session, exclusive, "add (upgraded) for ");
-                        lockExclusive = session;
-                        return;
-                    }
-                }
-            } else {
-                if (lockExclusive == null) {
-                    if (lockMode == Constants.LOCK_MODE_READ_COMMITTED) {
-                        if (!database.isMultiThreaded() && !database.isMultiVersion()) {
-                            // READ_COMMITTED: a read lock is acquired,
-                            // but released immediately after the operation
-                            // is complete.
-                            // When allowing only one thread, no lock is
-                            // required.
-                            // Row level locks work like read committed.
-                            return;
-                        }
-                    }
-                    if (!lockShared.contains(session)) {
-                        traceLock(session, exclusive, "ok");
-                        session.addLock(this);
-                        lockShared.add(session);
-                    }
-                    return;
-                }
-            }
-            session.setWaitForLock(this);
-            if (checkDeadlock) {
-                ArrayList<Session> sessions = checkDeadlock(session, null, null);
-                if (sessions != null) {
-                    throw DbException.get(ErrorCode.DEADLOCK_1, getDeadlockDetails(sessions));
-                }
-            } else {
-                // check for deadlocks from now on
-                checkDeadlock = true;
-            }
-            long now = System.currentTimeMillis();
-            if (max == 0) {
-                // try at least one more time
-                max = now + session.getLockTimeout();
-            } else if (now >= max) {
-                traceLock(session, exclusive, "timeout after " + session.getLockTimeout());
-                throw DbException.get(ErrorCode.LOCK_TIMEOUT_1, getName());
-            }
-            try {
-                traceLock(session, exclusive, "waiting for");
-                if (database.getLockMode() == Constants.LOCK_MODE_TABLE_GC) {
-                    for (int i = 0; i < 20; i++) {
-                        long free = Runtime.getRuntime().freeMemory();
-                        System.gc();
-                        long free2 = Runtime.getRuntime().freeMemory();
-                        if (free == free2) {
-                            break;
-                        }
-                    }
-                }
-                // don't wait too long so that deadlocks are detected early
-                long sleep = Math.min(Constants.DEADLOCK_CHECK, max - now);
-                if (sleep == 0) {
-                    sleep = 1;
-                }
-                waitForLock = true;
-                database.wait(sleep);
-            } catch (InterruptedException e) {
-                // ignore
-            }
-        }
-    }
-
-    private static String getDeadlockDetails(ArrayList<Session> sessions) {
-        StringBuilder buff = new StringBuilder();
-        for (Session s : sessions) {
-            Table lock = s.getWaitForLock();
-            buff.append("\nSession ").
-                append(s.toString()).
-                append(" is waiting to lock ").
-                append(lock.toString()).
-                append(" while locking ");
-            int i = 0;
-            for (Table t : s.getLocks()) {
-                if (i++ > 0) {
-                    buff.append(", ");
-                }
-                buff.append(t.toString());
-                if (t instanceof RegularTable) {
-                    if (((MVTable) t).lockExclusive == s) {
-                        buff.append(" (exclusive)");
-                    } else {
-                        buff.append(" (shared)");
-                    }
-                }
-            }
-            buff.append('.');
-        }
-        return buff.toString();
-    }
-
-    @Override
-    public ArrayList<Session> checkDeadlock(Session session, Session clash, Set<Session> visited) {
-        // only one deadlock check at any given time
-        synchronized (RegularTable.class) {
-            if (clash == null) {
-                // verification is started
-                clash = session;
-                visited = New.hashSet();
-            } else if (clash == session) {
-                // we found a circle where this session is involved
-                return New.arrayList();
-            } else if (visited.contains(session)) {
-                // we have already checked this session.
-                // there is a circle, but the sessions in the circle need to
-                // find it out themselves
-                return null;
-            }
-            visited.add(session);
-            ArrayList<Session> error = null;
-            for (Session s : lockShared) {
-                if (s == session) {
-                    // it doesn't matter if we have locked the object already
-                    continue;
-                }
-                Table t = s.getWaitForLock();
-                if (t != null) {
-                    error = t.checkDeadlock(s, clash, visited);
-                    if (error != null) {
-                        error.add(session);
-                        break;
-                    }
-                }
-            }
-            if (error == null && lockExclusive != null) {
-                Table t = lockExclusive.getWaitForLock();
-                if (t != null) {
-                    error = t.checkDeadlock(lockExclusive, clash, visited);
-                    if (error != null) {
-                        error.add(session);
-                    }
-                }
-            }
-            return error;
-        }
+        database.getLockManager().lock(session, tableLock, exclusive);
     }
 
-    private void traceLock(Session session, boolean exclusive, String s) {
-        if (traceLock.isDebugEnabled()) {
-            traceLock.debug("{0} {1} {2} {3}", session.getId(),
-                    exclusive ? "exclusive write lock" : "shared read lock", s, getName());
-        }
-    }
 
     @Override
     public boolean isLockedExclusively() {
-        return lockExclusive != null;
+        return tableLock.getExclusive() != null;
     }
 
     @Override
     public boolean isLockedExclusivelyBy(Session session) {
-        return lockExclusive == session;
+        return tableLock.getExclusive() == session;
     }
 
     @Override
     public void unlock(Session s) {
         if (database != null) {
-            traceLock(s, lockExclusive == s, "unlock");
-            if (lockExclusive == s) {
-                lockExclusive = null;
-            }
-            if (lockShared.size() > 0) {
-                lockShared.remove(s);
-            }
-            // TODO lock: maybe we need we fifo-queue to make sure nobody
-            // starves. check what other databases do
-            synchronized (database) {
-                if (database.getSessionCount() > 1 && waitForLock) {
-                    database.notifyAll();
-                }
-            }
+            database.getLockManager().unlock(s, tableLock);
         }
     }
 
@@ -360,6 +169,16 @@ public class MVTable extends TableBase {
         return primaryIndex.getRow(session, key);
     }
 
+    @Override
+    public void lockRow(Session session, Row row) {
+        if (database.getLockMode() != Constants.LOCK_MODE_OFF &&
+                tableLock.getExclusive() != session) {
+            // keep the table structure from being changed
+            database.getLockManager().lock(session, tableLock, false);
+        }
+        primaryIndex.lockRow(session, row);
+    }
+
     @Override
     public Index addIndex(Session session, String indexName, int indexId,
             IndexColumn[] cols, IndexType indexType, boolean create,
@@ -396,6 +215,9 @@ public class MVTable extends TableBase {
         } else if (indexType.isSpatial()) {
             index = new SpatialTreeIndex(this, indexId, indexName, cols,
                     indexType, true, create, session);
+        } else if (indexType.isBlockRange()) {
+            index = new BlockRangeIndex(this, indexId, indexName, cols,
+                    indexType, store.store, create);
         } else {
             index = new MVSecondaryIndex(session.getDatabase(),
                     this, indexId,
@@ -478,6 +300,9 @@ public class MVTable extends TableBase {
     }
 
     private static void addRowsToIndex(Session session, ArrayList<Row> list, Index index) {
+        for (int i = 0, size = list.size(); i < size; i++) {
+            list.set(i, getIndexRow(session, index, list.get(i)));
+        }
         final Index idx = index;
         Collections.sort(list, new Comparator<Row>() {
             @Override
@@ -486,7 +311,9 @@ public class MVTable extends TableBase {
             }
         });
         for (Row row : list) {
-            index.add(session, row);
+            if (isIndexed(session, index, row)) {
+                index.add(session, row);
+            }
         }
         list.clear();
     }
@@ -499,7 +326,9 @@ public class MVTable extends TableBase {
         try {
             for (int i = indexes.size() - 1; i >= 0; i--) {
                 Index index = indexes.get(i);
-                index.remove(session, row);
+                if (isIndexed(session, index, row)) {
+                    index.remove(session, getIndexRow(session, index, row));
+                }
             }
             rowCount--;
         } catch (Throwable e) {
@@ -528,7 +357,9 @@ public class MVTable extends TableBase {
         try {
             for (int i = 0, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
-                index.add(session, row);
+                if (isIndexed(session, index, row)) {
+                    index.add(session, getIndexRow(session, index, row));
+                }
             }
             rowCount++;
         } catch (Throwable e) {
@@ -678,6 +509,27 @@ public class MVTable extends TableBase {
         return session.getTransaction();
     }
 
+    /**
+     * Get the exception to throw if an entry of an index can not be changed
+     * because it is locked by another transaction. The session is registered
+     * as waiting for the session of that transaction, so that deadlocks are
+     * detected while the command retries the statement.
+     *
+     * @param session the session
+     * @param map the map of the index
+     * @param key the key of the locked entry
+     * @return the exception
+     * @throws DbException if a deadlock was detected
+     */
+    DbException getConcurrentUpdateException(Session session,
+            TransactionMap<Value, Value> map, Value key) {
+        long tx = map.getBlockingTransactionId(key);
+        if (tx >= 0) {
+            database.getLockManager().waitForRow(session, this, tx);
+        }
+        return DbException.get(ErrorCode.CONCURRENT_UPDATE_1, getName());
+    }
+
     @Override
     public Column getRowIdColumn() {
         if (rowIdColumn == null) {
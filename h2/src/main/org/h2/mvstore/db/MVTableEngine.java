@@ -8,6 +8,7 @@ package org.h2.mvstore.db;
 
 import java.io.InputStream;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,6 +55,7 @@ public class MVTableEngine implements TableEngine {
         } else {
             String fileName = dbPath + Constants.SUFFIX_MV_FILE;
             builder.fileName(fileName);
+            builder.fileStore(new StatementFileStore(db));
             if (db.isReadOnly()) {
                 builder.readOnly();
             } else {
@@ -295,6 +297,28 @@ public class MVTableEngine implements TableEngine {
 
     }
 
+    /**
+     * A file store that counts the reads of the statement that is running in
+     * the current thread, for the slow query log.
+     */
+    private static class StatementFileStore extends FileStore {
+
+        private final Database db;
+
+        StatementFileStore(Database db) {
+            this.db = db;
+        }
+
+        @Override
+        public ByteBuffer readFully(long pos, int len) {
+            if (db.getSlowQueryLimit() > 0) {
+                Session.countFileRead();
+            }
+            return super.readFully(pos, len);
+        }
+
+    }
+
     /**
      * An in-doubt transaction.
      */
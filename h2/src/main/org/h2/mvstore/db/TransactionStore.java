@@ -601,6 +601,15 @@ public class TransactionStore {
             return logId;
         }
 
+        /**
+         * Check whether this transaction has changed any data.
+         *
+         * @return true if there are changes
+         */
+        public boolean hasChanges() {
+            return logId > 0;
+        }
+
         /**
          * Add a log entry.
          *
@@ -896,6 +905,69 @@ public class TransactionStore {
             return trySet(key, value, false);
         }
 
+        /**
+         * Try to lock the entry for the given key, without changing the value.
+         * The entry is locked until this transaction is committed or rolled
+         * back, the same as if it was updated.
+         * <p>
+         * This will fail if the row is locked by another transaction (that
+         * means, if another open transaction changed or locked the row).
+         *
+         * @param key the key
+         * @return whether the entry could be locked
+         */
+        public boolean tryLock(K key) {
+            VersionedValue current = map.get(key);
+            if (current == null) {
+                // nothing to lock
+                return true;
+            }
+            long tx = current.transactionId;
+            if (tx == transaction.transactionId) {
+                // already locked by this transaction
+                return true;
+            }
+            if (transaction.store.isTransactionOpen(tx)) {
+                return false;
+            }
+            if (current.value == null) {
+                // removed by a committed transaction
+                return true;
+            }
+            VersionedValue newValue = new VersionedValue();
+            newValue.transactionId = transaction.transactionId;
+            newValue.logId = transaction.logId;
+            newValue.value = current.value;
+            transaction.log(Transaction.OP_SET, mapId, key, current);
+            if (!map.replace(key, current, newValue)) {
+                // somebody else was faster
+                transaction.logUndo();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Get the id of the other open transaction that changed or locked the
+         * entry for the given key. This is the transaction an update of the
+         * entry has to wait for.
+         *
+         * @param key the key
+         * @return the transaction id, or -1 if the entry is not locked by
+         *         another open transaction
+         */
+        public long getBlockingTransactionId(K key) {
+            VersionedValue current = map.get(key);
+            if (current == null) {
+                return -1;
+            }
+            long tx = current.transactionId;
+            if (tx == transaction.transactionId || !transaction.store.isTransactionOpen(tx)) {
+                return -1;
+            }
+            return tx;
+        }
+
         /**
          * Try to set or remove the value. When updating only unchanged entries,
          * then the value is only changed if it was not changed after opening
@@ -9,7 +9,10 @@ package org.h2.result;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
 import org.h2.engine.Database;
+import org.h2.engine.QueryProfile;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
 import org.h2.message.DbException;
@@ -33,6 +36,7 @@ public class LocalResult implements ResultInterface, ResultTarget {
     private Expression[] expressions;
     private int rowId, rowCount;
     private ArrayList<Value[]> rows;
+    private PriorityQueue<Value[]> topRows;
     private SortOrder sort;
     private ValueHashMap<Value[]> distinctRows;
     private Value[] currentRow;
@@ -268,6 +272,13 @@ public class LocalResult implements ResultInterface, ResultTarget {
             }
             return;
         }
+        if (sort != null && limit > 0 && external == null) {
+            long topCount = (long) limit + Math.max(offset, 0);
+            if (topCount <= maxMemoryRows) {
+                addRowTopN(values, (int) topCount);
+                return;
+            }
+        }
         rows.add(values);
         rowCount++;
         if (rows.size() > maxMemoryRows && session.getDatabase().isPersistent()) {
@@ -278,13 +289,40 @@ public class LocalResult implements ResultInterface, ResultTarget {
                         external = new ResultTempTable(session, sort);
                     }
                 } else {
-                    external = new ResultDiskBuffer(session, sort, values.length);
+                    external = new ResultDiskBuffer(session, sort, expressions, values.length);
                 }
             }
             addRowsToDisk();
         }
     }
 
+    /**
+     * Add a row if it is within the first rows of the sorted result. The
+     * rows are kept in a heap that has the largest row at the top, so that
+     * only topCount rows need to be kept in memory, and the result is never
+     * written to disk.
+     *
+     * @param values the row to add
+     * @param topCount the number of rows to keep (offset plus limit)
+     */
+    private void addRowTopN(Value[] values, int topCount) {
+        if (topRows == null) {
+            topRows = new PriorityQueue<Value[]>(Math.min(topCount, 1024) + 1,
+                    Collections.reverseOrder(sort));
+            for (Value[] row : rows) {
+                addRowTopN(row, topCount);
+            }
+            rows.clear();
+        }
+        if (topRows.size() < topCount) {
+            topRows.add(values);
+        } else if (sort.compare(values, topRows.peek()) < 0) {
+            topRows.poll();
+            topRows.add(values);
+        }
+        rowCount = topRows.size();
+    }
+
     private void addRowsToDisk() {
         rowCount = external.addRows(rows);
         rows.clear();
@@ -299,6 +337,11 @@ public class LocalResult implements ResultInterface, ResultTarget {
      * This method is called after all rows have been added.
      */
     public void done() {
+        if (topRows != null) {
+            rows = New.arrayList(topRows);
+            rowCount = rows.size();
+            topRows = null;
+        }
         if (distinct) {
             if (distinctRows != null) {
                 rows = distinctRows.values();
@@ -322,7 +365,7 @@ public class LocalResult implements ResultInterface, ResultTarget {
                                     external = new ResultTempTable(session, sort);
                                 }
                             } else {
-                                external = new ResultDiskBuffer(session, sort, list.length);
+                                external = new ResultDiskBuffer(session, sort, expressions, list.length);
                             }
                         }
                         rows.add(list);
@@ -336,6 +379,8 @@ public class LocalResult implements ResultInterface, ResultTarget {
                 }
             }
         }
+        QueryProfile.Node sortNode = getSortProfileNode();
+        long start = sortNode == null ? 0 : System.nanoTime();
         if (external != null) {
             addRowsToDisk();
             external.done();
@@ -348,18 +393,40 @@ public class LocalResult implements ResultInterface, ResultTarget {
                 }
             }
         }
+        if (sortNode != null) {
+            sortNode.time += System.nanoTime() - start;
+            sortNode.loops++;
+            sortNode.rowsScanned += rowCount;
+        }
         applyOffset();
         applyLimit();
+        if (sortNode != null) {
+            sortNode.rows += rowCount;
+        }
         reset();
     }
 
+    private QueryProfile.Node getSortProfileNode() {
+        if (sort == null || session == null) {
+            return null;
+        }
+        QueryProfile profile = session.getQueryProfile();
+        if (profile == null) {
+            return null;
+        }
+        String name = expressions == null ? "" : sort.getSQL(expressions, visibleColumnCount);
+        return profile.getNode(sort, QueryProfile.SORT, "ORDER BY " + name);
+    }
+
     @Override
     public int getRowCount() {
         return rowCount;
     }
 
     /**
-     * Set the number of rows that this result will return at the maximum.
+     * Set the number of rows that this result will return at the maximum. If
+     * the result is sorted and the limit is set before the rows are added,
+     * only the rows that are needed are kept.
      *
      * @param limit the limit (-1 means no limit, 0 means no rows)
      */
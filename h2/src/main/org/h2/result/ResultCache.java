@@ -0,0 +1,169 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.result;
+
+import java.util.Arrays;
+import org.h2.engine.Session;
+import org.h2.util.SmallLRUCache;
+import org.h2.value.Value;
+
+/**
+ * A database wide cache of query results. The key is the query (as a plan
+ * including the fully qualified table names) and the parameter values. A
+ * cached result is only used if none of the tables of the query were modified
+ * after the result was calculated, which is checked using the data
+ * modification ids of the tables.
+ * <p>
+ * The cache is cleared when the database meta data changes. Only results that
+ * are kept fully in memory and that do not contain LOB values are cached. The
+ * cached results are shallow copies: the rows are shared, but each user of a
+ * cached result has its own cursor.
+ */
+public class ResultCache {
+
+    private final SmallLRUCache<Key, Entry> cache;
+    private long modificationMetaId = -1;
+
+    public ResultCache(int size) {
+        cache = SmallLRUCache.newInstance(size);
+    }
+
+    /**
+     * Change the maximum number of cached results.
+     *
+     * @param size the new size
+     */
+    public synchronized void setMaxSize(int size) {
+        cache.setMaxSize(size);
+        while (cache.size() > size) {
+            cache.remove(cache.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Get a cached result, if it is still valid.
+     *
+     * @param session the session that will read the result
+     * @param sql the query key
+     * @param params the parameter values
+     * @param maxDataModificationId the highest data modification id of the
+     *            tables of the query
+     * @return the result, or null if no valid result is cached
+     */
+    public LocalResult get(Session session, String sql, Value[] params, long maxDataModificationId) {
+        Key key = new Key(sql, params);
+        Entry e;
+        synchronized (this) {
+            checkModificationMetaId(session);
+            e = cache.get(key);
+            if (e == null) {
+                return null;
+            }
+            if (maxDataModificationId > e.evaluated) {
+                cache.remove(key);
+                return null;
+            }
+        }
+        LocalResult r = e.result.createShallowCopy(session);
+        if (r != null) {
+            r.reset();
+        }
+        return r;
+    }
+
+    /**
+     * Add a result to the cache. The result is not added if it is not kept
+     * fully in memory, or if it contains LOB values.
+     *
+     * @param session the session that calculated the result
+     * @param sql the query key
+     * @param params the parameter values
+     * @param result the result
+     * @param evaluated the data modification id of the database before the
+     *            query was run
+     */
+    public void put(Session session, String sql, Value[] params, LocalResult result, long evaluated) {
+        if (result == null || result.needToClose()) {
+            return;
+        }
+        for (int i = 0, count = result.getVisibleColumnCount(); i < count; i++) {
+            int type = result.getColumnType(i);
+            if (type == Value.BLOB || type == Value.CLOB) {
+                return;
+            }
+        }
+        LocalResult copy = result.createShallowCopy(session);
+        if (copy == null) {
+            return;
+        }
+        Entry e = new Entry();
+        e.result = copy;
+        e.evaluated = evaluated;
+        synchronized (this) {
+            checkModificationMetaId(session);
+            cache.put(new Key(sql, params), e);
+        }
+    }
+
+    private void checkModificationMetaId(Session session) {
+        long id = session.getDatabase().getModificationMetaId();
+        if (id != modificationMetaId) {
+            cache.clear();
+            modificationMetaId = id;
+        }
+    }
+
+    /**
+     * The key of a cached result.
+     */
+    private static final class Key {
+
+        private final String sql;
+        private final Value[] params;
+        private final int hash;
+
+        Key(String sql, Value[] params) {
+            this.sql = sql;
+            this.params = params;
+            this.hash = sql.hashCode() * 31 + Arrays.hashCode(params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return hash == k.hash && sql.equals(k.sql) && Arrays.equals(params, k.params);
+        }
+
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+
+        /**
+         * The result.
+         */
+        LocalResult result;
+
+        /**
+         * The data modification id of the database when the result was
+         * calculated.
+         */
+        long evaluated;
+
+    }
+
+}
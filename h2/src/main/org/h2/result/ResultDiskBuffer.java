@@ -8,13 +8,21 @@ package org.h2.result;
 
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import org.h2.compress.CompressLZF;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
+import org.h2.expression.Expression;
 import org.h2.message.DbException;
 import org.h2.store.Data;
 import org.h2.store.FileStore;
+import org.h2.util.MathUtils;
 import org.h2.util.New;
+import org.h2.util.Task;
+import org.h2.value.CompareModeIcu4J;
 import org.h2.value.Value;
 
 /**
@@ -24,12 +32,34 @@ class ResultDiskBuffer implements ResultExternal {
 
     private static final int READ_AHEAD = 128;
 
+    /**
+     * The minimum number of rows each thread sorts when a run is sorted by
+     * multiple threads.
+     */
+    private static final int PARALLEL_SORT_MIN_ROWS = 4 * 1024;
+
     private final Data rowBuff;
     private final ArrayList<ResultDiskTape> tapes;
     private final ResultDiskTape mainTape;
     private final SortOrder sort;
     private final int columnCount;
     private final int maxBufferSize;
+    private final int sortThreads;
+
+    /**
+     * Whether the rows are written in LZF compressed blocks.
+     */
+    private final boolean compress;
+
+    private CompressLZF compressor;
+    private byte[] compressBuffer;
+
+    /**
+     * The tapes that still contain rows, ordered by their current row. This
+     * is only used for sorted results, and is built when reading the first
+     * row.
+     */
+    private PriorityQueue<ResultDiskTape> mergeHeap;
 
     private FileStore file;
     private int rowCount;
@@ -63,12 +93,55 @@ class ResultDiskBuffer implements ResultExternal {
          * A list of rows in the buffer.
          */
         ArrayList<Value[]> buffer = New.arrayList();
+
+        /**
+         * The index of the next row in the buffer.
+         */
+        int bufferPos;
+
+        /**
+         * Check whether there are no more rows in the buffer.
+         *
+         * @return true if the buffer is empty
+         */
+        boolean isBufferEmpty() {
+            return bufferPos >= buffer.size();
+        }
+
+        /**
+         * Get the next row in the buffer.
+         *
+         * @return the row
+         */
+        Value[] peek() {
+            return buffer.get(bufferPos);
+        }
+
+        /**
+         * Remove the next row from the buffer.
+         *
+         * @return the row
+         */
+        Value[] poll() {
+            Value[] row = buffer.get(bufferPos);
+            buffer.set(bufferPos++, null);
+            return row;
+        }
+
+        /**
+         * Remove all rows from the buffer.
+         */
+        void clearBuffer() {
+            buffer.clear();
+            bufferPos = 0;
+        }
     }
 
-    ResultDiskBuffer(Session session, SortOrder sort, int columnCount) {
+    ResultDiskBuffer(Session session, SortOrder sort, Expression[] expressions, int columnCount) {
         this.parent = null;
         this.sort = sort;
         this.columnCount = columnCount;
+        session.addSpilledResult();
         Database db = session.getDatabase();
         rowBuff = Data.create(db, Constants.DEFAULT_PAGE_SIZE);
         String fileName = db.createTempFile();
@@ -84,6 +157,14 @@ class ResultDiskBuffer implements ResultExternal {
             mainTape.pos = FileStore.HEADER_LENGTH;
         }
         this.maxBufferSize = db.getSettings().largeResultBufferSize;
+        this.compress = db.getSettings().largeResultCompress;
+        // the ICU4J collator is not thread safe
+        if (db.getCompareMode() instanceof CompareModeIcu4J ||
+                sort != null && !isParallelSortSupported(sort, expressions)) {
+            this.sortThreads = 1;
+        } else {
+            this.sortThreads = db.getSettings().largeResultSortThreads;
+        }
     }
 
     private ResultDiskBuffer(ResultDiskBuffer parent) {
@@ -112,6 +193,8 @@ class ResultDiskBuffer implements ResultExternal {
         sort = parent.sort;
         columnCount = parent.columnCount;
         maxBufferSize = parent.maxBufferSize;
+        compress = parent.compress;
+        sortThreads = parent.sortThreads;
     }
 
     @Override
@@ -126,12 +209,15 @@ class ResultDiskBuffer implements ResultExternal {
     @Override
     public int addRows(ArrayList<Value[]> rows) {
         if (sort != null) {
-            sort.sort(rows);
+            sortRows(rows);
         }
         Data buff = rowBuff;
         long start = file.getFilePointer();
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         int bufferLen = 0;
+        // compressed rows are always written in blocks
+        int blockSize = compress ?
+                Math.max(maxBufferSize, Constants.IO_BUFFER_SIZE) : maxBufferSize;
         for (Value[] row : rows) {
             buff.reset();
             buff.writeInt(0);
@@ -143,13 +229,11 @@ class ResultDiskBuffer implements ResultExternal {
             buff.fillAligned();
             int len = buff.length();
             buff.setInt(0, len);
-            if (maxBufferSize > 0) {
+            if (blockSize > 0) {
                 buffer.write(buff.getBytes(), 0, len);
                 bufferLen += len;
-                if (bufferLen > maxBufferSize) {
-                    byte[] data = buffer.toByteArray();
-                    buffer.reset();
-                    file.write(data, 0, data.length);
+                if (bufferLen > blockSize) {
+                    writeBlock(buffer);
                     bufferLen = 0;
                 }
             } else {
@@ -157,8 +241,7 @@ class ResultDiskBuffer implements ResultExternal {
             }
         }
         if (bufferLen > 0) {
-            byte[] data = buffer.toByteArray();
-            file.write(data, 0, data.length);
+            writeBlock(buffer);
         }
         if (sort != null) {
             ResultDiskTape tape = new ResultDiskTape();
@@ -172,6 +255,137 @@ class ResultDiskBuffer implements ResultExternal {
         return rowCount;
     }
 
+    /**
+     * Check whether the rows may be sorted by multiple threads. Comparing LOBs
+     * reads the LOB storage, which is only accessed by the session thread, so
+     * this is only supported if the data type of all sort columns is known,
+     * and none of them may contain a LOB.
+     *
+     * @param sort the sort order
+     * @param expressions the expressions of the result, or null
+     * @return true if yes
+     */
+    private static boolean isParallelSortSupported(SortOrder sort, Expression[] expressions) {
+        if (expressions == null) {
+            return false;
+        }
+        for (int idx : sort.getQueryColumnIndexes()) {
+            if (idx >= expressions.length) {
+                return false;
+            }
+            switch (expressions[idx].getType()) {
+            case Value.BLOB:
+            case Value.CLOB:
+            case Value.ARRAY:
+            case Value.UNKNOWN:
+                return false;
+            default:
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sort the rows of a run. Large runs are split into parts that are sorted
+     * by multiple threads, and then merged.
+     *
+     * @param rows the rows
+     */
+    private void sortRows(ArrayList<Value[]> rows) {
+        int size = rows.size();
+        int threads = Math.min(sortThreads, size / PARALLEL_SORT_MIN_ROWS);
+        if (threads <= 1) {
+            sort.sort(rows);
+            return;
+        }
+        final Value[][] array = rows.toArray(new Value[size][]);
+        int[] bounds = new int[threads + 1];
+        for (int i = 0; i <= threads; i++) {
+            bounds[i] = (int) ((long) size * i / threads);
+        }
+        Task[] tasks = new Task[threads - 1];
+        for (int i = 0; i < tasks.length; i++) {
+            final int from = bounds[i], to = bounds[i + 1];
+            tasks[i] = new Task() {
+                @Override
+                public void call() {
+                    Arrays.sort(array, from, to, sort);
+                }
+            }.execute("H2 sort");
+        }
+        Arrays.sort(array, bounds[threads - 1], size, sort);
+        Exception ex = null;
+        for (Task t : tasks) {
+            Exception e = t.getException();
+            if (ex == null) {
+                ex = e;
+            }
+        }
+        if (ex != null) {
+            throw DbException.convert(ex);
+        }
+        Value[][] source = array, target = new Value[size][];
+        while (threads > 1) {
+            int count = 0;
+            for (int i = 0; i < threads; i += 2) {
+                int mid = bounds[Math.min(i + 1, threads)];
+                int end = bounds[Math.min(i + 2, threads)];
+                merge(source, bounds[i], mid, end, target);
+                bounds[count++] = bounds[i];
+            }
+            bounds[count] = size;
+            threads = count;
+            Value[][] temp = source;
+            source = target;
+            target = temp;
+        }
+        rows.clear();
+        rows.addAll(Arrays.asList(source));
+    }
+
+    private void merge(Value[][] source, int start, int mid, int end, Value[][] target) {
+        int a = start, b = mid;
+        for (int i = start; i < end; i++) {
+            if (b >= end || (a < mid && sort.compare(source[a], source[b]) <= 0)) {
+                target[i] = source[a++];
+            } else {
+                target[i] = source[b++];
+            }
+        }
+    }
+
+    /**
+     * Write the buffered rows to the file. If compression is enabled, the
+     * rows are written as one LZF compressed block: the compressed length,
+     * the uncompressed length, and the compressed data, aligned to the file
+     * block size.
+     *
+     * @param buffer the buffer (it is reset afterwards)
+     */
+    private void writeBlock(ByteArrayOutputStream buffer) {
+        byte[] data = buffer.toByteArray();
+        buffer.reset();
+        if (!compress) {
+            file.write(data, 0, data.length);
+            return;
+        }
+        int len = data.length;
+        if (compressor == null) {
+            compressor = new CompressLZF();
+        }
+        if (compressBuffer == null || compressBuffer.length < len * 2 + 100) {
+            compressBuffer = new byte[len * 2 + 100];
+        }
+        int compressed = compressor.compress(data, len, compressBuffer, 0);
+        Data block = Data.create(null,
+                MathUtils.roundUpInt(8 + compressed, Constants.FILE_BLOCK_SIZE));
+        block.writeInt(compressed);
+        block.writeInt(len);
+        block.write(compressBuffer, 0, compressed);
+        file.write(block.getBytes(), 0, block.getBytes().length);
+    }
+
     @Override
     public void done() {
         file.seek(FileStore.HEADER_LENGTH);
@@ -183,11 +397,12 @@ class ResultDiskBuffer implements ResultExternal {
         if (sort != null) {
             for (ResultDiskTape tape : tapes) {
                 tape.pos = tape.start;
-                tape.buffer = New.arrayList();
+                tape.clearBuffer();
             }
+            mergeHeap = null;
         } else {
             mainTape.pos = FileStore.HEADER_LENGTH;
-            mainTape.buffer = New.arrayList();
+            mainTape.clearBuffer();
         }
     }
 
@@ -209,53 +424,93 @@ class ResultDiskBuffer implements ResultExternal {
         tape.buffer.add(row);
     }
 
+    private void readBlock(ResultDiskTape tape) {
+        int min = Constants.FILE_BLOCK_SIZE;
+        Data buff = rowBuff;
+        buff.reset();
+        file.readFully(buff.getBytes(), 0, min);
+        int compressed = buff.readInt();
+        int len = buff.readInt();
+        int blockLen = MathUtils.roundUpInt(8 + compressed, min);
+        buff.checkCapacity(blockLen);
+        if (blockLen > min) {
+            file.readFully(buff.getBytes(), min, blockLen - min);
+        }
+        tape.pos += blockLen;
+        if (compressor == null) {
+            compressor = new CompressLZF();
+        }
+        if (compressBuffer == null || compressBuffer.length < len) {
+            compressBuffer = new byte[len];
+        }
+        compressor.expand(buff.getBytes(), 8, compressed, compressBuffer, 0, len);
+        Data rows = Data.create(buff.getHandler(), compressBuffer);
+        for (int pos = 0; pos < len;) {
+            rows.setPos(pos);
+            pos += rows.readInt();
+            Value[] row = new Value[columnCount];
+            for (int k = 0; k < columnCount; k++) {
+                row[k] = rows.readValue();
+            }
+            tape.buffer.add(row);
+        }
+    }
+
     @Override
     public Value[] next() {
         return sort != null ? nextSorted() : nextUnsorted();
     }
 
     private Value[] nextUnsorted() {
-        file.seek(mainTape.pos);
-        if (mainTape.buffer.size() == 0) {
-            for (int j = 0; mainTape.pos < mainTape.end && j < READ_AHEAD; j++) {
-                readRow(mainTape);
-            }
+        if (mainTape.isBufferEmpty()) {
+            readAhead(mainTape);
+        }
+        return mainTape.poll();
+    }
+
+    private void readAhead(ResultDiskTape tape) {
+        tape.clearBuffer();
+        file.seek(tape.pos);
+        if (compress) {
+            readBlock(tape);
+            return;
+        }
+        for (int j = 0; tape.pos < tape.end && j < READ_AHEAD; j++) {
+            readRow(tape);
         }
-        Value[] row = mainTape.buffer.get(0);
-        mainTape.buffer.remove(0);
-        return row;
     }
 
     private Value[] nextSorted() {
-        int next = -1;
-        for (int i = 0, size = tapes.size(); i < size; i++) {
-            ResultDiskTape tape = tapes.get(i);
-            if (tape.buffer.size() == 0 && tape.pos < tape.end) {
-                file.seek(tape.pos);
-                for (int j = 0; tape.pos < tape.end && j < READ_AHEAD; j++) {
-                    readRow(tape);
+        if (mergeHeap == null) {
+            // k-way merge: the tape with the smallest current row
+            // is always at the head of the queue
+            mergeHeap = new PriorityQueue<ResultDiskTape>(Math.max(1, tapes.size()),
+                    new Comparator<ResultDiskTape>() {
+                        @Override
+                        public int compare(ResultDiskTape a, ResultDiskTape b) {
+                            return sort.compare(a.peek(), b.peek());
+                        }
+                    });
+            for (ResultDiskTape tape : tapes) {
+                if (tape.isBufferEmpty() && tape.pos < tape.end) {
+                    readAhead(tape);
                 }
-            }
-            if (tape.buffer.size() > 0) {
-                if (next == -1) {
-                    next = i;
-                } else if (compareTapes(tape, tapes.get(next)) < 0) {
-                    next = i;
+                if (!tape.isBufferEmpty()) {
+                    mergeHeap.add(tape);
                 }
             }
         }
-        ResultDiskTape t = tapes.get(next);
-        Value[] row = t.buffer.get(0);
-        t.buffer.remove(0);
+        ResultDiskTape t = mergeHeap.poll();
+        Value[] row = t.poll();
+        if (t.isBufferEmpty() && t.pos < t.end) {
+            readAhead(t);
+        }
+        if (!t.isBufferEmpty()) {
+            mergeHeap.add(t);
+        }
         return row;
     }
 
-    private int compareTapes(ResultDiskTape a, ResultDiskTape b) {
-        Value[] va = a.buffer.get(0);
-        Value[] vb = b.buffer.get(0);
-        return sort.compare(va, vb);
-    }
-
     private synchronized void closeChild() {
         if (--childCount == 0 && closed) {
             file.closeAndDeleteSilently();
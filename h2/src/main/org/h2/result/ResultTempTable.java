@@ -41,6 +41,7 @@ public class ResultTempTable implements ResultExternal {
     ResultTempTable(Session session, SortOrder sort) {
         this.session = session;
         this.sort = sort;
+        session.addSpilledResult();
         Schema schema = session.getDatabase().getSchema(Constants.SCHEMA_MAIN);
         Column column = new Column(COLUMN_NAME, Value.ARRAY);
         column.setNullable(false);
@@ -84,12 +84,12 @@ public class TcpServerThread implements Runnable {
                 int minClientVersion = transfer.readInt();
                 if (minClientVersion < Constants.TCP_PROTOCOL_VERSION_6) {
                     throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_6);
-                } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_13) {
-                    throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_13);
+                } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_14) {
+                    throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_14);
                 }
                 int maxClientVersion = transfer.readInt();
-                if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_13) {
-                    clientVersion = Constants.TCP_PROTOCOL_VERSION_13;
+                if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_14) {
+                    clientVersion = Constants.TCP_PROTOCOL_VERSION_14;
                 } else {
                     clientVersion = minClientVersion;
                 }
@@ -446,6 +446,24 @@ public class TcpServerThread implements Runnable {
                 lobs.put(lobId, in);
                 lobIn.skip(offset);
             }
+            if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_14) {
+                // send the data in blocks, so that the client can request
+                // large ranges without the need for a buffer of that size
+                transfer.writeInt(SessionRemote.STATUS_OK);
+                byte[] buff = new byte[Math.max(0, Math.min(16 * Constants.IO_BUFFER_SIZE, length))];
+                while (length > 0) {
+                    int len = IOUtils.readFully(in, buff, 0, Math.min(buff.length, length));
+                    if (len <= 0) {
+                        break;
+                    }
+                    transfer.writeInt(len);
+                    transfer.writeBytes(buff, 0, len);
+                    length -= len;
+                }
+                transfer.writeInt(0);
+                transfer.flush();
+                break;
+            }
             // limit the buffer size
             length = Math.min(16 * Constants.IO_BUFFER_SIZE, length);
             byte[] buff = new byte[length];
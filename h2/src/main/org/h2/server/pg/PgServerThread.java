@@ -6,6 +6,8 @@
  */
 package org.h2.server.pg;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -17,6 +19,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.net.Socket;
 import java.sql.Connection;
 import java.sql.ParameterMetaData;
@@ -25,9 +30,13 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Properties;
 
 import org.h2.command.CommandInterface;
@@ -38,6 +47,7 @@ import org.h2.jdbc.JdbcPreparedStatement;
 import org.h2.jdbc.JdbcStatement;
 import org.h2.message.DbException;
 import org.h2.mvstore.DataUtils;
+import org.h2.util.DateTimeUtils;
 import org.h2.util.IOUtils;
 import org.h2.util.JdbcUtils;
 import org.h2.util.MathUtils;
@@ -50,6 +60,20 @@ import org.h2.value.CaseInsensitiveMap;
  * One server thread is opened for each client.
  */
 public class PgServerThread implements Runnable {
+
+    /**
+     * The number of closed statements that are kept for re-use.
+     */
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    /**
+     * The number of days between 1970-01-01 and 2000-01-01, the epoch used by
+     * PostgreSQL for binary date and time values.
+     */
+    private static final long PG_EPOCH_DAYS = 10957;
+
+    private static final long MICROS_PER_DAY = 24L * 60 * 60 * 1000 * 1000;
+
     private final PgServer server;
     private Socket socket;
     private Connection conn;
@@ -71,6 +95,9 @@ public class PgServerThread implements Runnable {
     private String dateStyle = "ISO";
     private final HashMap<String, Prepared> prepared = new CaseInsensitiveMap<Prepared>();
     private final HashMap<String, Portal> portals = new CaseInsensitiveMap<Portal>();
+    private final LinkedHashMap<String, JdbcPreparedStatement> statementCache =
+            new LinkedHashMap<String, JdbcPreparedStatement>(16, 0.75f, true);
+    private boolean ignoreUntilSync;
 
     PgServerThread(Socket socket, PgServer server) {
         this.server = server;
@@ -83,11 +110,14 @@ public class PgServerThread implements Runnable {
         try {
             server.trace("Connect");
             InputStream ins = socket.getInputStream();
-            out = socket.getOutputStream();
-            dataInRaw = new DataInputStream(ins);
+            out = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+            dataInRaw = new DataInputStream(new BufferedInputStream(ins, 16 * 1024));
             while (!stop) {
                 process();
-                out.flush();
+                // pipelined messages are processed before flushing
+                if (stop || dataInRaw.available() <= 0) {
+                    out.flush();
+                }
             }
         } catch (EOFException e) {
             // more or less normal disconnect
@@ -143,6 +173,20 @@ public class PgServerThread implements Runnable {
         byte[] data = DataUtils.newBytes(len);
         dataInRaw.readFully(data, 0, len);
         dataIn = new DataInputStream(new ByteArrayInputStream(data, 0, len));
+        if (ignoreUntilSync) {
+            switch (x) {
+            case 'P':
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'E':
+                // after an error in the extended query protocol, messages
+                // are discarded until the next Sync
+                server.trace("Ignored: " + (char) x);
+                return;
+            default:
+            }
+        }
         switch (x) {
         case 0:
             server.trace("Init");
@@ -237,7 +281,14 @@ public class PgServerThread implements Runnable {
                 p.paramType[i] = type;
             }
             try {
-                p.prep = (JdbcPreparedStatement) conn.prepareStatement(p.sql);
+                Prepared old = prepared.remove(p.name);
+                if (old != null) {
+                    releaseStatement(old);
+                }
+                p.prep = statementCache.remove(p.sql);
+                if (p.prep == null) {
+                    p.prep = (JdbcPreparedStatement) conn.prepareStatement(p.sql);
+                }
                 prepared.put(p.name, p);
                 sendParseComplete();
             } catch (Exception e) {
@@ -256,7 +307,10 @@ public class PgServerThread implements Runnable {
                 break;
             }
             portal.prep = prep;
-            portals.put(portal.name, portal);
+            Portal oldPortal = portals.put(portal.name, portal);
+            if (oldPortal != null) {
+                releaseStatement(oldPortal.prep);
+            }
             int formatCodeCount = readShort();
             int[] formatCodes = new int[formatCodeCount];
             for (int i = 0; i < formatCodeCount; i++) {
@@ -286,10 +340,13 @@ public class PgServerThread implements Runnable {
             if (type == 'S') {
                 Prepared p = prepared.remove(name);
                 if (p != null) {
-                    JdbcUtils.closeSilently(p.prep);
+                    releaseStatement(p);
                 }
             } else if (type == 'P') {
-                portals.remove(name);
+                Portal p = portals.remove(name);
+                if (p != null) {
+                    releaseStatement(p.prep);
+                }
             } else {
                 server.trace("expected S or P, got " + type);
                 sendErrorResponse("expected S or P");
@@ -317,7 +374,7 @@ public class PgServerThread implements Runnable {
                     PreparedStatement prep = p.prep.prep;
                     try {
                         ResultSetMetaData meta = prep.getMetaData();
-                        sendRowDescription(meta);
+                        sendRowDescription(meta, p.resultColumnFormat);
                     } catch (Exception e) {
                         sendErrorResponse(e);
                     }
@@ -349,7 +406,7 @@ public class PgServerThread implements Runnable {
                         ResultSet rs = prep.getResultSet();
                         // the meta-data is sent in the prior 'Describe'
                         while (rs.next()) {
-                            sendDataRow(rs);
+                            sendDataRow(rs, p.resultColumnFormat);
                         }
                         sendCommandComplete(prep, 0);
                     } catch (Exception e) {
@@ -374,6 +431,11 @@ public class PgServerThread implements Runnable {
             sendReadyForQuery();
             break;
         }
+        case 'H': {
+            server.trace("Flush");
+            out.flush();
+            break;
+        }
         case 'Q': {
             server.trace("Query");
             String query = readString();
@@ -393,9 +455,9 @@ public class PgServerThread implements Runnable {
                         ResultSet rs = stat.getResultSet();
                         ResultSetMetaData meta = rs.getMetaData();
                         try {
-                            sendRowDescription(meta);
+                            sendRowDescription(meta, null);
                             while (rs.next()) {
-                                sendDataRow(rs);
+                                sendDataRow(rs, null);
                             }
                             sendCommandComplete(stat, 0);
                         } catch (Exception e) {
@@ -475,19 +537,20 @@ public class PgServerThread implements Runnable {
         sendMessage();
     }
 
-    private void sendDataRow(ResultSet rs) throws Exception {
+    private void sendDataRow(ResultSet rs, int[] formatCodes) throws Exception {
         ResultSetMetaData metaData = rs.getMetaData();
         int columns = metaData.getColumnCount();
         startMessage('D');
         writeShort(columns);
         for (int i = 1; i <= columns; i++) {
-            writeDataColumn(rs, i, PgServer.convertType(metaData.getColumnType(i)));
+            int pgType = PgServer.convertType(metaData.getColumnType(i));
+            writeDataColumn(rs, i, pgType, formatAsText(pgType, formatCodes, i - 1));
         }
         sendMessage();
     }
 
-    private void writeDataColumn(ResultSet rs, int column, int pgType) throws Exception {
-        if (formatAsText(pgType)) {
+    private void writeDataColumn(ResultSet rs, int column, int pgType, boolean text) throws Exception {
+        if (text) {
             // plain text
             switch (pgType) {
             case PgServer.PG_TYPE_BOOL:
@@ -507,41 +570,198 @@ public class PgServerThread implements Runnable {
         } else {
             // binary
             switch (pgType) {
-            case PgServer.PG_TYPE_INT2:
-                writeInt(2);
-                writeShort(rs.getShort(column));
+            case PgServer.PG_TYPE_BOOL: {
+                boolean x = rs.getBoolean(column);
+                if (!rs.wasNull()) {
+                    writeInt(1);
+                    dataOut.writeByte(x ? 1 : 0);
+                    return;
+                }
                 break;
-            case PgServer.PG_TYPE_INT4:
-                writeInt(4);
-                writeInt(rs.getInt(column));
+            }
+            case PgServer.PG_TYPE_INT2: {
+                short x = rs.getShort(column);
+                if (!rs.wasNull()) {
+                    writeInt(2);
+                    writeShort(x);
+                    return;
+                }
                 break;
-            case PgServer.PG_TYPE_INT8:
-                writeInt(8);
-                dataOut.writeLong(rs.getLong(column));
+            }
+            case PgServer.PG_TYPE_INT4: {
+                int x = rs.getInt(column);
+                if (!rs.wasNull()) {
+                    writeInt(4);
+                    writeInt(x);
+                    return;
+                }
                 break;
-            case PgServer.PG_TYPE_FLOAT4:
-                writeInt(4);
-                dataOut.writeFloat(rs.getFloat(column));
+            }
+            case PgServer.PG_TYPE_INT8: {
+                long x = rs.getLong(column);
+                if (!rs.wasNull()) {
+                    writeInt(8);
+                    dataOut.writeLong(x);
+                    return;
+                }
                 break;
-            case PgServer.PG_TYPE_FLOAT8:
-                writeInt(8);
-                dataOut.writeDouble(rs.getDouble(column));
+            }
+            case PgServer.PG_TYPE_FLOAT4: {
+                float x = rs.getFloat(column);
+                if (!rs.wasNull()) {
+                    writeInt(4);
+                    dataOut.writeFloat(x);
+                    return;
+                }
                 break;
-            case PgServer.PG_TYPE_BYTEA:
+            }
+            case PgServer.PG_TYPE_FLOAT8: {
+                double x = rs.getDouble(column);
+                if (!rs.wasNull()) {
+                    writeInt(8);
+                    dataOut.writeDouble(x);
+                    return;
+                }
+                break;
+            }
+            case PgServer.PG_TYPE_NUMERIC: {
+                BigDecimal x = rs.getBigDecimal(column);
+                if (x != null) {
+                    writeNumeric(x);
+                    return;
+                }
+                break;
+            }
+            case PgServer.PG_TYPE_DATE: {
+                java.sql.Date x = rs.getDate(column);
+                if (x != null) {
+                    long dateValue = DateTimeUtils.dateValueFromDate(x.getTime());
+                    writeInt(4);
+                    writeInt((int) (DateTimeUtils.absoluteDayFromDateValue(dateValue) - PG_EPOCH_DAYS));
+                    return;
+                }
+                break;
+            }
+            case PgServer.PG_TYPE_TIME: {
+                Time x = rs.getTime(column);
+                if (x != null) {
+                    writeInt(8);
+                    dataOut.writeLong(DateTimeUtils.nanosFromDate(x.getTime()) / 1000);
+                    return;
+                }
+                break;
+            }
+            case PgServer.PG_TYPE_TIMESTAMP_NO_TMZONE: {
+                Timestamp x = rs.getTimestamp(column);
+                if (x != null) {
+                    long ms = x.getTime();
+                    long dateValue = DateTimeUtils.dateValueFromDate(ms);
+                    long nanos = DateTimeUtils.nanosFromDate(ms) + x.getNanos() % 1000000;
+                    long days = DateTimeUtils.absoluteDayFromDateValue(dateValue) - PG_EPOCH_DAYS;
+                    writeInt(8);
+                    dataOut.writeLong(days * MICROS_PER_DAY + nanos / 1000);
+                    return;
+                }
+                break;
+            }
+            case PgServer.PG_TYPE_BYTEA: {
                 byte[] data = rs.getBytes(column);
-                if (data == null) {
-                    writeInt(-1);
-                } else {
+                if (data != null) {
                     writeInt(data.length);
                     write(data);
+                    return;
                 }
                 break;
-
-            default: throw new IllegalStateException("output binary format is undefined");
             }
+            case PgServer.PG_TYPE_VARCHAR:
+            case PgServer.PG_TYPE_BPCHAR:
+            case PgServer.PG_TYPE_TEXT: {
+                // the binary format of text is the text itself
+                String x = rs.getString(column);
+                if (x != null) {
+                    byte[] data = x.getBytes(getEncoding());
+                    writeInt(data.length);
+                    write(data);
+                    return;
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("output binary format is undefined");
+            }
+            // NULL
+            writeInt(-1);
         }
     }
 
+    /**
+     * Write a numeric value in the PostgreSQL binary format: the number of
+     * base 10000 digits, the weight of the first digit, the sign, the display
+     * scale, and the digits.
+     *
+     * @param x the value
+     */
+    private void writeNumeric(BigDecimal x) throws IOException {
+        String s = x.abs().toPlainString();
+        int point = s.indexOf('.');
+        String intPart = point < 0 ? s : s.substring(0, point);
+        String fractionPart = point < 0 ? "" : s.substring(point + 1);
+        if (intPart.equals("0")) {
+            intPart = "";
+        }
+        StringBuilder buff = new StringBuilder();
+        for (int i = intPart.length() % 4; i > 0 && i < 4; i++) {
+            buff.append('0');
+        }
+        buff.append(intPart);
+        int weight = buff.length() / 4 - 1;
+        buff.append(fractionPart);
+        while (buff.length() % 4 != 0) {
+            buff.append('0');
+        }
+        int start = 0, end = buff.length() / 4;
+        while (start < end && buff.substring(start * 4, start * 4 + 4).equals("0000")) {
+            start++;
+            weight--;
+        }
+        while (end > start && buff.substring(end * 4 - 4, end * 4).equals("0000")) {
+            end--;
+        }
+        int count = end - start;
+        writeInt(8 + 2 * count);
+        writeShort(count);
+        writeShort(count == 0 ? 0 : weight);
+        writeShort(x.signum() < 0 ? 0x4000 : 0);
+        writeShort(Math.max(0, x.scale()));
+        for (int i = start; i < end; i++) {
+            writeShort(Integer.parseInt(buff.substring(i * 4, i * 4 + 4)));
+        }
+    }
+
+    private BigDecimal readNumeric(int paramLen) throws IOException {
+        int count = readShort();
+        checkParamLength(8 + 2 * count, paramLen);
+        int weight = readShort();
+        int sign = readShort() & 0xffff;
+        int scale = readShort();
+        if (sign != 0 && sign != 0x4000) {
+            throw DbException.getInvalidValueException("numeric sign", sign);
+        }
+        BigInteger unscaled = BigInteger.ZERO;
+        BigInteger base = BigInteger.valueOf(10000);
+        for (int i = 0; i < count; i++) {
+            unscaled = unscaled.multiply(base).add(BigInteger.valueOf(readShort()));
+        }
+        BigDecimal x = new BigDecimal(unscaled, 4 * (count - 1 - weight));
+        if (x.scale() > scale) {
+            // only zeros are removed
+            x = x.setScale(scale, RoundingMode.DOWN);
+        } else {
+            x = x.setScale(scale);
+        }
+        return sign == 0x4000 ? x.negate() : x;
+    }
+
     private String getEncoding() {
         if ("UNICODE".equals(clientEncoding)) {
             return "UTF-8";
@@ -551,7 +771,9 @@ public class PgServerThread implements Runnable {
 
     private void setParameter(PreparedStatement prep,
             int pgType, int i, int[] formatCodes) throws SQLException, IOException {
-        boolean text = (i >= formatCodes.length) || (formatCodes[i] == 0);
+        // no format code means text, one format code applies to all parameters
+        int format = formatCodes.length == 0 ? 0 : formatCodes[Math.min(i, formatCodes.length - 1)];
+        boolean text = format == 0;
         int col = i + 1;
         int paramLen = readInt();
         if (paramLen == -1) {
@@ -564,8 +786,12 @@ public class PgServerThread implements Runnable {
         } else {
             // binary
             switch (pgType) {
+            case PgServer.PG_TYPE_BOOL:
+                checkParamLength(1, paramLen);
+                prep.setBoolean(col, readByte() != 0);
+                break;
             case PgServer.PG_TYPE_INT2:
-                checkParamLength(4, paramLen);
+                checkParamLength(2, paramLen);
                 prep.setShort(col, readShort());
                 break;
             case PgServer.PG_TYPE_INT4:
@@ -584,6 +810,31 @@ public class PgServerThread implements Runnable {
                 checkParamLength(8, paramLen);
                 prep.setDouble(col, dataIn.readDouble());
                 break;
+            case PgServer.PG_TYPE_NUMERIC:
+                prep.setBigDecimal(col, readNumeric(paramLen));
+                break;
+            case PgServer.PG_TYPE_DATE: {
+                checkParamLength(4, paramLen);
+                long dateValue = DateTimeUtils.dateValueFromAbsoluteDay(readInt() + PG_EPOCH_DAYS);
+                prep.setDate(col, DateTimeUtils.convertDateValueToDate(dateValue));
+                break;
+            }
+            case PgServer.PG_TYPE_TIME:
+                checkParamLength(8, paramLen);
+                prep.setTime(col, DateTimeUtils.convertNanoToTime(dataIn.readLong() * 1000));
+                break;
+            case PgServer.PG_TYPE_TIMESTAMP_NO_TMZONE: {
+                checkParamLength(8, paramLen);
+                long micros = dataIn.readLong();
+                long days = micros / MICROS_PER_DAY;
+                if (micros < 0 && days * MICROS_PER_DAY != micros) {
+                    days--;
+                }
+                long nanos = (micros - days * MICROS_PER_DAY) * 1000;
+                long dateValue = DateTimeUtils.dateValueFromAbsoluteDay(days + PG_EPOCH_DAYS);
+                prep.setTimestamp(col, DateTimeUtils.convertDateValueToTimestamp(dateValue, nanos));
+                break;
+            }
             case PgServer.PG_TYPE_BYTEA:
                 byte[] d1 = DataUtils.newBytes(paramLen);
                 readFully(d1);
@@ -606,6 +857,7 @@ public class PgServerThread implements Runnable {
 
     private void sendErrorResponse(Exception re) throws IOException {
         SQLException e = DbException.toSQLException(re);
+        ignoreUntilSync = true;
         server.traceError(e);
         startMessage('E');
         write('S');
@@ -661,7 +913,7 @@ public class PgServerThread implements Runnable {
         sendMessage();
     }
 
-    private void sendRowDescription(ResultSetMetaData meta) throws Exception {
+    private void sendRowDescription(ResultSetMetaData meta, int[] formatCodes) throws Exception {
         if (meta == null) {
             sendNoData();
         } else {
@@ -701,24 +953,50 @@ public class PgServerThread implements Runnable {
                 // pg_attribute.atttypmod
                 writeInt(-1);
                 // the format type: text = 0, binary = 1
-                writeShort(formatAsText(types[i]) ? 0 : 1);
+                writeShort(formatAsText(types[i], formatCodes, i) ? 0 : 1);
             }
             sendMessage();
         }
     }
 
     /**
-     * Check whether the given type should be formatted as text.
+     * Check whether a column should be formatted as text.
      *
-     * @return true for binary
+     * @param pgType the PostgreSQL type
+     * @param formatCodes the result format codes of the portal, or null
+     * @param column the column index (0 based)
+     * @return true for text, false for binary
      */
-    private static boolean formatAsText(int pgType) {
+    private static boolean formatAsText(int pgType, int[] formatCodes, int column) {
+        if (formatCodes == null || formatCodes.length == 0) {
+            // the default: only bytea is sent as binary
+            return pgType != PgServer.PG_TYPE_BYTEA;
+        }
+        int format = formatCodes.length == 1 ? formatCodes[0] :
+                column < formatCodes.length ? formatCodes[column] : 0;
+        return format == 0 || !isBinaryFormatSupported(pgType);
+    }
+
+    private static boolean isBinaryFormatSupported(int pgType) {
         switch (pgType) {
-        // TODO: add more types to send as binary once compatibility is confirmed
+        case PgServer.PG_TYPE_BOOL:
+        case PgServer.PG_TYPE_INT2:
+        case PgServer.PG_TYPE_INT4:
+        case PgServer.PG_TYPE_INT8:
+        case PgServer.PG_TYPE_FLOAT4:
+        case PgServer.PG_TYPE_FLOAT8:
+        case PgServer.PG_TYPE_NUMERIC:
+        case PgServer.PG_TYPE_DATE:
+        case PgServer.PG_TYPE_TIME:
+        case PgServer.PG_TYPE_TIMESTAMP_NO_TMZONE:
         case PgServer.PG_TYPE_BYTEA:
+        case PgServer.PG_TYPE_VARCHAR:
+        case PgServer.PG_TYPE_BPCHAR:
+        case PgServer.PG_TYPE_TEXT:
+            return true;
+        default:
             return false;
         }
-        return true;
     }
 
     private static int getTypeSize(int pgType, int precision) {
@@ -734,6 +1012,7 @@ public class PgServerThread implements Runnable {
 
     private void sendErrorResponse(String message) throws IOException {
         server.trace("Exception: " + message);
+        ignoreUntilSync = true;
         startMessage('E');
         write('S');
         writeString("ERROR");
@@ -745,6 +1024,34 @@ public class PgServerThread implements Runnable {
         sendMessage();
     }
 
+    /**
+     * Keep the statement of a closed or replaced prepared object, so that it
+     * can be re-used if the same SQL statement is parsed again. The statement
+     * is only kept once no portal is bound to it any longer, as re-using it
+     * would change the parameters of the portal.
+     *
+     * @param p the prepared object
+     */
+    private void releaseStatement(Prepared p) {
+        if (prepared.get(p.name) == p) {
+            return;
+        }
+        for (Portal portal : portals.values()) {
+            if (portal.prep == p) {
+                return;
+            }
+        }
+        JdbcPreparedStatement old = statementCache.put(p.sql, p.prep);
+        if (old != null && old != p.prep) {
+            JdbcUtils.closeSilently(old);
+        }
+        if (statementCache.size() > STATEMENT_CACHE_SIZE) {
+            Iterator<JdbcPreparedStatement> it = statementCache.values().iterator();
+            JdbcUtils.closeSilently(it.next());
+            it.remove();
+        }
+    }
+
     private void sendParseComplete() throws IOException {
         startMessage('1');
         sendMessage();
@@ -850,7 +1157,7 @@ public class PgServerThread implements Runnable {
         sendMessage();
         sendParameterStatus("client_encoding", clientEncoding);
         sendParameterStatus("DateStyle", dateStyle);
-        sendParameterStatus("integer_datetimes", "off");
+        sendParameterStatus("integer_datetimes", "on");
         sendParameterStatus("is_superuser", "off");
         sendParameterStatus("server_encoding", "SQL_ASCII");
         sendParameterStatus("server_version", "8.1.4");
@@ -863,6 +1170,7 @@ public class PgServerThread implements Runnable {
     }
 
     private void sendReadyForQuery() throws IOException {
+        ignoreUntilSync = false;
         startMessage('Z');
         char c;
         try {
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.store;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.h2.security.SHA256;
+import org.h2.store.fs.FileUtils;
+import org.h2.util.IOUtils;
+
+/**
+ * Support for incremental backups of the page store file.
+ * <p>
+ * An incremental backup contains the entry [databaseFile].incremental instead
+ * of the database file itself. This entry contains, for each page of the
+ * database file, a hash code of the page, and the page data if the page has
+ * changed compared to the base backup. The hash codes are used to find the
+ * changed pages when creating the next incremental backup, and to verify the
+ * pages when restoring. The base backup can be a full or an incremental
+ * backup.
+ * <p>
+ * The entry starts with the page size (int). For each page, it contains the
+ * type (byte: 0 for unchanged, 1 for changed pages), the hash code (long), and
+ * for changed pages the data. A run of unchanged pages whose hash codes are
+ * not known is stored as the type 3 and the number of pages (int). The entry
+ * ends with the type 2.
+ * <p>
+ * While the database is open, the page store tracks the pages written since
+ * the last backup. An incremental backup that is based on the last backup of
+ * the running database then only reads the written pages, and stores the
+ * other pages as unknown. Otherwise, the whole database file is read, and the
+ * hash codes are compared with the base backup.
+ */
+public class IncrementalBackup {
+
+    /**
+     * The suffix of the zip entry of an incremental backup.
+     */
+    public static final String SUFFIX = ".incremental";
+
+    private static final int PAGE_UNCHANGED = 0, PAGE_CHANGED = 1, END = 2, PAGES_SKIPPED = 3;
+
+    /**
+     * Reads the hash codes of the pages of a base backup.
+     */
+    public static class BaseReader {
+
+        private final InputStream in;
+        private final DataInputStream dataIn;
+        private final boolean incremental;
+        private final byte[] page;
+        private boolean end;
+        private int skipped;
+
+        /**
+         * Open the base backup file and position it to the database file entry.
+         *
+         * @param zipFileName the base backup file name
+         * @param entryName the name of the database file in the backup
+         * @param pageSize the page size
+         */
+        public BaseReader(String zipFileName, String entryName, int pageSize) throws IOException {
+            in = FileUtils.newInputStream(zipFileName);
+            ZipInputStream zipIn = new ZipInputStream(in);
+            boolean found = false, inc = false;
+            while (true) {
+                ZipEntry entry = zipIn.getNextEntry();
+                if (entry == null) {
+                    break;
+                }
+                String name = entry.getName();
+                if (name.equals(entryName)) {
+                    found = true;
+                    break;
+                } else if (name.equals(entryName + SUFFIX)) {
+                    found = inc = true;
+                    break;
+                }
+                zipIn.closeEntry();
+            }
+            if (!found) {
+                close();
+                throw new IOException("Database file " + entryName + " not found in " + zipFileName);
+            }
+            incremental = inc;
+            page = new byte[pageSize];
+            dataIn = new DataInputStream(zipIn);
+            if (incremental) {
+                int size = dataIn.readInt();
+                if (size != pageSize) {
+                    close();
+                    throw new IOException("Page size " + size + " does not match " + pageSize);
+                }
+            }
+        }
+
+        /**
+         * Read the hash code of the next page.
+         *
+         * @return the hash code, or 0 if there are no more pages or the hash
+         *         code is not known
+         */
+        public long next() throws IOException {
+            if (end) {
+                return 0;
+            }
+            if (skipped > 0) {
+                skipped--;
+                return 0;
+            }
+            if (!incremental) {
+                int len = IOUtils.readFully(dataIn, page, 0, page.length);
+                if (len < page.length) {
+                    end = true;
+                    return 0;
+                }
+                return getPageHash(page);
+            }
+            int type = dataIn.readByte();
+            if (type == END) {
+                end = true;
+                return 0;
+            }
+            if (type == PAGES_SKIPPED) {
+                skipped = dataIn.readInt() - 1;
+                return 0;
+            }
+            long hash = dataIn.readLong();
+            if (type == PAGE_CHANGED) {
+                dataIn.readFully(page);
+            }
+            return hash;
+        }
+
+        /**
+         * Close the base backup file.
+         */
+        public void close() {
+            IOUtils.closeSilently(in);
+        }
+
+    }
+
+    /**
+     * Calculate the hash code of a page.
+     *
+     * @param page the page data
+     * @return the hash code (never 0)
+     */
+    public static long getPageHash(byte[] page) {
+        byte[] hash = SHA256.getHash(page, false);
+        long x = 0;
+        for (int i = 0; i < 8; i++) {
+            x = (x << 8) | (hash[i] & 0xff);
+        }
+        // 0 is used for "no page"
+        return x == 0 ? 1 : x;
+    }
+
+    /**
+     * Write the header of an incremental entry.
+     *
+     * @param out the output stream
+     * @param pageSize the page size
+     */
+    public static void writeHeader(DataOutputStream out, int pageSize) throws IOException {
+        out.writeInt(pageSize);
+    }
+
+    /**
+     * Write a page of an incremental entry.
+     *
+     * @param out the output stream
+     * @param hash the hash code of the page
+     * @param page the page data, or null if the page did not change
+     */
+    public static void writePage(DataOutputStream out, long hash, byte[] page) throws IOException {
+        out.writeByte(page == null ? PAGE_UNCHANGED : PAGE_CHANGED);
+        out.writeLong(hash);
+        if (page != null) {
+            out.write(page);
+        }
+    }
+
+    /**
+     * Write a run of pages that did not change, and whose hash codes are not
+     * known.
+     *
+     * @param out the output stream
+     * @param count the number of pages
+     */
+    public static void writeSkipped(DataOutputStream out, int count) throws IOException {
+        out.writeByte(PAGES_SKIPPED);
+        out.writeInt(count);
+    }
+
+    /**
+     * Write the end marker of an incremental entry.
+     *
+     * @param out the output stream
+     */
+    public static void writeEnd(DataOutputStream out) throws IOException {
+        out.writeByte(END);
+        out.flush();
+    }
+
+    /**
+     * Apply an incremental entry to a restored database file. The pages that
+     * did not change are verified, so that applying an incremental backup to
+     * the wrong database file (for example in the wrong order) is detected.
+     *
+     * @param in the input stream of the entry (not closed by this method)
+     * @param fileName the database file, as restored from the previous backup
+     */
+    public static void apply(InputStream in, String fileName) throws IOException {
+        if (!FileUtils.exists(fileName)) {
+            throw new IOException("Incremental backup requires the restored base backup: " +
+                    fileName + " not found");
+        }
+        DataInputStream dataIn = new DataInputStream(in);
+        int pageSize = dataIn.readInt();
+        byte[] page = new byte[pageSize];
+        FileChannel f = FileUtils.open(fileName, "rw");
+        try {
+            long length = f.size();
+            long pos = 0;
+            while (true) {
+                int type = dataIn.readByte();
+                if (type == END) {
+                    break;
+                }
+                if (type == PAGES_SKIPPED) {
+                    pos += (long) dataIn.readInt() * pageSize;
+                    if (pos > length) {
+                        throw new IOException("Incremental backup does not match " +
+                                fileName + " at position " + length);
+                    }
+                    f.position(pos);
+                    continue;
+                }
+                long hash = dataIn.readLong();
+                if (type == PAGE_CHANGED) {
+                    dataIn.readFully(page);
+                    FileUtils.writeFully(f, ByteBuffer.wrap(page, 0, pageSize));
+                } else {
+                    boolean ok = pos + pageSize <= length;
+                    if (ok) {
+                        FileUtils.readFully(f, ByteBuffer.wrap(page, 0, pageSize));
+                        ok = getPageHash(page) == hash;
+                    }
+                    if (!ok) {
+                        throw new IOException("Incremental backup does not match " +
+                                fileName + " at position " + pos);
+                    }
+                }
+                pos += pageSize;
+                f.position(pos);
+            }
+            f.truncate(pos);
+        } catch (EOFException e) {
+            throw new IOException("Incremental backup is truncated: " + e);
+        } finally {
+            f.close();
+        }
+    }
+
+}
@@ -107,9 +107,7 @@ public class LobStorageBackend implements LobStorageInterface {
         this.database = database;
     }
 
-    /**
-     * Initialize the lob storage.
-     */
+    @Override
     public void init() {
         if (init) {
             return;
@@ -189,11 +187,7 @@ public class LobStorageBackend implements LobStorageInterface {
         return x;
     }
 
-    /**
-     * Remove all LOBs for this table.
-     *
-     * @param tableId the table id
-     */
+    @Override
     public void removeAllForTable(int tableId) {
         if (SysProperties.LOB_IN_DATABASE) {
             init();
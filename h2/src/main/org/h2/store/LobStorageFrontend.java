@@ -49,6 +49,26 @@ public class LobStorageFrontend implements LobStorageInterface {
         // but that's a refactoring for another day
     }
 
+    /**
+     * Initialize the lob storage. The client side has no state to
+     * initialize.
+     */
+    @Override
+    public void init() {
+        // nothing to do
+    }
+
+    /**
+     * Remove all LOBs for this table. The client side never owns the LOBs of
+     * a table, they are removed by the server, so there is nothing to do.
+     *
+     * @param tableId the table id
+     */
+    @Override
+    public void removeAllForTable(int tableId) {
+        // nothing to do
+    }
+
     /**
      * Get the input stream for the given lob.
      *
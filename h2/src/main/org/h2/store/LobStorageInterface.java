@@ -17,6 +17,11 @@ import org.h2.value.ValueLobDb;
  */
 public interface LobStorageInterface {
 
+    /**
+     * Initialize the lob storage.
+     */
+    void init();
+
     /**
      * Create a CLOB object.
      *
@@ -72,4 +77,11 @@ public interface LobStorageInterface {
      */
     void removeLob(long lob);
 
+    /**
+     * Remove all LOBs for this table.
+     *
+     * @param tableId the table id
+     */
+    void removeAllForTable(int tableId);
+
 }
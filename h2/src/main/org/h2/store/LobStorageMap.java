@@ -0,0 +1,295 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import org.h2.constant.ErrorCode;
+import org.h2.constant.SysProperties;
+import org.h2.engine.Database;
+import org.h2.message.DbException;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.StreamStore;
+import org.h2.util.IOUtils;
+import org.h2.util.New;
+import org.h2.value.Value;
+import org.h2.value.ValueLob;
+import org.h2.value.ValueLobDb;
+
+/**
+ * This class stores LOB objects in the MVStore, using a StreamStore. It is
+ * used instead of LobStorageBackend if the MV_STORE engine is used: the blocks
+ * are read and written directly in the maps, without using SQL statements.
+ * <p>
+ * A copy of a LOB shares the data of the original LOB. Therefore each LOB
+ * references a stream, and the stream is only removed when the last LOB that
+ * references it is removed.
+ */
+public class LobStorageMap implements LobStorageInterface {
+
+    private final Database database;
+
+    private boolean init;
+
+    /**
+     * The LOB metadata. The key is the LOB id, the value is the stream id
+     * (Long), the table id (Integer), and the byte count (Long).
+     */
+    private MVMap<Long, Object[]> lobMap;
+
+    /**
+     * The streams. The key is the stream id, the value is the id in the
+     * stream store (byte[]) and the reference count (Integer).
+     */
+    private MVMap<Long, Object[]> streamMap;
+
+    /**
+     * The stream store, backed by the data map.
+     */
+    private StreamStore streamStore;
+
+    public LobStorageMap(Database database) {
+        this.database = database;
+    }
+
+    @Override
+    public void init() {
+        if (init) {
+            return;
+        }
+        // the maps are only created when the first LOB is stored, so that
+        // databases without LOBs are not changed
+        if (database.getMvStore().getStore().hasMap("lobMap")) {
+            openMaps();
+        }
+    }
+
+    private void openMaps() {
+        if (init) {
+            return;
+        }
+        synchronized (this) {
+            if (init) {
+                return;
+            }
+            MVStore mvStore = database.getMvStore().getStore();
+            lobMap = mvStore.openMap("lobMap");
+            streamMap = mvStore.openMap("lobStreams");
+            MVMap<Long, byte[]> dataMap = mvStore.openMap("lobData");
+            // the data map is written by concurrent sessions
+            streamStore = new StreamStore(Collections.synchronizedMap(dataMap));
+            if (!dataMap.isEmpty()) {
+                streamStore.setNextKey(dataMap.lastKey() + 1);
+            }
+            init = true;
+            if (!database.isReadOnly()) {
+                // temporary LOBs of a previous process are no longer needed
+                removeAllForTable(LobStorageFrontend.TABLE_ID_SESSION_VARIABLE);
+            }
+        }
+    }
+
+    @Override
+    public Value createBlob(InputStream in, long maxLength) {
+        if (SysProperties.LOB_IN_DATABASE) {
+            openMaps();
+            return addLob(in, maxLength, Value.BLOB, null);
+        }
+        return ValueLob.createBlob(in, maxLength, database);
+    }
+
+    @Override
+    public Value createClob(Reader reader, long maxLength) {
+        if (SysProperties.LOB_IN_DATABASE) {
+            openMaps();
+            long max = maxLength == -1 ? Long.MAX_VALUE : maxLength;
+            LobStorageBackend.CountingReaderInputStream in =
+                    new LobStorageBackend.CountingReaderInputStream(reader, max);
+            return addLob(in, Long.MAX_VALUE, Value.CLOB, in);
+        }
+        return ValueLob.createClob(reader, maxLength, database);
+    }
+
+    private ValueLobDb addLob(InputStream in, long maxLength,
+            int type, LobStorageBackend.CountingReaderInputStream countingReaderForClob) {
+        if (maxLength < 0) {
+            maxLength = Long.MAX_VALUE;
+        }
+        try {
+            // small LOBs are stored in-place
+            int maxLengthInPlaceLob = database.getMaxLengthInplaceLob();
+            int len = (int) Math.min(maxLength, maxLengthInPlaceLob + 1L);
+            byte[] small = new byte[Math.max(0, len)];
+            len = IOUtils.readFully(in, small, 0, small.length);
+            if (len <= maxLengthInPlaceLob) {
+                byte[] b = new byte[len];
+                System.arraycopy(small, 0, b, 0, len);
+                // For a BLOB, precision is length in bytes.
+                // For a CLOB, precision is length in chars
+                long precision = countingReaderForClob == null ? len : countingReaderForClob.getLength();
+                return ValueLobDb.createSmallLob(type, b, precision);
+            }
+            InputStream rest = in;
+            if (maxLength != Long.MAX_VALUE) {
+                rest = new LimitInputStream(in, maxLength - len);
+            }
+            InputStream all = new SequenceInputStream(new ByteArrayInputStream(small, 0, len), rest);
+            byte[] streamStoreId;
+            try {
+                // the stream store removes the blocks it already stored if
+                // reading fails; exceptions of the source are converted
+                streamStoreId = streamStore.put(all);
+            } catch (Exception e) {
+                throw DbException.convertToIOException(e);
+            }
+            long byteCount = streamStore.length(streamStoreId);
+            long precision = countingReaderForClob == null ? byteCount : countingReaderForClob.getLength();
+            synchronized (this) {
+                long streamId = getNextKey(streamMap);
+                streamMap.put(streamId, new Object[] { streamStoreId, 1 });
+                long lobId = getNextKey(lobMap);
+                lobMap.put(lobId, new Object[] { streamId, LobStorageFrontend.TABLE_TEMP, byteCount });
+                return ValueLobDb.create(type, database, LobStorageFrontend.TABLE_TEMP, lobId, null, precision);
+            }
+        } catch (IOException e) {
+            throw DbException.convertIOException(e, null);
+        }
+    }
+
+    private static long getNextKey(MVMap<Long, ?> map) {
+        Long last = map.lastKey();
+        return last == null ? 1 : last + 1;
+    }
+
+    @Override
+    public synchronized ValueLobDb copyLob(int type, long oldLobId, int tableId, long length) {
+        openMaps();
+        Object[] lob = getLob(oldLobId);
+        Long streamId = (Long) lob[0];
+        Object[] stream = streamMap.get(streamId);
+        streamMap.put(streamId, new Object[] { stream[0], (Integer) stream[1] + 1 });
+        long lobId = getNextKey(lobMap);
+        lobMap.put(lobId, new Object[] { streamId, tableId, lob[2] });
+        return ValueLobDb.create(type, database, tableId, lobId, null, length);
+    }
+
+    private Object[] getLob(long lobId) {
+        Object[] lob = lobMap.get(lobId);
+        if (lob == null) {
+            throw DbException.get(ErrorCode.IO_EXCEPTION_1, "Missing lob entry: " + lobId);
+        }
+        return lob;
+    }
+
+    @Override
+    public InputStream getInputStream(long lobId, byte[] hmac, long byteCount) throws IOException {
+        openMaps();
+        Object[] lob = lobMap.get(lobId);
+        Object[] stream = lob == null ? null : streamMap.get((Long) lob[0]);
+        if (stream == null) {
+            throw new IOException("Missing lob entry: " + lobId);
+        }
+        return streamStore.get((byte[]) stream[0]);
+    }
+
+    @Override
+    public synchronized void setTable(long lobId, int table) {
+        openMaps();
+        Object[] lob = getLob(lobId);
+        lobMap.put(lobId, new Object[] { lob[0], table, lob[2] });
+    }
+
+    @Override
+    public synchronized void removeLob(long lobId) {
+        openMaps();
+        Object[] lob = lobMap.remove(lobId);
+        if (lob == null) {
+            return;
+        }
+        Long streamId = (Long) lob[0];
+        Object[] stream = streamMap.get(streamId);
+        int refCount = (Integer) stream[1] - 1;
+        if (refCount > 0) {
+            streamMap.put(streamId, new Object[] { stream[0], refCount });
+        } else {
+            streamMap.remove(streamId);
+            streamStore.remove((byte[]) stream[0]);
+        }
+    }
+
+    @Override
+    public void removeAllForTable(int tableId) {
+        init();
+        if (SysProperties.LOB_IN_DATABASE && init) {
+            ArrayList<Long> list = New.arrayList();
+            synchronized (this) {
+                for (Map.Entry<Long, Object[]> e : lobMap.entrySet()) {
+                    if ((Integer) e.getValue()[1] == tableId) {
+                        list.add(e.getKey());
+                    }
+                }
+                for (long lobId : list) {
+                    removeLob(lobId);
+                }
+            }
+            if (tableId == LobStorageFrontend.TABLE_ID_SESSION_VARIABLE) {
+                removeAllForTable(LobStorageFrontend.TABLE_TEMP);
+            }
+        }
+        // remove both lobs in the database as well as in the file system
+        // (compatibility)
+        ValueLob.removeAllForTable(database, tableId);
+    }
+
+    /**
+     * An input stream that reads at most the given number of bytes.
+     */
+    static class LimitInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+
+        LimitInputStream(InputStream in, long maxLength) {
+            this.in = in;
+            this.remaining = maxLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int x = in.read();
+            if (x >= 0) {
+                remaining--;
+            }
+            return x;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            len = (int) Math.min(len, remaining);
+            int l = in.read(b, off, len);
+            if (l > 0) {
+                remaining -= l;
+            }
+            return l;
+        }
+
+    }
+
+}
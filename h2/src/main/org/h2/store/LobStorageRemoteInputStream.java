@@ -9,6 +9,7 @@ package org.h2.store;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.h2.engine.Constants;
 import org.h2.message.DbException;
 
 /**
@@ -16,6 +17,11 @@ import org.h2.message.DbException;
  */
 class LobStorageRemoteInputStream extends InputStream {
 
+    /**
+     * The maximum number of bytes to request from the server at once.
+     */
+    private static final int MAX_READ_AHEAD = 1024 * 1024;
+
     /**
      * The data handler.
      */
@@ -38,6 +44,19 @@ class LobStorageRemoteInputStream extends InputStream {
      */
     private long remainingBytes;
 
+    /**
+     * The data that was read ahead, but not yet returned.
+     */
+    private byte[] buffer;
+    private int bufferPos, bufferLength;
+
+    /**
+     * The number of bytes to request from the server. It is doubled for each
+     * request, up to MAX_READ_AHEAD, so that reading a small part of a large
+     * lob does not transfer too much data.
+     */
+    private int readAhead = 16 * Constants.IO_BUFFER_SIZE;
+
     public LobStorageRemoteInputStream(DataHandler handler, long lob, byte[] hmac, long byteCount) {
         this.handler = handler;
         this.lob = lob;
@@ -47,6 +66,9 @@ class LobStorageRemoteInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
+        if (bufferPos < bufferLength) {
+            return buffer[bufferPos++] & 255;
+        }
         byte[] buff = new byte[1];
         int len = read(buff, 0, 1);
         return len < 0 ? len : (buff[0] & 255);
@@ -62,6 +84,28 @@ class LobStorageRemoteInputStream extends InputStream {
         if (length == 0) {
             return 0;
         }
+        if (bufferPos >= bufferLength) {
+            if (length >= readAhead) {
+                // large reads don't need to be buffered
+                return readLob(buff, off, length);
+            }
+            if (buffer == null || buffer.length < readAhead) {
+                buffer = new byte[readAhead];
+            }
+            bufferPos = 0;
+            bufferLength = Math.max(0, readLob(buffer, 0, readAhead));
+            readAhead = Math.min(readAhead * 2, MAX_READ_AHEAD);
+            if (bufferLength == 0) {
+                return -1;
+            }
+        }
+        length = Math.min(length, bufferLength - bufferPos);
+        System.arraycopy(buffer, bufferPos, buff, off, length);
+        bufferPos += length;
+        return length;
+    }
+
+    private int readLob(byte[] buff, int off, int length) throws IOException {
         length = (int) Math.min(length, remainingBytes);
         if (length == 0) {
             return -1;
@@ -81,6 +125,11 @@ class LobStorageRemoteInputStream extends InputStream {
 
     @Override
     public long skip(long n) {
+        if (bufferPos < bufferLength) {
+            int len = (int) Math.min(n, bufferLength - bufferPos);
+            bufferPos += len;
+            return len;
+        }
         remainingBytes -= n;
         pos += n;
         return n;
@@ -118,6 +118,7 @@ public class PageLog {
 
     private Data writeBuffer;
     private PageOutputStream pageOut;
+    private long bytesWritten;
     private int firstTrunkPage;
     private int firstDataPage;
     private final Data dataBuffer;
@@ -529,6 +530,7 @@ public class PageLog {
     }
 
     private void write(Data data) {
+        bytesWritten += data.length();
         pageOut.write(data.getBytes(), 0, data.length());
         data.reset();
     }
@@ -813,6 +815,16 @@ public class PageLog {
         return pageOut == null ? 0 : pageOut.getSize();
     }
 
+    /**
+     * Get the number of bytes written to the log since the database was
+     * opened.
+     *
+     * @return the number of bytes
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
     ArrayList<InDoubtTransaction> getInDoubtTransactions() {
         ArrayList<InDoubtTransaction> list = New.arrayList();
         for (SessionState state : sessionStates.values()) {
@@ -11,6 +11,7 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.zip.CRC32;
 import org.h2.command.CommandInterface;
 import org.h2.command.ddl.CreateTableData;
@@ -32,6 +33,7 @@ import org.h2.index.PageDataNode;
 import org.h2.index.PageDataOverflow;
 import org.h2.index.PageDelegateIndex;
 import org.h2.index.PageIndex;
+import org.h2.index.PartialIndexCondition;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.result.Row;
@@ -136,7 +138,7 @@ public class PageStore implements CacheWriter {
     private String accessMode;
     private int pageSize = Constants.DEFAULT_PAGE_SIZE;
     private int pageSizeShift;
-    private long writeCountBase, writeCount, readCount;
+    private long writeCountBase, writeCount, readCount, cacheHitCount;
     private int logKey, logFirstTrunkPage, logFirstDataPage;
     private final Cache cache;
     private int freeListPagesPerList;
@@ -166,6 +168,12 @@ public class PageStore implements CacheWriter {
     private final HashMap<Integer, PageIndex> metaObjects = New.hashMap();
     private HashMap<Integer, PageIndex> tempObjects;
 
+    /**
+     * The ids of the partial indexes that were not updated while the
+     * transaction log was replayed, and need to be rebuilt.
+     */
+    private HashSet<Integer> rebuildIndexes;
+
     /**
      * The map of reserved pages, to ensure index head pages
      * are not used for regular data during recovery. The key is the page id,
@@ -203,6 +211,21 @@ public class PageStore implements CacheWriter {
     private boolean readMode;
     private int backupLevel;
 
+    /**
+     * The pages written since the last backup was started, or null if no
+     * backup was started since the file was opened.
+     */
+    private BitField changedPages;
+
+    /**
+     * The real path, length and last modification time of the last backup
+     * file, and the number of pages it contains. The file name is null if no
+     * backup was completed since the changed pages are tracked.
+     */
+    private String lastBackupFileName;
+    private long lastBackupFileLength, lastBackupFileModified;
+    private int lastBackupPageCount;
+
     /**
      * Create a new page store object.
      *
@@ -456,6 +479,7 @@ public class PageStore implements CacheWriter {
                 if (test[0] != 0) {
                     file.seek((long) i << pageSizeShift);
                     file.write(empty, 0, pageSize);
+                    setChanged(i);
                     writeCount++;
                 }
                 freed.set(i);
@@ -731,6 +755,10 @@ public class PageStore implements CacheWriter {
     public synchronized Page getPage(int pageId) {
         Page p = (Page) cache.get(pageId);
         if (p != null) {
+            cacheHitCount++;
+            if (database.getSlowQueryLimit() > 0) {
+                Session.countCacheHit();
+            }
             return p;
         }
 
@@ -1290,6 +1318,9 @@ public class PageStore implements CacheWriter {
         file.seek((long) pos << pageSizeShift);
         file.readFully(page.getBytes(), 0, pageSize);
         readCount++;
+        if (database.getSlowQueryLimit() > 0) {
+            Session.countFileRead();
+        }
     }
 
     /**
@@ -1331,9 +1362,16 @@ public class PageStore implements CacheWriter {
         checksumSet(bytes, pageId);
         file.seek((long) pageId << pageSizeShift);
         file.write(bytes, 0, pageSize);
+        setChanged(pageId);
         writeCount++;
     }
 
+    private void setChanged(int pageId) {
+        if (changedPages != null) {
+            changedPages.set(pageId);
+        }
+    }
+
     /**
      * Remove a page from the cache.
      *
@@ -1368,7 +1406,11 @@ public class PageStore implements CacheWriter {
         isEmpty &= log.recover(PageLog.RECOVERY_STAGE_ALLOCATE);
         openMetaIndex();
         readMetaData();
-        isEmpty &= log.recover(PageLog.RECOVERY_STAGE_REDO);
+        boolean redoEmpty = log.recover(PageLog.RECOVERY_STAGE_REDO);
+        isEmpty &= redoEmpty;
+        if (!redoEmpty) {
+            truncatePartialIndexes();
+        }
         boolean setReadOnly = false;
         if (!database.isReadOnly()) {
             if (log.getInDoubtTransactions().size() == 0) {
@@ -1413,6 +1455,35 @@ public class PageStore implements CacheWriter {
         return isEmpty;
     }
 
+    /**
+     * Remove all rows from the partial indexes and the indexes on expressions,
+     * as the condition and the expressions are not known while replaying the
+     * transaction log, so that changes were not applied to them. The indexes
+     * are rebuilt when they are opened.
+     */
+    private void truncatePartialIndexes() {
+        for (PageIndex index : metaObjects.values()) {
+            if (index.getIndexType().getCondition() == PartialIndexCondition.RECOVERING) {
+                index.truncate(pageStoreSession);
+                if (rebuildIndexes == null) {
+                    rebuildIndexes = New.hashSet();
+                }
+                rebuildIndexes.add(index.getId());
+            }
+        }
+    }
+
+    /**
+     * Check if the index needs to be rebuilt because it was not updated while
+     * replaying the transaction log.
+     *
+     * @param id the index id
+     * @return true if the index needs to be rebuilt
+     */
+    public boolean isRebuildRequired(int id) {
+        return rebuildIndexes != null && rebuildIndexes.remove(id);
+    }
+
     /**
      * A record is added to a table, or removed from a table.
      *
@@ -1675,7 +1746,15 @@ public class PageStore implements CacheWriter {
                     ic.sortType = Integer.parseInt(s);
                     c = c.substring(0, idx);
                 }
-                Column column = tableCols[Integer.parseInt(c)];
+                int columnId = Integer.parseInt(c);
+                Column column;
+                if (columnId < tableCols.length) {
+                    column = tableCols[columnId];
+                } else {
+                    // an index expression, the index is rebuilt later
+                    column = new Column("C" + columnId, Value.INT);
+                    column.setTable(table, columnId);
+                }
                 ic.column = column;
                 cols[i] = ic;
             }
@@ -1688,6 +1767,9 @@ public class PageStore implements CacheWriter {
                 }
             } else {
                 indexType = IndexType.createNonUnique(true);
+                if (options.length > 5 && options[5].equals("p")) {
+                    indexType.setCondition(PartialIndexCondition.RECOVERING);
+                }
             }
             meta = table.addIndex(session, "I" + id, id, cols, indexType, false, null);
         }
@@ -1753,6 +1835,9 @@ public class PageStore implements CacheWriter {
                 options += "d";
             }
             options += "," + mode.isBinaryUnsigned();
+            if (index.getIndexType().getCondition() != null || Table.containsIndexExpression(index)) {
+                options += ",p";
+            }
             Row row = metaTable.getTemplateRow();
             row.setValue(0, ValueInt.get(index.getId()));
             row.setValue(1, ValueInt.get(type));
@@ -1880,6 +1965,26 @@ public class PageStore implements CacheWriter {
         return readCount;
     }
 
+    /**
+     * Get the number of pages that were found in the cache since the database
+     * was opened.
+     *
+     * @return the cache hit count
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount;
+    }
+
+    /**
+     * Get the number of bytes written to the transaction log since the
+     * database was opened.
+     *
+     * @return the number of bytes
+     */
+    public long getLogBytesWritten() {
+        return log == null ? 0 : log.getBytesWritten();
+    }
+
     /**
      * A table is truncated.
      *
@@ -1997,4 +2102,59 @@ public class PageStore implements CacheWriter {
         backupLevel += start ? 1 : -1;
     }
 
+    /**
+     * Start tracking the pages that are written, for the next incremental
+     * backup. This is called when a backup is started. The pages are only
+     * tracked in memory, so after the database was re-opened, the changed
+     * pages are unknown until the next backup is completed.
+     *
+     * @param baseFileName the file name of the base backup, or null for a
+     *            full backup
+     * @return the pages written since the given base backup was started
+     *         (including the file header), or null if they are not known
+     */
+    public synchronized BitField startChangeTracking(String baseFileName) {
+        BitField changed = null;
+        if (baseFileName != null && changedPages != null && lastBackupFileName != null &&
+                lastBackupFileName.equals(FileUtils.toRealPath(baseFileName)) &&
+                lastBackupFileLength == FileUtils.size(baseFileName) &&
+                lastBackupFileModified == FileUtils.lastModified(baseFileName)) {
+            changed = changedPages;
+            // the file header, and the pages the base backup does not contain
+            changed.set(0, PAGE_ID_FREE_LIST_ROOT, true);
+            if (lastBackupPageCount < pageCount) {
+                changed.set(lastBackupPageCount, pageCount, true);
+            }
+        }
+        changedPages = new BitField();
+        lastBackupFileName = null;
+        return changed;
+    }
+
+    /**
+     * Check whether the given page was written since the last backup was
+     * started.
+     *
+     * @param pageId the page id
+     * @return true if it was written, or if this is not known
+     */
+    public synchronized boolean isChangedSinceBackup(int pageId) {
+        return changedPages == null || changedPages.get(pageId);
+    }
+
+    /**
+     * Remember the backup that was just completed, so that the next
+     * incremental backup that is based on it only needs to read the pages
+     * written since then.
+     *
+     * @param fileName the backup file name
+     * @param backupPageCount the number of pages in the backup
+     */
+    public synchronized void setLastBackup(String fileName, int backupPageCount) {
+        lastBackupFileName = FileUtils.toRealPath(fileName);
+        lastBackupFileLength = FileUtils.size(fileName);
+        lastBackupFileModified = FileUtils.lastModified(fileName);
+        lastBackupPageCount = backupPageCount;
+    }
+
 }
@@ -79,6 +79,7 @@ public class Column {
     private boolean convertNullToDefault;
     private Sequence sequence;
     private boolean isComputed;
+    private boolean isIndexExpression;
     private TableFilter computeTableFilter;
     private int selectivity;
     private SingleColumnResolver resolver;
@@ -180,6 +181,25 @@ public class Column {
         this.defaultExpression = expression;
     }
 
+    /**
+     * Make this column the column of an index expression. Such columns are
+     * not part of the table; their values are computed when a row is added
+     * to or removed from an index that contains them.
+     *
+     * @param expression the expression, mapped to the given table filter
+     * @param filter the table filter
+     */
+    void setIndexExpression(Expression expression, TableFilter filter) {
+        this.isComputed = true;
+        this.isIndexExpression = true;
+        this.defaultExpression = expression;
+        this.computeTableFilter = filter;
+    }
+
+    public boolean isIndexExpression() {
+        return isIndexExpression;
+    }
+
     /**
      * Set the table and column id.
      *
@@ -217,6 +237,9 @@ public class Column {
     }
 
     public String getSQL() {
+        if (isIndexExpression) {
+            return defaultExpression.getSQL();
+        }
         return Parser.quoteIdentifier(name);
     }
 
@@ -6,6 +6,7 @@
  */
 package org.h2.table;
 
+import org.h2.expression.Expression;
 import org.h2.result.SortOrder;
 
 /**
@@ -30,6 +31,19 @@ public class IndexColumn {
      */
     public int sortType = SortOrder.ASCENDING;
 
+    /**
+     * Whether this is an included (non-key) column. Included columns are
+     * stored in the index entries after the key columns, so that queries
+     * that only need these columns don't need to read the row.
+     */
+    public boolean include;
+
+    /**
+     * The index expression, or null if this is a table column. The column of
+     * an index expression is a column of the table that is not visible.
+     */
+    public Expression expression;
+
     /**
      * Get the SQL snippet for this index column.
      *
@@ -65,14 +79,17 @@ public class IndexColumn {
     }
 
     /**
-     * Map the columns using the column names and the specified table.
+     * Map the columns using the column names and the specified table. Index
+     * expressions are not mapped.
      *
      * @param indexColumns the column list with column names set
      * @param table the table from where to map the column names to columns
      */
     public static void mapColumns(IndexColumn[] indexColumns, Table table) {
         for (IndexColumn col : indexColumns) {
-            col.column = table.getColumn(col.columnName);
+            if (col.expression == null) {
+                col.column = table.getColumn(col.columnName);
+            }
         }
     }
 }
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import org.h2.command.Command;
 import org.h2.constraint.Constraint;
 import org.h2.constraint.ConstraintCheck;
@@ -26,11 +27,13 @@ import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.DbObject;
 import org.h2.engine.FunctionAlias;
+import org.h2.engine.QueryProfile;
 import org.h2.engine.QueryStatisticsData;
 import org.h2.engine.Right;
 import org.h2.engine.Role;
 import org.h2.engine.Session;
 import org.h2.engine.Setting;
+import org.h2.engine.SlowQueryLog;
 import org.h2.engine.User;
 import org.h2.engine.UserAggregate;
 import org.h2.engine.UserDataType;
@@ -104,7 +107,10 @@ public class MetaTable extends Table {
     private static final int LOCKS = 26;
     private static final int SESSION_STATE = 27;
     private static final int QUERY_STATISTICS = 28;
-    private static final int META_TABLE_TYPE_COUNT = QUERY_STATISTICS + 1;
+    private static final int SLOW_QUERIES = 29;
+    private static final int QUERY_PROFILE = 30;
+    private static final int METRICS = 31;
+    private static final int META_TABLE_TYPE_COUNT = METRICS + 1;
 
     private final int type;
     private final int indexColumn;
@@ -530,6 +536,45 @@ public class MetaTable extends Table {
             );
             break;
         }
+        case SLOW_QUERIES: {
+            setObjectName("SLOW_QUERIES");
+            cols = createColumns(
+                    "START_TIME TIMESTAMP",
+                    "SESSION_ID INT",
+                    "SQL_STATEMENT",
+                    "PLAN",
+                    "EXECUTION_TIME LONG",
+                    "ROW_COUNT INT",
+                    "FILE_READS LONG",
+                    "CACHE_HITS LONG",
+                    "LOCK_WAIT_TIME LONG",
+                    "SPILLED_RESULTS INT"
+            );
+            break;
+        }
+        case QUERY_PROFILE: {
+            setObjectName("QUERY_PROFILE");
+            cols = createColumns(
+                    "ID INT",
+                    "TYPE",
+                    "NAME",
+                    "INDEX_NAME",
+                    "ESTIMATED_COST DOUBLE",
+                    "LOOPS LONG",
+                    "ROWS_SCANNED LONG",
+                    "ROW_COUNT LONG",
+                    "ELAPSED_NANOS LONG"
+            );
+            break;
+        }
+        case METRICS: {
+            setObjectName("METRICS");
+            cols = createColumns(
+                    "NAME",
+                    "VALUE"
+            );
+            break;
+        }
         default:
             throw DbException.throwInternalError("type="+type);
         }
@@ -809,6 +854,11 @@ public class MetaTable extends Table {
                     }
                     for (int k = 0; k < cols.length; k++) {
                         IndexColumn idxCol = cols[k];
+                        if (idxCol.include) {
+                            // included columns are not key columns, and
+                            // are only listed in the SQL of the index
+                            continue;
+                        }
                         Column column = idxCol.column;
                         add(rows,
                                 // TABLE_CATALOG
@@ -1672,6 +1722,72 @@ public class MetaTable extends Table {
             }
             break;
         }
+        case SLOW_QUERIES: {
+            SlowQueryLog log = database.getSlowQueryLog();
+            if (log != null && admin) {
+                for (SlowQueryLog.SlowQuery q : log.getQueries()) {
+                    add(rows,
+                            // START_TIME
+                            new Timestamp(q.startTime).toString(),
+                            // SESSION_ID
+                            "" + q.sessionId,
+                            // SQL_STATEMENT
+                            q.sqlStatement,
+                            // PLAN
+                            q.plan,
+                            // EXECUTION_TIME
+                            "" + q.executionTime,
+                            // ROW_COUNT
+                            "" + q.rowCount,
+                            // FILE_READS
+                            "" + q.fileReads,
+                            // CACHE_HITS
+                            "" + q.cacheHits,
+                            // LOCK_WAIT_TIME
+                            "" + q.lockWaitTime,
+                            // SPILLED_RESULTS
+                            "" + q.spilledResults
+                    );
+                }
+            }
+            break;
+        }
+        case QUERY_PROFILE: {
+            QueryProfile profile = session.getLastQueryProfile();
+            if (profile != null) {
+                for (QueryProfile.Node node : profile.getNodes()) {
+                    add(rows,
+                            // ID
+                            "" + node.id,
+                            // TYPE
+                            node.type,
+                            // NAME
+                            node.name,
+                            // INDEX_NAME
+                            node.index,
+                            // ESTIMATED_COST
+                            node.type == QueryProfile.TABLE ? "" + node.estimatedCost : null,
+                            // LOOPS
+                            "" + node.loops,
+                            // ROWS_SCANNED
+                            "" + node.rowsScanned,
+                            // ROW_COUNT
+                            "" + node.rows,
+                            // ELAPSED_NANOS
+                            "" + node.time
+                    );
+                }
+            }
+            break;
+        }
+        case METRICS: {
+            if (admin) {
+                for (Map.Entry<String, Object> e : database.getMetrics().getMetrics().entrySet()) {
+                    add(rows, e.getKey(), e.getValue().toString());
+                }
+            }
+            break;
+        }
         default:
             DbException.throwInternalError("type="+type);
         }
@@ -1857,6 +1973,10 @@ public class MetaTable extends Table {
         case SESSIONS:
         case LOCKS:
         case SESSION_STATE:
+        case QUERY_STATISTICS:
+        case SLOW_QUERIES:
+        case QUERY_PROFILE:
+        case METRICS:
             return Long.MAX_VALUE;
         }
         return database.getModificationDataId();
@@ -31,6 +31,10 @@ public class PlanItem {
         return index;
     }
 
+    public double getCost() {
+        return cost;
+    }
+
     PlanItem getJoinPlan() {
         return joinPlan;
     }
@@ -9,7 +9,6 @@ package org.h2.table;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Set;
 import org.h2.api.DatabaseEventListener;
 import org.h2.command.ddl.Analyze;
@@ -19,8 +18,10 @@ import org.h2.constant.SysProperties;
 import org.h2.constraint.Constraint;
 import org.h2.constraint.ConstraintReferential;
 import org.h2.engine.Constants;
+import org.h2.engine.LockManager;
 import org.h2.engine.DbObject;
 import org.h2.engine.Session;
+import org.h2.index.BlockRangeIndex;
 import org.h2.index.Cursor;
 import org.h2.index.HashIndex;
 import org.h2.index.Index;
@@ -34,7 +35,6 @@ import org.h2.index.ScanIndex;
 import org.h2.index.SpatialTreeIndex;
 import org.h2.index.TreeIndex;
 import org.h2.message.DbException;
-import org.h2.message.Trace;
 import org.h2.result.Row;
 import org.h2.result.SortOrder;
 import org.h2.schema.SchemaObject;
@@ -53,9 +53,7 @@ public class RegularTable extends TableBase {
 
     private Index scanIndex;
     private long rowCount;
-    private volatile Session lockExclusive;
-    private HashSet<Session> lockShared = New.hashSet();
-    private final Trace traceLock;
+    private final LockManager.TableLock tableLock = new LockManager.TableLock(this);
     private final ArrayList<Index> indexes = New.arrayList();
     private long lastModificationId;
     private boolean containsLargeObject;
@@ -64,13 +62,6 @@ public class RegularTable extends TableBase {
     private int nextAnalyze;
     private Column rowIdColumn;
 
-    /**
-     * True if one thread ever was waiting to lock this table. This is to avoid
-     * calling notifyAll if no session was ever waiting to lock this table. If
-     * set, the flag stays. In theory, it could be reset, however not sure when.
-     */
-    private boolean waitForLock;
-
     public RegularTable(CreateTableData data) {
         super(data);
         nextAnalyze = database.getSettings().analyzeAuto;
@@ -91,7 +82,6 @@ public class RegularTable extends TableBase {
             scanIndex = new ScanIndex(this, data.id, IndexColumn.wrap(getColumns()), IndexType.createScan(data.persistData));
         }
         indexes.add(scanIndex);
-        traceLock = database.getTrace(Trace.LOCK);
     }
 
     @Override
@@ -116,16 +106,20 @@ public class RegularTable extends TableBase {
         try {
             for (int size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
-                index.add(session, row);
-                checkRowCount(session, index, 1);
+                if (isIndexed(session, index, row)) {
+                    index.add(session, getIndexRow(session, index, row));
+                    checkRowCount(session, index, 1);
+                }
             }
             rowCount++;
         } catch (Throwable e) {
             try {
                 while (--i >= 0) {
                     Index index = indexes.get(i);
-                    index.remove(session, row);
-                    checkRowCount(session, index, 0);
+                    if (isIndexed(session, index, row)) {
+                        index.remove(session, getIndexRow(session, index, row));
+                        checkRowCount(session, index, 0);
+                    }
                 }
             } catch (DbException e2) {
                 // this could happen, for example on failure in the storage
@@ -162,7 +156,8 @@ public class RegularTable extends TableBase {
 
     private void checkRowCount(Session session, Index index, int offset) {
         if (SysProperties.CHECK && !database.isMultiVersion()) {
-            if (!(index instanceof PageDelegateIndex)) {
+            if (!(index instanceof PageDelegateIndex || index instanceof BlockRangeIndex) &&
+                    index.getIndexType().getCondition() == null) {
                 long rc = index.getRowCount(session);
                 if (rc != rowCount + offset) {
                     DbException.throwInternalError(
@@ -181,7 +176,7 @@ public class RegularTable extends TableBase {
     @Override
     public Index getUniqueIndex() {
         for (Index idx : indexes) {
-            if (idx.getIndexType().isUnique()) {
+            if (idx.getIndexType().isUnique() && idx.getIndexType().getCondition() == null) {
                 return idx;
             }
         }
@@ -205,12 +200,22 @@ public class RegularTable extends TableBase {
                 column.setPrimaryKey(true);
             }
         }
+        if (database.isMultiVersion()) {
+            for (IndexColumn c : cols) {
+                if (c.column.isIndexExpression()) {
+                    // the multi-version index compares the rows of the table
+                    throw DbException.getUnsupportedException("MVCC and index expressions");
+                }
+            }
+        }
         boolean isSessionTemporary = isTemporary() && !isGlobalTemporary();
         if (!isSessionTemporary) {
             database.lockMeta(session);
         }
         Index index;
-        if (isPersistIndexes() && indexType.isPersistent()) {
+        if (indexType.isBlockRange()) {
+            index = new BlockRangeIndex(this, indexId, indexName, cols, indexType, null, create);
+        } else if (isPersistIndexes() && indexType.isPersistent()) {
             int mainIndexColumn;
             if (database.isStarting() && database.getPageStore().getRootPageId(indexId) != 0) {
                 mainIndexColumn = -1;
@@ -243,7 +248,9 @@ public class RegularTable extends TableBase {
                 index = new TreeIndex(this, indexId, indexName, cols, indexType);
             }
         }
-        if (database.isMultiVersion()) {
+        if (database.isMultiVersion() && !indexType.isBlockRange()) {
+            // a block range index reads the rows using the scan index,
+            // which already knows which rows are visible
             index = new MultiVersionIndex(index, this);
         }
         if (index.needRebuild() && rowCount > 0) {
@@ -328,6 +335,9 @@ public class RegularTable extends TableBase {
     }
 
     private static void addRowsToIndex(Session session, ArrayList<Row> list, Index index) {
+        for (int i = 0, size = list.size(); i < size; i++) {
+            list.set(i, getIndexRow(session, index, list.get(i)));
+        }
         final Index idx = index;
         Collections.sort(list, new Comparator<Row>() {
             @Override
@@ -336,7 +346,9 @@ public class RegularTable extends TableBase {
             }
         });
         for (Row row : list) {
-            index.add(session, row);
+            if (isIndexed(session, index, row)) {
+                index.add(session, row);
+            }
         }
         list.clear();
     }
@@ -373,16 +385,20 @@ public class RegularTable extends TableBase {
         try {
             for (; i >= 0; i--) {
                 Index index = indexes.get(i);
-                index.remove(session, row);
-                checkRowCount(session, index, -1);
+                if (isIndexed(session, index, row)) {
+                    index.remove(session, getIndexRow(session, index, row));
+                    checkRowCount(session, index, -1);
+                }
             }
             rowCount--;
         } catch (Throwable e) {
             try {
                 while (++i < indexes.size()) {
                     Index index = indexes.get(i);
-                    index.add(session, row);
-                    checkRowCount(session, index, 0);
+                    if (isIndexed(session, index, row)) {
+                        index.add(session, getIndexRow(session, index, row));
+                        checkRowCount(session, index, 0);
+                    }
                 }
             } catch (DbException e2) {
                 // this could happen, for example on failure in the storage
@@ -422,7 +438,7 @@ public class RegularTable extends TableBase {
 
     @Override
     public boolean isLockedExclusivelyBy(Session session) {
-        return lockExclusive == session;
+        return tableLock.getExclusive() == session;
     }
 
     @Override
@@ -439,212 +455,27 @@ public class RegularTable extends TableBase {
             if (exclusive) {
                 exclusive = false;
             } else {
-                if (lockExclusive == null) {
+                if (tableLock.getExclusive() == null) {
                     return;
                 }
             }
         }
-        if (lockExclusive == session) {
+        if (tableLock.getExclusive() == session) {
             return;
         }
-        synchronized (database) {
-            try {
-                doLock(session, lockMode, exclusive);
-            } finally {
-                session.setWaitForLock(null);
-            }
-        }
+        database.getLockManager().lock(session, tableLock, exclusive);
     }
 
-    private void doLock(Session session, int lockMode, boolean exclusive) {
-        traceLock(session, exclusive, "requesting for");
-        // don't get the current time unless necessary
-        long max = 0;
-        boolean checkDeadlock = false;
-        while (true) {
-            if (lockExclusive == session) {
-                return;
-            }
-            if (exclusive) {
-                if (lockExclusive == null) {
-                    if (lockShared.isEmpty()) {
-                        traceLock(session, exclusive, "added for");
-                        session.addLock(this);
-                        lockExclusive = session;
-                        return;
-                    } else if (lockShared.size() == 1 && lockShared.contains(session)) {
-                        traceLock(session, exclusive, "add (upgraded) for ");
-                        lockExclusive = session;
-                        return;
-                    }
-                }
-            } else {
-                if (lockExclusive == null) {
-                    if (lockMode == Constants.LOCK_MODE_READ_COMMITTED) {
-                        if (!database.isMultiThreaded() && !database.isMultiVersion()) {
-                            // READ_COMMITTED: a read lock is acquired,
-                            // but released immediately after the operation
-                            // is complete.
-                            // When allowing only one thread, no lock is
-                            // required.
-                            // Row level locks work like read committed.
-                            return;
-                        }
-                    }
-                    if (!lockShared.contains(session)) {
-                        traceLock(session, exclusive, "ok");
-                        session.addLock(this);
-                        lockShared.add(session);
-                    }
-                    return;
-                }
-            }
-            session.setWaitForLock(this);
-            if (checkDeadlock) {
-                ArrayList<Session> sessions = checkDeadlock(session, null, null);
-                if (sessions != null) {
-                    throw DbException.get(ErrorCode.DEADLOCK_1, getDeadlockDetails(sessions));
-                }
-            } else {
-                // check for deadlocks from now on
-                checkDeadlock = true;
-            }
-            long now = System.currentTimeMillis();
-            if (max == 0) {
-                // try at least one more time
-                max = now + session.getLockTimeout();
-            } else if (now >= max) {
-                traceLock(session, exclusive, "timeout after " + session.getLockTimeout());
-                throw DbException.get(ErrorCode.LOCK_TIMEOUT_1, getName());
-            }
-            try {
-                traceLock(session, exclusive, "waiting for");
-                if (database.getLockMode() == Constants.LOCK_MODE_TABLE_GC) {
-                    for (int i = 0; i < 20; i++) {
-                        long free = Runtime.getRuntime().freeMemory();
-                        System.gc();
-                        long free2 = Runtime.getRuntime().freeMemory();
-                        if (free == free2) {
-                            break;
-                        }
-                    }
-                }
-                // don't wait too long so that deadlocks are detected early
-                long sleep = Math.min(Constants.DEADLOCK_CHECK, max - now);
-                if (sleep == 0) {
-                    sleep = 1;
-                }
-                waitForLock = true;
-                database.wait(sleep);
-            } catch (InterruptedException e) {
-                // ignore
-            }
-        }
-    }
-
-    private static String getDeadlockDetails(ArrayList<Session> sessions) {
-        StringBuilder buff = new StringBuilder();
-        for (Session s : sessions) {
-            Table lock = s.getWaitForLock();
-            buff.append("\nSession ").
-                append(s.toString()).
-                append(" is waiting to lock ").
-                append(lock.toString()).
-                append(" while locking ");
-            int i = 0;
-            for (Table t : s.getLocks()) {
-                if (i++ > 0) {
-                    buff.append(", ");
-                }
-                buff.append(t.toString());
-                if (t instanceof RegularTable) {
-                    if (((RegularTable) t).lockExclusive == s) {
-                        buff.append(" (exclusive)");
-                    } else {
-                        buff.append(" (shared)");
-                    }
-                }
-            }
-            buff.append('.');
-        }
-        return buff.toString();
-    }
-
-    @Override
-    public ArrayList<Session> checkDeadlock(Session session, Session clash, Set<Session> visited) {
-        // only one deadlock check at any given time
-        synchronized (RegularTable.class) {
-            if (clash == null) {
-                // verification is started
-                clash = session;
-                visited = New.hashSet();
-            } else if (clash == session) {
-                // we found a circle where this session is involved
-                return New.arrayList();
-            } else if (visited.contains(session)) {
-                // we have already checked this session.
-                // there is a circle, but the sessions in the circle need to
-                // find it out themselves
-                return null;
-            }
-            visited.add(session);
-            ArrayList<Session> error = null;
-            for (Session s : lockShared) {
-                if (s == session) {
-                    // it doesn't matter if we have locked the object already
-                    continue;
-                }
-                Table t = s.getWaitForLock();
-                if (t != null) {
-                    error = t.checkDeadlock(s, clash, visited);
-                    if (error != null) {
-                        error.add(session);
-                        break;
-                    }
-                }
-            }
-            if (error == null && lockExclusive != null) {
-                Table t = lockExclusive.getWaitForLock();
-                if (t != null) {
-                    error = t.checkDeadlock(lockExclusive, clash, visited);
-                    if (error != null) {
-                        error.add(session);
-                    }
-                }
-            }
-            return error;
-        }
-    }
-
-    private void traceLock(Session session, boolean exclusive, String s) {
-        if (traceLock.isDebugEnabled()) {
-            traceLock.debug("{0} {1} {2} {3}", session.getId(),
-                    exclusive ? "exclusive write lock" : "shared read lock", s, getName());
-        }
-    }
 
     @Override
     public boolean isLockedExclusively() {
-        return lockExclusive != null;
+        return tableLock.getExclusive() != null;
     }
 
     @Override
     public void unlock(Session s) {
         if (database != null) {
-            traceLock(s, lockExclusive == s, "unlock");
-            if (lockExclusive == s) {
-                lockExclusive = null;
-            }
-            if (lockShared.size() > 0) {
-                lockShared.remove(s);
-            }
-            // TODO lock: maybe we need we fifo-queue to make sure nobody
-            // starves. check what other databases do
-            synchronized (database) {
-                if (database.getSessionCount() > 1 && waitForLock) {
-                    database.notifyAll();
-                }
-            }
+            database.getLockManager().unlock(s, tableLock);
         }
     }
 
@@ -694,8 +525,6 @@ public class RegularTable extends TableBase {
         scanIndex.remove(session);
         database.removeMeta(session, getId());
         scanIndex = null;
-        lockExclusive = null;
-        lockShared = null;
         invalidate();
     }
 
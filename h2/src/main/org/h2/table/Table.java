@@ -9,7 +9,6 @@ package org.h2.table;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
 import org.h2.command.Prepared;
 import org.h2.constant.ErrorCode;
 import org.h2.constraint.Constraint;
@@ -19,9 +18,11 @@ import org.h2.engine.Right;
 import org.h2.engine.Session;
 import org.h2.engine.UndoLogRecord;
 import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
+import org.h2.index.PartialIndexCondition;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.result.Row;
@@ -107,6 +108,12 @@ public abstract class Table extends SchemaObjectBase {
     private boolean onCommitDrop, onCommitTruncate;
     private Row nullRow;
 
+    /**
+     * The columns of the index expressions, or null if there are none. Their
+     * column ids follow the ids of the table columns.
+     */
+    private ArrayList<Column> indexExpressionColumns;
+
     public Table(Schema schema, int id, String name, boolean persistIndexes, boolean persistData) {
         columnMap = schema.getDatabase().newStringMap();
         initSchemaObjectBase(schema, id, name, Trace.TABLE);
@@ -468,6 +475,22 @@ public abstract class Table extends SchemaObjectBase {
         }
     }
 
+    /**
+     * Lock a row for update (SELECT ... FOR UPDATE). By default, the row is
+     * removed and added again, so that it is locked by the multi-version
+     * index until the transaction is committed.
+     *
+     * @param session the session
+     * @param row the row
+     */
+    public void lockRow(Session session, Row row) {
+        Row newRow = row.getCopy();
+        removeRow(session, row);
+        session.log(this, UndoLogRecord.DELETE, row);
+        addRow(session, newRow);
+        session.log(this, UndoLogRecord.INSERT, newRow);
+    }
+
     public ArrayList<TableView> getViews() {
         return views;
     }
@@ -576,10 +599,122 @@ public abstract class Table extends SchemaObjectBase {
      * @return the simple row object
      */
     public SearchRow getTemplateSimpleRow(boolean singleColumn) {
+        int len = getSearchColumnCount();
         if (singleColumn) {
-            return new SimpleRowValue(columns.length);
+            return new SimpleRowValue(len);
+        }
+        return new SimpleRow(new Value[len]);
+    }
+
+    /**
+     * Get the number of columns that can be used in an index search: the
+     * table columns, followed by the columns of the index expressions.
+     *
+     * @return the number of columns
+     */
+    public int getSearchColumnCount() {
+        return columns.length + (indexExpressionColumns == null ? 0 : indexExpressionColumns.size());
+    }
+
+    /**
+     * Get the column for the given index expression. All indexes of this
+     * table on the same expression share the column.
+     *
+     * @param session the session
+     * @param expr the expression (not yet mapped to this table)
+     * @return the column
+     */
+    public Column getIndexExpressionColumn(Session session, Expression expr) {
+        TableFilter filter = new TableFilter(session, this, null, false, null);
+        expr.mapColumns(filter, 0);
+        expr = expr.optimize(session);
+        HashSet<DbObject> dependencies = New.hashSet();
+        if (expr instanceof ExpressionColumn || expr.isConstant() ||
+                !expr.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR) ||
+                !expr.isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies))) {
+            throw DbException.getUnsupportedException("Index expression " + expr.getSQL());
+        }
+        dependencies.remove(this);
+        if (dependencies.size() > 0) {
+            throw DbException.getUnsupportedException("Index expression " + expr.getSQL());
+        }
+        String sql = expr.getSQL();
+        Column column = findIndexExpressionColumn(sql);
+        if (column == null) {
+            if (indexExpressionColumns == null) {
+                indexExpressionColumns = New.arrayList();
+            }
+            column = new Column(sql, expr.getType(), expr.getPrecision(),
+                    expr.getScale(), expr.getDisplaySize());
+            column.setTable(this, columns.length + indexExpressionColumns.size());
+            column.setIndexExpression(expr, filter);
+            indexExpressionColumns.add(column);
+        }
+        return column;
+    }
+
+    /**
+     * Find the column of an index expression.
+     *
+     * @param sql the SQL snippet of the expression
+     * @return the column, or null if no index uses this expression
+     */
+    public Column findIndexExpressionColumn(String sql) {
+        if (indexExpressionColumns != null) {
+            for (Column c : indexExpressionColumns) {
+                if (c.getSQL().equals(sql)) {
+                    return c;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the row to add to or remove from the given index. If the index
+     * contains index expressions, this is a copy of the row with the values of
+     * the index expressions appended.
+     *
+     * @param session the session
+     * @param index the index
+     * @param row the row
+     * @return the index row
+     */
+    protected static Row getIndexRow(Session session, Index index, Row row) {
+        ArrayList<Column> list = index.getTable().indexExpressionColumns;
+        if (list == null || !containsIndexExpression(index)) {
+            return row;
+        }
+        int len = index.getTable().columns.length;
+        Value[] data = new Value[len + list.size()];
+        for (int i = 0; i < len; i++) {
+            data[i] = row.getValue(i);
+        }
+        for (int i = 0, size = list.size(); i < size; i++) {
+            data[len + i] = list.get(i).computeValue(session, row);
+        }
+        Row indexRow = new Row(data, Row.MEMORY_CALCULATE);
+        indexRow.setKeyAndVersion(row);
+        indexRow.setSessionId(row.getSessionId());
+        return indexRow;
+    }
+
+    /**
+     * Check if the index contains an index expression.
+     *
+     * @param index the index
+     * @return true if it does
+     */
+    public static boolean containsIndexExpression(Index index) {
+        Column[] cols = index.getColumns();
+        if (cols != null) {
+            for (Column c : cols) {
+                if (c != null && c.isIndexExpression()) {
+                    return true;
+                }
+            }
         }
-        return new SimpleRow(new Value[columns.length]);
+        return false;
     }
 
     synchronized Row getNullRow() {
@@ -654,6 +789,9 @@ public abstract class Table extends SchemaObjectBase {
         if (indexes != null && masks != null) {
             for (int i = 1, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
+                if (!index.getIndexType().canUse(filter)) {
+                    continue;
+                }
                 double cost = index.getCost(session, masks, filter, sortOrder);
                 if (cost < item.cost) {
                     item.cost = cost;
@@ -664,6 +802,20 @@ public abstract class Table extends SchemaObjectBase {
         return item;
     }
 
+    /**
+     * Check if the row is stored in the given index. Rows that don't match the
+     * condition of a partial index are not added to or removed from it.
+     *
+     * @param session the session
+     * @param index the index
+     * @param row the row
+     * @return true if the row is stored in the index
+     */
+    protected static boolean isIndexed(Session session, Index index, Row row) {
+        PartialIndexCondition condition = index.getIndexType().getCondition();
+        return condition == null || condition.isIndexed(session, row);
+    }
+
     /**
      * Get the primary key index if there is one, or null if there is none.
      *
@@ -970,7 +1122,7 @@ public abstract class Table extends SchemaObjectBase {
         if (indexes != null) {
             for (int i = 1, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
-                if (index.canGetFirstOrLast()) {
+                if (index.canGetFirstOrLast() && index.getIndexType().canUse(null)) {
                     int idx = index.getColumnIndex(column);
                     if (idx == 0) {
                         return index;
@@ -1020,25 +1172,6 @@ public abstract class Table extends SchemaObjectBase {
         }
     }
 
-    /**
-     * Check if a deadlock occurred. This method is called recursively. There is
-     * a circle if the session to be tested has already being visited. If this
-     * session is part of the circle (if it is the clash session), the method
-     * must return an empty object array. Once a deadlock has been detected, the
-     * methods must add the session to the list. If this session is not part of
-     * the circle, or if no deadlock is detected, this method returns null.
-     *
-     * @param session the session to be tested for
-     * @param clash set with sessions already visited, and null when starting
-     *            verification
-     * @param visited set with sessions already visited, and null when starting
-     *            verification
-     * @return an object array with the sessions involved in the deadlock, or
-     *         null
-     */
-    public ArrayList<Session> checkDeadlock(Session session, Session clash, Set<Session> visited) {
-        return null;
-    }
 
     public boolean isPersistIndexes() {
         return persistIndexes;
@@ -7,19 +7,22 @@
 package org.h2.table;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import org.h2.command.Parser;
 import org.h2.command.dml.Select;
 import org.h2.constant.SysProperties;
+import org.h2.engine.QueryProfile;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
-import org.h2.engine.UndoLogRecord;
 import org.h2.expression.Comparison;
 import org.h2.expression.ConditionAndOr;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionVisitor;
 import org.h2.index.Index;
 import org.h2.index.IndexCondition;
 import org.h2.index.IndexCursor;
+import org.h2.index.MultiIndex;
 import org.h2.message.DbException;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
@@ -52,8 +55,16 @@ public class TableFilter implements ColumnResolver {
     private String alias;
     private Index index;
     private int scanCount;
+    private double planCost;
+    private QueryProfile.Node profileNode;
     private boolean evaluatable;
 
+    /**
+     * The columns (of all tables) that are used by the query, or null if
+     * unknown.
+     */
+    private HashSet<Column> usedColumns;
+
     /**
      * Indicates that this filter is used in the plan.
      */
@@ -67,7 +78,18 @@ public class TableFilter implements ColumnResolver {
     /**
      * The index conditions used for direct index lookup (start or end).
      */
-    private final ArrayList<IndexCondition> indexConditions = New.arrayList();
+    private ArrayList<IndexCondition> indexConditions = New.arrayList();
+
+    /**
+     * The index conditions of each alternative of the OR conditions, used to
+     * find the rows with multiple indexes.
+     */
+    private final ArrayList<ArrayList<ArrayList<IndexCondition>>> indexConditionAlternatives = New.arrayList();
+
+    /**
+     * Whether index conditions of an alternative are being collected.
+     */
+    private boolean collectAlternative;
 
     /**
      * Additional conditions that can't be used for index lookup, but for row
@@ -163,30 +185,33 @@ public class TableFilter implements ColumnResolver {
             item.setIndex(table.getScanIndex(s));
             item.cost = item.getIndex().getCost(s, null, null, null);
         } else {
-            int len = table.getColumns().length;
-            int[] masks = new int[len];
-            for (IndexCondition condition : indexConditions) {
-                if (condition.isEvaluatable()) {
-                    if (condition.isAlwaysFalse()) {
-                        masks = null;
-                        break;
-                    }
-                    int id = condition.getColumn().getColumnId();
-                    if (id >= 0) {
-                        masks[id] |= condition.getMask(indexConditions);
-                    }
-                }
-            }
+            int[] masks = getMasks(indexConditions);
             SortOrder sortOrder = null;
             if (select != null) {
                 sortOrder = select.getSortOrder();
             }
             item = table.getBestPlanItem(s, masks, this, sortOrder);
+            if (masks != null) {
+                MultiIndex multi = MultiIndex.getIntersection(s, this, masks, item.cost);
+                if (multi != null) {
+                    item = new PlanItem();
+                    item.setIndex(multi);
+                    item.cost = multi.getCost(s, masks, this, sortOrder);
+                }
+            }
             // The more index conditions, the earlier the table.
             // This is to ensure joins without indexes run quickly:
             // x (x.a=10); y (x.b=y.b) - see issue 113
             item.cost -= item.cost * indexConditions.size() / 100 / level;
         }
+        for (ArrayList<ArrayList<IndexCondition>> alternatives : indexConditionAlternatives) {
+            MultiIndex multi = MultiIndex.getUnion(s, this, alternatives, item.cost);
+            if (multi != null) {
+                item = new PlanItem();
+                item.setIndex(multi);
+                item.cost = multi.getCost(s, null, this, null);
+            }
+        }
         if (nestedJoin != null) {
             setEvaluatable(nestedJoin);
             item.setNestedJoinPlan(nestedJoin.getBestPlanItem(s, level));
@@ -204,6 +229,28 @@ public class TableFilter implements ColumnResolver {
         return item;
     }
 
+    /**
+     * Get the comparison masks of the evaluatable index conditions.
+     *
+     * @param conditions the index conditions
+     * @return the masks for each column, or null if a condition is always false
+     */
+    public int[] getMasks(ArrayList<IndexCondition> conditions) {
+        int[] masks = new int[table.getSearchColumnCount()];
+        for (IndexCondition condition : conditions) {
+            if (condition.isEvaluatable()) {
+                if (condition.isAlwaysFalse()) {
+                    return null;
+                }
+                int id = condition.getColumn().getColumnId();
+                if (id >= 0) {
+                    masks[id] |= condition.getMask(conditions);
+                }
+            }
+        }
+        return masks;
+    }
+
     private void setEvaluatable(TableFilter join) {
         if (session.getDatabase().getSettings().nestedJoins) {
             setEvaluatable(true);
@@ -235,6 +282,7 @@ public class TableFilter implements ColumnResolver {
             return;
         }
         setIndex(item.getIndex());
+        planCost = item.cost;
         if (nestedJoin != null) {
             if (item.getNestedJoinPlan() != null) {
                 nestedJoin.setPlanItem(item.getNestedJoinPlan());
@@ -287,13 +335,24 @@ public class TableFilter implements ColumnResolver {
     }
 
     /**
-     * Start the query. This will reset the scan counts.
+     * Start the query. This will reset the scan counts. If the statement is
+     * run using EXPLAIN ANALYZE, the runtime statistics of this table are
+     * collected.
      *
      * @param s the session
      */
     public void startQuery(Session s) {
         this.session = s;
         scanCount = 0;
+        QueryProfile profile = s.getQueryProfile();
+        if (profile == null) {
+            profileNode = null;
+        } else {
+            profileNode = profile.getNode(this, QueryProfile.TABLE, table.getSQL() +
+                    (alias == null ? "" : " " + Parser.quoteIdentifier(alias)));
+            profileNode.index = index == null ? null : index.getPlanSQL();
+            profileNode.estimatedCost = planCost;
+        }
         if (nestedJoin != null) {
             nestedJoin.startQuery(s);
         }
@@ -322,9 +381,22 @@ public class TableFilter implements ColumnResolver {
      * @return true if there are
      */
     public boolean next() {
+        if (profileNode == null) {
+            return nextRow();
+        }
+        long start = System.nanoTime();
+        boolean found = nextRow();
+        profileNode.time += System.nanoTime() - start;
+        return found;
+    }
+
+    private boolean nextRow() {
         if (state == AFTER_LAST) {
             return false;
         } else if (state == BEFORE_FIRST) {
+            if (profileNode != null) {
+                profileNode.loops++;
+            }
             cursor.find(session, indexConditions);
             if (!cursor.isAlwaysFalse()) {
                 if (nestedJoin != null) {
@@ -356,6 +428,9 @@ public class TableFilter implements ColumnResolver {
                 if ((++scanCount & 4095) == 0) {
                     checkTimeout();
                 }
+                if (profileNode != null) {
+                    profileNode.rowsScanned++;
+                }
                 if (cursor.next()) {
                     currentSearchRow = cursor.getSearchRow();
                     current = null;
@@ -393,6 +468,9 @@ public class TableFilter implements ColumnResolver {
                     continue;
                 }
             }
+            if (profileNode != null) {
+                profileNode.rows++;
+            }
             if (join != null) {
                 join.reset();
                 if (!join.next()) {
@@ -450,6 +528,17 @@ public class TableFilter implements ColumnResolver {
         return current;
     }
 
+    /**
+     * Set the current index entry. Only the values of the index columns can
+     * be read.
+     *
+     * @param searchRow the index entry
+     */
+    public void setCurrentSearchRow(SearchRow searchRow) {
+        this.current = null;
+        this.currentSearchRow = searchRow;
+    }
+
     /**
      * Set the current row.
      *
@@ -485,6 +574,81 @@ public class TableFilter implements ColumnResolver {
         indexConditions.add(condition);
     }
 
+    public ArrayList<IndexCondition> getIndexConditions() {
+        return indexConditions;
+    }
+
+    /**
+     * Add the index conditions of each alternative of an OR condition. The
+     * alternatives of nested OR conditions are ignored.
+     *
+     * @param alternatives the index conditions of each alternative
+     */
+    public void addIndexConditionAlternatives(ArrayList<ArrayList<IndexCondition>> alternatives) {
+        if (!collectAlternative) {
+            indexConditionAlternatives.add(alternatives);
+        }
+    }
+
+    /**
+     * Create the index conditions of the given condition, without adding them
+     * to this table filter.
+     *
+     * @param s the session
+     * @param condition the condition
+     * @return the index conditions
+     */
+    public ArrayList<IndexCondition> createIndexConditions(Session s, Expression condition) {
+        ArrayList<IndexCondition> old = indexConditions;
+        boolean oldCollect = collectAlternative;
+        indexConditions = New.arrayList();
+        collectAlternative = true;
+        try {
+            condition.createIndexConditions(s, this);
+            return indexConditions;
+        } finally {
+            indexConditions = old;
+            collectAlternative = oldCollect;
+        }
+    }
+
+    /**
+     * Get a column for the index expression that matches the given expression
+     * of this table filter, so that conditions such as UPPER(NAME) = ? can use
+     * an index on UPPER(NAME). Expressions are matched by their SQL snippet.
+     *
+     * @param expr the expression
+     * @return the expression column, or null if no index uses this expression
+     */
+    public ExpressionColumn getIndexExpressionColumn(Expression expr) {
+        if (table.getSearchColumnCount() == table.getColumns().length) {
+            // there are no index expressions
+            return null;
+        }
+        if (expr instanceof ExpressionColumn || expr.isConstant() ||
+                expr.isEverything(ExpressionVisitor.getNotFromResolverVisitor(this))) {
+            return null;
+        }
+        HashSet<Column> columns = New.hashSet();
+        expr.isEverything(ExpressionVisitor.getColumnsVisitor(columns));
+        for (Column c : columns) {
+            if (c.getTable() != table) {
+                return null;
+            }
+        }
+        String sql = expr.getSQL();
+        Column column = table.findIndexExpressionColumn(sql);
+        if (column == null && sql.indexOf('\'') < 0) {
+            // the index expression doesn't contain the table alias
+            String a = getTableAlias();
+            if (session.getDatabase().getSettings().databaseToUpper) {
+                a = Parser.quoteIdentifier(a);
+            }
+            column = table.findIndexExpressionColumn(StringUtils.replaceAll(sql, a + ".", ""));
+        }
+        return column == null ? null : new ExpressionColumn(session.getDatabase(), column);
+    }
+
     /**
      * Add a filter condition.
      *
@@ -704,7 +868,11 @@ public class TableFilter implements ColumnResolver {
             condition = "/* WHERE " + StringUtils.quoteRemarkSQL(condition) + "\n*/";
             buff.append(StringUtils.indent(condition, 4, false));
         }
-        if (scanCount > 0) {
+        if (profileNode != null) {
+            buff.append("\n    /* scanCount: ").append(profileNode.rowsScanned).
+                append(", loops: ").append(profileNode.loops).
+                append(", rows: ").append(profileNode.rows).append(" */");
+        } else if (scanCount > 0) {
             buff.append("\n    /* scanCount: ").append(scanCount).append(" */");
         }
         return buff.toString();
@@ -756,6 +924,20 @@ public class TableFilter implements ColumnResolver {
         this.join = null;
     }
 
+    /**
+     * Set the columns that are used by the query. This is used to find
+     * covering indexes.
+     *
+     * @param usedColumns the columns, or null if unknown
+     */
+    public void setUsedColumns(HashSet<Column> usedColumns) {
+        this.usedColumns = usedColumns;
+    }
+
+    public HashSet<Column> getUsedColumns() {
+        return usedColumns;
+    }
+
     public Expression getJoinCondition() {
         return joinCondition;
     }
@@ -976,11 +1158,7 @@ public class TableFilter implements ColumnResolver {
      */
     public void lockRows(ArrayList<Row> forUpdateRows) {
         for (Row row : forUpdateRows) {
-            Row newRow = row.getCopy();
-            table.removeRow(session, row);
-            session.log(table, UndoLogRecord.DELETE, row);
-            table.addRow(session, newRow);
-            session.log(table, UndoLogRecord.INSERT, newRow);
+            table.lockRow(session, row);
         }
     }
 
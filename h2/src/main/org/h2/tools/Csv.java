@@ -24,6 +24,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
@@ -32,8 +34,12 @@ import org.h2.message.DbException;
 import org.h2.store.fs.FileUtils;
 import org.h2.util.IOUtils;
 import org.h2.util.JdbcUtils;
+import org.h2.util.MathUtils;
 import org.h2.util.New;
 import org.h2.util.StringUtils;
+import org.h2.util.Task;
+import org.h2.value.DataType;
+import org.h2.value.ValueString;
 
 /**
  * A facility to read from and write to CSV (comma separated values) files. When
@@ -44,7 +50,16 @@ import org.h2.util.StringUtils;
  */
 public class Csv implements SimpleRowSource {
 
+    /**
+     * The number of rows that are passed from the read-ahead thread to the
+     * reader at once.
+     */
+    private static final int READ_AHEAD_BATCH = 256;
+
     private String[] columnNames;
+    private String[] columnTypeNames;
+    private DataType[] columnTypes;
+    private boolean readAhead;
 
     private String characterSet = SysProperties.FILE_ENCODING;
     private char escapeCharacter = '\"';
@@ -67,6 +82,10 @@ public class Csv implements SimpleRowSource {
     private int inputBufferEnd;
     private Writer output;
     private boolean endOfLine, endOfFile;
+    private Task readAheadTask;
+    private ArrayBlockingQueue<Object> readAheadQueue;
+    private ArrayList<Object[]> readAheadRows;
+    private int readAheadPos;
 
     /**
      * Get a new object of this class.
@@ -228,12 +247,39 @@ public class Csv implements SimpleRowSource {
         initRead();
         SimpleResultSet result = new SimpleResultSet(this);
         makeColumnNamesUnique();
-        for (String columnName : columnNames) {
-            result.addColumn(columnName, Types.VARCHAR, Integer.MAX_VALUE, 0);
+        initColumnTypes();
+        for (int i = 0; i < columnNames.length; i++) {
+            DataType type = columnTypes == null ? null : columnTypes[i];
+            if (type == null) {
+                result.addColumn(columnNames[i], Types.VARCHAR, Integer.MAX_VALUE, 0);
+            } else {
+                result.addColumn(columnNames[i], type.sqlType,
+                        MathUtils.convertLongToInt(type.defaultPrecision), type.defaultScale);
+            }
         }
         return result;
     }
 
+    private void initColumnTypes() {
+        columnTypes = null;
+        if (columnTypeNames == null) {
+            return;
+        }
+        columnTypes = new DataType[columnNames.length];
+        for (int i = 0; i < columnTypes.length && i < columnTypeNames.length; i++) {
+            String name = StringUtils.toUpperEnglish(columnTypeNames[i].trim());
+            if (name.length() == 0 || name.equals("VARCHAR")) {
+                continue;
+            }
+            DataType type = DataType.getTypeByName(name);
+            if (type == null) {
+                close();
+                throw DbException.get(ErrorCode.UNKNOWN_DATA_TYPE_1, name);
+            }
+            columnTypes[i] = type;
+        }
+    }
+
     private void makeColumnNamesUnique() {
         for (int i = 0; i < columnNames.length; i++) {
             StringBuilder buff = new StringBuilder();
@@ -408,6 +454,37 @@ public class Csv implements SimpleRowSource {
         return inputBuffer[inputBufferPos++];
     }
 
+    /**
+     * Read characters until one of the given characters or the end of the
+     * file is found. The characters in the buffer are scanned in a tight loop,
+     * without calling readChar for each of them.
+     *
+     * @param a the first character to search
+     * @param b the second character to search
+     * @param c the third character to search
+     * @return the character found, or -1 at the end of the file
+     */
+    private int readUntil(char a, char b, char c) throws IOException {
+        while (true) {
+            char[] buff = inputBuffer;
+            int end = inputBufferEnd;
+            for (int pos = inputBufferPos; pos < end; pos++) {
+                char ch = buff[pos];
+                if (ch == a || ch == b || ch == c) {
+                    inputBufferPos = pos + 1;
+                    return ch;
+                }
+            }
+            if (inputBufferPos < end) {
+                inputBufferPos = end;
+            }
+            int ch = readChar();
+            if (ch == a || ch == b || ch == c || ch < 0) {
+                return ch;
+            }
+        }
+    }
+
     private int readBuffer() throws IOException {
         if (endOfFile) {
             return -1;
@@ -453,7 +530,7 @@ public class Csv implements SimpleRowSource {
                 inputBufferStart = inputBufferPos;
                 int sep;
                 while (true) {
-                    ch = readChar();
+                    ch = readUntil(fieldDelimiter, escapeCharacter, escapeCharacter);
                     if (ch == fieldDelimiter) {
                         ch = readChar();
                         if (ch != fieldDelimiter) {
@@ -515,14 +592,9 @@ public class Csv implements SimpleRowSource {
                 return null;
             } else {
                 // un-delimited value
-                while (true) {
-                    ch = readChar();
-                    if (ch == fieldSeparatorRead) {
-                        break;
-                    } else if (ch == '\n' || ch < 0 || ch == '\r') {
-                        endOfLine = true;
-                        break;
-                    }
+                ch = readUntil(fieldSeparatorRead, '\n', '\r');
+                if (ch != fieldSeparatorRead) {
+                    endOfLine = true;
                 }
                 String s = new String(inputBuffer, inputBufferStart, inputBufferPos - inputBufferStart - 1);
                 if (!preserveWhitespace) {
@@ -571,6 +643,97 @@ public class Csv implements SimpleRowSource {
      */
     @Override
     public Object[] readRow() throws SQLException {
+        if (readAhead) {
+            return readRowAhead();
+        }
+        return readRowDirect();
+    }
+
+    /**
+     * Get the next row that was parsed by the read-ahead thread. The thread
+     * is started when the first row is read, so that the column header is
+     * read by the calling thread.
+     *
+     * @return the row, or null at the end of the file
+     */
+    private Object[] readRowAhead() throws SQLException {
+        if (readAheadRows == null || readAheadPos >= readAheadRows.size()) {
+            if (readAheadTask == null) {
+                if (input == null) {
+                    return null;
+                }
+                startReadAhead();
+            }
+            Object x;
+            try {
+                x = readAheadQueue.take();
+            } catch (InterruptedException e) {
+                throw convertException("Interrupted reading from " + fileName, e);
+            }
+            if (x instanceof SQLException) {
+                readAheadRows = null;
+                throw (SQLException) x;
+            }
+            @SuppressWarnings("unchecked")
+            ArrayList<Object[]> rows = (ArrayList<Object[]>) x;
+            readAheadRows = rows;
+            readAheadPos = 0;
+            if (rows.isEmpty()) {
+                // end of file: keep returning null
+                return null;
+            }
+        }
+        return readAheadRows.get(readAheadPos++);
+    }
+
+    private void startReadAhead() {
+        final ArrayBlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(4);
+        readAheadQueue = queue;
+        readAheadTask = new Task() {
+            @Override
+            public void call() throws Exception {
+                while (true) {
+                    ArrayList<Object[]> rows = New.arrayList();
+                    Object x = rows;
+                    try {
+                        while (rows.size() < READ_AHEAD_BATCH) {
+                            Object[] row = readRowDirect();
+                            if (row == null) {
+                                break;
+                            }
+                            rows.add(row);
+                        }
+                    } catch (SQLException e) {
+                        x = e;
+                    } catch (Throwable e) {
+                        // the reader must always get a terminal element,
+                        // otherwise it would wait forever
+                        x = convertException("Error reading from " + fileName, e);
+                    }
+                    if (!rows.isEmpty() && x != rows) {
+                        // first pass the rows that were read before the error
+                        if (!put(rows)) {
+                            return;
+                        }
+                    }
+                    if (!put(x) || x != rows || rows.isEmpty()) {
+                        return;
+                    }
+                }
+            }
+
+            private boolean put(Object x) throws InterruptedException {
+                while (!stop) {
+                    if (queue.offer(x, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }.execute("H2 CSV read-ahead " + fileName);
+    }
+
+    private Object[] readRowDirect() throws SQLException {
         if (input == null) {
             return null;
         }
@@ -601,10 +764,31 @@ public class Csv implements SimpleRowSource {
         } catch (IOException e) {
             throw convertException("IOException reading from " + fileName, e);
         }
+        if (columnTypes != null) {
+            return convertRow(row);
+        }
         return row;
     }
 
-    private static SQLException convertException(String message, Exception e) {
+    private Object[] convertRow(String[] row) throws SQLException {
+        Object[] values = new Object[row.length];
+        for (int i = 0; i < row.length; i++) {
+            DataType type = columnTypes[i];
+            String s = row[i];
+            if (type == null || s == null) {
+                values[i] = s;
+            } else {
+                try {
+                    values[i] = ValueString.get(s).convertTo(type.type).getObject();
+                } catch (DbException e) {
+                    throw e.getSQLException();
+                }
+            }
+        }
+        return values;
+    }
+
+    private static SQLException convertException(String message, Throwable e) {
         return DbException.get(ErrorCode.IO_EXCEPTION_1, e, message).getSQLException();
     }
 
@@ -613,6 +797,13 @@ public class Csv implements SimpleRowSource {
      */
     @Override
     public void close() {
+        if (readAheadTask != null) {
+            // stops the thread and waits until it is stopped
+            readAheadTask.getException();
+            readAheadTask = null;
+            readAheadQueue = null;
+            readAheadRows = null;
+        }
         IOUtils.closeSilently(input);
         input = null;
         IOUtils.closeSilently(output);
@@ -852,6 +1043,47 @@ public class Csv implements SimpleRowSource {
         return writeColumnHeader;
     }
 
+    /**
+     * Set the data types of the columns when reading. The values are then
+     * converted in the parser (or read-ahead thread) instead of being
+     * returned as strings. An empty entry or VARCHAR keeps the column as a
+     * string.
+     *
+     * @param typeNames the data type names (for example INT or DATE), or null
+     *            to read all columns as strings
+     */
+    public void setColumnTypes(String... typeNames) {
+        this.columnTypeNames = typeNames;
+    }
+
+    /**
+     * Get the data types of the columns when reading.
+     *
+     * @return the data type names, or null
+     */
+    public String[] getColumnTypes() {
+        return columnTypeNames;
+    }
+
+    /**
+     * Enable or disable reading ahead. If enabled, the file is read and
+     * parsed by a separate thread while the rows are processed.
+     *
+     * @param value the new value for the setting
+     */
+    public void setReadAhead(boolean value) {
+        this.readAhead = value;
+    }
+
+    /**
+     * Whether the file is read and parsed by a separate thread.
+     *
+     * @return the current value for the setting
+     */
+    public boolean getReadAhead() {
+        return readAhead;
+    }
+
     /**
      * INTERNAL.
      * Parse and set the CSV options.
@@ -893,6 +1125,10 @@ public class Csv implements SimpleRowSource {
                 setWriteColumnHeader(Boolean.parseBoolean(value));
             } else if (isParam(key, "caseSensitiveColumnNames")) {
                 setCaseSensitiveColumnNames(Boolean.parseBoolean(value));
+            } else if (isParam(key, "columnTypes")) {
+                setColumnTypes(StringUtils.arraySplit(value, ',', true));
+            } else if (isParam(key, "readAhead")) {
+                setReadAhead(Boolean.parseBoolean(value));
             } else {
                 throw DbException.getUnsupportedException(key);
             }
@@ -7,6 +7,7 @@
 package org.h2.tools;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -14,10 +15,14 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -33,6 +38,7 @@ import org.h2.message.DbException;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreTool;
+import org.h2.mvstore.StreamStore;
 import org.h2.mvstore.db.TransactionStore;
 import org.h2.mvstore.db.TransactionStore.TransactionMap;
 import org.h2.mvstore.db.ValueDataType;
@@ -92,6 +98,7 @@ public class Recover extends Tool implements DataHandler {
     private FileStore store;
     private int[] parents;
     private String mvFile;
+    private boolean lobMaps;
 
     private Stats stat;
 
@@ -216,6 +223,56 @@ public class Recover extends Tool implements DataHandler {
         return ValueLobDb.create(Value.CLOB, h, LobStorageFrontend.TABLE_TEMP, lobId, null, precision);
     }
 
+    /**
+     * INTERNAL
+     */
+    public static InputStream readBlobMap(Connection conn, long lobId, long precision) throws SQLException {
+        final PreparedStatement prep = conn.prepareStatement(
+                "SELECT DATA FROM INFORMATION_SCHEMA.LOB_BLOCKS WHERE LOB = ? AND SEQ = ? AND ? > 0");
+        prep.setLong(1, lobId);
+        // the precision is not used, it only improves the readability of the script
+        prep.setLong(3, precision);
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+
+            private int seq;
+            private byte[] data = fetch();
+
+            private byte[] fetch() {
+                try {
+                    prep.setInt(2, seq++);
+                    ResultSet rs = prep.executeQuery();
+                    if (rs.next()) {
+                        return rs.getBytes(1);
+                    }
+                    return null;
+                } catch (SQLException e) {
+                    throw DbException.convert(e);
+                }
+            }
+
+            @Override
+            public boolean hasMoreElements() {
+                return data != null;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                ByteArrayInputStream in = new ByteArrayInputStream(data);
+                data = fetch();
+                return in;
+            }
+
+        });
+    }
+
+    /**
+     * INTERNAL
+     */
+    public static Reader readClobMap(Connection conn, long lobId, long precision) throws Exception {
+        InputStream in = readBlobMap(conn, lobId, precision);
+        return new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    }
+
     private void trace(String message) {
         if (trace) {
             out.println(message);
@@ -355,10 +412,10 @@ public class Recover extends Tool implements DataHandler {
                 String columnType;
                 if (type == Value.BLOB) {
                     columnType = "BLOB";
-                    m = "READ_BLOB_DB";
+                    m = lobMaps ? "READ_BLOB_MAP" : "READ_BLOB_DB";
                 } else {
                     columnType = "CLOB";
-                    m = "READ_CLOB_DB";
+                    m = lobMaps ? "READ_CLOB_MAP" : "READ_CLOB_DB";
                 }
                 columnTypeMap.put(column, columnType);
                 return m + "(" + id + ", " + precision + ")";
@@ -490,6 +547,7 @@ public class Recover extends Tool implements DataHandler {
         writer.println("-- mvstore");
         setDatabaseName(fileName.substring(0, fileName.length() - Constants.SUFFIX_MV_FILE.length()));
         MVStore mv = new MVStore.Builder().fileName(fileName).readOnly().open();
+        dumpLobMaps(writer, mv);
         TransactionStore store = new TransactionStore(mv);
         try {
             MVMap<String, String> metaMap = mv.getMetaMap();
@@ -560,6 +618,52 @@ public class Recover extends Tool implements DataHandler {
         }
     }
 
+    /**
+     * Dump the LOB data that is stored in the MVStore (see LobStorageMap).
+     * The blocks are copied to a temporary table, from where they are read
+     * by the READ_BLOB_MAP and READ_CLOB_MAP functions.
+     */
+    private void dumpLobMaps(PrintWriter writer, MVStore mv) {
+        lobMaps = mv.hasMap("lobData");
+        if (!lobMaps) {
+            return;
+        }
+        MVMap<Long, Object[]> lobMap = mv.openMap("lobMap");
+        MVMap<Long, Object[]> streamMap = mv.openMap("lobStreams");
+        MVMap<Long, byte[]> dataMap = mv.openMap("lobData");
+        StreamStore streamStore = new StreamStore(dataMap);
+        writer.println("CREATE ALIAS IF NOT EXISTS READ_BLOB_MAP FOR \"" + this.getClass().getName() + ".readBlobMap\";");
+        writer.println("CREATE ALIAS IF NOT EXISTS READ_CLOB_MAP FOR \"" + this.getClass().getName() + ".readClobMap\";");
+        writer.println("CREATE TABLE IF NOT EXISTS INFORMATION_SCHEMA.LOB_BLOCKS(" +
+                "LOB BIGINT, SEQ INT, DATA BINARY, PRIMARY KEY(LOB, SEQ));");
+        for (Map.Entry<Long, Object[]> e : lobMap.entrySet()) {
+            long lobId = e.getKey();
+            Object[] stream = streamMap.get((Long) e.getValue()[0]);
+            if (stream == null) {
+                writer.println("-- missing stream of lob " + lobId);
+                continue;
+            }
+            InputStream in = streamStore.get((byte[]) stream[0]);
+            byte[] buff = new byte[Constants.IO_BUFFER_SIZE];
+            try {
+                for (int seq = 0;; seq++) {
+                    int l = IOUtils.readFully(in, buff, 0, buff.length);
+                    if (l > 0) {
+                        writer.print("INSERT INTO INFORMATION_SCHEMA.LOB_BLOCKS " +
+                                "VALUES(" + lobId + ", " + seq + ", '");
+                        writer.print(StringUtils.convertBytesToHex(buff, l));
+                        writer.println("');");
+                    }
+                    if (l != buff.length) {
+                        break;
+                    }
+                }
+            } catch (IOException ex) {
+                writeError(writer, ex);
+            }
+        }
+    }
+
     private static String getPageType(int type) {
         switch (type) {
         case 0:
@@ -1300,6 +1404,7 @@ public class Recover extends Tool implements DataHandler {
         objectIdSet = New.hashSet();
         tableMap = New.hashMap();
         columnTypeMap = New.hashMap();
+        lobMaps = false;
     }
 
     private void writeSchema(PrintWriter writer) {
@@ -1351,6 +1456,11 @@ public class Recover extends Tool implements DataHandler {
         writer.println("DROP ALIAS READ_CLOB;");
         writer.println("DROP ALIAS READ_BLOB_DB;");
         writer.println("DROP ALIAS READ_CLOB_DB;");
+        if (lobMaps) {
+            writer.println("DROP ALIAS READ_BLOB_MAP;");
+            writer.println("DROP ALIAS READ_CLOB_MAP;");
+            writer.println("DROP TABLE INFORMATION_SCHEMA.LOB_BLOCKS;");
+        }
         if (deleteLobs) {
             writer.println("DELETE FROM INFORMATION_SCHEMA.LOBS WHERE TABLE = " + LobStorageFrontend.TABLE_TEMP + ";");
         }
@@ -16,12 +16,16 @@ import java.util.zip.ZipInputStream;
 import org.h2.constant.SysProperties;
 import org.h2.engine.Constants;
 import org.h2.message.DbException;
+import org.h2.store.IncrementalBackup;
 import org.h2.store.fs.FileUtils;
 import org.h2.util.IOUtils;
 import org.h2.util.Tool;
 
 /**
  * Restores a H2 database by extracting the database files from a .zip file.
+ * An incremental backup (BACKUP TO ... INCREMENTAL FROM ...) is restored by
+ * first restoring the full backup, and then each incremental backup in the
+ * order they were created, into the same directory.
  * @h2.resource
  */
 public class Restore extends Tool {
@@ -115,12 +119,16 @@ public class Restore extends Tool {
 
     /**
      * Extract the name of the database from a given file name.
-     * Only files ending with .h2.db are considered, all others return null.
+     * Only files ending with .h2.db (or .h2.db.incremental) are considered,
+     * all others return null.
      *
      * @param fileName the file name (without directory)
      * @return the database name or null
      */
     private static String getDatabaseNameFromFileName(String fileName) {
+        if (fileName.endsWith(IncrementalBackup.SUFFIX)) {
+            fileName = fileName.substring(0, fileName.length() - IncrementalBackup.SUFFIX.length());
+        }
         if (fileName.endsWith(Constants.SUFFIX_PAGE_FILE)) {
             return fileName.substring(0, fileName.length() - Constants.SUFFIX_PAGE_FILE.length());
         }
@@ -174,7 +182,10 @@ public class Restore extends Tool {
                     fileName = db + fileName.substring(originalDbLen);
                     copy = true;
                 }
-                if (copy) {
+                if (copy && fileName.endsWith(IncrementalBackup.SUFFIX)) {
+                    fileName = fileName.substring(0, fileName.length() - IncrementalBackup.SUFFIX.length());
+                    IncrementalBackup.apply(zipIn, directory + SysProperties.FILE_SEPARATOR + fileName);
+                } else if (copy) {
                     OutputStream o = null;
                     try {
                         o = FileUtils.newOutputStream(directory + SysProperties.FILE_SEPARATOR + fileName, false);
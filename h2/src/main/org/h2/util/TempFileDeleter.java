@@ -75,6 +75,15 @@ public class TempFileDeleter {
         }
     }
 
+    /**
+     * Get the number of registered temp files that are not yet deleted.
+     *
+     * @return the number of files
+     */
+    public synchronized int getFileCount() {
+        return refMap.size();
+    }
+
     /**
      * Delete all registered temp files.
      */
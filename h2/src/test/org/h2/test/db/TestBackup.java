@@ -13,6 +13,7 @@ import java.sql.Statement;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.h2.api.DatabaseEventListener;
+import org.h2.message.DbException;
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
 import org.h2.tools.Backup;
@@ -42,6 +43,7 @@ public class TestBackup extends TestBase {
         testBackupRestoreLobStatement();
         testBackupRestoreLob();
         testBackup();
+        testIncrementalBackup();
         deleteDb("backup");
         FileUtils.delete(getBaseDir() + "/backup.zip");
     }
@@ -195,4 +197,65 @@ public class TestBackup extends TestBase {
         deleteDb("restored");
     }
 
+    private void testIncrementalBackup() throws SQLException {
+        deleteDb("backup");
+        deleteDb("restored");
+        String dir = getBaseDir();
+        Connection conn1 = getConnection("backup");
+        Statement stat1 = conn1.createStatement();
+        stat1.execute("create table test(id int primary key, name varchar(255))");
+        stat1.execute("insert into test select x, space(100) from system_range(1, 1000)");
+        stat1.execute("backup to '" + dir + "/backup.zip'");
+        // only the pages written since the base backup are read
+        stat1.execute("update test set name = 'changed' where id = 500");
+        stat1.execute("backup to '" + dir + "/backup1.zip' incremental from '" + dir + "/backup.zip'");
+        stat1.execute("insert into test select x, space(100) from system_range(1001, 2000)");
+        stat1.execute("delete from test where id < 5");
+        stat1.execute("backup to '" + dir + "/backup2.zip' incremental from '" + dir + "/backup1.zip'");
+        stat1.execute("update test set name = 'changed2' where id = 1500");
+        stat1.execute("backup to '" + dir + "/backup3.zip' incremental from '" + dir + "/backup2.zip'");
+        // after re-opening, the changed pages are not known, so all pages
+        // are compared with the base backup (backup3 does not contain the
+        // hash codes of the pages it skipped)
+        conn1.close();
+        conn1 = getConnection("backup");
+        stat1 = conn1.createStatement();
+        stat1.execute("update test set name = 'changed3' where id = 10");
+        stat1.execute("backup to '" + dir + "/backup4.zip' incremental from '" + dir + "/backup3.zip'");
+        assertTrue(FileUtils.size(dir + "/backup1.zip") < FileUtils.size(dir + "/backup.zip"));
+        assertTrue(FileUtils.size(dir + "/backup3.zip") < FileUtils.size(dir + "/backup.zip"));
+
+        // an incremental backup can only be applied to its base
+        Restore.execute(dir + "/backup.zip", dir, "restored");
+        Connection conn2 = getConnection("restored");
+        conn2.createStatement().execute("drop table test");
+        conn2.close();
+        try {
+            Restore.execute(dir + "/backup1.zip", dir, "restored");
+            fail();
+        } catch (DbException e) {
+            // expected
+        }
+        Restore.execute(dir + "/backup.zip", dir, "restored");
+        for (int i = 1; i <= 4; i++) {
+            Restore.execute(dir + "/backup" + i + ".zip", dir, "restored");
+        }
+        conn2 = getConnection("restored");
+        Statement stat2 = conn2.createStatement();
+        assertEqualDatabases(stat1, stat2);
+        ResultSet rs = stat2.executeQuery("select name from test where id in(10, 500, 1500) order by id");
+        assertTrue(rs.next());
+        assertEquals("changed3", rs.getString(1));
+        assertTrue(rs.next());
+        assertEquals("changed", rs.getString(1));
+        assertTrue(rs.next());
+        assertEquals("changed2", rs.getString(1));
+        conn2.close();
+        conn1.close();
+        deleteDb("restored");
+        for (int i = 1; i <= 4; i++) {
+            FileUtils.delete(dir + "/backup" + i + ".zip");
+        }
+    }
+
 }
@@ -40,6 +40,9 @@ public class TestBigResult extends TestBase {
         testCloseConnectionDelete();
         testOrderGroup();
         testLimitBufferedResult();
+        testSortTopN();
+        testSortManyRuns();
+        testSortParallelCompressed();
         deleteDb("bigResult");
     }
 
@@ -96,6 +99,139 @@ public class TestBigResult extends TestBase {
         }
     }
 
+    private void testSortTopN() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        stat.execute("SET MAX_MEMORY_ROWS 100");
+        stat.execute("CREATE TABLE TEST(ID INT, NAME VARCHAR)");
+        int len = getSize(1000, 10000);
+        stat.execute("INSERT INTO TEST SELECT MOD(X * 7, " + len + "), 'Hello' || X " +
+                "FROM SYSTEM_RANGE(1, " + len + ")");
+        ResultSet rs = stat.executeQuery("SELECT ID FROM TEST ORDER BY ID DESC LIMIT 10");
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rs.next());
+            assertEquals(len - 1 - i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        PreparedStatement prep = conn.prepareStatement(
+                "SELECT ID FROM TEST ORDER BY ID LIMIT ? OFFSET ?");
+        for (int offset = 0; offset < 200; offset += 45) {
+            prep.setInt(1, 30);
+            prep.setInt(2, offset);
+            rs = prep.executeQuery();
+            for (int i = 0; i < 30; i++) {
+                assertTrue(rs.next());
+                assertEquals(offset + i, rs.getInt(1));
+            }
+            assertFalse(rs.next());
+        }
+        // more rows than fit in memory
+        rs = stat.executeQuery("SELECT ID FROM TEST ORDER BY ID LIMIT 150 OFFSET 5");
+        for (int i = 0; i < 150; i++) {
+            assertTrue(rs.next());
+            assertEquals(5 + i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        rs = stat.executeQuery("SELECT ID FROM TEST UNION ALL SELECT ID FROM TEST " +
+                "ORDER BY ID DESC LIMIT 5");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rs.next());
+            assertEquals(len - 1 - i / 2, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        conn.close();
+    }
+
+    private void testSortManyRuns() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        stat.execute("SET MAX_MEMORY_ROWS 10");
+        stat.execute("CREATE TABLE TEST(ID INT, NAME VARCHAR)");
+        int len = getSize(1000, 10000);
+        stat.execute("INSERT INTO TEST SELECT MOD(X * 13, 97), 'Hello' || X " +
+                "FROM SYSTEM_RANGE(1, " + len + ")");
+        Statement s2 = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
+                ResultSet.CONCUR_READ_ONLY);
+        ResultSet rs = s2.executeQuery("SELECT ID, NAME FROM TEST ORDER BY ID DESC, NAME");
+        for (int j = 0; j < 2; j++) {
+            int count = 0, lastId = Integer.MAX_VALUE;
+            String lastName = null;
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                String name = rs.getString(2);
+                assertTrue(id <= lastId);
+                if (id == lastId) {
+                    assertTrue(name.compareTo(lastName) > 0);
+                }
+                lastId = id;
+                lastName = name;
+                count++;
+            }
+            assertEquals(len, count);
+            rs.beforeFirst();
+        }
+        conn.close();
+    }
+
+    private void testSortParallelCompressed() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult;" +
+                "LARGE_RESULT_SORT_THREADS=4;LARGE_RESULT_COMPRESS=TRUE");
+        Statement stat = conn.createStatement();
+        stat.execute("SET MAX_MEMORY_ROWS 20000");
+        stat.execute("CREATE TABLE TEST(ID INT, NAME VARCHAR)");
+        int len = 50000;
+        stat.execute("INSERT INTO TEST SELECT MOD(X * 7919, 10007), 'Hello' || X " +
+                "FROM SYSTEM_RANGE(1, " + len + ")");
+        ResultSet rs = stat.executeQuery("SELECT ID, NAME FROM TEST ORDER BY ID, NAME DESC");
+        int count = 0, lastId = -1;
+        String lastName = null;
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            String name = rs.getString(2);
+            assertTrue(id >= lastId);
+            if (id == lastId) {
+                assertTrue(name.compareTo(lastName) < 0);
+            }
+            lastId = id;
+            lastName = name;
+            count++;
+        }
+        assertEquals(len, count);
+        rs = stat.executeQuery("SELECT SUM(ID) FROM (SELECT ID FROM TEST)");
+        rs.next();
+        long sum = rs.getLong(1);
+        rs = stat.executeQuery("SELECT ID FROM TEST");
+        long sum2 = 0;
+        count = 0;
+        while (rs.next()) {
+            sum2 += rs.getInt(1);
+            count++;
+        }
+        assertEquals(len, count);
+        assertEquals(sum, sum2);
+        // LOB sort columns are sorted by the session thread,
+        // even if the first row contains NULL
+        stat.execute("CREATE TABLE TEST_CLOB(ID INT, DATA CLOB) AS " +
+                "SELECT X, CASEWHEN(X = 1, NULL, 'Hello' || MOD(X * 7919, 10007)) " +
+                "FROM SYSTEM_RANGE(1, " + len + ")");
+        rs = stat.executeQuery("SELECT DATA FROM TEST_CLOB ORDER BY DATA");
+        assertTrue(rs.next());
+        assertNull(rs.getString(1));
+        count = 1;
+        lastName = "";
+        while (rs.next()) {
+            String name = rs.getString(1);
+            assertTrue(name.compareTo(lastName) >= 0);
+            lastName = name;
+            count++;
+        }
+        assertEquals(len, count);
+        conn.close();
+    }
+
     private void testLimitBufferedResult() throws SQLException {
         deleteDb("bigResult");
         Connection conn = getConnection("bigResult");
@@ -9,6 +9,7 @@ package org.h2.test.db;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
@@ -20,6 +21,7 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Random;
 import org.h2.constant.ErrorCode;
@@ -68,6 +70,8 @@ public class TestCsv extends TestBase {
         testFieldDelimiter();
         testAsTable();
         testRead();
+        testReadLargeValues();
+        testReadAheadColumnTypes();
         testPipe();
         deleteDb("csv");
     }
@@ -516,6 +520,152 @@ public class TestCsv extends TestBase {
         FileUtils.delete(fileName);
     }
 
+    private void testReadLargeValues() throws Exception {
+        String fileName = getBaseDir() + "/test.csv";
+        FileUtils.delete(fileName);
+        // values that span multiple read buffers
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            buff.append((char) ('a' + i % 26));
+        }
+        String large = buff.toString();
+        OutputStream out = FileUtils.newOutputStream(fileName, false);
+        String data = "a,b,c\n" +
+                large + ",\"" + large + "\"\"x\",1\n" +
+                "2," + large + "\r\n" +
+                "\"" + large + "\"," + large;
+        byte[] b = data.getBytes();
+        out.write(b, 0, b.length);
+        out.close();
+        ResultSet rs = new Csv().read(fileName, null, "UTF8");
+        assertTrue(rs.next());
+        assertEquals(large, rs.getString(1));
+        assertEquals(large + "\"x", rs.getString(2));
+        assertEquals("1", rs.getString(3));
+        assertTrue(rs.next());
+        assertEquals("2", rs.getString(1));
+        assertEquals(large, rs.getString(2));
+        assertEquals(null, rs.getString(3));
+        assertTrue(rs.next());
+        assertEquals(large, rs.getString(1));
+        assertEquals(large, rs.getString(2));
+        assertEquals(null, rs.getString(3));
+        assertFalse(rs.next());
+        FileUtils.delete(fileName);
+    }
+
+    private void testReadAheadColumnTypes() throws Exception {
+        deleteDb("csv");
+        String fileName = getBaseDir() + "/test.csv";
+        FileUtils.delete(fileName);
+        OutputStream out = FileUtils.newOutputStream(fileName, false);
+        StringBuilder buff = new StringBuilder("ID,NAME,D\n");
+        int len = 2000;
+        for (int i = 0; i < len; i++) {
+            buff.append(i).append(",\"Hello ").append(i).append("\",");
+            if (i % 10 != 0) {
+                buff.append("2013-01-").append(10 + i % 10);
+            }
+            buff.append('\n');
+        }
+        byte[] b = buff.toString().getBytes();
+        out.write(b, 0, b.length);
+        out.close();
+
+        Csv csv = new Csv();
+        csv.setReadAhead(true);
+        csv.setColumnTypes("INT", "", "DATE");
+        ResultSet rs = csv.read(fileName, null, "UTF8");
+        assertEquals(Types.INTEGER, rs.getMetaData().getColumnType(1));
+        assertEquals(Types.VARCHAR, rs.getMetaData().getColumnType(2));
+        assertEquals(Types.DATE, rs.getMetaData().getColumnType(3));
+        for (int i = 0; i < len; i++) {
+            assertTrue(rs.next());
+            assertEquals(Integer.valueOf(i), (Integer) rs.getObject(1));
+            assertEquals("Hello " + i, rs.getString(2));
+            if (i % 10 == 0) {
+                assertNull(rs.getObject(3));
+            } else {
+                assertEquals(java.sql.Date.valueOf("2013-01-" + (10 + i % 10)),
+                        (java.sql.Date) rs.getObject(3));
+            }
+        }
+        assertFalse(rs.next());
+        assertFalse(rs.next());
+        rs.close();
+
+        // closing the result set early stops the read-ahead thread
+        csv = new Csv();
+        csv.setOptions("readAhead=true");
+        rs = csv.read(fileName, null, "UTF8");
+        assertTrue(rs.next());
+        rs.close();
+
+        Connection conn = getConnection("csv");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test as select * from csvread('" + fileName +
+                "', null, 'readAhead=true columnTypes=INT,,DATE')");
+        rs = stat.executeQuery("select data_type from information_schema.columns " +
+                "where table_name = 'TEST' order by ordinal_position");
+        rs.next();
+        assertEquals(Types.INTEGER, rs.getInt(1));
+        rs.next();
+        assertEquals(Types.VARCHAR, rs.getInt(1));
+        rs.next();
+        assertEquals(Types.DATE, rs.getInt(1));
+        rs = stat.executeQuery("select count(*), sum(id), count(d) from test");
+        rs.next();
+        assertEquals(len, rs.getInt(1));
+        assertEquals(len * (len - 1) / 2, rs.getInt(2));
+        assertEquals(len - len / 10, rs.getInt(3));
+        stat.execute("delete from test");
+        stat.execute("insert into test select * from csvread('" + fileName +
+                "', null, 'readAhead=true columnTypes=INT,,DATE')");
+        rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(len, rs.getInt(1));
+        assertThrows(ErrorCode.UNKNOWN_DATA_TYPE_1, stat).
+                executeQuery("select * from csvread('" + fileName +
+                "', null, 'columnTypes=NUMBERX')");
+        stat.execute("drop table test");
+        conn.close();
+
+        csv = new Csv();
+        csv.setColumnTypes("INT");
+        rs = csv.read(new StringReader("ID\nx\n"), null);
+        try {
+            rs.next();
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.DATA_CONVERSION_ERROR_1, e.getErrorCode());
+        }
+
+        // a runtime exception of the read-ahead thread is passed on
+        csv = new Csv();
+        csv.setReadAhead(true);
+        rs = csv.read(new StringReader("ID\n1\n2\n") {
+            private boolean done;
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (done) {
+                    throw new IllegalStateException("test");
+                }
+                done = true;
+                return super.read(cbuf, off, len);
+            }
+        }, null);
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        try {
+            rs.next();
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.IO_EXCEPTION_1, e.getErrorCode());
+        }
+        rs.close();
+        FileUtils.delete(fileName);
+    }
+
     private void testWriteRead() throws SQLException {
         deleteDb("csv");
         Connection conn = getConnection("csv");
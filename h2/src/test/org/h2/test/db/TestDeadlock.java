@@ -55,6 +55,7 @@ public class TestDeadlock extends TestBase {
         testThreePhilosophers();
         testNoDeadlock();
         testThreeSome();
+        testLockWaitQueue();
         deleteDb("deadlock");
     }
 
@@ -231,6 +232,55 @@ public class TestDeadlock extends TestBase {
 
     }
 
+    private void testLockWaitQueue() throws Exception {
+        if (config.mvcc) {
+            return;
+        }
+        initTest();
+        c1.createStatement().execute("CREATE TABLE TEST(ID INT)");
+        c1.createStatement().execute("INSERT INTO TEST VALUES(1)");
+        c1.commit();
+        c1.createStatement().execute("UPDATE TEST SET ID = ID + 1");
+        final StringBuffer order = new StringBuffer();
+        DoIt t2 = new DoIt() {
+            @Override
+            public void execute() throws SQLException {
+                c2.createStatement().execute("UPDATE TEST SET ID = ID + 1");
+                order.append('2');
+                c2.commit();
+            }
+        };
+        t2.start();
+        Thread.sleep(100);
+        DoIt t3 = new DoIt() {
+            @Override
+            public void execute() throws SQLException {
+                c3.createStatement().execute("UPDATE TEST SET ID = ID + 1");
+                order.append('3');
+                c3.commit();
+            }
+        };
+        t3.start();
+        Thread.sleep(100);
+        // the waiting sessions get the lock in the order they asked for it
+        c1.commit();
+        t2.join();
+        t3.join();
+        if (lastException != null) {
+            throw lastException;
+        }
+        if (config.mvStore) {
+            // statements that wait for a row lock are retried, not queued
+            assertEquals(2, order.length());
+        } else {
+            assertEquals("23", order.toString());
+        }
+        assertSingleValue(c1.createStatement(), "SELECT ID FROM TEST", 4);
+        c1.createStatement().execute("DROP TABLE TEST");
+        c1.commit();
+        end();
+    }
+
     private void testThreePhilosophers() throws Exception {
         if (config.mvcc) {
             return;
@@ -239,10 +289,13 @@ public class TestDeadlock extends TestBase {
         c1.createStatement().execute("CREATE TABLE TEST_A(ID INT PRIMARY KEY)");
         c1.createStatement().execute("CREATE TABLE TEST_B(ID INT PRIMARY KEY)");
         c1.createStatement().execute("CREATE TABLE TEST_C(ID INT PRIMARY KEY)");
-        c1.commit();
         c1.createStatement().execute("INSERT INTO TEST_A VALUES(1)");
-        c2.createStatement().execute("INSERT INTO TEST_B VALUES(1)");
-        c3.createStatement().execute("INSERT INTO TEST_C VALUES(1)");
+        c1.createStatement().execute("INSERT INTO TEST_B VALUES(1)");
+        c1.createStatement().execute("INSERT INTO TEST_C VALUES(1)");
+        c1.commit();
+        c1.createStatement().execute("UPDATE TEST_A SET ID = 2");
+        c2.createStatement().execute("UPDATE TEST_B SET ID = 2");
+        c3.createStatement().execute("UPDATE TEST_C SET ID = 2");
         DoIt t2 = new DoIt() {
             @Override
             public void execute() throws SQLException {
@@ -285,14 +338,17 @@ public class TestDeadlock extends TestBase {
         c1.createStatement().execute("CREATE TABLE TEST_A(ID INT PRIMARY KEY)");
         c1.createStatement().execute("CREATE TABLE TEST_B(ID INT PRIMARY KEY)");
         c1.createStatement().execute("CREATE TABLE TEST_C(ID INT PRIMARY KEY)");
-        c1.commit();
         c1.createStatement().execute("INSERT INTO TEST_A VALUES(1)");
         c1.createStatement().execute("INSERT INTO TEST_B VALUES(1)");
-        c2.createStatement().execute("INSERT INTO TEST_C VALUES(1)");
+        c1.createStatement().execute("INSERT INTO TEST_C VALUES(1)");
+        c1.commit();
+        c1.createStatement().execute("UPDATE TEST_A SET ID = 2");
+        c1.createStatement().execute("UPDATE TEST_B SET ID = 2");
+        c2.createStatement().execute("UPDATE TEST_C SET ID = 2");
         DoIt t2 = new DoIt() {
             @Override
             public void execute() throws SQLException {
-                c3.createStatement().execute("INSERT INTO TEST_B VALUES(2)");
+                c3.createStatement().execute("UPDATE TEST_B SET ID = 3");
                 c3.commit();
             }
         };
@@ -300,13 +356,13 @@ public class TestDeadlock extends TestBase {
         DoIt t3 = new DoIt() {
             @Override
             public void execute() throws SQLException {
-                c2.createStatement().execute("INSERT INTO TEST_A VALUES(2)");
+                c2.createStatement().execute("UPDATE TEST_A SET ID = 3");
                 c2.commit();
             }
         };
         t3.start();
         try {
-            c1.createStatement().execute("INSERT INTO TEST_C VALUES(2)");
+            c1.createStatement().execute("UPDATE TEST_C SET ID = 3");
             c1.commit();
         } catch (SQLException e) {
             catchDeadlock(e);
@@ -349,7 +405,15 @@ public class TestDeadlock extends TestBase {
             catchDeadlock(e);
         }
         t1.join();
-        checkDeadlock();
+        if (config.mvStore) {
+            // readers don't lock rows, so there is nothing to upgrade:
+            // one of the sessions waits until the other one committed
+            if (lastException != null) {
+                throw lastException;
+            }
+        } else {
+            checkDeadlock();
+        }
         c1.commit();
         c2.commit();
         c1.createStatement().execute("DROP TABLE TEST");
@@ -364,17 +428,20 @@ public class TestDeadlock extends TestBase {
         c1.createStatement().execute("CREATE TABLE T1(ID INT)");
         c1.createStatement().execute("CREATE TABLE T2(ID INT)");
         c1.createStatement().execute("INSERT INTO T1 VALUES(1)");
-        c2.createStatement().execute("INSERT INTO T2 VALUES(1)");
+        c1.createStatement().execute("INSERT INTO T2 VALUES(1)");
+        c1.commit();
+        c1.createStatement().execute("UPDATE T1 SET ID = 2");
+        c2.createStatement().execute("UPDATE T2 SET ID = 2");
         DoIt t1 = new DoIt() {
             @Override
             public void execute() throws SQLException {
-                c1.createStatement().execute("INSERT INTO T2 VALUES(2)");
+                c1.createStatement().execute("UPDATE T2 SET ID = 3");
                 c1.commit();
             }
         };
         t1.start();
         try {
-            c2.createStatement().execute("INSERT INTO T1 VALUES(2)");
+            c2.createStatement().execute("UPDATE T1 SET ID = 3");
         } catch (SQLException e) {
             catchDeadlock(e);
         }
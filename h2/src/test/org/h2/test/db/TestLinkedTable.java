@@ -51,6 +51,7 @@ public class TestLinkedTable extends TestBase {
         testLinkTable();
         testLinkTwoTables();
         testCachingResults();
+        testPushdown();
         testLinkedTableInReadOnlyDb();
 
         deleteDb("linkedTable");
@@ -597,6 +598,87 @@ public class TestLinkedTable extends TestBase {
         cb.close();
     }
 
+    private void testPushdown() throws SQLException {
+        org.h2.Driver.load();
+        Connection ca = DriverManager.getConnection("jdbc:h2:mem:one", "sa", "sa");
+        Connection cb = DriverManager.getConnection("jdbc:h2:mem:two", "sa", "sa");
+        Statement sa = ca.createStatement();
+        Statement sb = cb.createStatement();
+        sa.execute("CREATE TABLE TEST(ID INT, NAME VARCHAR, X INT)");
+        sa.execute("INSERT INTO TEST VALUES(1, 'Hello', 10), (2, 'World', NULL), (3, NULL, 30)");
+        sb.execute("CREATE LOCAL TEMPORARY LINKED TABLE T(NULL, 'jdbc:h2:mem:one', 'sa', 'sa', 'TEST')");
+
+        ResultSet rs = sb.executeQuery("SELECT NAME FROM T WHERE X > 5 AND 20 > X");
+        assertTrue(rs.next());
+        assertEquals("Hello", rs.getString(1));
+        assertFalse(rs.next());
+        rs = sb.executeQuery("SELECT ID FROM T WHERE X IS NULL");
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        assertFalse(rs.next());
+        rs = sb.executeQuery("SELECT COUNT(*) FROM T WHERE NAME IS NOT NULL");
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        PreparedStatement prep = cb.prepareStatement("SELECT X FROM T WHERE ID = ?");
+        prep.setInt(1, 3);
+        rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(30, rs.getInt(1));
+        assertFalse(rs.next());
+        prep.setString(1, "1");
+        rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(10, rs.getInt(1));
+        assertFalse(rs.next());
+
+        // the condition must not be pushed to an outer joined table
+        rs = sb.executeQuery("SELECT A.ID, B.ID FROM T A LEFT JOIN T B " +
+                "ON A.ID = B.ID WHERE B.X IS NULL ORDER BY A.ID");
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        assertEquals(2, rs.getInt(2));
+        assertFalse(rs.next());
+        // columns only used in the join condition
+        rs = sb.executeQuery("SELECT A.NAME FROM T A INNER JOIN T B " +
+                "ON A.X = B.X ORDER BY A.NAME");
+        assertTrue(rs.next());
+        assertEquals(null, rs.getString(1));
+        assertTrue(rs.next());
+        assertEquals("Hello", rs.getString(1));
+        assertFalse(rs.next());
+
+        // lossy conversions of the constant are not pushed down
+        rs = sb.executeQuery("SELECT COUNT(*) FROM T WHERE ID > 1.5");
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        rs = sb.executeQuery("SELECT COUNT(*) FROM T WHERE ID <> 1.5");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        rs = sb.executeQuery("SELECT COUNT(*) FROM T WHERE ID = 1.0");
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        rs = sb.executeQuery("SELECT COUNT(*) FROM T WHERE NAME > 'a'");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        rs = sb.executeQuery("SELECT COUNT(*) FROM T WHERE NAME = 'World'");
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+
+        sb.execute("UPDATE T SET X = 20 WHERE ID = 1");
+        sb.execute("DELETE FROM T WHERE ID = 2");
+        rs = sa.executeQuery("SELECT ID, NAME, X FROM TEST ORDER BY ID");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        assertEquals("Hello", rs.getString(2));
+        assertEquals(20, rs.getInt(3));
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        assertFalse(rs.next());
+
+        ca.close();
+        cb.close();
+    }
+
     private void testCachingResultsCheckResult(PreparedStatement ps, int expected) throws SQLException {
         ResultSet rs = ps.executeQuery();
         rs.next();
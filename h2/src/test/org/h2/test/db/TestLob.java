@@ -28,11 +28,14 @@ import java.util.List;
 import java.util.Random;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
+import org.h2.engine.Constants;
 import org.h2.jdbc.JdbcConnection;
 import org.h2.message.DbException;
+import org.h2.mvstore.MVStore;
 import org.h2.store.FileLister;
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
+import org.h2.tools.Server;
 import org.h2.tools.DeleteDbFiles;
 import org.h2.util.IOUtils;
 import org.h2.util.JdbcUtils;
@@ -62,8 +65,12 @@ public class TestLob extends TestBase {
         testReadManyLobs();
         testLobSkip();
         testLobSkipPastEnd();
+        testRemoteLobStream();
         testCreateIndexOnLob();
-        testBlobInputStreamSeek(true);
+        if (!config.mvStore || config.memory) {
+            // with the MVStore, LOBs are not stored in the LOB tables
+            testBlobInputStreamSeek(true);
+        }
         testBlobInputStreamSeek(false);
         testDeadlock();
         testDeadlock2();
@@ -186,6 +193,53 @@ public class TestLob extends TestBase {
         conn.close();
     }
 
+    private void testRemoteLobStream() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        deleteDb("lob");
+        Server server = Server.createTcpServer("-tcpPort", "9082", "-baseDir", getBaseDir());
+        server.start();
+        try {
+            Connection conn = getConnection("jdbc:h2:tcp://localhost:9082/lob", getUser(), getPassword());
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int, data blob)");
+            byte[] data = new byte[3 * 1024 * 1024 + 17];
+            new Random(1).nextBytes(data);
+            PreparedStatement prep = conn.prepareStatement("insert into test values(1, ?)");
+            prep.setBinaryStream(1, new ByteArrayInputStream(data));
+            prep.execute();
+            ResultSet rs = stat.executeQuery("select data from test");
+            rs.next();
+            assertEquals(data, IOUtils.readBytesAndClose(rs.getBinaryStream(1), -1));
+            // mix single byte reads, skip, and large reads
+            InputStream in = rs.getBinaryStream(1);
+            byte[] d2 = new byte[data.length];
+            int pos = 0;
+            for (; pos < 1000; pos++) {
+                d2[pos] = (byte) in.read();
+            }
+            long skipped = 0;
+            while (skipped < 100000) {
+                skipped += in.skip(100000 - skipped);
+            }
+            System.arraycopy(data, pos, d2, pos, 100000);
+            pos += 100000;
+            while (pos < data.length) {
+                int len = in.read(d2, pos, Math.min(700000, data.length - pos));
+                assertTrue(len > 0);
+                pos += len;
+            }
+            assertEquals(-1, in.read());
+            in.close();
+            assertEquals(data, d2);
+            stat.execute("drop table test");
+            conn.close();
+        } finally {
+            server.stop();
+        }
+    }
+
     private void testCreateIndexOnLob() throws Exception {
         if (config.memory) {
             return;
@@ -561,6 +615,10 @@ public class TestLob extends TestBase {
         if (!SysProperties.LOB_IN_DATABASE || config.memory) {
             return;
         }
+        if (config.mvStore) {
+            // the LOB tables are not used (see TestMVTableEngine)
+            return;
+        }
         deleteDb("lob");
         Connection conn;
         Statement stat;
@@ -679,10 +737,13 @@ public class TestLob extends TestBase {
         Statement stat = conn.createStatement();
         stat.execute("create table test(data clob)");
 
-        ResultSet rs = stat.executeQuery("select count(*) from INFORMATION_SCHEMA.LOBS");
-        assertTrue(rs.next());
-        assertEquals(0, rs.getInt(1));
-        rs.close();
+        boolean lobMaps = config.mvStore && !config.memory;
+        if (!lobMaps) {
+            ResultSet rs = stat.executeQuery("select count(*) from INFORMATION_SCHEMA.LOBS");
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+            rs.close();
+        }
 
         PreparedStatement prep = conn.prepareStatement("INSERT INTO test(data) VALUES(?)");
         String name = new String(new char[200]).replace((char) 0, 'x');
@@ -690,7 +751,15 @@ public class TestLob extends TestBase {
         prep.execute();
         prep.close();
 
-        rs = stat.executeQuery("select count(*) from INFORMATION_SCHEMA.LOBS");
+        if (lobMaps) {
+            // the LOBs are stored in the MVStore
+            conn.close();
+            MVStore s = MVStore.open(getBaseDir() + "/lob" + Constants.SUFFIX_MV_FILE);
+            assertEquals(1, s.openMap("lobMap").size());
+            s.close();
+            return;
+        }
+        ResultSet rs = stat.executeQuery("select count(*) from INFORMATION_SCHEMA.LOBS");
         assertTrue(rs.next());
         assertEquals(1, rs.getInt(1));
         rs.close();
@@ -45,6 +45,7 @@ public class TestOptimizations extends TestBase {
         testAnalyzeLob();
         testLike();
         testExistsSubquery();
+        testExistsSemiJoin();
         testQueryCacheConcurrentUse();
         testQueryCacheResetParams();
         testRowId();
@@ -53,6 +54,7 @@ public class TestOptimizations extends TestBase {
         testInAndBetween();
         testNestedIn();
         testConstantIn();
+        testParameterIn();
         testNestedInSelectAndLike();
         testNestedInSelect();
         testInSelectJoin();
@@ -73,6 +75,14 @@ public class TestOptimizations extends TestBase {
         testMinMaxCountOptimization(false);
         testOrderedIndexes();
         testConvertOrToIn();
+        testCoveringIndex();
+        testPartialIndex();
+        testExpressionIndex();
+        testMultiIndex();
+        testSkipScan();
+        testBlockRangeIndex();
+        testJoinOrderStarSchema();
+        testJoinOrderCrossProduct();
         deleteDb("optimizations");
     }
 
@@ -91,6 +101,357 @@ public class TestOptimizations extends TestBase {
         conn.close();
     }
 
+    private void testCoveringIndex() throws Exception {
+        if (config.memory) {
+            // in-memory indexes contain the rows
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b int, c varchar)");
+        stat.execute("insert into test select x, mod(x, 10), x, 'c' || x " +
+                "from system_range(1, 100)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_a_include on test(a) include(b)");
+        ResultSet rs;
+        rs = stat.executeQuery("explain select b from test where a = 3");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_A_INCLUDE");
+        rs = stat.executeQuery("explain select c from test where a = 3");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_A:");
+        conn.close();
+        conn = getConnection("optimizations");
+        stat = conn.createStatement();
+        rs = stat.executeQuery("select sum(b) from test where a = 3");
+        rs.next();
+        assertEquals(3 + 13 + 23 + 33 + 43 + 53 + 63 + 73 + 83 + 93, rs.getInt(1));
+        rs = stat.executeQuery("select sql from information_schema.indexes " +
+                "where index_name = 'IDX_A_INCLUDE' and ordinal_position = 1");
+        rs.next();
+        assertContains(rs.getString(1), "INCLUDE(B)");
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testPartialIndex() throws Exception {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, status varchar, v int)");
+        stat.execute("insert into test select x, case when mod(x, 100) = 0 " +
+                "then 'PENDING' else 'DONE' end, mod(x, 7) from system_range(1, 1000)");
+        stat.execute("create index idx_pending on test(v) where status = 'PENDING'");
+        ResultSet rs;
+        rs = stat.executeQuery("explain select * from test where status = 'PENDING' and v = 3");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_PENDING");
+        rs = stat.executeQuery("explain select * from test where v = 3");
+        rs.next();
+        assertFalse(rs.getString(1).contains("IDX_PENDING"));
+        rs = stat.executeQuery("explain select * from test where status = 'DONE' and v = 3");
+        rs.next();
+        assertFalse(rs.getString(1).contains("IDX_PENDING"));
+        rs = stat.executeQuery("explain select * from test order by v");
+        rs.next();
+        assertFalse(rs.getString(1).contains("IDX_PENDING"));
+        rs = stat.executeQuery("select min(v) from test");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        stat.execute("update test set status = 'PENDING' where id in(3, 10)");
+        stat.execute("update test set status = 'DONE' where id = 500");
+        if (!config.memory) {
+            conn.close();
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+        }
+        rs = stat.executeQuery("select count(*), sum(id) from test where status = 'PENDING'");
+        rs.next();
+        assertEquals(11, rs.getInt(1));
+        assertEquals(5500 - 500 + 3 + 10, rs.getInt(2));
+        rs = stat.executeQuery("select id from test where status = 'PENDING' and v = 3 order by id");
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        assertTrue(rs.next());
+        assertEquals(10, rs.getInt(1));
+        assertFalse(rs.next());
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testExpressionIndex() throws Exception {
+        if (config.mvcc && !config.mvStore) {
+            // the multi-version index does not support index expressions
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("insert into test select x, 'Name' || x from system_range(1, 1000)");
+        stat.execute("create index idx_upper on test(upper(name))");
+        ResultSet rs;
+        rs = stat.executeQuery("explain select * from test t where upper(t.name) = 'NAME5'");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_UPPER: UPPER(NAME) = 'NAME5'");
+        rs = stat.executeQuery("explain select * from test where upper(name) in('NAME5', 'NAME7')");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_UPPER");
+        rs = stat.executeQuery("explain select * from test where lower(name) = 'name5'");
+        rs.next();
+        assertFalse(rs.getString(1).contains("IDX_UPPER"));
+        rs = stat.executeQuery("explain select id from test order by upper(name)");
+        rs.next();
+        assertContains(rs.getString(1), "index sorted");
+        stat.execute("update test set name = 'x' where id = 5");
+        stat.execute("delete from test where id = 7");
+        if (!config.memory) {
+            conn.close();
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+        }
+        rs = stat.executeQuery("select id from test where upper(name) in('NAME5', 'NAME7', 'X', 'NAME8') order by id");
+        assertTrue(rs.next());
+        assertEquals(5, rs.getInt(1));
+        assertTrue(rs.next());
+        assertEquals(8, rs.getInt(1));
+        assertFalse(rs.next());
+        assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).
+                execute("create index idx_rand on test(name || rand())");
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testMultiIndex() throws Exception {
+        if (config.mvcc && !config.mvStore) {
+            // the multi-version index decides about the visibility of the rows
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b int, c int)");
+        stat.execute("insert into test select x, mod(x, 100), mod(x, 77), x " +
+                "from system_range(1, 10000)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_b on test(b)");
+        stat.execute("analyze");
+        ResultSet rs;
+        rs = stat.executeQuery("explain select * from test where a = 5 and b = 3");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_A AND PUBLIC.IDX_B");
+        rs = stat.executeQuery("explain select * from test where a = 5 or b = 3");
+        rs.next();
+        assertContains(rs.getString(1), "(PUBLIC.IDX_A: A = 5) OR (PUBLIC.IDX_B: B = 3)");
+        rs = stat.executeQuery("explain select * from test where a = 5 or c = 3");
+        rs.next();
+        assertContains(rs.getString(1), "tableScan");
+        stat.execute("delete from test where id = 2005");
+        rs = stat.executeQuery("select id from test where a = 5 and b = 3");
+        assertTrue(rs.next());
+        assertEquals(9705, rs.getInt(1));
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select count(*), sum(id) from test where a = 5 or b = 3");
+        rs.next();
+        assertEquals(227, rs.getInt(1));
+        assertEquals(1129825 - 2005, rs.getLong(2));
+        // the conditions of idx_b are already used by idx_a_b
+        stat.execute("create index idx_a_b on test(a, b)");
+        rs = stat.executeQuery("explain select * from test where a = 5 and b = 3");
+        rs.next();
+        assertContains(rs.getString(1), "PUBLIC.IDX_A_B: A = 5");
+        rs = stat.executeQuery("select id from test where a = 5 and b = 3");
+        assertTrue(rs.next());
+        assertEquals(9705, rs.getInt(1));
+        assertFalse(rs.next());
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testSkipScan() throws Exception {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b int, c int)");
+        stat.execute("insert into test select x, mod(x, 10), x, mod(x, 3) " +
+                "from system_range(1, 1000)");
+        stat.execute("insert into test values(1001, null, 1, 0), (1002, 10, null, 0)");
+        stat.execute("create index idx_a_c on test(a, c)");
+        stat.execute("create index idx_a_b on test(a, b)");
+        stat.execute("analyze");
+        ResultSet rs;
+        rs = stat.executeQuery("explain select a, min(b) from test group by a");
+        rs.next();
+        String plan = rs.getString(1);
+        if (!config.mvcc || config.mvStore) {
+            // the multi-version index can not skip rows
+            assertContains(plan, "IDX_A_B");
+            assertContains(plan, "skip scan");
+        }
+        rs = stat.executeQuery("explain select a, max(b) from test group by a");
+        rs.next();
+        assertFalse(rs.getString(1).contains("skip scan"));
+        rs = stat.executeQuery("select a, min(b) from test group by a order by a");
+        rs.next();
+        assertEquals(null, rs.getString(1));
+        assertEquals(1, rs.getInt(2));
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        assertEquals(10, rs.getInt(2));
+        for (int i = 1; i < 10; i++) {
+            rs.next();
+            assertEquals(i, rs.getInt(1));
+            assertEquals(i, rs.getInt(2));
+        }
+        rs.next();
+        assertEquals(10, rs.getInt(1));
+        assertEquals(null, rs.getString(2));
+        assertFalse(rs.next());
+        rs = stat.executeQuery("explain select distinct c, a from test");
+        rs.next();
+        plan = rs.getString(1);
+        if (!config.mvcc || config.mvStore) {
+            assertContains(plan, "IDX_A_C");
+            assertContains(plan, "/* distinct */");
+        }
+        rs = stat.executeQuery("select count(*) from (select distinct c, a from test)");
+        rs.next();
+        assertEquals(32, rs.getInt(1));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testBlockRangeIndex() throws Exception {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id identity, ts int, data varchar)");
+        stat.execute("insert into test(ts, data) select x, 'data' || x " +
+                "from system_range(1, 10000)");
+        stat.execute("insert into test(ts, data) values(null, 'null')");
+        stat.execute("create block index idx_ts on test(ts)");
+        ResultSet rs;
+        rs = stat.executeQuery("explain select * from test where ts between 100 and 200");
+        rs.next();
+        if (!config.memory && (!config.mvcc || config.mvStore)) {
+            // in-memory tables and the page store with MVCC
+            // can not read a range of rows
+            assertContains(rs.getString(1), "IDX_TS");
+        }
+        rs = stat.executeQuery("explain select * from test order by ts");
+        rs.next();
+        assertContains(rs.getString(1), "tableScan");
+        assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).
+                execute("create unique block index idx_error on test(ts)");
+        assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).
+                execute("create block index idx_error on test(ts, id)");
+        stat.execute("update test set ts = 150 where id = 9000");
+        stat.execute("delete from test where ts = 160");
+        stat.execute("insert into test(ts, data) values(170, 'x')");
+        if (!config.memory) {
+            conn.close();
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+        }
+        // page store: the ranges are only built when the index is used
+        stat.execute("insert into test(ts, data) values(180, 'y')");
+        rs = stat.executeQuery("select count(*) from test where ts between 100 and 200");
+        rs.next();
+        assertEquals(103, rs.getInt(1));
+        rs = stat.executeQuery("select id from test where ts = 150 order by id");
+        rs.next();
+        assertEquals(150, rs.getInt(1));
+        rs.next();
+        assertEquals(9000, rs.getInt(1));
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select data from test where ts is null");
+        rs.next();
+        assertEquals("null", rs.getString(1));
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select count(*) from test where ts in(5, 6, 9999)");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        rs = stat.executeQuery("select count(*) from test where ts > 9990");
+        rs.next();
+        assertEquals(10, rs.getInt(1));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testJoinOrderStarSchema() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        int dimensions = 11;
+        StringBuilder create = new StringBuilder("create table fact(id int primary key");
+        StringBuilder insert = new StringBuilder("insert into fact select x");
+        StringBuilder sql = new StringBuilder("explain select count(*) from fact f");
+        StringBuilder where = new StringBuilder(" where f.id > 0");
+        for (int i = 1; i <= dimensions; i++) {
+            stat.execute("create table d" + i + "(id int primary key, name varchar)");
+            stat.execute("insert into d" + i + " select x, 'n' || x " +
+                    "from system_range(1, " + (10 * i) + ")");
+            create.append(", d").append(i).append(" int");
+            insert.append(", mod(x, ").append(10 * i).append(") + 1");
+            sql.append(", d").append(i);
+            where.append(" and f.d").append(i).append(" = d").append(i).append(".id");
+            if (i % 4 == 0) {
+                where.append(" and d").append(i).append(".name = 'n1'");
+            }
+        }
+        stat.execute(create.append(")").toString());
+        stat.execute(insert.append(" from system_range(1, 1000)").toString());
+        stat.execute("analyze");
+        sql.append(where);
+        String plan = null;
+        for (int i = 0; i < 5; i++) {
+            // use a new statement each time, so the plan is calculated again
+            ResultSet rs = conn.createStatement().executeQuery(sql.toString());
+            rs.next();
+            String p = rs.getString(1);
+            if (plan == null) {
+                plan = p;
+            } else {
+                assertEquals(plan, p);
+            }
+        }
+        assertTrue(plan, plan.startsWith("SELECT\n    COUNT(*)\nFROM PUBLIC.FACT F"));
+        // the dimensions with a condition are joined first
+        assertTrue(plan, plan.indexOf("JOIN PUBLIC.D4") < plan.indexOf("JOIN PUBLIC.D1\n"));
+        assertTrue(plan, plan.indexOf("JOIN PUBLIC.D8") < plan.indexOf("JOIN PUBLIC.D1\n"));
+        conn.close();
+    }
+
+    private void testJoinOrderCrossProduct() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table d1(id int primary key, name varchar unique) " +
+                "as select x, 'n' || x from system_range(1, 100)");
+        stat.execute("create table d2(id int primary key, name varchar unique) " +
+                "as select x, 'n' || x from system_range(1, 100)");
+        stat.execute("create table fact(id int primary key, a int, b int) " +
+                "as select x, mod(x, 100) + 1, mod(x / 100, 100) + 1 " +
+                "from system_range(1, 10000)");
+        stat.execute("create index idx_fact_a_b on fact(a, b)");
+        stat.execute("analyze");
+        String sql = "select count(*) from d1, fact f, d2 " +
+                "where d1.name = 'n1' and d2.name = 'n2' and f.a = d1.id and f.b = d2.id";
+        ResultSet rs = stat.executeQuery("explain " + sql);
+        rs.next();
+        String plan = rs.getString(1);
+        // the dimensions are not connected, but joining them first
+        // allows to use both columns of the index
+        assertTrue(plan, plan.indexOf("JOIN PUBLIC.D2") < plan.indexOf("JOIN PUBLIC.FACT"));
+        assertContains(plan, "IDX_FACT_A_B: B = D2.ID\n        AND A = D1.ID");
+        rs = stat.executeQuery(sql);
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        stat.execute("drop table d1, d2, fact");
+        conn.close();
+    }
+
     private void testGroupSubquery() throws Exception {
         Connection conn = getConnection("optimizations");
         Statement stat = conn.createStatement();
@@ -161,6 +522,71 @@ public class TestOptimizations extends TestBase {
         conn.close();
     }
 
+    private void testExistsSemiJoin() throws Exception {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        ResultSet rs;
+        stat.execute("create table parent(id int primary key, name varchar)");
+        stat.execute("create table child(pid int, type int)");
+        stat.execute("insert into parent select x, 'p' || x from system_range(1, 100)");
+        stat.execute("insert into parent values(101, null)");
+        stat.execute("insert into child select mod(x, 10), mod(x, 3) from system_range(1, 50)");
+        stat.execute("insert into child values(null, 1)");
+        rs = stat.executeQuery("explain select count(*) from parent p " +
+                "where exists(select * from child c where c.pid = p.id)");
+        rs.next();
+        assertContains(rs.getString(1), "/* semi join */");
+        assertSingleValue(stat, "select count(*) from parent p " +
+                "where exists(select * from child c where c.pid = p.id)", 9);
+        assertSingleValue(stat, "select count(*) from parent p " +
+                "where not exists(select * from child c where c.pid = p.id)", 92);
+        assertSingleValue(stat, "select count(*) from parent p " +
+                "where exists(select 1 from child c where p.id = c.pid and c.type = 2)", 9);
+        assertSingleValue(stat, "select count(*) from parent p " +
+                "where exists(select 1 from child c where c.pid = p.id and c.type = 2 " +
+                "and c.pid > 5)", 4);
+        assertSingleValue(stat, "select count(*) from parent p where p.id = 3 or " +
+                "not exists(select 1 from child c where c.pid = p.id)", 93);
+        PreparedStatement prep = conn.prepareStatement("select count(*) from parent p " +
+                "where exists(select 1 from child c where c.pid = p.id and c.type = ?)");
+        prep.setInt(1, 0);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(9, rs.getInt(1));
+        stat.execute("delete from child where pid = 3");
+        prep.setInt(1, 1);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(8, rs.getInt(1));
+
+        // conditions other than equality can not be converted
+        rs = stat.executeQuery("explain select count(*) from parent p " +
+                "where exists(select * from child c where c.pid > p.id)");
+        rs.next();
+        assertFalse(rs.getString(1).contains("/* semi join */"));
+
+        // the plan of a view must contain the original condition
+        stat.execute("create view v as select * from parent p " +
+                "where exists(select * from child c where c.pid = p.id)");
+        if (!config.memory) {
+            conn.close();
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+        }
+        assertSingleValue(stat, "select count(*) from v", 8);
+
+        // a small table with an index is not converted
+        stat.execute("create index idx_child_pid on child(pid)");
+        rs = stat.executeQuery("explain select count(*) from parent p " +
+                "where exists(select * from child c where c.pid = p.id)");
+        rs.next();
+        assertFalse(rs.getString(1).contains("/* semi join */"));
+        stat.execute("drop view v");
+        stat.execute("drop table parent, child");
+        conn.close();
+    }
+
     private void testQueryCacheConcurrentUse() throws Exception {
         final Connection conn = getConnection("optimizations");
         Statement stat = conn.createStatement();
@@ -365,6 +791,62 @@ public class TestOptimizations extends TestBase {
         conn.close();
     }
 
+    private void testParameterIn() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        ResultSet rs;
+
+        stat.execute("create table test(id int primary key, name varchar(255))");
+        stat.execute("insert into test select x, 'n' || x from system_range(1, 100)");
+        PreparedStatement prep = conn.prepareStatement(
+                "select count(*) from test where name in(?, ?, 'n3', ?)");
+        prep.setString(1, "n1");
+        prep.setString(2, "n2");
+        prep.setString(3, "x");
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        // the value set must be re-built for each execution
+        prep.setString(3, "n4");
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(4, rs.getInt(1));
+        prep.setString(1, null);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        prep = conn.prepareStatement(
+                "select count(*) from test where name not in(?, ?) and id < 5");
+        prep.setString(1, "n1");
+        prep.setString(2, null);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        prep.setString(2, "n2");
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+
+        // index lookup in a join, with the IN list of the inner table
+        prep = conn.prepareStatement(
+                "select count(*) from test a, test b " +
+                "where a.id < 3 and b.id in(?, ?, ?, 200)");
+        prep.setInt(1, 10);
+        prep.setInt(2, 11);
+        prep.setInt(3, 10);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(4, rs.getInt(1));
+        prep.setInt(3, 12);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(6, rs.getInt(1));
+        stat.execute("drop table test");
+
+        conn.close();
+    }
+
     private void testNestedInSelect() throws SQLException {
         deleteDb("optimizations");
         Connection conn = getConnection("optimizations");
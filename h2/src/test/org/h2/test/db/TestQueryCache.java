@@ -17,6 +17,8 @@ import org.h2.test.TestBase;
  */
 public class TestQueryCache extends TestBase {
 
+    private static int functionCalls;
+
     /**
      * Run just this test.
      *
@@ -31,6 +33,9 @@ public class TestQueryCache extends TestBase {
         deleteDb("queryCache");
         test1();
         testClearingCacheWithTableStructureChanges();
+        testPlanCache();
+        testResultCache();
+        testResultCacheHint();
         deleteDb("queryCache");
     }
 
@@ -77,4 +82,182 @@ public class TestQueryCache extends TestBase {
         assertThrows(ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1, conn).prepareStatement("SELECT * FROM TEST");
         conn.close();
     }
+
+    private void testPlanCache() throws Exception {
+        deleteDb("queryCache");
+        Connection conn = getConnection("queryCache");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("insert into test values(1, 'a'), (3, 'c')");
+        stat.execute("create table test2(id int primary key, test_id int)");
+        stat.execute("insert into test2 values(1, 1), (2, 3)");
+        stat.execute("create schema s2");
+        stat.execute("create table s2.test(id int primary key, name varchar)");
+        stat.execute("insert into s2.test values(1, 'b')");
+        stat.execute("create table s2.test2(id int primary key, test_id int)");
+        stat.execute("insert into s2.test2 values(1, 1)");
+        stat.execute("create view v as select * from test");
+        String sql = "select t.name from test t, test2 t2 where t.id = t2.test_id and t2.id = ?";
+        String union = sql + " union select name from test where id = 3 order by 1";
+        String view = "select v.name from v, test2 t2 where v.id = t2.test_id and t2.id = ?";
+        // the connections of a pool stay open
+        Connection conn2 = getConnection("queryCache;LOCK_TIMEOUT=2000");
+        assertPlanCacheResult(conn2, sql, "a");
+        assertPlanCacheResult(conn2, union, "a,c");
+        assertPlanCacheResult(conn2, view, "a");
+        long hits = getPlanCacheHits(stat);
+        // the settings of the URL don't clear the cache
+        Connection conn3 = getConnection("queryCache;LOCK_TIMEOUT=3000");
+        assertPlanCacheResult(conn3, sql, "a");
+        assertPlanCacheResult(conn3, union, "a,c");
+        assertPlanCacheResult(conn3, view, "a");
+        assertEquals(hits + 3, getPlanCacheHits(stat));
+        Statement stat3 = conn3.createStatement();
+        stat3.execute("set schema s2");
+        assertPlanCacheResult(conn3, sql, "b");
+        assertEquals(hits + 3, getPlanCacheHits(stat));
+        stat3.execute("set schema public");
+        conn3.setAutoCommit(false);
+        stat3.execute("update test set name = 'x' where id = 1");
+        // the query cache of the session was cleared by the SET statements
+        assertPlanCacheResult(conn3, sql, "x");
+        assertPlanCacheResult(conn3, view, "x");
+        assertEquals(hits + 5, getPlanCacheHits(stat));
+        conn3.rollback();
+        conn3.setAutoCommit(true);
+        // creating an index clears the cache
+        stat.execute("create index idx_test2_test_id on test2(test_id)");
+        assertPlanCacheResult(conn2, sql, "a");
+        assertEquals(hits + 5, getPlanCacheHits(stat));
+        assertPlanCacheResult(conn3, sql, "a");
+        assertEquals(hits + 6, getPlanCacheHits(stat));
+        stat.execute("alter table test alter column name rename to text");
+        assertThrows(ErrorCode.COLUMN_NOT_FOUND_1, conn3).prepareStatement(sql);
+        conn3.close();
+        conn2.close();
+        conn.close();
+    }
+
+    private static long getPlanCacheHits(Statement stat) throws Exception {
+        ResultSet rs = stat.executeQuery("select value from information_schema.metrics " +
+                "where name = 'PLAN_CACHE_HITS'");
+        rs.next();
+        return rs.getLong(1);
+    }
+
+    private void assertPlanCacheResult(Connection conn, String sql, String expected) throws Exception {
+        PreparedStatement prep = conn.prepareStatement(sql);
+        prep.setInt(1, 1);
+        ResultSet rs = prep.executeQuery();
+        StringBuilder buff = new StringBuilder();
+        while (rs.next()) {
+            if (buff.length() > 0) {
+                buff.append(',');
+            }
+            buff.append(rs.getString(1));
+        }
+        assertEquals(expected, buff.toString());
+        prep.close();
+    }
+
+
+    private void testResultCache() throws Exception {
+        deleteDb("queryCache");
+        Connection conn = getConnection("queryCache");
+        Statement stat = conn.createStatement();
+        stat.execute("set result_cache_size 10");
+        stat.execute("create alias f deterministic for \"" + getClass().getName() + ".countCall\"");
+        stat.execute("create table test(id int primary key, v int) as select x, x from system_range(1, 10)");
+        String sql = "select sum(f(v)) from test where id <= ?";
+        Connection conn2 = getConnection("queryCache");
+        functionCalls = 0;
+        assertResultCacheResult(conn, sql, 5, 15);
+        assertEquals(5, functionCalls);
+        // the result is shared with other sessions
+        assertResultCacheResult(conn2, sql, 5, 15);
+        assertResultCacheResult(conn, sql, 5, 15);
+        assertEquals(5, functionCalls);
+        // different parameters
+        assertResultCacheResult(conn2, sql, 10, 55);
+        assertEquals(15, functionCalls);
+        // modifying the table invalidates the result
+        stat.execute("update test set v = 0 where id = 1");
+        assertResultCacheResult(conn2, sql, 5, 14);
+        assertEquals(20, functionCalls);
+        // uncommitted changes are only visible to the session that made them
+        conn2.setAutoCommit(false);
+        conn2.createStatement().execute("update test set v = 100 where id = 2");
+        assertResultCacheResult(conn2, sql, 5, 112);
+        conn2.rollback();
+        conn2.setAutoCommit(true);
+        assertResultCacheResult(conn, sql, 5, 14);
+        // the meta data changed
+        stat.execute("drop table test");
+        stat.execute("create table test(id int primary key, v int)");
+        assertResultCacheResult(conn2, sql, 5, 0);
+        conn2.close();
+        conn.close();
+        if (config.memory) {
+            return;
+        }
+        conn = getConnection("queryCache");
+        ResultSet rs = conn.createStatement().executeQuery(
+                "select value from information_schema.settings where name = 'RESULT_CACHE_SIZE'");
+        assertTrue(rs.next());
+        assertEquals("10", rs.getString(1));
+        conn.close();
+    }
+
+    private void testResultCacheHint() throws Exception {
+        deleteDb("queryCache");
+        Connection conn = getConnection("queryCache");
+        Statement stat = conn.createStatement();
+        stat.execute("create alias f deterministic for \"" + getClass().getName() + ".countCall\"");
+        stat.execute("create table test(id int primary key, v int) as select x, x from system_range(1, 10)");
+        String sql = "select sum(f(v)) from test where id <= ?";
+        String hint = "select /*+ cache */ sum(f(v)) from test where id <= ?";
+        Connection conn2 = getConnection("queryCache");
+        functionCalls = 0;
+        // without the hint, the result cache is disabled by default
+        assertResultCacheResult(conn, sql, 5, 15);
+        assertResultCacheResult(conn2, sql, 5, 15);
+        assertEquals(10, functionCalls);
+        assertResultCacheResult(conn, hint, 5, 15);
+        assertResultCacheResult(conn2, hint, 5, 15);
+        assertEquals(15, functionCalls);
+        assertResultCacheResult(conn2, hint + " union select 15", 5, 15);
+        assertResultCacheResult(conn, hint + " union select 15", 5, 15);
+        assertEquals(20, functionCalls);
+        // the hint must directly follow SELECT
+        assertResultCacheResult(conn2, "/*+ cache */ " + sql, 3, 6);
+        assertResultCacheResult(conn, "/*+ cache */ " + sql, 3, 6);
+        assertEquals(26, functionCalls);
+        stat.execute("update test set v = 0 where id = 1");
+        assertResultCacheResult(conn2, hint, 5, 14);
+        assertEquals(31, functionCalls);
+        conn2.close();
+        conn.close();
+    }
+
+    private void assertResultCacheResult(Connection conn, String sql, int param, int expected) throws Exception {
+        PreparedStatement prep = conn.prepareStatement(sql);
+        prep.setInt(1, param);
+        ResultSet rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(expected, rs.getInt(1));
+        assertFalse(rs.next());
+        prep.close();
+    }
+
+    /**
+     * This method is called via reflection from the database.
+     *
+     * @param x the value
+     * @return the value
+     */
+    public static int countCall(int x) {
+        functionCalls++;
+        return x;
+    }
+
 }
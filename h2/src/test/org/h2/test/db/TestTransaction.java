@@ -84,7 +84,7 @@ public class TestTransaction extends TestBase {
         conn.setAutoCommit(false);
 
         ResultSet rs;
-        if (config.mvcc) {
+        if (config.mvcc || config.mvStore) {
             rs = stat2.executeQuery("select count(*) from test");
             rs.next();
             assertEquals(0, rs.getInt(1));
@@ -183,7 +183,7 @@ public class TestTransaction extends TestBase {
         Connection conn2 = getConnection("transaction");
         conn2.setAutoCommit(false);
         Statement stat2 = conn2.createStatement();
-        if (config.mvcc) {
+        if (config.mvcc || config.mvStore) {
             stat2.execute("update test set name = 'Welt' where id = 2");
         }
         assertThrows(ErrorCode.LOCK_TIMEOUT_1, stat2).
@@ -313,7 +313,7 @@ public class TestTransaction extends TestBase {
         c2.setAutoCommit(false);
         s1.executeUpdate("insert into A(code) values('one')");
         Statement s2 = c2.createStatement();
-        if (config.mvcc) {
+        if (config.mvcc || config.mvStore) {
             assertThrows(ErrorCode.REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING_1, s2).
                     executeUpdate("insert into B values('two', 1)");
         } else {
@@ -9,6 +9,7 @@ package org.h2.test.jdbc;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.Driver;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLClientInfoException;
@@ -54,6 +55,8 @@ public class TestMetaData extends TestBase {
         testClientInfo();
         testSessionsUncommitted();
         testQueryStatistics();
+        testSlowQueryLog();
+        testQueryProfile();
     }
 
     private void testColumnResultSetMeta() throws SQLException {
@@ -851,6 +854,10 @@ public class TestMetaData extends TestBase {
         rs.next();
         assertEquals("LOCKS", rs.getString("TABLE_NAME"));
         rs.next();
+        assertEquals("METRICS", rs.getString("TABLE_NAME"));
+        rs.next();
+        assertEquals("QUERY_PROFILE", rs.getString("TABLE_NAME"));
+        rs.next();
         assertEquals("QUERY_STATISTICS", rs.getString("TABLE_NAME"));
         rs.next();
         assertEquals("RIGHTS", rs.getString("TABLE_NAME"));
@@ -867,6 +874,8 @@ public class TestMetaData extends TestBase {
         rs.next();
         assertEquals("SETTINGS", rs.getString("TABLE_NAME"));
         rs.next();
+        assertEquals("SLOW_QUERIES", rs.getString("TABLE_NAME"));
+        rs.next();
         assertEquals("TABLES", rs.getString("TABLE_NAME"));
         rs.next();
         assertEquals("TABLE_PRIVILEGES", rs.getString("TABLE_NAME"));
@@ -1038,4 +1047,97 @@ public class TestMetaData extends TestBase {
         conn.close();
         deleteDb("metaData");
     }
+
+    private void testSlowQueryLog() throws SQLException {
+        deleteDb("metaData");
+        Connection conn = getConnection("metaData");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar) as select x, space(10) from system_range(1, 1000)");
+        ResultSet rs = stat.executeQuery("select * from INFORMATION_SCHEMA.SLOW_QUERIES");
+        assertFalse(rs.next());
+        stat.execute("SET SLOW_QUERY_LIMIT 1");
+        PreparedStatement prep = conn.prepareStatement(
+                "select count(*) from test a, test b where a.id + b.id = ?");
+        prep.setInt(1, 3);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        rs = stat.executeQuery("select * from INFORMATION_SCHEMA.SLOW_QUERIES " +
+                "where sql_statement like 'select count(*)%'");
+        assertTrue(rs.next());
+        assertContains(rs.getString("SQL_STATEMENT"), "{1: 3}");
+        assertContains(rs.getString("PLAN"), "scanCount: 1001");
+        assertEquals(1, rs.getInt("ROW_COUNT"));
+        assertTrue(rs.getLong("EXECUTION_TIME") >= 1);
+        assertEquals(0, rs.getInt("LOCK_WAIT_TIME"));
+        assertEquals(0, rs.getInt("SPILLED_RESULTS"));
+        if (!config.memory && !config.mvStore) {
+            // the pages of the table are read from the cache
+            assertTrue(rs.getLong("CACHE_HITS") > 0);
+        }
+        assertFalse(rs.next());
+        // the page reads are counted per statement
+        rs = stat.executeQuery("select count(*) from system_range(1, 200000)");
+        rs = stat.executeQuery("select * from INFORMATION_SCHEMA.SLOW_QUERIES " +
+                "where sql_statement like 'select count(*) from system_range%'");
+        while (rs.next()) {
+            assertEquals(0, rs.getLong("FILE_READS"));
+            assertEquals(0, rs.getLong("CACHE_HITS"));
+        }
+        stat.execute("SET SLOW_QUERY_LIMIT 0");
+        rs = stat.executeQuery("select * from INFORMATION_SCHEMA.SLOW_QUERIES");
+        assertFalse(rs.next());
+        conn.close();
+        deleteDb("metaData");
+    }
+
+    private void testQueryProfile() throws SQLException {
+        deleteDb("metaData");
+        Connection conn = getConnection("metaData");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int) as select x, mod(x, 3) from system_range(1, 10)");
+        ResultSet rs = stat.executeQuery("select * from INFORMATION_SCHEMA.QUERY_PROFILE");
+        assertFalse(rs.next());
+        rs = stat.executeQuery("explain analyze select a.v, count(*) from test a, test b " +
+                "where b.id = a.id + 1 group by a.v order by a.v desc");
+        rs.next();
+        String plan = rs.getString(1);
+        assertContains(plan, "scanCount: 11, loops: 1, rows: 10");
+        assertContains(plan, "scanCount: 19, loops: 10, rows: 9");
+        rs = stat.executeQuery("select * from INFORMATION_SCHEMA.QUERY_PROFILE order by id");
+        assertTrue(rs.next());
+        assertEquals("TABLE", rs.getString("TYPE"));
+        assertEquals("PUBLIC.TEST A", rs.getString("NAME"));
+        assertEquals("PUBLIC.TEST.tableScan", rs.getString("INDEX_NAME"));
+        assertEquals(1, rs.getLong("LOOPS"));
+        assertEquals(11, rs.getLong("ROWS_SCANNED"));
+        assertEquals(10, rs.getLong("ROW_COUNT"));
+        assertTrue(rs.getDouble("ESTIMATED_COST") > 0);
+        assertTrue(rs.getLong("ELAPSED_NANOS") > 0);
+        assertTrue(rs.next());
+        assertEquals("TABLE", rs.getString("TYPE"));
+        assertEquals("PUBLIC.TEST B", rs.getString("NAME"));
+        assertEquals("PUBLIC.PRIMARY_KEY_2", rs.getString("INDEX_NAME"));
+        assertEquals(10, rs.getLong("LOOPS"));
+        assertEquals(9, rs.getLong("ROW_COUNT"));
+        assertTrue(rs.next());
+        assertEquals("GROUP", rs.getString("TYPE"));
+        assertEquals("GROUP BY A.V", rs.getString("NAME"));
+        assertEquals(1, rs.getLong("LOOPS"));
+        assertEquals(3, rs.getLong("ROW_COUNT"));
+        assertTrue(rs.next());
+        assertEquals("SORT", rs.getString("TYPE"));
+        assertEquals("ORDER BY 1 DESC", rs.getString("NAME"));
+        assertEquals(3, rs.getLong("ROWS_SCANNED"));
+        assertEquals(3, rs.getLong("ROW_COUNT"));
+        assertFalse(rs.next());
+        // the profile is only collected by EXPLAIN ANALYZE
+        rs = stat.executeQuery("select * from test");
+        rs = stat.executeQuery("select count(*) from INFORMATION_SCHEMA.QUERY_PROFILE");
+        rs.next();
+        assertEquals(4, rs.getInt(1));
+        conn.close();
+        deleteDb("metaData");
+    }
+
 }
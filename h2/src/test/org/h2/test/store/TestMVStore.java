@@ -87,6 +87,7 @@ public class TestMVStore extends TestBase {
         testCompact();
         testCompactMapNotOpen();
         testReuseSpace();
+        testUnusedChunkAfterReopen();
         testRandom();
         testKeyValueClasses();
         testIterate();
@@ -1509,6 +1510,28 @@ public class TestMVStore extends TestBase {
         }
     }
 
+    private void testUnusedChunkAfterReopen() {
+        String fileName = getBaseDir() + "/testUnusedChunk.h3";
+        FileUtils.delete(fileName);
+        // the default retention time: the old chunk is not freed immediately
+        MVStore s = openStore(fileName);
+        MVMap<Integer, String> m = s.openMap("data");
+        for (int i = 0; i < 10; i++) {
+            m.put(i, "Hello");
+        }
+        s.store();
+        for (int i = 0; i < 10; i++) {
+            m.put(i, "World");
+        }
+        s.store();
+        s.close();
+        s = openStore(fileName);
+        // the first chunk is not used any more, even after re-opening
+        String chunk = s.getMetaMap().get("chunk.1");
+        assertTrue(chunk, chunk == null || chunk.indexOf(",pageCountLive:0,") >= 0);
+        s.close();
+    }
+
     private void testRandom() {
         String fileName = getBaseDir() + "/testRandom.h3";
         FileUtils.delete(fileName);
@@ -8,6 +8,7 @@ package org.h2.test.store;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -16,6 +17,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.Random;
 
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Constants;
@@ -28,6 +30,7 @@ import org.h2.test.TestBase;
 import org.h2.tools.DeleteDbFiles;
 import org.h2.tools.Recover;
 import org.h2.tools.Restore;
+import org.h2.util.IOUtils;
 import org.h2.util.JdbcUtils;
 import org.h2.util.Task;
 
@@ -59,6 +62,7 @@ public class TestMVTableEngine extends TestBase {
         testAutoCommit();
         testReopen();
         testBlob();
+        testLobStorageMap();
         testExclusiveLock();
         testEncryption();
         testReadOnly();
@@ -104,6 +108,8 @@ public class TestMVTableEngine extends TestBase {
         Connection conn;
         Statement stat;
         long maxSize = 0;
+        // the size while the default retention time was used
+        long sizeOld = 0;
         // by default, the database does not shrink for 45 seconds
         int retentionTime = 45000;
         for (int i = 0; i < 20; i++) {
@@ -129,12 +135,16 @@ public class TestMVTableEngine extends TestBase {
                     + Constants.SUFFIX_MV_FILE);
             if (i < 10) {
                 maxSize = (int) (Math.max(size, maxSize) * 1.2);
+                sizeOld = size;
             } else if (size > maxSize) {
                 fail(i + " size: " + size + " max: " + maxSize);
             }
         }
-        long sizeOld = FileUtils.size(getBaseDir() + "/mvstore"
+        // the chunks that are no longer used are freed,
+        // even if they were removed before re-opening
+        long size = FileUtils.size(getBaseDir() + "/mvstore"
                 + Constants.SUFFIX_MV_FILE);
+        assertTrue(size + " " + sizeOld, size < sizeOld);
         conn = getConnection(dbName);
         stat = conn.createStatement();
         stat.execute("shutdown compact");
@@ -467,6 +477,55 @@ public class TestMVTableEngine extends TestBase {
         FileUtils.deleteRecursive(getBaseDir(), true);
     }
 
+    private void testLobStorageMap() throws Exception {
+        FileUtils.deleteRecursive(getBaseDir(), true);
+        String dbName = "mvstore;MV_STORE=TRUE";
+        Connection conn;
+        Statement stat;
+        conn = getConnection(dbName);
+        stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, b blob, c clob)");
+        PreparedStatement prep = conn.prepareStatement("insert into test values(?, ?, ?)");
+        Random r = new Random(1);
+        byte[] data = new byte[100000];
+        r.nextBytes(data);
+        String text = new String(new char[50000]).replace((char) 0, '\u00e4');
+        for (int i = 0; i < 3; i++) {
+            prep.setInt(1, i);
+            prep.setBinaryStream(2, new ByteArrayInputStream(data));
+            prep.setCharacterStream(3, new StringReader(text));
+            prep.execute();
+        }
+        stat.execute("create table test2 as select * from test");
+        stat.execute("delete from test where id < 2");
+        // the lob data is stored in the MVStore, not in the lob tables
+        ResultSet rs = stat.executeQuery("select count(*) from information_schema.tables " +
+                "where table_name = 'LOB_DATA'");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        conn.close();
+        conn = getConnection(dbName);
+        stat = conn.createStatement();
+        rs = stat.executeQuery("select * from test2 union all select * from test order by id");
+        int count = 0;
+        while (rs.next()) {
+            assertEquals(data, IOUtils.readBytesAndClose(rs.getBinaryStream(2), -1));
+            assertEquals(text, rs.getString(3));
+            assertEquals(text.length(), rs.getClob(3).length());
+            count++;
+        }
+        assertEquals(4, count);
+        stat.execute("drop table test");
+        stat.execute("drop table test2");
+        conn.close();
+        MVStore s = MVStore.open(getBaseDir() + "/mvstore" + Constants.SUFFIX_MV_FILE);
+        assertEquals(0, s.openMap("lobMap").size());
+        assertEquals(0, s.openMap("lobStreams").size());
+        assertEquals(0, s.openMap("lobData").size());
+        s.close();
+        FileUtils.deleteRecursive(getBaseDir(), true);
+    }
+
     private void testEncryption() throws Exception {
         FileUtils.deleteRecursive(getBaseDir(), true);
         String dbName = "mvstore;MV_STORE=TRUE";
@@ -495,16 +554,26 @@ public class TestMVTableEngine extends TestBase {
         conn = getConnection(dbName);
         stat = conn.createStatement();
         stat.execute("create table test(id int)");
-        stat.execute("insert into test values(1)");
+        stat.execute("insert into test values(1), (2)");
         conn.setAutoCommit(false);
         // stat.execute("update test set id = 2");
-        stat.executeQuery("select * from test for update");
+        stat.executeQuery("select * from test where id = 1 for update");
         conn2 = getConnection(dbName);
         stat2 = conn2.createStatement();
+        stat2.execute("set lock_timeout 100");
+        // only the selected row is locked
         ResultSet rs2 = stat2.executeQuery("select * from information_schema.locks");
         assertTrue(rs2.next());
         assertEquals("TEST", rs2.getString("table_name"));
-        assertEquals("WRITE", rs2.getString("lock_type"));
+        assertEquals("READ", rs2.getString("lock_type"));
+        assertEquals(1, stat2.executeUpdate("update test set id = 3 where id = 2"));
+        assertThrows(ErrorCode.LOCK_TIMEOUT_1, stat2).
+                execute("update test set id = 4 where id = 1");
+        // the table structure can not be changed
+        assertThrows(ErrorCode.LOCK_TIMEOUT_1, stat2).
+                execute("alter table test add column name varchar");
+        conn.commit();
+        assertEquals(1, stat2.executeUpdate("update test set id = 4 where id = 1"));
         conn2.close();
         conn.close();
         FileUtils.deleteRecursive(getBaseDir(), true);
@@ -719,19 +788,60 @@ public class TestMVTableEngine extends TestBase {
         conn1.setAutoCommit(false);
         stat.execute("insert into a values(1, 'Hello')");
         stat1.execute("insert into b values(1, 'Hello')");
+        // rows are locked, not tables
+        stat1.execute("insert into a values(2, 'World')");
+        stat.execute("insert into b values(2, 'World')");
+        conn.commit();
+        conn1.commit();
+
+        stat.execute("update a set name = 'Hi' where id = 1");
+        stat1.execute("update a set name = 'Hi' where id = 2");
+        stat1.execute("delete from b where id = 1");
+        assertThrows(ErrorCode.LOCK_TIMEOUT_1, stat1).
+                execute("update a set name = 'Hallo' where id = 1");
         Task t = new Task() {
             @Override
             public void call() throws Exception {
-                stat1.execute("insert into a values(2, 'World')");
+                // waits until the row is unlocked
+                stat1.execute("update a set name = 'Hallo' where id = 1");
             }
         };
         t.execute();
-        try {
-            stat.execute("insert into b values(2, 'World')");
-            throw t.getException();
-        } catch (SQLException e) {
-            assertEquals(e.toString(), ErrorCode.DEADLOCK_1, e.getErrorCode());
-        }
+        Thread.sleep(100);
+        conn.commit();
+        t.get();
+        conn1.commit();
+        ResultSet rs = stat.executeQuery("select name from a order by id");
+        rs.next();
+        assertEquals("Hallo", rs.getString(1));
+        rs.next();
+        assertEquals("Hi", rs.getString(1));
+
+        // waiting for a row lock is part of the deadlock detection
+        stat.execute("update a set name = 'Hello' where id = 1");
+        stat1.execute("update b set name = 'Hello' where id = 2");
+        t = new Task() {
+            @Override
+            public void call() throws Exception {
+                stat1.execute("update a set name = 'World' where id = 1");
+            }
+        };
+        t.execute();
+        Thread.sleep(100);
+        assertThrows(ErrorCode.DEADLOCK_1, stat).
+                execute("update b set name = 'World' where id = 2");
+        // the transaction of the first connection was rolled back
+        t.get();
+        conn1.commit();
+        rs = stat.executeQuery("select name from a where id = 1");
+        rs.next();
+        assertEquals("World", rs.getString(1));
+
+        // DDL still locks the table
+        stat.execute("update a set name = 'Hello' where id = 1");
+        assertThrows(ErrorCode.LOCK_TIMEOUT_1, stat1).
+                execute("create index idx_a_name on a(name)");
+        conn.rollback();
 
         conn1.close();
         conn.close();
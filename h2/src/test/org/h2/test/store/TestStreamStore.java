@@ -50,6 +50,8 @@ public class TestStreamStore extends TestBase {
         testFormat();
         testWithExistingData();
         testWithFullMap();
+        testExceptionDuringStore();
+        testReadZeroLength();
         testLoop();
     }
 
@@ -314,6 +316,61 @@ public class TestStreamStore extends TestBase {
         assertEquals(Long.MAX_VALUE / 2 + 1, store.getNextKey());
     }
 
+    private void testExceptionDuringStore() throws IOException {
+        Map<Long, byte[]> map = New.hashMap();
+        StreamStore store = new StreamStore(map);
+        store.setMinBlockSize(10);
+        store.setMaxBlockSize(20);
+        // fails after some blocks (and indirect blocks) were stored
+        InputStream in = new InputStream() {
+            private int pos;
+            @Override
+            public int read() throws IOException {
+                if (pos++ > 1000) {
+                    throw new IOException("test");
+                }
+                return 1;
+            }
+        };
+        try {
+            store.put(in);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, map.size());
+        in = new InputStream() {
+            private int pos;
+            @Override
+            public int read() {
+                if (pos++ > 100) {
+                    throw new IllegalStateException("test");
+                }
+                return 1;
+            }
+        };
+        try {
+            store.put(in);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, map.size());
+    }
+
+    private void testReadZeroLength() throws IOException {
+        Map<Long, byte[]> map = New.hashMap();
+        StreamStore store = new StreamStore(map);
+        store.setMinBlockSize(10);
+        store.setMaxBlockSize(20);
+        byte[] id = store.put(new ByteArrayInputStream(new byte[100]));
+        InputStream in = store.get(id);
+        assertEquals(0, in.read(new byte[0]));
+        assertEquals(0, in.read());
+        assertEquals(0, in.read(new byte[10], 5, 0));
+        assertEquals(99, IOUtils.readBytesAndClose(in, -1).length);
+    }
+
     private void testLoop() throws IOException {
         Map<Long, byte[]> map = New.hashMap();
         StreamStore store = new StreamStore(map);
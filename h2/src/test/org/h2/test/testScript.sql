@@ -204,6 +204,132 @@ update test set (id)=(id);
 drop table test;
 > ok
 
+create table test(id int primary key, g int, v int);
+> ok
+
+insert into test values(1, 1, 10), (2, 1, 20), (3, 1, 20), (4, 2, 5), (5, 2, null), (6, 2, 7);
+> update count: 6
+
+select id, row_number() over (partition by g order by v desc, id) rn, rank() over (order by v) r, dense_rank() over (order by v) dr from test order by id;
+> ID RN R DR
+> -- -- - --
+> 1  3  4 4
+> 2  1  5 5
+> 3  2  5 5
+> 4  2  2 2
+> 5  3  1 1
+> 6  1  3 3
+> rows (ordered): 6
+
+select id, sum(v) over (order by id) s, sum(v) over (partition by g) sg, count(*) over () c from test order by id;
+> ID S  SG C
+> -- -- -- -
+> 1  10 50 6
+> 2  30 50 6
+> 3  50 50 6
+> 4  55 12 6
+> 5  55 12 6
+> 6  62 12 6
+> rows (ordered): 6
+
+select id, sum(v) over (order by id rows between 1 preceding and 1 following) s, max(v) over (order by id rows 1 preceding) m, count(v) over (order by id rows between current row and unbounded following) c from test order by id;
+> ID S  M  C
+> -- -- -- -
+> 1  30 10 5
+> 2  50 20 4
+> 3  45 20 3
+> 4  25 20 2
+> 5  12 5  1
+> 6  7  7  1
+> rows (ordered): 6
+
+select id, sum(v) over (order by v range between current row and unbounded following) s, count(distinct v) over (order by id rows between 2 preceding and current row) c from test order by id;
+> ID S  C
+> -- -- -
+> 1  50 1
+> 2  40 2
+> 3  40 2
+> 4  62 2
+> 5  62 2
+> 6  57 2
+> rows (ordered): 6
+
+select g, sum(v) s, sum(sum(v)) over (order by g) t, rank() over (order by sum(v) desc) r from test group by g order by g;
+> G S  T  R
+> - -- -- -
+> 1 50 50 1
+> 2 12 62 2
+> rows (ordered): 2
+
+select id, sum(v) over (order by id) s from test order by id desc limit 2;
+> ID S
+> -- --
+> 6  62
+> 5  55
+> rows (ordered): 2
+
+select id, sum(v) over (order by id range between 1 preceding and current row) from test;
+> exception
+
+create sequence seq;
+> ok
+
+select nextval('seq') n, row_number() over (order by id desc) rn from test order by id;
+> N RN
+> - --
+> 1 6
+> 2 5
+> 3 4
+> 4 3
+> 5 2
+> 6 1
+> rows (ordered): 6
+
+drop sequence seq;
+> ok
+
+select id, row_number() over (order by v nulls first, id) rn from test order by rn;
+> ID RN
+> -- --
+> 5  1
+> 4  2
+> 6  3
+> 1  4
+> 2  5
+> 3  6
+> rows (ordered): 6
+
+select id from test order by row_number() over (order by v desc nulls last, id) limit 2;
+> ID
+> --
+> 2
+> 3
+> rows (ordered): 2
+
+explain select row_number() over (order by v desc nulls last) from test;
+> PLAN
+> --------------------------------------------------------------------------------------------------
+> SELECT ROW_NUMBER() OVER (ORDER BY V DESC NULLS LAST) FROM PUBLIC.TEST /* PUBLIC.TEST.tableScan */
+> rows (ordered): 1
+
+select id from test where row_number() over (order by id) = 1;
+> exception
+
+select g from test group by g having rank() over (order by g) = 1;
+> exception
+
+select count(*) from test group by row_number() over (order by id);
+> exception
+
+select id from test t1 inner join test t2 on rank() over (order by t1.id) = t2.id;
+> exception
+
+select row_number() over (order by rank() over (order by id)) from test;
+> exception
+
+drop table test;
+> ok
+
 create table test(x int) as select x from system_range(1, 2);
 > ok
 
@@ -483,8 +609,8 @@ insert into test values(1), (2), (3), (4);
 
 explain analyze select * from test where id is null;
 > PLAN
-> ----------------------------------------------------------------------------------------------------------
-> SELECT TEST.ID FROM PUBLIC.TEST /* PUBLIC.PRIMARY_KEY_2: ID IS NULL */ /* scanCount: 1 */ WHERE ID IS NULL
+> -----------------------------------------------------------------------------------------------------------------------------
+> SELECT TEST.ID FROM PUBLIC.TEST /* PUBLIC.PRIMARY_KEY_2: ID IS NULL */ /* scanCount: 1, loops: 1, rows: 0 */ WHERE ID IS NULL
 > rows: 1
 
 drop table test;
@@ -492,8 +618,8 @@ drop table test;
 
 explain analyze select 1;
 > PLAN
-> ----------------------------------------------------------------------------
-> SELECT 1 FROM SYSTEM_RANGE(1, 1) /* PUBLIC.RANGE_INDEX */ /* scanCount: 2 */
+> -----------------------------------------------------------------------------------------------
+> SELECT 1 FROM SYSTEM_RANGE(1, 1) /* PUBLIC.RANGE_INDEX */ /* scanCount: 2, loops: 1, rows: 1 */
 > rows: 1
 
 create table folder(id int primary key, name varchar(255), parent int);
@@ -769,6 +895,245 @@ select constraint_name from information_schema.indexes where table_name = 'CHILD
 drop table parent, child;
 > ok
 
+create table test(id int primary key, a int, b int, c varchar);
+> ok
+
+insert into test values(1, 1, 10, 'x'), (2, 1, 20, 'y'), (3, 2, 30, 'z');
+> update count: 3
+
+create index idx_test_a on test(a desc) include(b, c);
+> ok
+
+select column_name, ordinal_position, sql from information_schema.indexes where index_name = 'IDX_TEST_A';
+> COLUMN_NAME ORDINAL_POSITION SQL
+> ----------- ---------------- -------------------------------------------------------------------
+> A           1                CREATE INDEX PUBLIC.IDX_TEST_A ON PUBLIC.TEST(A DESC) INCLUDE(B, C)
+> rows: 1
+
+select b, c from test where a = 1 order by b;
+> B  C
+> -- -
+> 10 x
+> 20 y
+> rows (ordered): 2
+
+update test set b = 40 where id = 3;
+> update count: 1
+
+select b from test where a = 2;
+> B
+> --
+> 40
+> rows: 1
+
+create unique index idx_test_b on test(b) include(a);
+> exception
+
+create index idx_test_c on test(c) include(c);
+> exception
+
+drop table test;
+> ok
+
+create table test(id int primary key, status varchar, v int);
+> ok
+
+create index idx_test_v on test(v) where status = 'PENDING';
+> ok
+
+insert into test values(1, 'PENDING', 10), (2, 'DONE', 10), (3, 'PENDING', 20);
+> update count: 3
+
+select sql from information_schema.indexes where index_name = 'IDX_TEST_V';
+> SQL
+> ---------------------------------------------------------------------------
+> CREATE INDEX PUBLIC.IDX_TEST_V ON PUBLIC.TEST(V) WHERE (STATUS = 'PENDING')
+> rows: 1
+
+select id from test where status = 'PENDING' and v = 10;
+> ID
+> --
+> 1
+> rows: 1
+
+update test set status = 'DONE' where id = 1;
+> update count: 1
+
+select id from test where status = 'PENDING' and v = 10;
+> ID
+> --
+> rows: 0
+
+select id from test where v = 10 order by id;
+> ID
+> --
+> 1
+> 2
+> rows (ordered): 2
+
+create primary key on test(v) where v > 0;
+> exception
+
+create index idx_test_r on test(v) where rand() > 0.5;
+> exception
+
+drop table test;
+> ok
+
+create table test(id int primary key, a int, b int);
+> ok
+
+insert into test values(1, null, 1), (2, 6, 2);
+> update count: 2
+
+create index idx_test_b on test(b) where a > 5;
+> ok
+
+insert into test values(3, null, 3);
+> update count: 1
+
+update test set a = null where id = 2;
+> update count: 1
+
+select id from test where a > 5 and b = 2;
+> ID
+> --
+> rows: 0
+
+update test set a = 7 where id = 1;
+> update count: 1
+
+select id from test where a > 5 and b = 1;
+> ID
+> --
+> 1
+> rows: 1
+
+delete from test where a is null;
+> update count: 2
+
+select id from test;
+> ID
+> --
+> 1
+> rows: 1
+
+drop table test;
+> ok
+
+create table test(id int primary key, name varchar);
+> ok
+
+create unique index idx_test_upper on test(upper(name) desc);
+> ok
+
+insert into test values(1, 'Hello'), (2, 'World');
+> update count: 2
+
+insert into test values(3, 'HELLO');
+> exception
+
+select sql from information_schema.indexes where index_name = 'IDX_TEST_UPPER';
+> SQL
+> --------------------------------------------------------------------------
+> CREATE UNIQUE INDEX PUBLIC.IDX_TEST_UPPER ON PUBLIC.TEST(UPPER(NAME) DESC)
+> rows: 1
+
+select id from test where upper(name) = 'WORLD';
+> ID
+> --
+> 2
+> rows: 1
+
+update test set name = 'Test' where id = 2;
+> update count: 1
+
+select id from test t where upper(t.name) in('WORLD', 'TEST');
+> ID
+> --
+> 2
+> rows: 1
+
+create hash index idx_test_hash on test(upper(name));
+> exception
+
+create index idx_test_r on test(name || rand());
+> exception
+
+drop table test;
+> ok
+
+create table test(id int primary key, a int, b int) as select x, mod(x, 10), mod(x, 7) from system_range(1, 100);
+> ok
+
+create index idx_test_a on test(a);
+> ok
+
+create index idx_test_b on test(b);
+> ok
+
+explain select id from test where a = 3 or b = 4;
+> PLAN
+> ------------------------------------------------------------------------------------------------------------------
+> SELECT ID FROM PUBLIC.TEST /* (PUBLIC.IDX_TEST_A: A = 3) OR (PUBLIC.IDX_TEST_B: B = 4) */ WHERE (A = 3) OR (B = 4)
+> rows: 1
+
+select id from test where (a = 3 or b = 4) and id < 30 order by id;
+> ID
+> --
+> 3
+> 4
+> 11
+> 13
+> 18
+> 23
+> 25
+> rows (ordered): 7
+
+select id from test where a = 3 and b = 4 order by id;
+> ID
+> --
+> 53
+> rows (ordered): 1
+
+drop table test;
+> ok
+
+create table test(id identity, ts int) as select x, x from system_range(1, 3000);
+> ok
+
+create block index idx_test_ts on test(ts);
+> ok
+
+select sql from information_schema.indexes where index_name = 'IDX_TEST_TS';
+> SQL
+> --------------------------------------------------------
+> CREATE BLOCK INDEX PUBLIC.IDX_TEST_TS ON PUBLIC.TEST(TS)
+> rows: 1
+
+update test set ts = 5000 where id = 10;
+> update count: 1
+
+select id from test where ts >= 2999 order by id;
+> ID
+> ----
+> 10
+> 2999
+> 3000
+> rows (ordered): 3
+
+create block index idx_test_ts_id on test(ts, id);
+> exception
+
+create unique block index idx_test_ts_unique on test(ts);
+> exception
+
+create block index idx_test_ts_1 on test(ts + 1);
+> exception
+
+drop table test;
+> ok
+
 create table test(id int, name varchar(max));
 > ok
 
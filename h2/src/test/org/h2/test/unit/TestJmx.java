@@ -8,6 +8,7 @@ package org.h2.test.unit;
 
 import java.lang.management.ManagementFactory;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Set;
@@ -73,7 +74,7 @@ public class TestJmx extends TestBase {
         mbeanServer.setAttribute(name, new Attribute("TraceLevel", 0));
         assertEquals("0", mbeanServer.getAttribute(name, "TraceLevel").toString());
         assertTrue(mbeanServer.getAttribute(name, "Version").toString().startsWith("1."));
-        assertEquals(14, info.getAttributes().length);
+        assertEquals(31, info.getAttributes().length);
         result = mbeanServer.invoke(name, "listSettings", null, null).toString();
         assertTrue(result.indexOf("ANALYZE_AUTO") >= 0);
 
@@ -85,7 +86,22 @@ public class TestJmx extends TestBase {
         assertTrue(result.indexOf("session id") >= 0);
         assertTrue(result.indexOf("write lock") >= 0);
 
-        assertEquals(2, info.getOperations().length);
+        conn.commit();
+        assertEquals("1", mbeanServer.getAttribute(name, "CommitCount").toString());
+        assertEquals("0", mbeanServer.getAttribute(name, "RollbackCount").toString());
+        stat.execute("insert into test values(2)");
+        conn.rollback();
+        assertEquals("1", mbeanServer.getAttribute(name, "RollbackCount").toString());
+        assertTrue(0 < (Long) mbeanServer.getAttribute(name, "StatementCount"));
+        assertTrue(0 <= (Long) mbeanServer.getAttribute(name, "StatementLatencyP99"));
+        assertEquals("0", mbeanServer.getAttribute(name, "DeadlockCount").toString());
+        result = mbeanServer.invoke(name, "listMetrics", null, null).toString();
+        assertTrue(result.indexOf("COMMITS = 1") >= 0);
+        ResultSet rs = stat.executeQuery("select value from information_schema.metrics where name = 'ROLLBACKS'");
+        assertTrue(rs.next());
+        assertEquals("1", rs.getString(1));
+
+        assertEquals(3, info.getOperations().length);
         assertTrue(info.getDescription().indexOf("database") >= 0);
         attrMap = New.hashMap();
         for (MBeanAttributeInfo a : info.getAttributes()) {
@@ -6,6 +6,12 @@
  */
 package org.h2.test.unit;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
@@ -16,6 +22,9 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -45,6 +54,7 @@ public class TestPgServer extends TestBase {
         testKeyAlias();
         testCancelQuery();
         testBinaryTypes();
+        testExtendedProtocol();
     }
 
     private boolean getPgJdbcDriver() {
@@ -356,4 +366,314 @@ public class TestPgServer extends TestBase {
             server.stop();
         }
     }
+
+    /**
+     * Test the extended query protocol without a PostgreSQL driver: binary
+     * parameters and results, pipelined messages, and error handling.
+     */
+    private void testExtendedProtocol() throws Exception {
+        Server server = Server.createPgServer("-pgPort", "5535", "-pgDaemon", "-key", "pgserver", "mem:pgserver");
+        server.start();
+        try {
+            Socket socket = new Socket("localhost", 5535);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataOutputStream d = newMessage();
+            d.writeInt(196608);
+            writeString(d, "user");
+            writeString(d, "sa");
+            writeString(d, "database");
+            writeString(d, "pgserver");
+            d.write(0);
+            sendMessage(out, 0, d);
+            out.flush();
+            assertEquals('R', readMessage(in).readByte());
+            d = newMessage();
+            writeString(d, "sa");
+            sendMessage(out, 'p', d);
+            out.flush();
+            readUntilReady(in);
+
+            d = newMessage();
+            writeString(d, "create table test(id int primary key, n decimal(20, 5), " +
+                    "d date, t time, ts timestamp, b bytea, x boolean);" +
+                    "insert into test values(1, -12345.678, '2013-10-19', '12:34:56', " +
+                    "'2013-10-19 12:34:56.123456', X'01ff', true)");
+            sendMessage(out, 'Q', d);
+            out.flush();
+            readUntilReady(in);
+
+            // all messages are sent at once, the responses are read later
+            String sql = "select n, d, t, ts, b, x, id from test where id = ?";
+            sendParse(out, "s1", sql, 23);
+            d = newMessage();
+            writeString(d, "");
+            writeString(d, "s1");
+            d.writeShort(1);
+            d.writeShort(1);
+            d.writeShort(1);
+            d.writeInt(4);
+            d.writeInt(1);
+            d.writeShort(1);
+            d.writeShort(1);
+            sendMessage(out, 'B', d);
+            d = newMessage();
+            d.write('P');
+            writeString(d, "");
+            sendMessage(out, 'D', d);
+            sendExecuteAndSync(out);
+            // an error: the following messages are ignored until Sync
+            sendParse(out, "s2", "select * from missing_table");
+            sendBind(out, "s2");
+            sendExecuteAndSync(out);
+            out.flush();
+
+            assertEquals('1', readMessageType(in));
+            assertEquals('2', readMessageType(in));
+            DataInputStream row = readMessage(in);
+            assertEquals('T', row.readByte());
+            assertEquals(7, row.readShort());
+            row = readMessage(in);
+            assertEquals('D', row.readByte());
+            assertEquals(7, row.readShort());
+            // numeric: -12345.67800
+            assertEquals(14, row.readInt());
+            assertEquals(3, row.readShort());
+            assertEquals(1, row.readShort());
+            assertEquals(0x4000, row.readShort());
+            assertEquals(5, row.readShort());
+            assertEquals(1, row.readShort());
+            assertEquals(2345, row.readShort());
+            assertEquals(6780, row.readShort());
+            // date
+            long days = getDaysSince2000(2013, 10, 19);
+            assertEquals(4, row.readInt());
+            assertEquals(days, row.readInt());
+            // time
+            long micros = ((12 * 60 + 34) * 60 + 56) * 1000000L;
+            assertEquals(8, row.readInt());
+            assertEquals(micros, row.readLong());
+            // timestamp
+            long timestamp = days * 24 * 60 * 60 * 1000000L + micros + 123456;
+            assertEquals(8, row.readInt());
+            assertEquals(timestamp, row.readLong());
+            // bytea
+            assertEquals(2, row.readInt());
+            assertEquals(1, row.readByte());
+            assertEquals(-1, row.readByte());
+            // boolean
+            assertEquals(1, row.readInt());
+            assertEquals(1, row.readByte());
+            // int
+            assertEquals(4, row.readInt());
+            assertEquals(1, row.readInt());
+            assertEquals('C', readMessageType(in));
+            assertEquals('Z', readMessageType(in));
+            assertEquals('E', readMessageType(in));
+            assertEquals('Z', readMessageType(in));
+
+            // binary parameters; the statement is parsed again after closing
+            d = newMessage();
+            d.write('S');
+            writeString(d, "s1");
+            sendMessage(out, 'C', d);
+            sendParse(out, "s3", "select count(*) from test where n = ? and ts = ?", 1700, 1114);
+            d = newMessage();
+            writeString(d, "");
+            writeString(d, "s3");
+            d.writeShort(1);
+            d.writeShort(1);
+            d.writeShort(2);
+            d.writeInt(14);
+            d.writeShort(3);
+            d.writeShort(1);
+            d.writeShort(0x4000);
+            d.writeShort(3);
+            d.writeShort(1);
+            d.writeShort(2345);
+            d.writeShort(6780);
+            d.writeInt(8);
+            d.writeLong(timestamp);
+            d.writeShort(1);
+            d.writeShort(1);
+            sendMessage(out, 'B', d);
+            sendExecuteAndSync(out);
+            out.flush();
+            assertEquals('3', readMessageType(in));
+            assertEquals('1', readMessageType(in));
+            assertEquals('2', readMessageType(in));
+            row = readMessage(in);
+            assertEquals('D', row.readByte());
+            assertEquals(1, row.readShort());
+            assertEquals(8, row.readInt());
+            assertEquals(1, row.readLong());
+            assertEquals('C', readMessageType(in));
+            assertEquals('Z', readMessageType(in));
+
+            // the statement of a closed prepared object is not re-used
+            // while a portal is still bound to it
+            sql = "select id from test where id = ?";
+            sendParse(out, "s4", sql, 23);
+            sendBindInt(out, "p4", "s4", 1);
+            sendClose(out, 'S', "s4");
+            sendParse(out, "s5", sql, 23);
+            sendBindInt(out, "p5", "s5", 2);
+            sendExecute(out, "p4");
+            sendExecute(out, "p5");
+            // once the portal is closed, the statement is re-used
+            sendClose(out, 'P', "p4");
+            sendParse(out, "s6", sql, 23);
+            sendBindInt(out, "p6", "s6", 1);
+            sendExecute(out, "p6");
+            sendMessage(out, 'S', newMessage());
+            out.flush();
+            assertEquals('1', readMessageType(in));
+            assertEquals('2', readMessageType(in));
+            assertEquals('3', readMessageType(in));
+            assertEquals('1', readMessageType(in));
+            assertEquals('2', readMessageType(in));
+            assertTextRow(readMessage(in), "1");
+            assertEquals('C', readMessageType(in));
+            assertEquals('C', readMessageType(in));
+            assertEquals('3', readMessageType(in));
+            assertEquals('1', readMessageType(in));
+            assertEquals('2', readMessageType(in));
+            assertTextRow(readMessage(in), "1");
+            assertEquals('C', readMessageType(in));
+            assertEquals('Z', readMessageType(in));
+
+            sendMessage(out, 'X', newMessage());
+            out.flush();
+            socket.close();
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long getDaysSince2000(int year, int month, int day) {
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(2000, 0, 1);
+        long start = cal.getTimeInMillis();
+        cal.set(year, month - 1, day);
+        return (cal.getTimeInMillis() - start) / (24 * 60 * 60 * 1000);
+    }
+
+    private static DataOutputStream newMessage() {
+        return new Message();
+    }
+
+    private static void writeString(DataOutputStream d, String s) throws IOException {
+        d.write(s.getBytes("UTF-8"));
+        d.write(0);
+    }
+
+    private static void sendMessage(DataOutputStream out, int type, DataOutputStream d) throws IOException {
+        byte[] data = ((Message) d).toByteArray();
+        if (type != 0) {
+            out.write(type);
+        }
+        out.writeInt(data.length + 4);
+        out.write(data);
+    }
+
+    private static void sendParse(DataOutputStream out, String name, String sql, int... types) throws IOException {
+        DataOutputStream d = newMessage();
+        writeString(d, name);
+        writeString(d, sql);
+        d.writeShort(types.length);
+        for (int t : types) {
+            d.writeInt(t);
+        }
+        sendMessage(out, 'P', d);
+    }
+
+    private static void sendBind(DataOutputStream out, String name) throws IOException {
+        DataOutputStream d = newMessage();
+        writeString(d, "");
+        writeString(d, name);
+        d.writeShort(0);
+        d.writeShort(0);
+        d.writeShort(0);
+        sendMessage(out, 'B', d);
+    }
+
+    private static void sendBindInt(DataOutputStream out, String portal, String name, int value)
+            throws IOException {
+        DataOutputStream d = newMessage();
+        writeString(d, portal);
+        writeString(d, name);
+        d.writeShort(1);
+        d.writeShort(1);
+        d.writeShort(1);
+        d.writeInt(4);
+        d.writeInt(value);
+        d.writeShort(0);
+        sendMessage(out, 'B', d);
+    }
+
+    private static void sendClose(DataOutputStream out, char type, String name) throws IOException {
+        DataOutputStream d = newMessage();
+        d.write(type);
+        writeString(d, name);
+        sendMessage(out, 'C', d);
+    }
+
+    private static void sendExecute(DataOutputStream out, String portal) throws IOException {
+        DataOutputStream d = newMessage();
+        writeString(d, portal);
+        d.writeInt(0);
+        sendMessage(out, 'E', d);
+    }
+
+    private void assertTextRow(DataInputStream row, String value) throws IOException {
+        assertEquals('D', row.readByte());
+        assertEquals(1, row.readShort());
+        byte[] data = new byte[row.readInt()];
+        row.readFully(data);
+        assertEquals(value, new String(data, "UTF-8"));
+    }
+
+    private static void sendExecuteAndSync(DataOutputStream out) throws IOException {
+        DataOutputStream d = newMessage();
+        writeString(d, "");
+        d.writeInt(0);
+        sendMessage(out, 'E', d);
+        sendMessage(out, 'S', newMessage());
+    }
+
+    private static DataInputStream readMessage(DataInputStream in) throws IOException {
+        int type = in.read();
+        byte[] data = new byte[in.readInt() - 4 + 1];
+        data[0] = (byte) type;
+        in.readFully(data, 1, data.length - 1);
+        return new DataInputStream(new java.io.ByteArrayInputStream(data));
+    }
+
+    private static int readMessageType(DataInputStream in) throws IOException {
+        return readMessage(in).readByte();
+    }
+
+    private static void readUntilReady(DataInputStream in) throws IOException {
+        while (readMessageType(in) != 'Z') {
+            // ignore
+        }
+    }
+
+    /**
+     * A message of the PostgreSQL protocol, without type and length.
+     */
+    static class Message extends DataOutputStream {
+
+        Message() {
+            super(new ByteArrayOutputStream());
+        }
+
+        byte[] toByteArray() throws IOException {
+            flush();
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+
+    }
+
 }